@@ -0,0 +1,160 @@
+// ***********************
+//
+// File:    AiEngine.java
+// Package: ---
+// Unit:    Enum AiEngine
+//
+// ***********************
+
+import java.util.Random;
+
+/**
+ * This enum chooses how strongly an AiPlayer plays, from weakest to
+ * strongest. RANDOM places a queen on any empty square. GREEDY wins at
+ * once when it can, and otherwise avoids leaving a square that would
+ * win for the other player. SOLVER plays perfectly: it looks the position
+ * up in the server's endgame table if there is one, and otherwise solves
+ * it with a SixQueensSolver kept on the thread for each board size.
+ * <P>
+ * GREEDY and SOLVER read the board's bitboard, so on boards larger than
+ * BoardState.MAX_PACKED_SIZE they play as RANDOM does.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public enum AiEngine {
+    /**
+     * A random empty square
+     */
+    RANDOM {
+        @Override
+        int choose(BoardState board, Random random) {
+            return randomSquare(board, random);
+        }
+    },
+
+    /**
+     * A winning square if there is one, else one that does not let the other player win
+     */
+    GREEDY {
+        @Override
+        int choose(BoardState board, Random random) {
+            if (!board.isPacked())
+                return randomSquare(board, random);
+            int size = board.getSize();
+            long empty = board.getEmptyMask();
+            long safe = 0L;
+            for (long left = empty; left != 0L; left &= left - 1) {
+                int square = Long.numberOfTrailingZeros(left);
+                long after = empty & ~BoardState.attackMask(size, square);
+                if (after == 0L)
+                    return square;
+                if (!hasWinningMove(size, after))
+                    safe |= 1L << square;
+            }
+            return randomBit(safe != 0L ? safe : empty, random);
+        }
+    },
+
+    /**
+     * The best square, from the endgame table or the solver
+     */
+    SOLVER {
+        @Override
+        int choose(BoardState board, Random random) {
+            if (!board.isPacked())
+                return randomSquare(board, random);
+            EndgameTable table = SixQueensServer.getEndgameTable();
+            if (table != null && table.getSize() == board.getSize()) {
+                int entry = table.lookup(board.getEmptyMask());
+                if (entry != EndgameTable.NOT_FOUND)
+                    return EndgameTable.moveOf(entry);
+            }
+            SixQueensSolver[] solvers = SOLVERS.get();
+            if (solvers[board.getSize()] == null)
+                solvers[board.getSize()] = new SixQueensSolver(board.getSize());
+            SixQueensSolver.Solution solution = solvers[board.getSize()].solve(board);
+            return solution.row < 0 ? -1 : solution.row * board.getSize() + solution.col;
+        }
+    };
+
+    // each thread's solvers, by board size; a solver keeps its transposition table between moves
+    private static final ThreadLocal<SixQueensSolver[]> SOLVERS =
+            ThreadLocal.withInitial(() -> new SixQueensSolver[BoardState.MAX_PACKED_SIZE + 1]);
+
+    /**
+     * choose chooses the square to place a queen on
+     *
+     * @param board  the position; it is not changed
+     * @param random the random numbers to choose with
+     * @return the square index (row * size + col), or -1 if no square is empty
+     */
+    abstract int choose(BoardState board, Random random);
+
+    /**
+     * parse reads an engine from the command line
+     *
+     * @param s "random", "greedy" or "solver"
+     * @return the engine, or null if the string is none of them
+     */
+    public static AiEngine parse(String s) {
+        if (s.equals("random"))
+            return RANDOM;
+        if (s.equals("greedy"))
+            return GREEDY;
+        if (s.equals("solver"))
+            return SOLVER;
+        return null;
+    }
+
+    /**
+     * hasWinningMove checks if a position on a packed board has a square
+     * whose queen leaves no square empty
+     *
+     * @param size  the board size
+     * @param empty the empty squares
+     * @return true if the player to move can win at once
+     */
+    private static boolean hasWinningMove(int size, long empty) {
+        for (long left = empty; left != 0L; left &= left - 1) {
+            if ((empty & ~BoardState.attackMask(size, Long.numberOfTrailingZeros(left))) == 0L)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * randomBit returns one of the set bits of a mask, chosen at random
+     *
+     * @param mask   the mask, not 0
+     * @param random the random numbers to choose with
+     * @return the index of the bit
+     */
+    private static int randomBit(long mask, Random random) {
+        for (int skip = random.nextInt(Long.bitCount(mask)); skip > 0; skip--)
+            mask &= mask - 1;
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * randomSquare returns a random empty square on a board of any size
+     *
+     * @param board  the position
+     * @param random the random numbers to choose with
+     * @return the square index (row * size + col), or -1 if none is empty
+     */
+    private static int randomSquare(BoardState board, Random random) {
+        if (board.isPacked()) {
+            long empty = board.getEmptyMask();
+            return empty == 0L ? -1 : randomBit(empty, random);
+        }
+        int n = board.getSize() * board.getSize();
+        int start = random.nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int square = (start + i) % n;
+            if (board.isEmpty(square / board.getSize(), square % board.getSize()))
+                return square;
+        }
+        return -1;
+    }
+}
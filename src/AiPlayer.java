@@ -0,0 +1,205 @@
+// ***********************
+//
+// File:    AiPlayer.java
+// Package: ---
+// Unit:    Class AiPlayer
+//
+// ***********************
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a computer player that sits in a game inside the server,
+ * in place of a view proxy: it is the game's SixQueensModelListener and
+ * calls the game directly, with no socket. It moves with an AiEngine.
+ * <P>
+ * The game reports to it holding the game's lock, so it never moves from
+ * a report. It only keeps its own copy of the board, and when it is its
+ * turn it hands the move to an executor shared by every computer player,
+ * a few threads however many games there are. The move is chosen on a
+ * copy of the board, outside any lock, after a short pause so a person
+ * can follow the game. If the game changed meanwhile, the game ignores
+ * the move and reports the new turn. It does not start new games; its
+ * partner does.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class AiPlayer implements SixQueensModelListener {
+    /**
+     * The default pause before each move, in milliseconds
+     */
+    public static final long DEFAULT_THINK_MILLIS = 300;
+
+    private final SixQueensModel model;
+    private final AiEngine engine;
+    private final ScheduledExecutorService executor;
+    private final long thinkMillis;
+    private final Random random;
+    private BoardState board;
+    private boolean finished;
+
+    /**
+     * This constructor creates a computer player for a game. It is seated
+     * by joining the game with it.
+     *
+     * @param model       the game
+     * @param engine      how it chooses its moves
+     * @param executor    the executor every computer player moves on
+     * @param thinkMillis the pause before each move, in milliseconds
+     */
+    public AiPlayer(SixQueensModel model, AiEngine engine, ScheduledExecutorService executor, long thinkMillis) {
+        this.model = model;
+        this.engine = engine;
+        this.executor = executor;
+        this.thinkMillis = thinkMillis;
+        this.random = new Random();
+        this.board = new BoardState();
+        this.finished = false;
+    }
+
+    /**
+     * newExecutor creates an executor for computer players to share. A
+     * cancelled task is dropped from its queue at once, so the Lobby's
+     * cancelled waits for a computer opponent hold nothing.
+     *
+     * @param threads the number of threads
+     * @return the executor, whose threads are daemons
+     */
+    public static ScheduledExecutorService newExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, task -> {
+            Thread thread = new Thread(task, "AiPlayer-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * getEngine returns how the player chooses its moves
+     *
+     * @return the engine
+     */
+    public AiEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * boardSize reports the size of the board for the games that follow
+     *
+     * @param size the number of rows and columns
+     */
+    @Override
+    public synchronized void boardSize(int size) {
+        if (size != board.getSize())
+            board = new BoardState(size);
+    }
+
+    /**
+     * newGame reports that a new game was started
+     */
+    @Override
+    public synchronized void newGame() {
+        board.clear();
+    }
+
+    /**
+     * setQueen reports that a queen was placed
+     *
+     * @param row the row the queen was placed in
+     * @param col the column the queen was placed in
+     */
+    @Override
+    public synchronized void setQueen(int row, int col) {
+        board.setQueen(row, col);
+    }
+
+    /**
+     * waitingForPartner reports that the player is waiting; a computer
+     * player is only ever seated opposite someone
+     */
+    @Override
+    public void waitingForPartner() {
+    }
+
+    /**
+     * yourTurn hands the next move to the executor
+     */
+    @Override
+    public void yourTurn() {
+        executor.schedule(this::move, thinkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * theirTurn reports that it is the other player's turn
+     *
+     * @param name the other player's name
+     */
+    @Override
+    public void theirTurn(String name) {
+    }
+
+    /**
+     * youWin reports that this player won
+     */
+    @Override
+    public void youWin() {
+    }
+
+    /**
+     * theyWin reports that the other player won
+     *
+     * @param name the other player's name
+     */
+    @Override
+    public void theyWin(String name) {
+    }
+
+    /**
+     * quit reports that the game is over, so no more moves are made
+     */
+    @Override
+    public synchronized void quit() {
+        finished = true;
+    }
+
+    /**
+     * move chooses a square on a copy of the board and places a queen on
+     * it. It runs on the executor.
+     */
+    private void move() {
+        BoardState position;
+        synchronized (this) {
+            if (finished)
+                return;
+            position = copy(board);
+        }
+        int square = engine.choose(position, random);
+        if (square >= 0)
+            model.squareChosen(this, square / position.getSize(), square % position.getSize());
+    }
+
+    /**
+     * copy returns a copy of a board
+     *
+     * @param board the board
+     * @return a new board with the same queens
+     */
+    private static BoardState copy(BoardState board) {
+        int size = board.getSize();
+        BoardState copy = new BoardState(size);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (board.hasQueen(row, col))
+                    copy.setQueen(row, col);
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,162 @@
+// ********************************
+//
+// File:    ArchiveBenchmark.java
+// Package: ---
+// Unit:    Class ArchiveBenchmark
+//
+// ********************************
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class measures the GameArchive format. It writes an archive of
+ * random 6x6 games to a temporary file and reports the bytes per game,
+ * then scans it, reading every field of every game, once on one thread
+ * and once with a cursor per processor over its share of the blocks.
+ * <P>
+ * The games imitate a server's: a pair of players drawn from a fixed
+ * population plays one to five boards in the same game, one after the
+ * other, each taking from 5 seconds to 2 minutes, with random legal moves.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ArchiveBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 2) {
+            System.err.println("Usage: java ArchiveBenchmark [<games> [<players>]]");
+            System.exit(1);
+        }
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        int population = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        Path file = Files.createTempFile("games", ".archive");
+        try {
+            long start = System.nanoTime();
+            write(file, games, population);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long bytes = Files.size(file);
+            System.out.printf("wrote %d games in %.1f s (%.0f games/sec): %d bytes, %.2f bytes/game%n",
+                    games, seconds, games / seconds, bytes, (double) bytes / games);
+
+            GameArchive archive = GameArchive.open(file);
+            start = System.nanoTime();
+            long check = scan(archive, 0, archive.getBlockCount());
+            report("1 thread", archive, start, check);
+
+            int threads = Runtime.getRuntime().availableProcessors();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Long>> parts = new ArrayList<>();
+            start = System.nanoTime();
+            int blocks = archive.getBlockCount();
+            for (int i = 0; i < threads; i++) {
+                int from = (int) ((long) blocks * i / threads);
+                int to = (int) ((long) blocks * (i + 1) / threads);
+                parts.add(pool.submit(() -> scan(archive, from, to)));
+            }
+            check = 0;
+            for (Future<Long> part : parts)
+                check += part.get();
+            report(threads + " threads", archive, start, check);
+            pool.shutdown();
+            archive.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * write writes an archive of random games
+     *
+     * @param file       the archive file
+     * @param games      the number of games
+     * @param population the number of players to draw from
+     * @throws IOException if the archive cannot be written
+     */
+    private static void write(Path file, long games, int population) throws IOException {
+        Random random = new Random(1);
+        String[] names = new String[population];
+        for (int i = 0; i < population; i++)
+            names[i] = "player" + i;
+        BoardState board = new BoardState();
+        int size = board.getSize();
+        int[] squares = new int[size * size];
+
+        GameArchiveWriter writer = new GameArchiveWriter(file);
+        long gameId = 0;
+        long time = 1_500_000_000_000L;
+        int boardsLeft = 0;
+        String name1 = null;
+        String name2 = null;
+        for (long i = 0; i < games; i++) {
+            if (boardsLeft == 0) {
+                gameId += 1 + random.nextInt(64);
+                name1 = names[random.nextInt(population)];
+                name2 = names[random.nextInt(population)];
+                boardsLeft = 1 + random.nextInt(5);
+            }
+            boardsLeft--;
+
+            board.clear();
+            int moves = 0;
+            do {
+                int square;
+                do {
+                    square = random.nextInt(size * size);
+                } while (!board.isEmpty(square / size, square % size));
+                board.setQueen(square / size, square % size);
+                squares[moves++] = square;
+            } while (!board.checkWin());
+
+            int duration = 5_000 + random.nextInt(115_000);
+            writer.add(gameId, time, duration, size, name1, name2, moves % 2 == 1 ? 1 : 2, squares, moves);
+            time += random.nextInt(20);
+        }
+        writer.close();
+    }
+
+    /**
+     * scan reads every field of every game in a range of blocks
+     *
+     * @param archive the archive
+     * @param from    the first block
+     * @param to      the block after the last
+     * @return a checksum of what was read
+     * @throws IOException if the archive cannot be read
+     */
+    private static long scan(GameArchive archive, int from, int to) throws IOException {
+        GameArchive.Cursor cursor = archive.cursor(from, to);
+        long check = 0;
+        while (cursor.next()) {
+            check += cursor.getGameId() + cursor.getStart() + cursor.getDuration() + cursor.getSize() +
+                    cursor.getWinner() + cursor.getName(1).length() + cursor.getName(2).length();
+            for (int move = 0; move < cursor.getMoveCount(); move++)
+                check += cursor.getSquare(move);
+        }
+        return check;
+    }
+
+    /**
+     * report prints a scan's rate
+     *
+     * @param label   what scanned
+     * @param archive the archive
+     * @param start   when the scan started, from System.nanoTime
+     * @param check   the scan's checksum
+     */
+    private static void report(String label, GameArchive archive, long start, long check) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = archive.getGameCount() / seconds;
+        System.out.printf("scanned with %s in %.1f s: %.0f games/sec, 100M games in %.0f s (check %d)%n",
+                label, seconds, rate, 100e6 / rate, check);
+    }
+}
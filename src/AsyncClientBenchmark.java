@@ -0,0 +1,223 @@
+// ************************************
+//
+// File:    AsyncClientBenchmark.java
+// Package: ---
+// Unit:    Class AsyncClientBenchmark
+//
+// ************************************
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class measures AsyncModelProxy bots. It starts the server inside
+ * this JVM and plays a number of games between bots that share one
+ * AsyncClientLoop, each pair in a private room. A bot learns whose turn
+ * it is from its subscription, which it asks for a few events at a time,
+ * and times each move from squareChosen to the move's future completing.
+ * It prints the moves per second, the move latency, and the threads the
+ * JVM ran, which do not grow with the games.
+ * <P>
+ * With slow= every bot takes that long over each event, so the events
+ * back up and the proxies stop reading until their subscribers catch up.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class AsyncClientBenchmark {
+    // a bot asks for this many events, and for more when half are delivered
+    private static final int BATCH = 16;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final long slowMillis;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: java AsyncClientBenchmark <games> <seconds> [mode=threads|nio] " +
+                    "[slow=<millis per event>]");
+            System.exit(1);
+        }
+        int games = Integer.parseInt(args[0]);
+        long seconds = Long.parseLong(args[1]);
+        String mode = "nio";
+        long slowMillis = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("mode="))
+                mode = args[i].substring("mode=".length());
+            else if (args[i].startsWith("slow="))
+                slowMillis = Long.parseLong(args[i].substring("slow=".length()));
+        }
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        String serverMode = mode;
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "mode=" + serverMode}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+        int before = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        AsyncClientBenchmark benchmark = new AsyncClientBenchmark(slowMillis);
+        AsyncClientLoop loop = new AsyncClientLoop().start("AsyncClientLoop");
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        List<CompletableFuture<Integer>> seats = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 2 * games; i++) {
+            String name = "bot" + i;
+            String room = "async" + (i / 2);
+            seats.add(loop.connect(address).thenCompose(proxy -> benchmark.new Bot(proxy).join(name, room)));
+        }
+        CompletableFuture.allOf(seats.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        System.out.printf("%d bots joined in %.0f ms%n", 2 * games, (System.nanoTime() - start) / 1e6);
+
+        Thread.sleep(1000);
+        benchmark.latency.reset();
+        long moves0 = benchmark.moves.sum();
+        start = System.nanoTime();
+        Thread.sleep(seconds * 1000);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long played = benchmark.moves.sum() - moves0;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        System.out.printf("%s server, %d games: %.0f moves/sec, move p50 %.3f ms, p99 %.3f ms, max %.3f ms, " +
+                        "%d moves refused%n", mode, games, played / elapsed, benchmark.latency.getPercentile(0.5) / 1e6,
+                benchmark.latency.getPercentile(0.99) / 1e6, benchmark.latency.getMax() / 1e6,
+                benchmark.rejected.sum());
+        System.out.printf("threads: %d with the server alone, %d with the bots%n", before, threads);
+        System.exit(0);
+    }
+
+    /**
+     * This constructor creates a benchmark
+     *
+     * @param slowMillis how long each bot takes over each event
+     */
+    public AsyncClientBenchmark(long slowMillis) {
+        this.slowMillis = slowMillis;
+    }
+
+    /**
+     * This class is one bot: it subscribes to its proxy's events, keeps its
+     * own board, moves at random when it is its turn, and starts a new game
+     * when it wins
+     */
+    private class Bot implements Flow.Subscriber<GameEvent> {
+        private final AsyncModelProxy proxy;
+        private final Random random = new Random();
+        private Flow.Subscription subscription;
+        private BoardState board = new BoardState();
+        private int delivered;
+
+        /**
+         * This constructor creates a bot on a connected proxy
+         *
+         * @param proxy the proxy
+         */
+        Bot(AsyncModelProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        /**
+         * join subscribes to the proxy's events, then joins a private room
+         *
+         * @param name the bot's name
+         * @param room the room
+         * @return the join's future
+         */
+        CompletableFuture<Integer> join(String name, String room) {
+            proxy.subscribe(this);
+            return proxy.join(name, BoardState.DEFAULT_SIZE, room);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(BATCH);
+        }
+
+        @Override
+        public void onNext(GameEvent event) {
+            if (slowMillis > 0) {
+                try {
+                    Thread.sleep(slowMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            switch (event.getKind()) {
+                // board size case
+                case BOARD_SIZE:
+                    board = new BoardState(event.getSize());
+                    break;
+
+                // new game case
+                case NEW_GAME:
+                    board.clear();
+                    break;
+
+                // queen placed case
+                case SET_QUEEN:
+                    board.setQueen(event.getRow(), event.getCol());
+                    break;
+
+                // your turn case
+                case YOUR_TURN:
+                    move();
+                    break;
+
+                // you win case
+                case YOU_WIN:
+                    proxy.newGame();
+                    break;
+
+                default:
+                    break;
+            }
+            if (++delivered == BATCH / 2) {
+                delivered = 0;
+                subscription.request(BATCH / 2);
+            }
+        }
+
+        /**
+         * move places a queen on a random empty square, and times it
+         */
+        private void move() {
+            int size = board.getSize();
+            int square = random.nextInt(size * size);
+            while (!board.isEmpty(square / size, square % size))
+                square = (square + 1) % (size * size);
+            long start = System.nanoTime();
+            proxy.squareChosen(square / size, square % size).whenComplete((done, failure) -> {
+                if (failure != null) {
+                    rejected.increment();
+                } else {
+                    latency.record(System.nanoTime() - start);
+                    moves.increment();
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            System.err.println("AsyncClientBenchmark: " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
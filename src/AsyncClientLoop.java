@@ -0,0 +1,179 @@
+// ******************************
+//
+// File:    AsyncClientLoop.java
+// Package: ---
+// Unit:    Class AsyncClientLoop
+//
+// ******************************
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class runs the one I/O thread a group of AsyncModelProxy clients
+ * share, the client side of what NioEventLoop is for the server. It owns
+ * a Selector and, for every client connected through it, finishes the
+ * connection, reads and decodes the server's messages, and finishes
+ * writes that did not complete when they were sent. A thousand games
+ * need one thread, not a thousand.
+ * <P>
+ * The clients' events are handed to their subscribers on a separate
+ * executor, so a slow subscriber holds up its own client only, never the
+ * loop. By default it is the common ForkJoinPool, as for a
+ * SubmissionPublisher.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class AsyncClientLoop implements Runnable, Executor {
+    private final Selector selector;
+    private final Executor delivery;
+    private final Queue<AsyncModelProxy> pending;
+    private final Queue<Runnable> tasks;
+
+    /**
+     * This constructor creates a loop that delivers events on the common ForkJoinPool
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public AsyncClientLoop() throws IOException {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * This constructor creates a new loop
+     *
+     * @param delivery the executor the clients' events are delivered on
+     * @throws IOException if the selector cannot be opened
+     */
+    public AsyncClientLoop(Executor delivery) throws IOException {
+        this.selector = Selector.open();
+        this.delivery = delivery;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * start starts the loop on a daemon thread of its own
+     *
+     * @param name the thread's name
+     * @return this loop
+     */
+    public AsyncClientLoop start(String name) {
+        Thread thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * connect opens a connection to a server, served by this loop. It may
+     * be called from any thread, and does not wait for the connection.
+     *
+     * @param address the server's address
+     * @return the client, once it is connected
+     */
+    public CompletableFuture<AsyncModelProxy> connect(SocketAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            AsyncModelProxy proxy = new AsyncModelProxy(channel, this);
+            channel.connect(address);
+            pending.add(proxy);
+            selector.wakeup();
+            return proxy.connected();
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ce) {
+                    // the channel is gone either way
+                }
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * getDelivery returns the executor the clients' events are delivered on
+     *
+     * @return the executor
+     */
+    Executor getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * execute runs a task on this loop's thread. It may be called from any thread.
+     *
+     * @param task the task
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * wakeup makes the loop pick up interest changes made by another thread
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * run selects and dispatches events until the selector fails
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                selector.select();
+
+                AsyncModelProxy proxy;
+                while ((proxy = pending.poll()) != null)
+                    proxy.register(selector);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("AsyncClientLoop: task failed");
+                        e.printStackTrace();
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    proxy = (AsyncModelProxy) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable())
+                            proxy.handleConnect();
+                        if (key.isValid() && key.isReadable())
+                            proxy.handleRead();
+                        if (key.isValid() && key.isWritable())
+                            proxy.handleWrite();
+                    } catch (RuntimeException e) {
+                        proxy.failed(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("AsyncClientLoop: I/O error");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,834 @@
+// ******************************
+//
+// File:    AsyncModelProxy.java
+// Package: ---
+// Unit:    Class AsyncModelProxy
+//
+// ******************************
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class provides a model proxy for programs with no window: bots,
+ * load tools and services that play Six Queens. It speaks version 2 of
+ * the protocol, as ModelProxy does, over a non-blocking SocketChannel
+ * served by an AsyncClientLoop that many clients share, and nothing it
+ * does blocks the caller.
+ * <P>
+ * join and resume return futures completed by the server's answer: the
+ * player waiting for a partner, or the first turn. squareChosen returns
+ * a future completed when the server places the queen. A move that is
+ * not this player's to make, or that goes on a taken square, fails at
+ * once rather than being sent, since the server ignores it. If the game
+ * ends or the connection fails, the futures still waiting fail.
+ * Dependent actions that are not async run on the loop's thread, so they
+ * must not block.
+ * <P>
+ * Everything the server reports is published as GameEvents to one
+ * subscriber, on the loop's delivery executor, as much as the subscriber
+ * requests. While the subscriber is behind, the events wait here, up to
+ * a limit; past it the proxy stops reading from the socket until the
+ * subscriber catches up, so a slow subscriber slows its server down
+ * rather than piling up events. With no subscriber the events are
+ * dropped; subscribe before joining to see them all. The subscription
+ * completes when the game ends and fails when the connection does.
+ * <P>
+ * Unlike ModelProxy, the proxy does not reconnect by itself. A program
+ * that keeps the session token can resume the game on a new proxy.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class AsyncModelProxy implements Flow.Publisher<GameEvent> {
+    // events waiting for the subscriber; past the high mark reading stops until the low mark
+    private static final int HIGH_WATER = Flow.defaultBufferSize();
+    private static final int LOW_WATER = HIGH_WATER / 2;
+
+    private final SocketChannel channel;
+    private final AsyncClientLoop loop;
+    private final CompletableFuture<AsyncModelProxy> connected = new CompletableFuture<>();
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(256);
+    private ByteBuffer out = ByteBuffer.allocate(64);
+    private boolean negotiated;
+    private volatile boolean closed;
+    private volatile boolean paused;
+
+    // the game as the server has reported it
+    private final String[] players = new String[WireFormat.MAX_PLAYERS];
+    private BoardState board = new BoardState();
+    private boolean myTurn;
+    private volatile long sessionToken;
+
+    // the join or resume, and the move, waiting for the server's answer
+    private CompletableFuture<Integer> seated;
+    private CompletableFuture<Void> move;
+    private int moveSquare;
+    private boolean joined;
+
+    // the subscription; everything but wip is guarded by events
+    private final ArrayDeque<GameEvent> events = new ArrayDeque<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private Flow.Subscriber<? super GameEvent> subscriber;
+    private Subscription subscription;
+    private boolean started;
+    private long demand;
+    private Throwable refused;
+    private boolean ended;
+    private Throwable failure;
+
+    /**
+     * This constructor creates a new proxy. AsyncClientLoop.connect creates
+     * proxies.
+     *
+     * @param channel the channel, in non-blocking mode, connected or connecting
+     * @param loop    the loop that serves it
+     */
+    AsyncModelProxy(SocketChannel channel, AsyncClientLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    /**
+     * connected returns the future completed once the connection is made
+     *
+     * @return the future
+     */
+    CompletableFuture<AsyncModelProxy> connected() {
+        return connected;
+    }
+
+    /**
+     * join joins a game, to play whoever asks for the same board size next
+     *
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @return a future completed with WAITING, YOUR_TURN or THEIR_TURN
+     */
+    public CompletableFuture<Integer> join(String name, int size) {
+        return join(name, size, null);
+    }
+
+    /**
+     * join joins a game in a private room, to play whoever else joins the
+     * same room
+     *
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @param room the room's name, or null to be paired with anyone
+     * @return a future completed with WAITING, YOUR_TURN or THEIR_TURN, or
+     * failed if the name or room is longer than WireFormat.MAX_NAME_BYTES
+     */
+    public synchronized CompletableFuture<Integer> join(String name, int size, String room) {
+        if (joined)
+            return CompletableFuture.failedFuture(new IllegalStateException("AsyncModelProxy: already joined"));
+        if (!WireFormat.isValidName(name) || (room != null && !WireFormat.isValidName(room)))
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "AsyncModelProxy: name longer than " + WireFormat.MAX_NAME_BYTES + " bytes"));
+        joined = true;
+        seated = new CompletableFuture<>();
+        CompletableFuture<Integer> result = seated;
+        Metrics.CLIENT_OUT.count('G');
+        if (room != null)
+            Metrics.CLIENT_OUT.count('M');
+        Metrics.CLIENT_OUT.count('J');
+        ByteBuffer buf = reserve(9 + WireFormat.utfLength(name)
+                + (room == null ? 0 : 3 + WireFormat.utfLength(room)));
+        buf.put(WireFormat.HELLO).put((byte) WireFormat.LATEST_VERSION);
+        int start = WireFormat.beginFrame(buf, 'G');
+        buf.put((byte) size);
+        WireFormat.endFrame(buf, start);
+        if (room != null) {
+            start = WireFormat.beginFrame(buf, 'M');
+            WireFormat.putUTF(buf, room);
+            WireFormat.endFrame(buf, start);
+        }
+        start = WireFormat.beginFrame(buf, 'J');
+        WireFormat.putUTF(buf, name);
+        WireFormat.endFrame(buf, start);
+        flush();
+        return result;
+    }
+
+    /**
+     * resume asks to be put back in the game a session token was issued
+     * for, in place of joining
+     *
+     * @param token the session token
+     * @return a future completed with the status of the game's snapshot
+     */
+    public synchronized CompletableFuture<Integer> resume(long token) {
+        if (joined)
+            return CompletableFuture.failedFuture(new IllegalStateException("AsyncModelProxy: already joined"));
+        joined = true;
+        seated = new CompletableFuture<>();
+        CompletableFuture<Integer> result = seated;
+        Metrics.CLIENT_OUT.count('R');
+        ByteBuffer buf = reserve(13);
+        buf.put(WireFormat.HELLO).put((byte) WireFormat.LATEST_VERSION);
+        int start = WireFormat.beginFrame(buf, 'R');
+        buf.putLong(token);
+        WireFormat.endFrame(buf, start);
+        flush();
+        return result;
+    }
+
+    /**
+     * squareChosen places a queen
+     *
+     * @param row the row to place the queen in
+     * @param col the column to place the queen in
+     * @return a future completed when the server has placed the queen
+     */
+    public synchronized CompletableFuture<Void> squareChosen(int row, int col) {
+        int size = board.getSize();
+        if (closed)
+            return CompletableFuture.failedFuture(new IllegalStateException("AsyncModelProxy: closed"));
+        if (!myTurn)
+            return CompletableFuture.failedFuture(new IllegalStateException("AsyncModelProxy: not this player's turn"));
+        if (row < 0 || col < 0 || row >= size || col >= size || !board.isEmpty(row, col))
+            return CompletableFuture.failedFuture(new IllegalArgumentException("AsyncModelProxy: square " + row +
+                    ", " + col + " cannot take a queen"));
+        myTurn = false;
+        move = new CompletableFuture<>();
+        moveSquare = row * size + col;
+        CompletableFuture<Void> result = move;
+        Metrics.CLIENT_OUT.count('S');
+        int start = WireFormat.beginFrame(reserve(5), 'S');
+        WireFormat.putSquare(out, size, row, col);
+        WireFormat.endFrame(out, start);
+        flush();
+        return result;
+    }
+
+    /**
+     * newGame asks for a new game once one is won
+     */
+    public synchronized void newGame() {
+        sendOp('N');
+    }
+
+    /**
+     * quit leaves the game. The subscription completes when the server
+     * answers.
+     */
+    public synchronized void quit() {
+        sendOp('Q');
+    }
+
+    /**
+     * close closes the connection. The futures still waiting are
+     * cancelled, and the subscription completes.
+     */
+    public void close() {
+        shutdown(null);
+    }
+
+    /**
+     * getSessionToken returns the token the server gave this player
+     *
+     * @return the session token, or 0 if none has been given
+     */
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * sendOp sends a message that is just an opcode
+     *
+     * @param opCode the opcode
+     */
+    private void sendOp(char opCode) {
+        Metrics.CLIENT_OUT.count(opCode);
+        WireFormat.endFrame(out, WireFormat.beginFrame(reserve(3), opCode));
+        flush();
+    }
+
+    /**
+     * reserve makes room in the output buffer
+     *
+     * @param length the number of bytes needed
+     * @return the output buffer
+     */
+    private ByteBuffer reserve(int length) {
+        if (out.remaining() < length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        return out;
+    }
+
+    /**
+     * flush writes as much buffered output as the socket takes without
+     * blocking, and asks the loop to finish the rest. Until the connection
+     * is made it all waits.
+     */
+    private void flush() {
+        if (closed) {
+            out.clear();
+            return;
+        }
+        if (!channel.isConnected())
+            return;
+        try {
+            out.flip();
+            channel.write(out);
+            out.compact();
+        } catch (IOException e) {
+            // the caller may be holding a lock of its own; fail from the loop instead
+            out.clear();
+            loop.execute(() -> shutdown(e));
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * updateInterest asks the loop to say when the socket is readable,
+     * unless the subscriber is too far behind, and when it is writable, if
+     * there is output waiting
+     */
+    private synchronized void updateInterest() {
+        if (key == null || closed || !channel.isConnected())
+            return;
+        int ops = (paused ? 0 : SelectionKey.OP_READ) | (out.position() > 0 ? SelectionKey.OP_WRITE : 0);
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+            loop.wakeup();
+        }
+    }
+
+    /**
+     * register registers the channel with the loop's selector. It is
+     * called on the loop thread.
+     *
+     * @param selector the selector
+     */
+    void register(Selector selector) {
+        boolean now;
+        synchronized (this) {
+            if (closed)
+                return;
+            now = channel.isConnected();
+            try {
+                key = channel.register(selector, now ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                loop.execute(() -> shutdown(e));
+                return;
+            }
+        }
+        if (now)
+            finishConnect();
+    }
+
+    /**
+     * handleConnect finishes the connection once the socket is ready. It is
+     * called on the loop thread.
+     */
+    void handleConnect() {
+        try {
+            if (!channel.finishConnect())
+                return;
+        } catch (IOException e) {
+            shutdown(e);
+            return;
+        }
+        finishConnect();
+    }
+
+    /**
+     * finishConnect writes what was sent while connecting, and completes
+     * the connection's future
+     */
+    private void finishConnect() {
+        synchronized (this) {
+            key.interestOps(SelectionKey.OP_READ);
+            if (out.position() > 0)
+                flush();
+        }
+        connected.complete(this);
+    }
+
+    /**
+     * handleWrite writes buffered output once the socket is writable again.
+     * It is called on the loop thread.
+     */
+    synchronized void handleWrite() {
+        flush();
+    }
+
+    /**
+     * handleRead reads what the server sent and dispatches every complete
+     * message, until the subscriber is too far behind. It is called on the
+     * loop thread.
+     */
+    void handleRead() {
+        try {
+            int count = channel.read(in);
+            if (count < 0) {
+                shutdown(new EOFException("AsyncModelProxy: the server closed the connection"));
+                return;
+            }
+        } catch (IOException e) {
+            shutdown(e);
+            return;
+        }
+        decode();
+    }
+
+    /**
+     * decode dispatches the complete messages in the input buffer, until
+     * the subscriber is too far behind, and keeps the rest for later
+     */
+    private void decode() {
+        in.flip();
+        try {
+            while (!closed && !paused) {
+                // the server answers the hello before any frame
+                if (!negotiated) {
+                    if (in.remaining() < 2)
+                        break;
+                    int hello = in.get();
+                    int version = in.get() & 0xFF;
+                    if (hello != WireFormat.HELLO || version != WireFormat.LATEST_VERSION) {
+                        shutdown(new IOException("AsyncModelProxy: server answered protocol version " + version));
+                        return;
+                    }
+                    negotiated = true;
+                    continue;
+                }
+                int length = WireFormat.frameLength(in);
+                if (length < 0)
+                    break;
+                int end = in.position() + length;
+                int limit = in.limit();
+                in.position(in.position() + WireFormat.FRAME_HEADER_BYTES).limit(end);
+                try {
+                    if (in.hasRemaining())
+                        dispatchFrame(in);
+                } catch (RuntimeException e) {
+                    // a truncated frame, or a board size or square the board cannot take
+                    System.err.println("Bad Message");
+                }
+                in.limit(limit).position(end);
+                if (queued() >= HIGH_WATER)
+                    pause();
+            }
+        } finally {
+            in.compact();
+        }
+
+        // make room for a frame longer than the buffer
+        if (!in.hasRemaining() && in.capacity() < WireFormat.MAX_FRAME_BYTES) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(in.capacity() * 2, WireFormat.MAX_FRAME_BYTES));
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+    }
+
+    /**
+     * dispatchFrame decodes one message, keeps track of the game, answers
+     * the future the message answers, and publishes the event
+     *
+     * @param buf the frame's opcode and arguments
+     */
+    private void dispatchFrame(ByteBuffer buf) {
+        byte opCode = buf.get();
+        Metrics.CLIENT_IN.count(opCode);
+        GameEvent event = null;
+        CompletableFuture<Integer> seat = null;
+        int status = 0;
+        CompletableFuture<Void> moved = null;
+        boolean over = false;
+        synchronized (this) {
+            switch (opCode) {
+                // board size case
+                case 'G':
+                    int size = buf.get() & 0xFF;
+                    board = new BoardState(size);
+                    event = GameEvent.boardSize(size);
+                    break;
+
+                // new game case
+                case 'N':
+                    board.clear();
+                    myTurn = false;
+                    event = GameEvent.newGame();
+                    break;
+
+                // queen placed case
+                case 'Q':
+                    size = board.getSize();
+                    int square = WireFormat.getSquare(buf, size);
+                    board.setQueen(square / size, square % size);
+                    if (move != null && square == moveSquare) {
+                        moved = move;
+                        move = null;
+                    }
+                    event = GameEvent.setQueen(square / size, square % size);
+                    break;
+
+                // waiting for partner case
+                case 'P':
+                    seat = seated;
+                    seated = null;
+                    status = SixQueensModelListener.WAITING;
+                    event = GameEvent.waitingForPartner();
+                    break;
+
+                // your turn case
+                case 'Y':
+                    myTurn = true;
+                    seat = seated;
+                    seated = null;
+                    status = SixQueensModelListener.YOUR_TURN;
+                    event = GameEvent.yourTurn();
+                    break;
+
+                // player named case
+                case 'A':
+                    int index = buf.get() & 0xFF;
+                    players[index] = WireFormat.getUTF(buf);
+                    break;
+
+                // their turn case
+                case 'T':
+                    myTurn = false;
+                    seat = seated;
+                    seated = null;
+                    status = SixQueensModelListener.THEIR_TURN;
+                    event = GameEvent.theirTurn(players[buf.get() & 0xFF]);
+                    break;
+
+                // you win case
+                case 'W':
+                    myTurn = false;
+                    event = GameEvent.youWin();
+                    break;
+
+                // they win case
+                case 'L':
+                    myTurn = false;
+                    event = GameEvent.theyWin(players[buf.get() & 0xFF]);
+                    break;
+
+                // quit case
+                case 'B':
+                    myTurn = false;
+                    over = true;
+                    event = GameEvent.quit();
+                    break;
+
+                // session token case
+                case 'K':
+                    sessionToken = buf.getLong();
+                    event = GameEvent.sessionToken(sessionToken);
+                    break;
+
+                // snapshot case
+                case 'Z':
+                    event = snapshot(buf);
+                    myTurn = event.getStatus() == SixQueensModelListener.YOUR_TURN;
+                    seat = seated;
+                    seated = null;
+                    status = event.getStatus();
+                    break;
+
+                default:
+                    System.err.println("Bad Message");
+                    break;
+            }
+        }
+        if (seat != null)
+            seat.complete(status);
+        if (moved != null)
+            moved.complete(null);
+        if (event != null)
+            publish(event);
+        if (over)
+            shutdown(null);
+    }
+
+    /**
+     * snapshot decodes a snapshot, and takes its board as the game's
+     *
+     * @param buf the snapshot's arguments
+     * @return the event
+     * @throws IllegalArgumentException if the snapshot's size is not a board size
+     */
+    private GameEvent snapshot(ByteBuffer buf) {
+        int size = buf.get() & 0xFF;
+        int status = buf.get();
+        BoardState reported = new BoardState(size);
+        board = new BoardState(size);
+        int bits = 0;
+        for (int square = 0; square < size * size; square++) {
+            if (square % 8 == 0)
+                bits = buf.get();
+            if ((bits & (1 << (square % 8))) != 0) {
+                reported.setQueen(square / size, square % size);
+                board.setQueen(square / size, square % size);
+            }
+        }
+        String theirName = WireFormat.getUTF(buf);
+        return GameEvent.snapshot(reported, status, theirName.isEmpty() ? null : theirName);
+    }
+
+    /**
+     * failed contains an exception thrown while serving this connection:
+     * the connection is closed and the futures and subscription fail. It
+     * is called on the loop thread.
+     *
+     * @param e the exception
+     */
+    void failed(RuntimeException e) {
+        shutdown(e);
+    }
+
+    /**
+     * shutdown closes the connection, once, and ends what waits on it
+     *
+     * @param cause why, or null if the game ended or the proxy was closed
+     */
+    private void shutdown(Throwable cause) {
+        CompletableFuture<Integer> seat;
+        CompletableFuture<Void> moved;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            seat = seated;
+            moved = move;
+            seated = null;
+            move = null;
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the channel is gone either way
+            }
+        }
+        Throwable reason = cause != null ? cause : new CancellationException("AsyncModelProxy: the game is over");
+        connected.completeExceptionally(reason);
+        if (seat != null)
+            seat.completeExceptionally(reason);
+        if (moved != null)
+            moved.completeExceptionally(reason);
+        synchronized (events) {
+            ended = true;
+            if (failure == null)
+                failure = cause;
+        }
+        drainLater();
+    }
+
+    /**
+     * subscribe subscribes to the proxy's events. Only one subscriber is
+     * allowed; another is told so with onError. The subscriber is given
+     * its subscription on the delivery executor, like its events.
+     *
+     * @param s the subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super GameEvent> s) {
+        if (s == null)
+            throw new NullPointerException("AsyncModelProxy: null subscriber");
+        boolean taken;
+        synchronized (events) {
+            taken = subscriber != null || ended;
+            if (!taken) {
+                subscriber = s;
+                subscription = new Subscription(s);
+                started = false;
+            }
+        }
+        if (taken) {
+            s.onSubscribe(new Subscription(null));
+            s.onError(new IllegalStateException("AsyncModelProxy: already subscribed or closed"));
+            return;
+        }
+        drainLater();
+    }
+
+    /**
+     * publish queues an event for the subscriber, if there is one. It is
+     * called on the loop thread.
+     *
+     * @param event the event
+     */
+    private void publish(GameEvent event) {
+        synchronized (events) {
+            if (subscriber == null)
+                return;
+            events.add(event);
+        }
+        drainLater();
+    }
+
+    /**
+     * queued returns the number of events waiting for the subscriber
+     *
+     * @return the number of events
+     */
+    private int queued() {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+
+    /**
+     * pause stops reading from the socket until the subscriber catches up.
+     * It is called on the loop thread.
+     */
+    private void pause() {
+        paused = true;
+        updateInterest();
+    }
+
+    /**
+     * unpause decodes the messages already read, and reads again if the
+     * subscriber has caught up. It is called on the loop thread.
+     */
+    private void unpause() {
+        if (!paused || closed || queued() > LOW_WATER)
+            return;
+        paused = false;
+        decode();
+        updateInterest();
+    }
+
+    /**
+     * drainLater makes sure a drain runs on the delivery executor after
+     * this call, without ever running two at once
+     */
+    private void drainLater() {
+        if (wip.getAndIncrement() == 0)
+            loop.getDelivery().execute(this::drain);
+    }
+
+    /**
+     * drain gives a new subscriber its subscription, delivers as many
+     * queued events as the subscriber has asked for, then the end of the
+     * stream once the queue is empty, and lets the loop read again if the
+     * subscriber caught up. Every signal to the subscriber is sent here,
+     * one at a time.
+     */
+    private void drain() {
+        int missed = 1;
+        while (true) {
+            while (true) {
+                Flow.Subscriber<? super GameEvent> s;
+                Subscription first = null;
+                GameEvent event = null;
+                Throwable error = null;
+                boolean done = false;
+                synchronized (events) {
+                    s = subscriber;
+                    if (s == null)
+                        break;
+                    if (!started) {
+                        started = true;
+                        first = subscription;
+                    } else if (refused != null) {
+                        // a bad request ends the stream at once
+                        error = refused;
+                        done = true;
+                    } else if (!events.isEmpty() && demand > 0) {
+                        event = events.poll();
+                        demand--;
+                    } else if (events.isEmpty() && ended) {
+                        error = failure;
+                        done = true;
+                    } else {
+                        break;
+                    }
+                    if (done) {
+                        subscriber = null;
+                        subscription = null;
+                        events.clear();
+                    }
+                }
+                if (first != null) {
+                    s.onSubscribe(first);
+                } else if (!done) {
+                    s.onNext(event);
+                } else if (error != null) {
+                    s.onError(error);
+                } else {
+                    s.onComplete();
+                }
+            }
+            if (paused)
+                loop.execute(this::unpause);
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+
+    /**
+     * This class is the subscriber's subscription
+     */
+    private class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super GameEvent> s;
+
+        /**
+         * This constructor creates a subscription
+         *
+         * @param s the subscriber, or null for one that was turned away
+         */
+        Subscription(Flow.Subscriber<? super GameEvent> s) {
+            this.s = s;
+        }
+
+        /**
+         * request asks for more events. Asking for none or fewer is an
+         * error, which ends the subscription.
+         *
+         * @param n the number of events
+         */
+        @Override
+        public void request(long n) {
+            synchronized (events) {
+                if (s == null || subscriber != s)
+                    return;
+                if (n <= 0)
+                    refused = new IllegalArgumentException("AsyncModelProxy: request for " + n + " events");
+                else
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            drainLater();
+        }
+
+        /**
+         * cancel stops the events. The game goes on, and its futures still
+         * complete.
+         */
+        @Override
+        public void cancel() {
+            synchronized (events) {
+                if (s == null || subscriber != s)
+                    return;
+                subscriber = null;
+                subscription = null;
+                events.clear();
+            }
+            if (paused)
+                loop.execute(AsyncModelProxy.this::unpause);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// *********************************
+//
+// File:    BatchingBenchmark.java
+// Package: ---
+// Unit:    Class BatchingBenchmark
+//
+// *********************************
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+/**
+ * This class measures what batching each model update's messages saves.
+ * It starts the server inside this JVM, plays games with ServerBenchmark
+ * clients first with batching off, so every message is its own write, and
+ * then with it on, and prints the server's WireStats for each run: socket
+ * writes, estimated packets and bytes per move.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class BatchingBenchmark {
+    private static final int CONNECTIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !(args[0].equals("threads") || args[0].equals("nio"))) {
+            System.err.println("Usage: java BatchingBenchmark threads|nio <seconds>");
+            System.exit(1);
+        }
+        String mode = args[0];
+        long seconds = Long.parseLong(args[1]);
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "mode=" + mode, "loops=1"}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        for (boolean batching : new boolean[]{false, true}) {
+            ViewProxy.setBatching(batching);
+            NioViewProxy.setBatching(batching);
+
+            // each run gets its own games; the previous run's clients just sit idle
+            ServerBenchmark clients = new ServerBenchmark();
+            clients.connect(address, CONNECTIONS);
+            Thread.sleep(200);
+            WireStats.reset();
+            clients.play(seconds);
+            System.out.println("batching " + (batching ? "on:  " : "off: ") + WireStats.report());
+        }
+        System.exit(0);
+    }
+}
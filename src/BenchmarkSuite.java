@@ -0,0 +1,1460 @@
+// ******************************
+//
+// File:    BenchmarkSuite.java
+// Package: ---
+// Unit:    Class BenchmarkSuite
+//
+// ******************************
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * This class is a microbenchmark harness for the hot paths of the game,
+ * run the way JMH runs benchmarks, so versions can be compared:
+ * <UL>
+ *   <LI>board.setQueen and board.checkWin: BoardState over random legal
+ *       games, at each board size
+ *   <LI>model.squareChosen: SixQueensModel with stub views, one thread
+ *       to a game, and model.squareChosen.contended, with many threads
+ *       playing the same game
+ *   <LI>protocol.clientEncode and protocol.clientDecode: a move through
+ *       ModelProxy, over in-memory streams, and protocol.serverEncode and
+ *       protocol.serverDecode: the same through ViewProxy's encoder and
+ *       reader
+ *   <LI>view.hideButtons: SixQueensView.hideButtons on a SixQueensJPanel
+ *       with no window
+ * </UL>
+ * Each benchmark runs in its own JVM (a fork), so the code the JIT
+ * compiled for one never shapes another, through warmup iterations and
+ * then measured iterations of a fixed time each. Each of its threads
+ * runs operations in batches until the iteration's time is up, and the
+ * score is the mean time of an operation. Like JMH's GC profiler, each
+ * iteration also measures the bytes allocated by every thread, per
+ * operation and per second, and the garbage collections.
+ * <P>
+ * The results are printed as a table, and with json=&lt;file&gt; are written
+ * in the JSON format JMH writes, so tools that compare JMH results can
+ * compare these across versions. The suite sets java.awt.headless, so it
+ * needs no display.
+ * <P>
+ * The server encode does not hand its bytes to ViewProxy's writer
+ * thread: a benchmark thread would outrun any writer and fill the
+ * OutboundQueue to its hard limit. The decodes run on the proxies' own
+ * reader threads, fed a batch of messages at a time, and wait for each
+ * batch to be read.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class BenchmarkSuite {
+    private static final int[] DEFAULT_SIZES = {6, 16};
+    private static final int DEFAULT_WARMUP = 3;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final long DEFAULT_MILLIS = 1000;
+    private static final int DEFAULT_FORKS = 1;
+    private static final int DEFAULT_CONTENDED_THREADS = 8;
+
+    // games to replay, scripts for each model game, and board positions to check
+    private static final int GAMES = 1000;
+    private static final int SCRIPTS = 64;
+    private static final int POSITIONS = 4096;
+
+    // the line a fork reports each measured iteration on
+    private static final String ITERATION = "iteration ";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // keeps benchmark results from being optimized away
+    private static long sink;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Options options = Options.parse(args);
+        if (options == null) {
+            System.err.println("Usage: java BenchmarkSuite [<regex>] [sizes=<n>,...] [warmup=<iterations>] " +
+                    "[iterations=<n>] [time=<millis>] [forks=<n>] [threads=<n>] [json=<file>] | list");
+            System.exit(1);
+        }
+        if (THREADS.isThreadAllocatedMemorySupported())
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        List<Case> cases = new ArrayList<>();
+        for (Case c : cases(options.sizes, options.threads)) {
+            if (options.filter.matcher(c.name).find())
+                cases.add(c);
+        }
+        if (options.list) {
+            for (Case c : cases)
+                System.out.println(c.label());
+            return;
+        }
+
+        // a fork runs one benchmark and reports to its parent
+        if (options.run != null) {
+            int status = 1;
+            for (Case c : cases) {
+                if (c.name.equals(options.run) && c.size == options.runSize) {
+                    status = measure(c, options, true) == null ? 1 : 0;
+                    break;
+                }
+            }
+            System.out.flush();
+            System.exit(status);
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Case c : cases) {
+            System.out.printf("# Benchmark: %s, %d thread%s%n", c.label(), c.threads, c.threads == 1 ? "" : "s");
+            Result result = new Result(c);
+            if (options.forks == 0) {
+                List<Iteration> iterations = measure(c, options, false);
+                if (iterations != null)
+                    result.forks.add(iterations);
+            } else {
+                for (int fork = 1; fork <= options.forks; fork++) {
+                    System.out.printf("# Fork: %d of %d%n", fork, options.forks);
+                    List<Iteration> iterations = fork(c, options);
+                    if (iterations != null)
+                        result.forks.add(iterations);
+                }
+            }
+            if (!result.forks.isEmpty())
+                results.add(result);
+            System.out.println();
+        }
+
+        print(results);
+        if (options.json != null) {
+            try {
+                Files.write(options.json, json(results, options).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("BenchmarkSuite: I/O error");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        // the protocol benchmarks' reader threads never finish
+        System.exit(0);
+    }
+
+    /**
+     * cases returns every benchmark
+     *
+     * @param sizes     the board sizes to run the board, model and view
+     *                  benchmarks at
+     * @param contended the number of threads in the contended benchmark
+     * @return the benchmarks
+     */
+    private static List<Case> cases(int[] sizes, int contended) {
+        List<Case> cases = new ArrayList<>();
+        for (int size : sizes)
+            cases.add(new Case("board.setQueen", size, 1, 1024, BenchmarkSuite::boardSetQueen));
+        for (int size : sizes)
+            cases.add(new Case("board.checkWin", size, 1, 1024, BenchmarkSuite::boardCheckWin));
+        for (int size : sizes)
+            cases.add(new Case("model.squareChosen", size, 1, 256, BenchmarkSuite::modelUncontended));
+        for (int size : sizes)
+            cases.add(new Case("model.squareChosen.contended", size, contended, 256,
+                    BenchmarkSuite::modelContended));
+        cases.add(new Case("protocol.clientEncode", 0, 1, 1024, BenchmarkSuite::clientEncode));
+        cases.add(new Case("protocol.clientDecode", 0, 1, 16384, BenchmarkSuite::clientDecode));
+        cases.add(new Case("protocol.serverEncode", 0, 1, 1024, BenchmarkSuite::serverEncode));
+        cases.add(new Case("protocol.serverDecode", 0, 1, 16384, BenchmarkSuite::serverDecode));
+        for (int size : sizes)
+            cases.add(new Case("view.hideButtons", size, 1, 256, BenchmarkSuite::viewHideButtons));
+        return cases;
+    }
+
+    /**
+     * measure runs a benchmark's warmup and measured iterations in this JVM
+     *
+     * @param c      the benchmark
+     * @param options the run's options
+     * @param report true to report each measured iteration to a parent
+     * @return the measured iterations, or null if the benchmark failed
+     */
+    private static List<Iteration> measure(Case c, Options options, boolean report) {
+        List<Iteration> measured = new ArrayList<>();
+        try {
+            Trial trial = new Trial(c.setup.create(c.size == 0 ? BoardState.DEFAULT_SIZE : c.size, c.threads),
+                    c.batch, options.warmup + options.iterations);
+            for (int i = 0; i < options.warmup + options.iterations; i++) {
+                Iteration iteration = trial.iterate(options.millis);
+                if (i < options.warmup) {
+                    System.out.printf("# Warmup Iteration %3d: %s%n", i + 1, iteration);
+                } else {
+                    System.out.printf("Iteration %3d: %s%n", i - options.warmup + 1, iteration);
+                    if (report)
+                        System.out.println(ITERATION + iteration.encode());
+                    measured.add(iteration);
+                }
+            }
+            return measured;
+        } catch (RuntimeException e) {
+            System.err.println("BenchmarkSuite: " + c.label() + " failed");
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * fork runs a benchmark in a new JVM, with this JVM's options, and
+     * collects its measured iterations
+     *
+     * @param c       the benchmark
+     * @param options the run's options
+     * @return the measured iterations, or null if the fork failed
+     */
+    private static List<Iteration> fork(Case c, Options options) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-Djava.awt.headless=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkSuite.class.getName());
+        command.add("run=" + c.name);
+        command.add("size=" + c.size);
+        command.add("sizes=" + (c.size == 0 ? BoardState.DEFAULT_SIZE : c.size));
+        command.add("threads=" + options.threads);
+        command.add("warmup=" + options.warmup);
+        command.add("iterations=" + options.iterations);
+        command.add("time=" + options.millis);
+
+        List<Iteration> measured = new ArrayList<>();
+        try {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(ITERATION))
+                        measured.add(Iteration.decode(line.substring(ITERATION.length())));
+                    else
+                        System.out.println(line);
+                }
+            }
+            if (process.waitFor() != 0) {
+                System.err.println("BenchmarkSuite: the fork for " + c.label() + " failed");
+                return null;
+            }
+            return measured;
+        } catch (IOException e) {
+            System.err.println("BenchmarkSuite: could not fork for " + c.label());
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * print prints the results as a table
+     *
+     * @param results the results
+     */
+    private static void print(List<Result> results) {
+        System.out.printf("%-30s %6s %7s %4s %12s   %10s %6s %12s %12s %6s%n", "Benchmark", "(size)", "Threads",
+                "Cnt", "Score", "Error", "Units", "Alloc B/op", "Alloc MB/s", "GCs");
+        for (Result result : results) {
+            double[] score = result.values(i -> i.score);
+            System.out.printf("%-30s %6s %7d %4d %12.3f +- %10.3f %6s %12.1f %12.1f %6d%n", result.c.name,
+                    result.c.size == 0 ? "" : String.valueOf(result.c.size), result.c.threads, score.length,
+                    mean(score), error(score), "ns/op", mean(result.values(i -> i.allocNorm)),
+                    mean(result.values(i -> i.allocRate)), Math.round(sum(result.values(i -> i.gcCount))));
+        }
+    }
+
+    /**
+     * json returns the results in the JSON format JMH writes
+     *
+     * @param results the results
+     * @param options the run's options
+     * @return the JSON text
+     */
+    private static String json(List<Result> results, Options options) {
+        StringBuilder out = new StringBuilder("[\n");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            out.append("    {\n");
+            field(out, "benchmark", quote(BenchmarkSuite.class.getName() + "." + result.c.name));
+            field(out, "mode", quote("avgt"));
+            field(out, "threads", result.c.threads);
+            field(out, "forks", options.forks);
+            field(out, "jvm", quote(Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+            List<String> args = new ArrayList<>();
+            for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+                args.add(quote(arg));
+            field(out, "jvmArgs", args.toString());
+            field(out, "jdkVersion", quote(System.getProperty("java.version")));
+            field(out, "vmName", quote(System.getProperty("java.vm.name")));
+            field(out, "vmVersion", quote(System.getProperty("java.vm.version")));
+            field(out, "warmupIterations", options.warmup);
+            field(out, "warmupTime", quote(options.millis + " ms"));
+            field(out, "measurementIterations", options.iterations);
+            field(out, "measurementTime", quote(options.millis + " ms"));
+            if (result.c.size != 0)
+                field(out, "params", "{ \"size\" : " + quote(String.valueOf(result.c.size)) + " }");
+            field(out, "primaryMetric", metric(result, "ns/op", i -> i.score));
+            out.append("        \"secondaryMetrics\" : {\n");
+            out.append("            \"\u00b7gc.alloc.rate\" : ").append(metric(result, "MB/sec", i -> i.allocRate))
+                    .append(",\n");
+            out.append("            \"\u00b7gc.alloc.rate.norm\" : ").append(metric(result, "B/op", i -> i.allocNorm))
+                    .append(",\n");
+            out.append("            \"\u00b7gc.count\" : ").append(metric(result, "counts", i -> i.gcCount))
+                    .append(",\n");
+            out.append("            \"\u00b7gc.time\" : ").append(metric(result, "ms", i -> i.gcMillis))
+                    .append("\n");
+            out.append("        }\n");
+            out.append(r < results.size() - 1 ? "    },\n" : "    }\n");
+        }
+        return out.append("]\n").toString();
+    }
+
+    /**
+     * field appends one field of a result to the JSON text
+     *
+     * @param out   the JSON text
+     * @param name  the field's name
+     * @param value the field's value, as JSON
+     */
+    private static void field(StringBuilder out, String name, Object value) {
+        out.append("        ").append(quote(name)).append(" : ").append(value).append(",\n");
+    }
+
+    /**
+     * metric returns one metric of a result as JSON: its mean, the error
+     * and confidence interval, and every fork's iterations
+     *
+     * @param result the result
+     * @param unit   the metric's unit
+     * @param metric the metric, from an iteration
+     * @return the JSON text
+     */
+    private static String metric(Result result, String unit, ToDoubleFunction<Iteration> metric) {
+        double[] values = result.values(metric);
+        double mean = mean(values);
+        double error = error(values);
+        StringBuilder raw = new StringBuilder("[");
+        for (int f = 0; f < result.forks.size(); f++) {
+            raw.append(f == 0 ? "[" : ", [");
+            List<Iteration> iterations = result.forks.get(f);
+            for (int i = 0; i < iterations.size(); i++)
+                raw.append(i == 0 ? "" : ", ").append(number(metric.applyAsDouble(iterations.get(i))));
+            raw.append("]");
+        }
+        raw.append("]");
+        return "{ \"score\" : " + number(mean) + ", \"scoreError\" : " + number(error) +
+                ", \"scoreConfidence\" : [" + number(mean - error) + ", " + number(mean + error) + "]" +
+                ", \"scoreUnit\" : " + quote(unit) + ", \"rawData\" : " + raw + " }";
+    }
+
+    /**
+     * number returns a number as JSON; JMH writes what is not a number
+     * as a string
+     *
+     * @param value the number
+     * @return the JSON text
+     */
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "\"NaN\"" : String.valueOf(value);
+    }
+
+    /**
+     * quote returns a string as JSON
+     *
+     * @param s the string
+     * @return the quoted, escaped string
+     */
+    private static String quote(String s) {
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\')
+                out.append('\\').append(ch);
+            else if (ch < ' ')
+                out.append(String.format("\\u%04x", (int) ch));
+            else
+                out.append(ch);
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * mean returns the mean of some values
+     *
+     * @param values the values
+     * @return the mean, or NaN if there are none
+     */
+    private static double mean(double[] values) {
+        return values.length == 0 ? Double.NaN : sum(values) / values.length;
+    }
+
+    /**
+     * sum returns the sum of some values
+     *
+     * @param values the values
+     * @return the sum
+     */
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values)
+            sum += value;
+        return sum;
+    }
+
+    /**
+     * error returns the half-width of the 99.9% confidence interval of
+     * the mean of some values, as JMH reports it
+     *
+     * @param values the values
+     * @return the error, or NaN if there are fewer than two values
+     */
+    private static double error(double[] values) {
+        int n = values.length;
+        if (n < 2)
+            return Double.NaN;
+        double mean = mean(values);
+        double squares = 0;
+        for (double value : values)
+            squares += (value - mean) * (value - mean);
+        return studentT(n - 1) * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+    }
+
+    /**
+     * studentT returns the 99.95th percentile of Student's t distribution,
+     * which bounds a two-sided 99.9% confidence interval
+     *
+     * @param df the degrees of freedom
+     * @return the percentile; past 30 degrees, the one for 30, which is a
+     *         little wider than it need be
+     */
+    private static double studentT(int df) {
+        final double[] T = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+                3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+        return T[Math.min(df, T.length) - 1];
+    }
+
+    /**
+     * boardSetQueen sets up the board.setQueen benchmark: one move of a
+     * random legal game per operation, the board cleared between games
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] boardSetQueen(int size, int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            BoardState board = new BoardState(size);
+            workers[t] = new Replay(BoardBenchmark.randomGames(size, GAMES, new Random(size + 31 * t))) {
+                void reset() {
+                    board.clear();
+                }
+
+                void place(int row, int col) {
+                    board.setQueen(row, col);
+                }
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * boardCheckWin sets up the board.checkWin benchmark: one checkWin per
+     * operation, over positions from every ply of random legal games
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] boardCheckWin(int size, int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(size + 31 * t);
+            List<BoardState> positions = new ArrayList<>();
+            while (positions.size() < POSITIONS) {
+                for (int[] game : BoardBenchmark.randomGames(size, 64, random)) {
+                    for (int ply = 1; ply <= game.length / 2; ply++) {
+                        BoardState board = new BoardState(size);
+                        for (int move = 0; move < ply; move++)
+                            board.setQueen(game[2 * move], game[2 * move + 1]);
+                        positions.add(board);
+                    }
+                }
+            }
+            workers[t] = new CheckWin(positions.subList(0, POSITIONS).toArray(new BoardState[0]));
+        }
+        return workers;
+    }
+
+    /**
+     * modelUncontended sets up the model.squareChosen benchmark: each
+     * thread plays its own game
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] modelUncontended(int size, int threads) {
+        GameRegistry registry = new GameRegistry();
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            ScriptedGame game = new ScriptedGame(registry, size, new Random(size + 31 * t));
+            workers[t] = ops -> {
+                for (int i = 0; i < ops; i++)
+                    game.move();
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * modelContended sets up the model.squareChosen.contended benchmark:
+     * every thread plays the same game, so they contend for its lock
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] modelContended(int size, int threads) {
+        ScriptedGame game = new ScriptedGame(new GameRegistry(), size, new Random(size));
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = ops -> {
+                for (int i = 0; i < ops; i++)
+                    game.move();
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * clientEncode sets up the protocol.clientEncode benchmark: a
+     * squareChosen through ModelProxy, written to a stream that discards it
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] clientEncode(int size, int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            ModelProxy proxy = new ModelProxy(new MemorySocket(InputStream.nullInputStream(),
+                    OutputStream.nullOutputStream()));
+            workers[t] = new Worker() {
+                private int square;
+
+                public void run(int ops) {
+                    for (int i = 0; i < ops; i++) {
+                        proxy.squareChosen(null, square / size, square % size);
+                        square = (square + 7) % (size * size);
+                    }
+                }
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * clientDecode sets up the protocol.clientDecode benchmark: ModelProxy
+     * reading a move's messages, a queen placed and whose turn it is
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] clientDecode(int size, int threads) {
+        MessageEncoder encoder = new MessageEncoder();
+        encoder.hello(WireFormat.LATEST_VERSION);
+        encoder.boardSize(size);
+        encoder.newGame();
+        encoder.theirTurn("player");
+        byte[] prefix = bytes(encoder.buffer());
+        encoder.setQueen(size / 2, size / 3);
+        encoder.theirTurn("player");
+        byte[] move = bytes(encoder.buffer());
+
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            FeedStream in = new FeedStream();
+            ModelProxy proxy = new ModelProxy(new MemorySocket(in, OutputStream.nullOutputStream()));
+            proxy.setListener(new NullView());
+            in.feed(prefix, 1);
+            workers[t] = ops -> in.feed(move, ops);
+        }
+        return workers;
+    }
+
+    /**
+     * serverEncode sets up the protocol.serverEncode benchmark: the
+     * messages of a move to one player, staged as ViewProxy stages them
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] serverEncode(int size, int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            MessageEncoder encoder = new MessageEncoder(WireFormat.LATEST_VERSION, size);
+            workers[t] = new Worker() {
+                private int square;
+
+                public void run(int ops) {
+                    for (int i = 0; i < ops; i++) {
+                        encoder.setQueen(square / size, square % size);
+                        encoder.theirTurn("player");
+                        encoder.buffer().clear();
+                        square = (square + 7) % (size * size);
+                    }
+                }
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * serverDecode sets up the protocol.serverDecode benchmark: ViewProxy
+     * reading a squareChosen
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] serverDecode(int size, int threads) {
+        byte[] prefix = {WireFormat.HELLO, (byte) WireFormat.LATEST_VERSION};
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        int start = WireFormat.beginFrame(buf, 'S');
+        WireFormat.putSquare(buf, size, size / 2, size / 3);
+        WireFormat.endFrame(buf, start);
+        byte[] move = bytes(buf);
+
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            FeedStream in = new FeedStream();
+            ViewProxy proxy = new ViewProxy(new MemorySocket(in, OutputStream.nullOutputStream()));
+            proxy.setListener(new NullModel());
+            in.feed(prefix, 1);
+            workers[t] = ops -> in.feed(move, ops);
+        }
+        return workers;
+    }
+
+    /**
+     * viewHideButtons sets up the view.hideButtons benchmark: one move of
+     * a random legal game per operation on a board with no window, its
+     * queen set and the squares it attacks hidden
+     *
+     * @param size    the board size
+     * @param threads the number of threads
+     * @return a worker for each thread
+     */
+    private static Worker[] viewHideButtons(int size, int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            SixQueensJPanel panel = new SixQueensJPanel();
+            panel.setBoardSize(size);
+            workers[t] = new Replay(BoardBenchmark.randomGames(size, GAMES, new Random(size + 31 * t))) {
+                void reset() {
+                    panel.clear();
+                }
+
+                void place(int row, int col) {
+                    panel.setQueen(row, col, true);
+                    SixQueensView.hideButtons(panel, row, col);
+                }
+            };
+        }
+        return workers;
+    }
+
+    /**
+     * bytes returns what has been put in a buffer, and clears it
+     *
+     * @param buf the buffer
+     * @return the bytes
+     */
+    private static byte[] bytes(ByteBuffer buf) {
+        byte[] bytes = Arrays.copyOf(buf.array(), buf.position());
+        buf.clear();
+        return bytes;
+    }
+
+    /**
+     * This interface is one benchmark thread's work
+     */
+    private interface Worker {
+        /**
+         * run runs a batch of operations
+         *
+         * @param ops the number of operations
+         */
+        void run(int ops);
+    }
+
+    /**
+     * This interface sets up a benchmark's work
+     */
+    private interface Setup {
+        /**
+         * create creates a worker for each thread
+         *
+         * @param size    the board size
+         * @param threads the number of threads
+         * @return the workers
+         */
+        Worker[] create(int size, int threads);
+    }
+
+    /**
+     * This class describes one benchmark
+     */
+    private static class Case {
+        private final String name;
+        private final int size;
+        private final int threads;
+        private final int batch;
+        private final Setup setup;
+
+        /**
+         * This constructor creates a benchmark
+         *
+         * @param name    the benchmark's name
+         * @param size    the board size it runs at, or 0 if it has none
+         * @param threads the number of threads
+         * @param batch   the operations each thread runs between checks
+         *                of the time
+         * @param setup   sets up its work
+         */
+        Case(String name, int size, int threads, int batch, Setup setup) {
+            this.name = name;
+            this.size = size;
+            this.threads = threads;
+            this.batch = batch;
+            this.setup = setup;
+        }
+
+        /**
+         * label returns the benchmark's name and board size
+         *
+         * @return the label
+         */
+        String label() {
+            return size == 0 ? name : name + " (size=" + size + ")";
+        }
+    }
+
+    /**
+     * This class holds the options the suite was run with
+     */
+    private static class Options {
+        private Pattern filter = Pattern.compile("");
+        private int[] sizes = DEFAULT_SIZES;
+        private int warmup = DEFAULT_WARMUP;
+        private int iterations = DEFAULT_ITERATIONS;
+        private long millis = DEFAULT_MILLIS;
+        private int forks = DEFAULT_FORKS;
+        private int threads = DEFAULT_CONTENDED_THREADS;
+        private Path json;
+        private boolean list;
+
+        // set only in a fork: the benchmark to run
+        private String run;
+        private int runSize;
+
+        /**
+         * parse reads the options from the command line
+         *
+         * @param args the command line arguments
+         * @return the options, or null if they are not valid
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            try {
+                for (String arg : args) {
+                    int equals = arg.indexOf('=');
+                    String value = arg.substring(equals + 1);
+                    if (arg.equals("list")) {
+                        options.list = true;
+                    } else if (equals < 0) {
+                        options.filter = Pattern.compile(arg);
+                    } else {
+                        switch (arg.substring(0, equals)) {
+                            // board sizes case
+                            case "sizes":
+                                String[] sizes = value.split(",");
+                                options.sizes = new int[sizes.length];
+                                for (int i = 0; i < sizes.length; i++) {
+                                    options.sizes[i] = Integer.parseInt(sizes[i]);
+                                    if (!BoardState.isValidSize(options.sizes[i]))
+                                        return null;
+                                }
+                                break;
+                            // warmup iterations case
+                            case "warmup":
+                                options.warmup = Integer.parseInt(value);
+                                break;
+                            // measured iterations case
+                            case "iterations":
+                                options.iterations = Integer.parseInt(value);
+                                break;
+                            // iteration time case
+                            case "time":
+                                options.millis = Long.parseLong(value);
+                                break;
+                            // forks case
+                            case "forks":
+                                options.forks = Integer.parseInt(value);
+                                break;
+                            // contended threads case
+                            case "threads":
+                                options.threads = Integer.parseInt(value);
+                                break;
+                            // JSON results case
+                            case "json":
+                                options.json = Paths.get(value);
+                                break;
+                            // fork's benchmark case
+                            case "run":
+                                options.run = value;
+                                break;
+                            // fork's board size case
+                            case "size":
+                                options.runSize = Integer.parseInt(value);
+                                break;
+                            default:
+                                return null;
+                        }
+                    }
+                }
+            } catch (NumberFormatException | PatternSyntaxException e) {
+                return null;
+            }
+            if (options.warmup < 0 || options.iterations < 1 || options.millis < 1 || options.forks < 0 ||
+                    options.threads < 1)
+                return null;
+            return options;
+        }
+    }
+
+    /**
+     * This class runs a benchmark's threads, one iteration at a time. The
+     * threads wait at a barrier between iterations, so they start and
+     * stop together, and nothing they do between iterations is measured.
+     */
+    private static class Trial {
+        private final Worker[] workers;
+        private final int batch;
+        private final CyclicBarrier barrier;
+        private final long[] ops;
+        private final long[] nanos;
+        private volatile boolean stop;
+        private volatile Throwable failure;
+
+        /**
+         * This constructor starts a benchmark's threads
+         *
+         * @param workers    the threads' work
+         * @param batch      the operations each thread runs between checks
+         *                   of the time
+         * @param iterations the number of iterations to run
+         */
+        Trial(Worker[] workers, int batch, int iterations) {
+            this.workers = workers;
+            this.batch = batch;
+            barrier = new CyclicBarrier(workers.length + 1);
+            ops = new long[workers.length];
+            nanos = new long[workers.length];
+            for (int t = 0; t < workers.length; t++) {
+                int thread = t;
+                Thread worker = new Thread(() -> work(thread, iterations), "BenchmarkSuite-" + t);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        /**
+         * work runs one thread's iterations. A thread that fails stops
+         * working but keeps meeting the others at the barrier.
+         *
+         * @param thread     the thread
+         * @param iterations the number of iterations
+         */
+        private void work(int thread, int iterations) {
+            Worker worker = workers[thread];
+            try {
+                for (int i = 0; i < iterations; i++) {
+                    barrier.await();
+                    long count = 0;
+                    long start = System.nanoTime();
+                    try {
+                        do {
+                            worker.run(batch);
+                            count += batch;
+                        } while (!stop && failure == null);
+                    } catch (RuntimeException | Error e) {
+                        failure = e;
+                    }
+                    nanos[thread] = System.nanoTime() - start;
+                    ops[thread] = count;
+                    barrier.await();
+                }
+            } catch (InterruptedException | BrokenBarrierException e) {
+                // the suite is finishing
+            }
+        }
+
+        /**
+         * iterate runs one iteration
+         *
+         * @param millis how long the iteration runs
+         * @return what it measured
+         * @throws InterruptedException if this thread is interrupted
+         */
+        Iteration iterate(long millis) throws InterruptedException {
+            stop = false;
+            Map<Long, Long> allocated = allocations();
+            long collections = collections();
+            long collectionMillis = collectionMillis();
+            long start = System.nanoTime();
+            await();
+            Thread.sleep(millis);
+            stop = true;
+            await();
+            long elapsed = System.nanoTime() - start;
+            if (failure != null)
+                throw new IllegalStateException("a benchmark thread failed", failure);
+
+            long bytes = 0;
+            for (Map.Entry<Long, Long> entry : allocations().entrySet())
+                bytes += entry.getValue() - allocated.getOrDefault(entry.getKey(), 0L);
+            double score = 0;
+            long total = 0;
+            for (int t = 0; t < workers.length; t++) {
+                score += (double) nanos[t] / ops[t];
+                total += ops[t];
+            }
+            return new Iteration(score / workers.length, bytes * 1e9 / elapsed / (1024 * 1024),
+                    (double) bytes / total, collections() - collections, collectionMillis() - collectionMillis);
+        }
+
+        /**
+         * await meets the benchmark's threads at the barrier
+         *
+         * @throws InterruptedException if this thread is interrupted
+         */
+        private void await() throws InterruptedException {
+            try {
+                barrier.await();
+            } catch (BrokenBarrierException e) {
+                throw new IllegalStateException("a benchmark thread stopped", e);
+            }
+        }
+
+        /**
+         * allocations returns the bytes every thread but this one has
+         * allocated, by thread ID
+         *
+         * @return the bytes allocated, by thread
+         */
+        private static Map<Long, Long> allocations() {
+            long self = Thread.currentThread().getId();
+            long[] ids = THREADS.getAllThreadIds();
+            long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+            Map<Long, Long> allocations = new HashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != self && bytes[i] >= 0)
+                    allocations.put(ids[i], bytes[i]);
+            }
+            return allocations;
+        }
+
+        /**
+         * collections returns the number of garbage collections so far
+         *
+         * @return the count
+         */
+        private static long collections() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                count += Math.max(0, gc.getCollectionCount());
+            return count;
+        }
+
+        /**
+         * collectionMillis returns the time spent in garbage collections
+         * so far
+         *
+         * @return the time in milliseconds
+         */
+        private static long collectionMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+                millis += Math.max(0, gc.getCollectionTime());
+            return millis;
+        }
+    }
+
+    /**
+     * This class holds what one iteration measured
+     */
+    private static class Iteration {
+        private final double score;
+        private final double allocRate;
+        private final double allocNorm;
+        private final double gcCount;
+        private final double gcMillis;
+
+        /**
+         * This constructor creates an iteration's measurements
+         *
+         * @param score     the mean time of an operation, in nanoseconds
+         * @param allocRate the bytes allocated, in MB per second
+         * @param allocNorm the bytes allocated per operation
+         * @param gcCount   the number of garbage collections
+         * @param gcMillis  the time spent in garbage collections
+         */
+        Iteration(double score, double allocRate, double allocNorm, double gcCount, double gcMillis) {
+            this.score = score;
+            this.allocRate = allocRate;
+            this.allocNorm = allocNorm;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * encode returns the measurements as a fork reports them
+         *
+         * @return the measurements, separated by spaces
+         */
+        String encode() {
+            return score + " " + allocRate + " " + allocNorm + " " + gcCount + " " + gcMillis;
+        }
+
+        /**
+         * decode reads the measurements a fork reported
+         *
+         * @param s the measurements, separated by spaces
+         * @return the iteration
+         */
+        static Iteration decode(String s) {
+            String[] parts = s.split(" ");
+            return new Iteration(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f ns/op, %.1f B/op, %.1f MB/sec, %d GCs", score, allocNorm, allocRate,
+                    Math.round(gcCount));
+        }
+    }
+
+    /**
+     * This class holds a benchmark's measured iterations, by fork
+     */
+    private static class Result {
+        private final Case c;
+        private final List<List<Iteration>> forks = new ArrayList<>();
+
+        /**
+         * This constructor creates an empty result
+         *
+         * @param c the benchmark
+         */
+        Result(Case c) {
+            this.c = c;
+        }
+
+        /**
+         * values returns one measurement from every iteration of every fork
+         *
+         * @param metric the measurement
+         * @return the values
+         */
+        double[] values(ToDoubleFunction<Iteration> metric) {
+            List<Double> values = new ArrayList<>();
+            for (List<Iteration> fork : forks) {
+                for (Iteration iteration : fork)
+                    values.add(metric.applyAsDouble(iteration));
+            }
+            double[] array = new double[values.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = values.get(i);
+            return array;
+        }
+    }
+
+    /**
+     * This class replays random legal games one move per operation,
+     * resetting between games
+     */
+    private abstract static class Replay implements Worker {
+        private final int[][] games;
+        private int game;
+        private int[] moves = new int[0];
+        private int move;
+
+        /**
+         * This constructor creates a replay
+         *
+         * @param games the games, as row/col pairs
+         */
+        Replay(int[][] games) {
+            this.games = games;
+        }
+
+        public void run(int ops) {
+            for (int i = 0; i < ops; i++) {
+                if (move == moves.length) {
+                    moves = games[game];
+                    game = (game + 1) % games.length;
+                    move = 0;
+                    reset();
+                }
+                place(moves[move], moves[move + 1]);
+                move += 2;
+            }
+        }
+
+        /**
+         * reset starts a new game
+         */
+        abstract void reset();
+
+        /**
+         * place places a queen
+         *
+         * @param row the row
+         * @param col the column
+         */
+        abstract void place(int row, int col);
+    }
+
+    /**
+     * This class checks board positions for a win, one per operation
+     */
+    private static class CheckWin implements Worker {
+        private final BoardState[] positions;
+        private int next;
+
+        /**
+         * This constructor creates a worker over some positions
+         *
+         * @param positions the positions, a power of two of them
+         */
+        CheckWin(BoardState[] positions) {
+            this.positions = positions;
+        }
+
+        public void run(int ops) {
+            int wins = 0;
+            for (int i = 0; i < ops; i++) {
+                if (positions[next].checkWin())
+                    wins++;
+                next = (next + 1) & (positions.length - 1);
+            }
+            sink += wins;
+        }
+    }
+
+    /**
+     * This class is a game on a SixQueensModel whose players follow
+     * scripts of random legal games, so any number of threads can play it.
+     * A thread plays the next move of the script for whichever seat is to
+     * move, or starts a new game once the script is done. A move from a
+     * thread that lost a race to another is rejected by the model, as a
+     * move from the wrong player is. The script's place is kept by the
+     * first seat's view, under the model's lock, and if a late move ever
+     * takes the board off the script, a new game puts it back on.
+     */
+    private static class ScriptedGame {
+        private final SixQueensModel model;
+        private final int[][] scripts;
+        private final SeatView[] seats;
+        private volatile int[] moves;
+        private volatile int ply;
+        private volatile boolean diverged;
+        private int script;
+
+        /**
+         * This constructor starts a game between two stub views
+         *
+         * @param registry the registry to create the game in
+         * @param size     the board size
+         * @param random   chooses the scripts
+         */
+        ScriptedGame(GameRegistry registry, int size, Random random) {
+            scripts = BoardBenchmark.randomGames(size, SCRIPTS, random);
+            moves = scripts[0];
+            model = registry.create();
+            seats = new SeatView[]{new SeatView(this, true), new SeatView(this, false)};
+            model.join(seats[0], "player1", size);
+            model.join(seats[1], "player2", size);
+        }
+
+        /**
+         * move plays the next move, or starts a new game
+         */
+        void move() {
+            int[] m = moves;
+            int p = ply;
+            if (2 * p >= m.length || diverged)
+                model.newGame(seats[0]);
+            else
+                model.squareChosen(seats[p & 1], m[2 * p], m[2 * p + 1]);
+        }
+
+        /**
+         * started follows a new game onto the next script
+         */
+        void started() {
+            script = (script + 1) % scripts.length;
+            moves = scripts[script];
+            ply = 0;
+            diverged = false;
+        }
+
+        /**
+         * placed follows a queen placed
+         *
+         * @param row the row
+         * @param col the column
+         */
+        void placed(int row, int col) {
+            int[] m = moves;
+            int p = ply;
+            if (2 * p >= m.length || m[2 * p] != row || m[2 * p + 1] != col)
+                diverged = true;
+            ply = p + 1;
+        }
+    }
+
+    /**
+     * This class is a view that ignores what it is told
+     */
+    private static class NullView implements SixQueensModelListener {
+        public void boardSize(int size) {
+        }
+
+        public void newGame() {
+        }
+
+        public void setQueen(int row, int col) {
+        }
+
+        public void waitingForPartner() {
+        }
+
+        public void yourTurn() {
+        }
+
+        public void theirTurn(String name) {
+        }
+
+        public void youWin() {
+        }
+
+        public void theyWin(String name) {
+        }
+
+        public void quit() {
+        }
+    }
+
+    /**
+     * This class is a stub view in a ScriptedGame. The first seat's view
+     * tells the game of new games and queens placed.
+     */
+    private static class SeatView extends NullView {
+        private final ScriptedGame game;
+        private final boolean following;
+
+        /**
+         * This constructor creates a seat's view
+         *
+         * @param game      the game
+         * @param following true for the view that keeps the script's place
+         */
+        SeatView(ScriptedGame game, boolean following) {
+            this.game = game;
+            this.following = following;
+        }
+
+        @Override
+        public void newGame() {
+            if (following)
+                game.started();
+        }
+
+        @Override
+        public void setQueen(int row, int col) {
+            if (following)
+                game.placed(row, col);
+        }
+    }
+
+    /**
+     * This class is a model that ignores what it is told
+     */
+    private static class NullModel implements SixQueensViewListener {
+        public void join(SixQueensModelListener view, String name, int size) {
+        }
+
+        public void squareChosen(SixQueensModelListener view, int row, int col) {
+        }
+
+        public void newGame(SixQueensModelListener view) {
+        }
+
+        public void quit(SixQueensModelListener view) {
+        }
+    }
+
+    /**
+     * This class is a socket over in-memory streams, so the proxies can
+     * be run without a network
+     */
+    private static class MemorySocket extends Socket {
+        private final InputStream in;
+        private final OutputStream out;
+
+        /**
+         * This constructor creates a socket over two streams
+         *
+         * @param in  what the socket reads
+         * @param out where the socket writes
+         */
+        MemorySocket(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) {
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return InetSocketAddress.createUnresolved("memory", 0);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * This class is a stream a benchmark feeds a batch of messages at a
+     * time. A reader of it blocks once the batch is read, and the feeder
+     * waits until then, so by the time feed returns every message in the
+     * batch has been read and handled.
+     */
+    private static class FeedStream extends InputStream {
+        private byte[] block = new byte[0];
+        private int position;
+        private long remaining;
+        private boolean waiting;
+
+        /**
+         * feed hands the reader a block of bytes some number of times, and
+         * waits for it to read them all
+         *
+         * @param bytes the block
+         * @param times the number of times
+         */
+        synchronized void feed(byte[] bytes, long times) {
+            block = bytes;
+            position = 0;
+            remaining = times * bytes.length;
+            waiting = false;
+            notifyAll();
+            try {
+                while (remaining > 0 || !waiting)
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            awaitBytes();
+            int b = block[position] & 0xFF;
+            position = (position + 1) % block.length;
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            awaitBytes();
+            int n = (int) Math.min(Math.min(length, remaining), block.length - position);
+            System.arraycopy(block, position, b, offset, n);
+            position = (position + n) % block.length;
+            remaining -= n;
+            return n;
+        }
+
+        /**
+         * awaitBytes waits until there are bytes to read, telling the
+         * feeder when the last batch has been read
+         *
+         * @throws IOException if the reader is interrupted
+         */
+        private void awaitBytes() throws IOException {
+            while (remaining == 0) {
+                waiting = true;
+                notifyAll();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+}
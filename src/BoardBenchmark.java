@@ -0,0 +1,121 @@
+// *****************************
+//
+// File:    BoardBenchmark.java
+// Package: ---
+// Unit:    Class BoardBenchmark
+//
+// *****************************
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class measures the per-move cost of BoardState at several board
+ * sizes. Random legal games are generated up front, then replayed with
+ * isEmpty, setQueen and checkWin for every move, and the time per move
+ * is reported.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class BoardBenchmark {
+    private static final int[] DEFAULT_SIZES = {6, 16, 32, 64};
+    private static final int GAMES = 1000;
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                try {
+                    sizes[i] = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    sizes[i] = -1;
+                }
+                if (!BoardState.isValidSize(sizes[i])) {
+                    System.err.println("Usage: java BoardBenchmark [<boardsize> ...]");
+                    System.exit(1);
+                }
+            }
+        }
+
+        System.out.printf("%6s %12s %12s%n", "size", "moves/game", "ns/move");
+        for (int size : sizes) {
+            int[][] games = randomGames(size, GAMES, new Random(size));
+            long moves = 0;
+            for (int[] game : games)
+                moves += game.length / 2;
+
+            // warm up, then measure
+            replay(size, games, RUN_NANOS / 2);
+            long start = System.nanoTime();
+            long rounds = replay(size, games, RUN_NANOS);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%6d %12.1f %12.1f%n", size, (double) moves / games.length,
+                    (double) elapsed / (rounds * moves));
+        }
+    }
+
+    /**
+     * replay plays the games over and over until the time runs out
+     *
+     * @param size  the board size
+     * @param games the games, as row/col pairs
+     * @param nanos how long to run
+     * @return the number of times the whole set of games was played
+     */
+    private static long replay(int size, int[][] games, long nanos) {
+        BoardState board = new BoardState(size);
+        long deadline = System.nanoTime() + nanos;
+        long rounds = 0;
+        int wins = 0;
+        do {
+            for (int[] game : games) {
+                board.clear();
+                for (int i = 0; i < game.length; i += 2) {
+                    if (board.isEmpty(game[i], game[i + 1])) {
+                        board.setQueen(game[i], game[i + 1]);
+                        if (board.checkWin())
+                            wins++;
+                    }
+                }
+            }
+            rounds++;
+        } while (System.nanoTime() < deadline);
+        if (wins != rounds * games.length)
+            throw new IllegalStateException("BoardBenchmark: a game did not finish");
+        return rounds;
+    }
+
+    /**
+     * randomGames generates random legal games that play until the board is full
+     *
+     * @param size  the board size
+     * @param count the number of games
+     * @param rnd   the random number generator
+     * @return the games, each as a sequence of row/col pairs
+     */
+    static int[][] randomGames(int size, int count, Random rnd) {
+        int[][] games = new int[count][];
+        int[] empty = new int[size * size];
+        int[] moves = new int[2 * size];
+        for (int g = 0; g < count; g++) {
+            BoardState board = new BoardState(size);
+            int n = 0;
+            while (!board.checkWin()) {
+                int k = 0;
+                for (int square = 0; square < size * size; square++) {
+                    if (board.isEmpty(square / size, square % size))
+                        empty[k++] = square;
+                }
+                int square = empty[rnd.nextInt(k)];
+                board.setQueen(square / size, square % size);
+                moves[n++] = square / size;
+                moves[n++] = square % size;
+            }
+            games[g] = Arrays.copyOf(moves, n);
+        }
+        return games;
+    }
+}
@@ -8,35 +8,145 @@
 
 /**
  * This class holds the board data for the Six Queens game.
- * The board is represented as a 2D array of Space objects.
+ * The board can be any size from 1x1 up to MAX_SIZE x MAX_SIZE.
+ * <P>
+ * Boards of up to 8x8 are a single bitboard: bit (row * size + col)
+ * of a long stands for one space, with one mask for the queens and one
+ * for every space that can no longer take a queen (queens plus the
+ * spaces they attack). Each square has a precomputed attack mask.
+ * <P>
+ * Larger boards keep one word per row, so placing a queen touches one
+ * word per row instead of every space on the board, and a running
+ * count of empty spaces answers checkWin. Searches that must handle every
+ * size can read any board's empty spaces as row words too, and generate
+ * moves on them with emptyAfter and emptyCountAfter.
+ * <P>
+ * Every board also keeps a Zobrist hash of its queens, updated on each
+ * setQueen, for each of the 8 board symmetries (see BoardSymmetry). The
+ * smallest of the 8 is the same for all symmetric variants of a position,
+ * so caches can key on getCanonicalHash to store each position once.
  *
  * @author  Ian Naple
  * @version 3/27/2018
  */
 public class BoardState {
-    public static final int ROW_LENGTH = 6;
-    public static final int COL_LENGTH = 6;
+    public static final int DEFAULT_SIZE = 6;
+    public static final int MAX_SIZE = 64;
 
-    private Space board[][];
+    // largest board that fits in a single long
+    public static final int MAX_PACKED_SIZE = 8;
+
+    // ATTACKS[size][square] holds the square plus every space a queen on it invalidates
+    private static final long[][] ATTACKS = new long[MAX_PACKED_SIZE + 1][];
+
+    static {
+        for (int size = 1; size <= MAX_PACKED_SIZE; size++) {
+            ATTACKS[size] = new long[size * size];
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++)
+                    ATTACKS[size][row * size + col] = computeAttacks(size, row, col);
+            }
+        }
+    }
+
+    // SYMMETRIC_KEYS[size][square * 8 + t] is the Zobrist key of square after transform t
+    private static final long[][] SYMMETRIC_KEYS = new long[MAX_PACKED_SIZE + 1][];
+
+    static {
+        for (int size = 1; size <= MAX_PACKED_SIZE; size++) {
+            SYMMETRIC_KEYS[size] = new long[size * size * BoardSymmetry.COUNT];
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    for (int t = 0; t < BoardSymmetry.COUNT; t++)
+                        SYMMETRIC_KEYS[size][(row * size + col) * BoardSymmetry.COUNT + t] =
+                                zobristKey(size, BoardSymmetry.mapSquare(size, t, row, col));
+                }
+            }
+        }
+    }
+
+    private final int size;
+
+    // hashes[t] is the Zobrist hash of the queens after symmetry t
+    private final long[] hashes;
+    private final long[] symmetricKeys;
+
+    // packed representation, used when size <= MAX_PACKED_SIZE
+    private final long full;
+    private final long[] attacks;
+    private long queens;
+    private long blocked;
+
+    // row representation, used when size > MAX_PACKED_SIZE
+    private final long rowFull;
+    private final long[] queenRows;
+    private final long[] blockedRows;
+    private int emptyCount;
 
     /**
-     * This constructor initializes the board
+     * This constructor initializes a default size board
      */
     public BoardState () {
-        board = new Space[ROW_LENGTH][COL_LENGTH];
-        for (int row = 0; row < ROW_LENGTH; row++) {
-            for (int col = 0; col < COL_LENGTH; col++)
-                board[row][col] = new Space();
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * This constructor initializes a board of the given size
+     * @param size the number of rows and columns
+     */
+    public BoardState (int size) {
+        if (!isValidSize(size))
+            throw new IllegalArgumentException("BoardState: illegal size " + size);
+        this.size = size;
+        this.hashes = new long[BoardSymmetry.COUNT];
+        this.symmetricKeys = size <= MAX_PACKED_SIZE ? SYMMETRIC_KEYS[size] : null;
+        if (size <= MAX_PACKED_SIZE) {
+            full = size * size == 64 ? -1L : (1L << (size * size)) - 1;
+            attacks = ATTACKS[size];
+            rowFull = 0L;
+            queenRows = null;
+            blockedRows = null;
+        } else {
+            full = 0L;
+            attacks = null;
+            rowFull = rowMask(size);
+            queenRows = new long[size];
+            blockedRows = new long[size];
         }
+        clear();
+    }
+
+    /**
+     * isValidSize checks if a board size is supported
+     * @param size the number of rows and columns
+     * @return true if the size is supported, false otherwise
+     */
+    public static boolean isValidSize(int size) {
+        return size >= 1 && size <= MAX_SIZE;
+    }
+
+    /**
+     * getSize returns the number of rows and columns on the board
+     * @return the board size
+     */
+    public int getSize() {
+        return size;
     }
 
     /**
      * clear removes every queen from the board
      */
     public void clear() {
-        for(int row = 0; row < ROW_LENGTH; row++) {
-            for(int col = 0; col < COL_LENGTH; col++)
-                board[row][col].clearSpace();
+        queens = 0L;
+        blocked = 0L;
+        for (int t = 0; t < BoardSymmetry.COUNT; t++)
+            hashes[t] = 0L;
+        if (queenRows != null) {
+            for (int row = 0; row < size; row++) {
+                queenRows[row] = 0L;
+                blockedRows[row] = 0L;
+            }
+            emptyCount = size * size;
         }
     }
 
@@ -46,80 +156,168 @@ public class BoardState {
      * @param col the column the queen was placed in
      */
     public void setQueen(int row, int col) {
-        board[row][col].placeQueen();
-        invalidateSpaces(row, col);
+        if (attacks != null) {
+            int square = row * size + col;
+            queens |= 1L << square;
+            blocked |= attacks[square];
+        } else {
+            queenRows[row] |= 1L << col;
+            invalidateSpaces(row, col);
+        }
+        updateHashes(row, col);
+    }
+
+    /**
+     * updateHashes adds a queen to the Zobrist hash of every symmetry
+     * @param row the row the queen was placed in
+     * @param col the column the queen was placed in
+     */
+    private void updateHashes(int row, int col) {
+        if (symmetricKeys != null) {
+            int base = (row * size + col) * BoardSymmetry.COUNT;
+            for (int t = 0; t < BoardSymmetry.COUNT; t++)
+                hashes[t] ^= symmetricKeys[base + t];
+        } else {
+            for (int t = 0; t < BoardSymmetry.COUNT; t++)
+                hashes[t] ^= zobristKey(size, BoardSymmetry.mapSquare(size, t, row, col));
+        }
+    }
+
+    /**
+     * getHash returns the Zobrist hash of the queens on the board
+     * @return the hash
+     */
+    public long getHash() {
+        return hashes[BoardSymmetry.IDENTITY];
+    }
+
+    /**
+     * getCanonicalHash returns a hash that is the same for all 8 symmetric
+     * variants of the position
+     * @return the smallest of the symmetric Zobrist hashes
+     */
+    public long getCanonicalHash() {
+        long min = hashes[0];
+        for (int t = 1; t < BoardSymmetry.COUNT; t++)
+            min = Math.min(min, hashes[t]);
+        return min;
+    }
+
+    /**
+     * zobristKey returns the random key of a square. Keys come from the
+     * SplitMix64 generator seeded by the board size and square, so large
+     * boards need no key tables.
+     * @param size   the board size
+     * @param square the square index (row * size + col)
+     * @return the key
+     */
+    private static long zobristKey(int size, int square) {
+        long z = 0x5DEECE66DL + (long) size * MAX_SIZE * MAX_SIZE + square;
+        z *= 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     /**
      * invalidateSpaces sets the spaces invalidated by placing a queen
+     * on a board that uses the row representation
      * @param row the row the queen was placed in
      * @param col the column the queen was placed in
      */
     private void invalidateSpaces(int row, int col) {
-        // invalidates all spaces below the queen
-        for(int i = row + 1; i < ROW_LENGTH; i++) {
-            if(board[i][col].isEmpty())
-                board[i][col].invalidateSpace();
-        }
-        // invalidates all spaces above the queen
-        for(int i = row - 1; i >= 0; i--) {
-            if(board[i][col].isEmpty())
-                board[i][col].invalidateSpace();
+        for (int r = 0; r < size; r++) {
+            long mask = r == row ? rowFull : crossing(size, row, col, r);
+            emptyCount -= Long.bitCount(mask & ~blockedRows[r]);
+            blockedRows[r] |= mask;
         }
+    }
 
-        // invalidates all spaces to the right of the queen
-        for(int i = col + 1; i < COL_LENGTH; i++) {
-            if(board[row][i].isEmpty())
-                board[row][i].invalidateSpace();
-        }
+    /**
+     * crossing returns the spaces a queen invalidates in another row: its
+     * column plus the two diagonals crossing that row
+     * @param size the board size
+     * @param row  the row of the queen
+     * @param col  the column of the queen
+     * @param r    the other row
+     * @return the invalidated spaces, one bit per column
+     */
+    private static long crossing(int size, int row, int col, int r) {
+        int d = r - row;
+        long mask = 1L << col;
+        if (col + d >= 0 && col + d < size)
+            mask |= 1L << (col + d);
+        if (col - d >= 0 && col - d < size)
+            mask |= 1L << (col - d);
+        return mask;
+    }
 
-        // invalidates all spaces to the left of the queen
-        for(int i = col - 1; i >= 0; i--) {
-            if (board[row][i].isEmpty())
-                board[row][i].invalidateSpace();
-        }
+    /**
+     * rowMask returns the mask of one full row
+     * @param size the board size
+     * @return the low size bits set
+     */
+    public static long rowMask(int size) {
+        return size == 64 ? -1L : (1L << size) - 1;
+    }
 
-        // invalidates all spaces diagonally below the queen
-        int r = row + 1;
-        int colRight = col + 1;
-        int colLeft = col - 1;
-        while(r < ROW_LENGTH && (colRight < COL_LENGTH || colLeft >= 0))  {
-            // checks if there are still more spaces below and to the right of the queen
-            if(colRight < COL_LENGTH) {
-                if(board[r][colRight].isEmpty())
-                    board[r][colRight].invalidateSpace();
-                colRight++;
-            }
-            // checks if there are still more spaces below and to the left of the queen
-            if(colLeft >= 0) {
-                if(board[r][colLeft].isEmpty())
-                    board[r][colLeft].invalidateSpace();
-                colLeft--;
-            }
-            r++;
+    /**
+     * getEmptyRows returns the spaces that can still take a queen as one
+     * word per row, bit col standing for the space in that column. It
+     * works on boards of any size.
+     * @param rows the array to fill, at least getSize() long
+     */
+    public void getEmptyRows(long[] rows) {
+        if (attacks != null) {
+            long empty = full & ~blocked;
+            long mask = rowMask(size);
+            for (int r = 0; r < size; r++)
+                rows[r] = (empty >>> (r * size)) & mask;
+        } else {
+            for (int r = 0; r < size; r++)
+                rows[r] = rowFull & ~blockedRows[r];
         }
+    }
 
-        // invalidates all spaces diagonally above the queen
-        r = row - 1;
-        colRight = col + 1;
-        colLeft = col - 1;
-        while(r >= 0 && (colRight < COL_LENGTH || colLeft >= 0)) {
-            // checks if there are still more spaces above and to the right of the queen
-            if(colRight < COL_LENGTH) {
-                if(board[r][colRight].isEmpty())
-                    board[r][colRight].invalidateSpace();
-                colRight++;
-            }
-            // checks if there are still more queens above and to the left of the queen
-            if(colLeft >= 0) {
-                if(board[r][colLeft].isEmpty())
-                    board[r][colLeft].invalidateSpace();
-                colLeft--;
-            }
-            r--;
+    /**
+     * emptyAfter places a queen on a board kept as empty row words, as
+     * getEmptyRows returns them, and returns what is left empty
+     * @param size  the board size
+     * @param empty the empty spaces before the queen; the queen's space must be empty
+     * @param row   the row of the queen
+     * @param col   the column of the queen
+     * @param into  the array for the empty spaces after the queen, which
+     *              may be empty itself
+     * @return the number of empty spaces left
+     */
+    public static int emptyAfter(int size, long[] empty, int row, int col, long[] into) {
+        int count = 0;
+        for (int r = 0; r < size; r++) {
+            long left = r == row ? 0L : empty[r] & ~crossing(size, row, col, r);
+            into[r] = left;
+            count += Long.bitCount(left);
         }
+        return count;
+    }
 
+    /**
+     * emptyCountAfter returns the number of spaces a queen would leave
+     * empty on a board kept as empty row words, without placing it
+     * @param size  the board size
+     * @param empty the empty spaces before the queen
+     * @param row   the row of the queen
+     * @param col   the column of the queen
+     * @return the number of empty spaces left
+     */
+    public static int emptyCountAfter(int size, long[] empty, int row, int col) {
+        int count = 0;
+        for (int r = 0; r < size; r++) {
+            if (r != row)
+                count += Long.bitCount(empty[r] & ~crossing(size, row, col, r));
+        }
+        return count;
     }
+
     /**
      * isEmpty checks if a given space is empty
      * @param row the row of the space
@@ -127,7 +325,70 @@ public class BoardState {
      * @return true if the space is empty, false if it isn't
      */
     public boolean isEmpty(int row, int col) {
-        return board[row][col].isEmpty();
+        if (attacks != null)
+            return (blocked & (1L << (row * size + col))) == 0L;
+        return (blockedRows[row] & (1L << col)) == 0L;
+    }
+
+    /**
+     * hasQueen checks if a given space holds a queen
+     * @param row the row of the space
+     * @param col the column of the space
+     * @return true if the space has a queen, false if it doesn't
+     */
+    public boolean hasQueen(int row, int col) {
+        if (attacks != null)
+            return (queens & (1L << (row * size + col))) != 0L;
+        return (queenRows[row] & (1L << col)) != 0L;
+    }
+
+    /**
+     * isPacked checks if the board fits in a single bitboard, which is
+     * what the mask accessors below need
+     * @return true if the board is at most MAX_PACKED_SIZE on a side
+     */
+    public boolean isPacked() {
+        return attacks != null;
+    }
+
+    /**
+     * getEmptyMask returns the spaces that can still take a queen,
+     * one bit per space at (row * size + col)
+     * @return the empty mask
+     */
+    public long getEmptyMask() {
+        requirePacked();
+        return full & ~blocked;
+    }
+
+    /**
+     * getQueenMask returns the spaces that hold a queen,
+     * one bit per space at (row * size + col)
+     * @return the queen mask
+     */
+    public long getQueenMask() {
+        requirePacked();
+        return queens;
+    }
+
+    /**
+     * attackMask returns the spaces a queen invalidates on a packed board,
+     * including the queen's own space
+     * @param size   the board size, at most MAX_PACKED_SIZE
+     * @param square the square index (row * size + col)
+     * @return the attack mask
+     */
+    public static long attackMask(int size, int square) {
+        return ATTACKS[size][square];
+    }
+
+    /**
+     * requirePacked makes sure the board uses the single bitboard representation
+     */
+    private void requirePacked() {
+        if (attacks == null)
+            throw new UnsupportedOperationException("BoardState: board is larger than " +
+                    MAX_PACKED_SIZE + "x" + MAX_PACKED_SIZE);
     }
 
     /**
@@ -135,13 +396,29 @@ public class BoardState {
      * @return true if the game is won, false otherwise
      */
     public boolean checkWin() {
-        // checks the board for any empty spaces
-        for(int row = 0; row < ROW_LENGTH; row++) {
-            for(int col = 0; col < COL_LENGTH; col++) {
-                if(board[row][col].isEmpty())
-                    return false;
+        // the game is won once no empty spaces are left
+        if (attacks != null)
+            return blocked == full;
+        return emptyCount == 0;
+    }
+
+    /**
+     * computeAttacks builds the mask of spaces invalidated by a queen,
+     * including the queen's own space
+     * @param size the board size
+     * @param row  the row of the queen
+     * @param col  the column of the queen
+     * @return the attack mask
+     */
+    private static long computeAttacks(int size, int row, int col) {
+        long mask = 0L;
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                // same row, same column or same diagonal
+                if (r == row || c == col || r - c == row - col || r + c == row + col)
+                    mask |= 1L << (r * size + c);
             }
         }
-        return true;
+        return mask;
     }
 }
@@ -0,0 +1,189 @@
+// ****************************
+//
+// File:    BoardSymmetry.java
+// Package: ---
+// Unit:    Class BoardSymmetry
+//
+// ****************************
+
+/**
+ * This class maps Six Queens positions onto their symmetric variants.
+ * A square board has 8 symmetries: the identity, three rotations, and
+ * four mirror images. Queens attack the same way under all of them, so
+ * symmetric positions have the same value and the same best move (after
+ * mapping it back). The canonical form of a position is the smallest of
+ * its 8 variants, which lets a position cache store one entry for all 8.
+ * <P>
+ * Masks use the packed bitboard layout of BoardState, bit (row * size + col),
+ * and are transformed one byte at a time through lookup tables.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class BoardSymmetry {
+    public static final int IDENTITY = 0;
+    public static final int ROTATE_90 = 1;
+    public static final int ROTATE_180 = 2;
+    public static final int ROTATE_270 = 3;
+    public static final int MIRROR_COLS = 4;
+    public static final int MIRROR_ROWS = 5;
+    public static final int TRANSPOSE = 6;
+    public static final int ANTI_TRANSPOSE = 7;
+    public static final int COUNT = 8;
+
+    // INVERSE[t] undoes transform t
+    private static final int[] INVERSE = {
+            IDENTITY, ROTATE_270, ROTATE_180, ROTATE_90,
+            MIRROR_COLS, MIRROR_ROWS, TRANSPOSE, ANTI_TRANSPOSE};
+
+    private final int size;
+    private final int bytes;
+
+    // squares[t][square] is where transform t sends square
+    private final int[][] squares;
+
+    // table[t][byteIndex][byteValue] is the transformed mask for one byte of input
+    private final long[][][] table;
+
+    /**
+     * This constructor builds the lookup tables for one board size
+     *
+     * @param size the board size, at most BoardState.MAX_PACKED_SIZE
+     */
+    public BoardSymmetry(int size) {
+        if (size < 1 || size > BoardState.MAX_PACKED_SIZE)
+            throw new IllegalArgumentException("BoardSymmetry: illegal size " + size);
+        this.size = size;
+        this.bytes = (size * size + 7) / 8;
+        squares = new int[COUNT][size * size];
+        for (int t = 0; t < COUNT; t++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++)
+                    squares[t][row * size + col] = mapSquare(size, t, row, col);
+            }
+        }
+
+        table = new long[COUNT][bytes][256];
+        for (int t = 1; t < COUNT; t++) {
+            for (int b = 0; b < bytes; b++) {
+                for (int v = 1; v < 256; v++) {
+                    long out = 0L;
+                    for (int bit = 0; bit < 8; bit++) {
+                        int square = b * 8 + bit;
+                        if ((v & (1 << bit)) != 0 && square < size * size)
+                            out |= 1L << squares[t][square];
+                    }
+                    table[t][b][v] = out;
+                }
+            }
+        }
+    }
+
+    /**
+     * getSize returns the board size the tables were built for
+     *
+     * @return the board size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * transform applies a symmetry to a mask
+     *
+     * @param mask the mask
+     * @param t    the transform, 0 to COUNT - 1
+     * @return the transformed mask
+     */
+    public long transform(long mask, int t) {
+        if (t == IDENTITY)
+            return mask;
+        long[][] bytesTable = table[t];
+        long out = 0L;
+        for (int b = 0; b < bytes; b++)
+            out |= bytesTable[b][(int) (mask >>> (b * 8)) & 0xFF];
+        return out;
+    }
+
+    /**
+     * transformSquare applies a symmetry to a square index
+     *
+     * @param square the square index (row * size + col)
+     * @param t      the transform
+     * @return the transformed square index
+     */
+    public int transformSquare(int square, int t) {
+        return squares[t][square];
+    }
+
+    /**
+     * canonical returns the smallest of the 8 symmetric variants of a mask
+     *
+     * @param mask the mask
+     * @return the canonical mask
+     */
+    public long canonical(long mask) {
+        return transform(mask, canonicalTransform(mask));
+    }
+
+    /**
+     * canonicalTransform returns the transform that takes a mask to its
+     * canonical form
+     *
+     * @param mask the mask
+     * @return the transform
+     */
+    public int canonicalTransform(long mask) {
+        long best = mask;
+        int bestT = IDENTITY;
+        for (int t = 1; t < COUNT; t++) {
+            long m = transform(mask, t);
+            if (Long.compareUnsigned(m, best) < 0) {
+                best = m;
+                bestT = t;
+            }
+        }
+        return bestT;
+    }
+
+    /**
+     * inverse returns the transform that undoes a transform
+     *
+     * @param t the transform
+     * @return the inverse transform
+     */
+    public static int inverse(int t) {
+        return INVERSE[t];
+    }
+
+    /**
+     * mapSquare applies a symmetry to a space on a board of any size
+     *
+     * @param size the board size
+     * @param t    the transform
+     * @param row  the row of the space
+     * @param col  the column of the space
+     * @return the transformed square index (row * size + col)
+     */
+    public static int mapSquare(int size, int t, int row, int col) {
+        int last = size - 1;
+        switch (t) {
+            case ROTATE_90:
+                return col * size + (last - row);
+            case ROTATE_180:
+                return (last - row) * size + (last - col);
+            case ROTATE_270:
+                return (last - col) * size + row;
+            case MIRROR_COLS:
+                return row * size + (last - col);
+            case MIRROR_ROWS:
+                return (last - row) * size + col;
+            case TRANSPOSE:
+                return col * size + row;
+            case ANTI_TRANSPOSE:
+                return (last - col) * size + (last - row);
+            default:
+                return row * size + col;
+        }
+    }
+}
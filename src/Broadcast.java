@@ -0,0 +1,192 @@
+// ***********************
+//
+// File:    Broadcast.java
+// Package: ---
+// Unit:    Class Broadcast
+//
+// ***********************
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sends one game's events to its spectators. The game's events
+ * are encoded once, for every spectator, and collected; every flush
+ * interval whatever was collected is copied once into a read-only buffer
+ * that all the spectators are handed. Spectators see the game a moment
+ * late, but a fast game costs each of them one write a flush rather than
+ * one a move.
+ * <P>
+ * Spectators are grouped by the executor they take events on, which for
+ * the NIO server is their event loop. A flush queues one task per group,
+ * so neither the game's lock nor the flush thread is held for long,
+ * however many are watching, and a slow spectator holds up nobody. Each
+ * task walks the group as it was at the flush. A new spectator is added
+ * after a flush of everything collected, so it is not sent events its
+ * snapshot already shows.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class Broadcast {
+    /**
+     * The default time between flushes, in milliseconds
+     */
+    public static final long DEFAULT_FLUSH_MILLIS = 100;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "Broadcast-Flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile long flushMillis = DEFAULT_FLUSH_MILLIS;
+
+    private final MessageEncoder encoder;
+    private final Map<Executor, CopyOnWriteArrayList<Spectator>> groups;
+    private int size;
+    private boolean flushScheduled;
+
+    /**
+     * This constructor creates a broadcast with no spectators
+     *
+     * @param size the game's board size
+     */
+    public Broadcast(int size) {
+        encoder = new MessageEncoder(WireFormat.VERSION_2, size);
+        groups = new HashMap<>();
+    }
+
+    /**
+     * setFlushMillis sets the time between flushes, which is how late
+     * spectators see the game
+     *
+     * @param millis the time in milliseconds
+     */
+    public static void setFlushMillis(long millis) {
+        flushMillis = millis;
+    }
+
+    /**
+     * add adds a spectator and sends it the game so far
+     *
+     * @param spectator the spectator
+     * @param board     the board
+     * @param status    the status for the first player
+     * @param name1     the first player's name
+     * @param name2     the second player's name, or null while waiting
+     */
+    public synchronized void add(Spectator spectator, BoardState board, int status, String name1, String name2) {
+        flush();
+        groups.computeIfAbsent(spectator.fanOut(), executor -> new CopyOnWriteArrayList<>()).add(spectator);
+        size++;
+        spectator.watchStart(board, status, name1, name2);
+    }
+
+    /**
+     * remove removes a spectator
+     *
+     * @param spectator the spectator
+     * @return true if it was watching
+     */
+    public synchronized boolean remove(Spectator spectator) {
+        CopyOnWriteArrayList<Spectator> group = groups.get(spectator.fanOut());
+        if (group == null || !group.remove(spectator))
+            return false;
+        if (group.isEmpty())
+            groups.remove(spectator.fanOut());
+        size--;
+        return true;
+    }
+
+    /**
+     * size returns the number of spectators
+     *
+     * @return the number of spectators
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * move collects a queen being placed and the game's new status
+     *
+     * @param row    the row
+     * @param col    the column
+     * @param status the status for the first player
+     */
+    public synchronized void move(int row, int col, int status) {
+        encoder.setQueen(row, col);
+        encoder.watchStatus(status);
+        scheduleFlush();
+    }
+
+    /**
+     * newGame collects the start of a new game
+     *
+     * @param board  the cleared board
+     * @param status the status for the first player
+     * @param name1  the first player's name
+     * @param name2  the second player's name
+     */
+    public synchronized void newGame(BoardState board, int status, String name1, String name2) {
+        encoder.watching(board, status, name1, name2);
+        scheduleFlush();
+    }
+
+    /**
+     * end sends the end of the game at once, with anything still collected,
+     * and removes every spectator
+     */
+    public synchronized void end() {
+        encoder.quit();
+        flush();
+        groups.clear();
+        size = 0;
+    }
+
+    /**
+     * scheduleFlush has the flush thread send what was collected once the
+     * flush interval is up, if it is not going to already
+     */
+    private void scheduleFlush() {
+        if (flushScheduled)
+            return;
+        flushScheduled = true;
+        FLUSHER.schedule(this::scheduledFlush, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * scheduledFlush sends what was collected. It runs on the flush thread.
+     */
+    private synchronized void scheduledFlush() {
+        flushScheduled = false;
+        flush();
+    }
+
+    /**
+     * flush copies what was collected into one read-only buffer and queues
+     * a task for each group of spectators to send it
+     */
+    private void flush() {
+        ByteBuffer staged = encoder.buffer();
+        if (staged.position() == 0)
+            return;
+        staged.flip();
+        ByteBuffer event = ByteBuffer.allocate(staged.remaining()).put(staged);
+        event.flip();
+        ByteBuffer shared = event.asReadOnlyBuffer();
+        staged.clear();
+
+        for (Map.Entry<Executor, CopyOnWriteArrayList<Spectator>> group : groups.entrySet()) {
+            Iterator<Spectator> spectators = group.getValue().iterator();
+            group.getKey().execute(() -> spectators.forEachRemaining(spectator -> spectator.watch(shared)));
+        }
+    }
+}
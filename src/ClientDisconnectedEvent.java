@@ -0,0 +1,38 @@
+// ****************************************
+//
+// File:    ClientDisconnectedEvent.java
+// Package: ---
+// Unit:    Class ClientDisconnectedEvent
+//
+// ****************************************
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Flight Recorder event for a client's connection lost
+ * without the player quitting
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+@Name("sixqueens.ClientDisconnected")
+@Label("Client Disconnected")
+@Category("Six Queens")
+@Description("A client's connection was lost without the player quitting")
+@StackTrace(false)
+public class ClientDisconnectedEvent extends jdk.jfr.Event {
+    @Label("Client")
+    @Description("The client's address")
+    String client;
+
+    @Label("Protocol Version")
+    int version;
+
+    @Label("Stalled")
+    @Description("True if the client stopped reading and was disconnected for it")
+    boolean stalled;
+}
@@ -0,0 +1,115 @@
+// *******************************************
+//
+// File:    ConcurrentTranspositionTable.java
+// Package: ---
+// Unit:    Class ConcurrentTranspositionTable
+//
+// *******************************************
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class provides a fixed-size transposition table that many solver
+ * threads can share without locks. Each slot is two longs: the entry's
+ * data, and its key XORed with the data. A reader that sees half of one
+ * write and half of another gets a key that does not match and treats
+ * the slot as empty, so no lock is needed. As in TranspositionTable, a
+ * new entry always replaces the old entry in its slot. A move is stored
+ * in 16 bits, so squares of the largest boards fit.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ConcurrentTranspositionTable {
+    /**
+     * The value returned when no entry was found
+     */
+    public static final int MISS = 0;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * This constructor creates an empty table
+     *
+     * @param bits the log base 2 of the number of slots
+     */
+    public ConcurrentTranspositionTable(int bits) {
+        if (bits < 1 || bits > 29)
+            throw new IllegalArgumentException("ConcurrentTranspositionTable: illegal size 2^" + bits);
+        slots = new AtomicLongArray(2 << bits);
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * probe looks up a position
+     *
+     * @param key the position key; must not be 0
+     * @return the stored value, or MISS if the position is not in the table
+     */
+    public int probe(long key) {
+        long data = read(key);
+        return data == 0L ? MISS : (int) (data & 0xFF) - 2;
+    }
+
+    /**
+     * bestMove returns the move stored for a position
+     *
+     * @param key the position key
+     * @return the stored square index, or -1 if the position is not in the table
+     */
+    public int bestMove(long key) {
+        long data = read(key);
+        return data == 0L ? -1 : (int) (data >>> 8) & 0xFFFF;
+    }
+
+    /**
+     * store saves a position, replacing the old entry in its slot
+     *
+     * @param key   the position key; must not be 0
+     * @param value the position value, never MISS
+     * @param move  the best square index, less than 65536
+     */
+    public void store(long key, int value, int move) {
+        // values are offset so a stored entry never has data 0
+        long data = (value + 2) | ((long) move << 8);
+        int slot = slot(key) << 1;
+        slots.setOpaque(slot, key ^ data);
+        slots.setOpaque(slot + 1, data);
+    }
+
+    /**
+     * clear empties the table. It must not be called while a search is running.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++)
+            slots.setPlain(i, 0L);
+    }
+
+    /**
+     * read returns the data stored for a key
+     *
+     * @param key the position key
+     * @return the data, or 0 if the slot holds another key or a torn write
+     */
+    private long read(long key) {
+        int slot = slot(key) << 1;
+        long check = slots.getOpaque(slot);
+        long data = slots.getOpaque(slot + 1);
+        return (check ^ data) == key ? data : 0L;
+    }
+
+    /**
+     * slot maps a key to a table index
+     *
+     * @param key the position key
+     * @return the slot index
+     */
+    private int slot(long key) {
+        // 64-bit finalizer from MurmurHash3 spreads nearby masks across the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
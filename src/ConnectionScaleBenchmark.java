@@ -0,0 +1,96 @@
+// ***************************************
+//
+// File:    ConnectionScaleBenchmark.java
+// Package: ---
+// Unit:    Class ConnectionScaleBenchmark
+//
+// ***************************************
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * This class measures what each connection costs the thread-per-connection
+ * server in a given ThreadMode. It starts the server inside this JVM, opens
+ * the connections with ServerBenchmark, and reports the JVM's thread count,
+ * resident memory and heap per connection, then the move latency while
+ * every game plays. The client side uses one thread and a few hundred bytes
+ * per connection, so nearly all of the growth is the server's.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ConnectionScaleBenchmark {
+    private static final long SETTLE_MILLIS = 2000;
+    private static final long PLAY_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        ThreadMode threadMode = args.length == 2 ? ThreadMode.parse(args[0]) : null;
+        if (threadMode == null) {
+            System.err.println("Usage: java ConnectionScaleBenchmark platform|virtual <connections>");
+            System.exit(1);
+        }
+        int connections = Integer.parseInt(args[1]);
+        if (threadMode == ThreadMode.VIRTUAL && !ThreadMode.isVirtualAvailable())
+            System.err.println("ConnectionScaleBenchmark: virtual threads need Java 21, " +
+                    "measuring platform threads");
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        long threads0 = ManagementFactory.getThreadMXBean().getThreadCount();
+        long rss0 = residentBytes();
+        long heap0 = usedHeap();
+
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "threads=" + threadMode.name().toLowerCase()}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        ServerBenchmark clients = new ServerBenchmark();
+        int opened = clients.connect(new InetSocketAddress("127.0.0.1", port), connections);
+        Thread.sleep(SETTLE_MILLIS);
+
+        long threads = ManagementFactory.getThreadMXBean().getThreadCount() - threads0;
+        long rss = residentBytes() - rss0;
+        long heap = usedHeap() - heap0;
+        System.out.printf("%s threads, %d connections: %d threads, %.1f KB resident and " +
+                        "%.1f KB heap per connection%n", threadMode.name().toLowerCase(), opened, threads,
+                rss / 1024.0 / opened, heap / 1024.0 / opened);
+
+        clients.play(PLAY_SECONDS);
+        System.exit(0);
+    }
+
+    /**
+     * residentBytes returns the resident set size of this process
+     *
+     * @return the resident memory in bytes, or 0 where /proc is not available
+     * @throws IOException if /proc cannot be read
+     */
+    private static long residentBytes() throws IOException {
+        if (!Files.exists(Paths.get("/proc/self/status")))
+            return 0;
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+            if (line.startsWith("VmRSS:"))
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+        return 0;
+    }
+
+    /**
+     * usedHeap returns the heap in use after a garbage collection
+     *
+     * @return the used heap in bytes
+     */
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
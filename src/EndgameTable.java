@@ -0,0 +1,174 @@
+// **************************
+//
+// File:    EndgameTable.java
+// Package: ---
+// Unit:    Class EndgameTable
+//
+// **************************
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class answers Six Queens positions from a precomputed endgame table
+ * file written by EndgameTableGenerator. The file is memory-mapped when it
+ * is opened, so opening takes the same time however large the table is,
+ * and the operating system pages entries in as they are used.
+ * <P>
+ * The file holds every reachable canonical position of one board size,
+ * keyed by its empty-space mask (see BoardSymmetry). The layout, in big
+ * endian order, is:
+ * <PRE>
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    board size
+ *   int    number of entries, n
+ *   long[n] canonical empty masks, sorted in signed order
+ *   byte[n] entries: WIN_FLAG if the player to move wins, plus the best
+ *           move's square index in the canonical orientation
+ * </PRE>
+ * Lookups canonicalize the position, binary search the mapped keys, and
+ * map the move back to the position's orientation, without allocating.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class EndgameTable {
+    public static final int MAGIC = 0x53514554;  // "SQET"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * Set in an entry when the player to move wins
+     */
+    public static final int WIN_FLAG = 0x80;
+
+    /**
+     * Returned by lookup when the position is not in the table
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final int MOVE_MASK = 0x3F;
+
+    private final int size;
+    private final int count;
+    private final MappedByteBuffer buffer;
+    private final BoardSymmetry symmetry;
+    private final int entriesOffset;
+
+    /**
+     * This constructor wraps a mapped table file
+     *
+     * @param buffer the mapped file
+     * @param path   the file path, for error messages
+     * @throws IOException if the file is not a valid endgame table
+     */
+    private EndgameTable(MappedByteBuffer buffer, Path path) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("EndgameTable: " + path + " is not an endgame table");
+        this.size = buffer.getInt(8);
+        this.count = buffer.getInt(12);
+        if (size < 1 || size > BoardState.MAX_PACKED_SIZE || count < 0 ||
+                buffer.capacity() != HEADER_BYTES + 9L * count)
+            throw new IOException("EndgameTable: " + path + " is corrupt");
+        this.buffer = buffer;
+        this.symmetry = new BoardSymmetry(size);
+        this.entriesOffset = HEADER_BYTES + 8 * count;
+    }
+
+    /**
+     * open memory-maps a table file
+     *
+     * @param path the table file
+     * @return the table
+     * @throws IOException if the file cannot be read or is not a valid table
+     */
+    public static EndgameTable open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new EndgameTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+    }
+
+    /**
+     * getSize returns the board size the table was built for
+     *
+     * @return the board size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * getCount returns the number of positions in the table
+     *
+     * @return the number of entries
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * lookup finds a position in the table
+     *
+     * @param empty the empty-space mask of the position; must not be 0
+     * @return the entry, with the move in the position's own orientation,
+     * or NOT_FOUND
+     */
+    public int lookup(long empty) {
+        int t = symmetry.canonicalTransform(empty);
+        int index = find(symmetry.transform(empty, t));
+        if (index < 0)
+            return NOT_FOUND;
+        int entry = buffer.get(entriesOffset + index) & 0xFF;
+        int move = symmetry.transformSquare(entry & MOVE_MASK, BoardSymmetry.inverse(t));
+        return (entry & WIN_FLAG) | move;
+    }
+
+    /**
+     * isWin checks an entry's value
+     *
+     * @param entry an entry returned by lookup
+     * @return true if the player to move wins
+     */
+    public static boolean isWin(int entry) {
+        return (entry & WIN_FLAG) != 0;
+    }
+
+    /**
+     * moveOf returns an entry's best move
+     *
+     * @param entry an entry returned by lookup
+     * @return the square index (row * size + col) of the best move
+     */
+    public static int moveOf(int entry) {
+        return entry & MOVE_MASK;
+    }
+
+    /**
+     * find binary searches the mapped keys
+     *
+     * @param key the canonical empty-space mask
+     * @return the entry index, or -1 if the key is not in the table
+     */
+    private int find(long key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = buffer.getLong(HEADER_BYTES + 8 * mid);
+            if (k < key)
+                lo = mid + 1;
+            else if (k > key)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,233 @@
+// ***********************************
+//
+// File:    EndgameTableGenerator.java
+// Package: ---
+// Unit:    Class EndgameTableGenerator
+//
+// ***********************************
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * This class builds an endgame table file for EndgameTable. It works in two
+ * passes over the BoardState rules.
+ * <P>
+ * The forward pass collects every canonical position reachable from the
+ * empty board and groups them into layers by their number of empty spaces.
+ * Every move removes at least one empty space, so a position's successors
+ * are always in later layers.
+ * <P>
+ * The backward (retrograde) pass solves the layers from the fullest board
+ * to the emptiest. A position is a win if some move leads to a solved loss
+ * or fills the board, and a loss otherwise. Each layer only reads layers
+ * already solved, so its positions are solved in parallel.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class EndgameTableGenerator {
+    private final int size;
+    private final long[] attacks;
+    private final BoardSymmetry symmetry;
+
+    // layer k holds the sorted canonical positions with k empty spaces
+    private final long[][] layerKeys;
+    private final byte[][] layerEntries;
+
+    /**
+     * This constructor creates a generator for one board size
+     *
+     * @param size the board size, at most BoardState.MAX_PACKED_SIZE
+     */
+    public EndgameTableGenerator(int size) {
+        if (size < 1 || size > BoardState.MAX_PACKED_SIZE)
+            throw new IllegalArgumentException("EndgameTableGenerator: illegal size " + size);
+        this.size = size;
+        this.attacks = new long[size * size];
+        for (int square = 0; square < size * size; square++)
+            attacks[square] = BoardState.attackMask(size, square);
+        this.symmetry = new BoardSymmetry(size);
+        this.layerKeys = new long[size * size + 1][];
+        this.layerEntries = new byte[size * size + 1][];
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java EndgameTableGenerator <boardsize> <tablefile>");
+            System.exit(1);
+        }
+        int size;
+        try {
+            size = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            size = -1;
+        }
+        if (size < 1 || size > BoardState.MAX_PACKED_SIZE) {
+            System.err.println("The board size must be a number from 1 to " + BoardState.MAX_PACKED_SIZE);
+            System.exit(1);
+        }
+
+        EndgameTableGenerator generator = new EndgameTableGenerator(size);
+        long start = System.nanoTime();
+        generator.forward();
+        long forward = System.nanoTime();
+        generator.backward();
+        long backward = System.nanoTime();
+        try {
+            generator.write(Paths.get(args[1]));
+        } catch (IOException e) {
+            System.err.println("EndgameTableGenerator: I/O error");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        long end = System.nanoTime();
+
+        System.out.printf("%dx%d: %d canonical positions, start position is a %s%n", size, size,
+                generator.count(), generator.startIsWin() ? "win" : "loss");
+        System.out.printf("forward %.1f ms, backward %.1f ms, write %.1f ms%n",
+                (forward - start) / 1e6, (backward - forward) / 1e6, (end - backward) / 1e6);
+    }
+
+    /**
+     * forward collects the reachable canonical positions, layer by layer
+     */
+    private void forward() {
+        List<Set<Long>> layers = new ArrayList<>();
+        for (int k = 0; k <= size * size; k++)
+            layers.add(new HashSet<>());
+        long start = size * size == 64 ? -1L : (1L << (size * size)) - 1;
+        layers.get(size * size).add(symmetry.canonical(start));
+
+        // successors are always in smaller layers, so each layer is complete when reached
+        for (int k = size * size; k > 0; k--) {
+            for (long empty : layers.get(k)) {
+                for (long rest = empty; rest != 0L; rest &= rest - 1) {
+                    long next = empty & ~attacks[Long.numberOfTrailingZeros(rest)];
+                    if (next != 0L)
+                        layers.get(Long.bitCount(next)).add(symmetry.canonical(next));
+                }
+            }
+            long[] keys = new long[layers.get(k).size()];
+            int i = 0;
+            for (long key : layers.get(k))
+                keys[i++] = key;
+            Arrays.sort(keys);
+            layerKeys[k] = keys;
+            layers.set(k, null);
+        }
+        layerKeys[0] = new long[0];
+    }
+
+    /**
+     * backward solves the layers from the fewest empty spaces to the most
+     */
+    private void backward() {
+        layerEntries[0] = new byte[0];
+        for (int k = 1; k <= size * size; k++) {
+            long[] keys = layerKeys[k];
+            byte[] entries = new byte[keys.length];
+            IntStream.range(0, keys.length).parallel().forEach(i -> entries[i] = solve(keys[i]));
+            layerEntries[k] = entries;
+        }
+    }
+
+    /**
+     * solve finds the value and best move of one canonical position whose
+     * successors are already solved
+     *
+     * @param empty the canonical empty-space mask
+     * @return the table entry
+     */
+    private byte solve(long empty) {
+        int fallback = Long.numberOfTrailingZeros(empty);
+        for (long rest = empty; rest != 0L; rest &= rest - 1) {
+            int square = Long.numberOfTrailingZeros(rest);
+            long next = empty & ~attacks[square];
+
+            // filling the board wins; otherwise win by moving to a lost position
+            if (next == 0L || !isWin(next))
+                return (byte) (EndgameTable.WIN_FLAG | square);
+        }
+        return (byte) fallback;
+    }
+
+    /**
+     * isWin looks up the value of a solved position
+     *
+     * @param empty the empty-space mask, in any orientation
+     * @return true if the player to move wins
+     */
+    private boolean isWin(long empty) {
+        int k = Long.bitCount(empty);
+        int index = Arrays.binarySearch(layerKeys[k], symmetry.canonical(empty));
+        return (layerEntries[k][index] & EndgameTable.WIN_FLAG) != 0;
+    }
+
+    /**
+     * count returns the number of positions in the table
+     *
+     * @return the number of canonical positions
+     */
+    private int count() {
+        int count = 0;
+        for (long[] keys : layerKeys)
+            count += keys.length;
+        return count;
+    }
+
+    /**
+     * startIsWin returns the value of the empty board
+     *
+     * @return true if the first player wins
+     */
+    private boolean startIsWin() {
+        return (layerEntries[size * size][0] & EndgameTable.WIN_FLAG) != 0;
+    }
+
+    /**
+     * write saves the table, with all layers merged into one sorted key array
+     *
+     * @param path the table file
+     * @throws IOException if the file cannot be written
+     */
+    private void write(Path path) throws IOException {
+        int count = count();
+        long[] keys = new long[count];
+        byte[] entries = new byte[count];
+
+        // every key is a distinct mask, so sorting (key, layer) pairs by key is a merge
+        long[][] pairs = new long[count][];
+        int n = 0;
+        for (int k = 0; k < layerKeys.length; k++) {
+            for (int i = 0; i < layerKeys[k].length; i++)
+                pairs[n++] = new long[]{layerKeys[k][i], layerEntries[k][i]};
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < count; i++) {
+            keys[i] = pairs[i][0];
+            entries[i] = (byte) pairs[i][1];
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(EndgameTable.MAGIC);
+            out.writeInt(EndgameTable.VERSION);
+            out.writeInt(size);
+            out.writeInt(count);
+            for (long key : keys)
+                out.writeLong(key);
+            out.write(entries);
+        }
+    }
+}
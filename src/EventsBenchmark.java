@@ -0,0 +1,78 @@
+// *******************************
+//
+// File:    EventsBenchmark.java
+// Package: ---
+// Unit:    Class EventsBenchmark
+//
+// *******************************
+
+import jdk.jfr.Recording;
+
+/**
+ * This class measures what the Six Queens Flight Recorder events add to
+ * a move. It plays random games as MetricsBenchmark does, with the
+ * Metrics timings off, in alternate rounds: with no recording, with a
+ * recording whose settings leave the Six Queens events off, and with a
+ * recording that has them on, as sixqueens.jfc does. It prints the mean
+ * move in each, and what the events add when they are off and on.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class EventsBenchmark {
+    private static final int ROUNDS = 10;
+
+    private static final String[] EVENTS = {"sixqueens.GameStarted", "sixqueens.QueenPlaced",
+            "sixqueens.GameWon", "sixqueens.ClientDisconnected", "sixqueens.ProtocolError"};
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: java EventsBenchmark [<moves per round>]");
+            System.exit(1);
+        }
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        MetricsBenchmark benchmark = new MetricsBenchmark();
+        double none = 0;
+        double off = 0;
+        double on = 0;
+        for (int round = -1; round < ROUNDS; round++) {
+            // the first round only warms up
+            double n = benchmark.run(moves, false);
+            double f = record(benchmark, moves, false);
+            double o = record(benchmark, moves, true);
+            if (round >= 0) {
+                none += n;
+                off += f;
+                on += o;
+            }
+        }
+        none /= ROUNDS;
+        off /= ROUNDS;
+        on /= ROUNDS;
+        System.out.printf("move with no recording: %.1f ns, events off: %.1f ns, events on: %.1f ns%n", none, off, on);
+        System.out.printf("events add %.1f ns off, %.1f ns on%n", off - none, on - none);
+    }
+
+    /**
+     * record makes random moves while a recording runs
+     *
+     * @param benchmark the games to move in
+     * @param moves     the number of moves
+     * @param events    true to turn the Six Queens events on
+     * @return the mean time of a move, in nanoseconds
+     */
+    private static double record(MetricsBenchmark benchmark, int moves, boolean events) {
+        try (Recording recording = new Recording()) {
+            for (String event : EVENTS) {
+                if (events)
+                    recording.enable(event);
+                else
+                    recording.disable(event);
+            }
+            recording.setToDisk(false);
+            recording.start();
+            return benchmark.run(moves, false);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+// *****************************
+//
+// File:    GameAnalytics.java
+// Package: ---
+// Unit:    Class GameAnalytics
+//
+// *****************************
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * This class reports on the boards played in GameArchive files and
+ * GameJournal directories: how often the first player wins and how long
+ * boards take for each board size, which opening squares win most often,
+ * and, move by move, how many choices the player to move had and how
+ * often they went on to win.
+ * <P>
+ * The boards are read as one parallel stream, a block of an archive or a
+ * batch of a journal at a time, so any number of boards can be read in
+ * the memory of a few blocks. Each thread of the stream replays its
+ * boards on its own BoardStates and adds them up in its own Stats, and
+ * the Stats are only merged when the threads finish, so the threads
+ * never wait on each other.
+ * <P>
+ * Opening squares are counted in their canonical orientation (see
+ * BoardSymmetry), so the eight squares that are the same opening count
+ * as one. Given an EndgameTable for a board size, each position of that
+ * size is also looked up, to report how often the player to move could
+ * force a win and how often they threw it away.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameAnalytics {
+    private static final int OPENINGS_SHOWN = 10;
+
+    public static void main(String[] args) {
+        List<Path> sources = new ArrayList<>();
+        Path tablePath = null;
+        for (String arg : args) {
+            if (arg.startsWith("table="))
+                tablePath = Paths.get(arg.substring("table=".length()));
+            else
+                sources.add(Paths.get(arg));
+        }
+        if (sources.isEmpty()) {
+            System.err.println("Usage: java GameAnalytics [table=<tablefile>] <archivefile|journaldir>...");
+            System.exit(1);
+        }
+
+        List<GameArchive> archives = new ArrayList<>();
+        try {
+            EndgameTable table = tablePath == null ? null : EndgameTable.open(tablePath);
+            Stream<PlayedGame> games = Stream.empty();
+            for (Path source : sources) {
+                if (Files.isDirectory(source)) {
+                    games = Stream.concat(games, GameJournal.games(source));
+                } else {
+                    GameArchive archive = GameArchive.open(source);
+                    archives.add(archive);
+                    games = Stream.concat(games, archive.games());
+                }
+            }
+
+            long start = System.nanoTime();
+            Stats stats = games.parallel().collect(() -> new Stats(table), Stats::add, Stats::merge);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            stats.print();
+            System.out.printf("%d boards in %.1f s (%.0f boards/sec) on %d threads%n", stats.getBoards(),
+                    seconds, stats.getBoards() / seconds, Runtime.getRuntime().availableProcessors());
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("GameAnalytics: I/O error");
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            for (GameArchive archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    // nothing more to read from it
+                }
+            }
+        }
+    }
+
+    /**
+     * This class adds up the boards one thread has read, by board size
+     */
+    private static class Stats {
+        private final EndgameTable table;
+        private final Map<Integer, SizeStats> sizes = new TreeMap<>();
+
+        /**
+         * This constructor creates empty stats
+         *
+         * @param table the endgame table to look positions up in, or null
+         */
+        Stats(EndgameTable table) {
+            this.table = table;
+        }
+
+        /**
+         * add replays a board and adds it up
+         *
+         * @param game the board
+         */
+        void add(PlayedGame game) {
+            SizeStats stats = sizes.get(game.getSize());
+            if (stats == null) {
+                EndgameTable sizeTable = table != null && table.getSize() == game.getSize() ? table : null;
+                stats = new SizeStats(game.getSize(), sizeTable);
+                sizes.put(game.getSize(), stats);
+            }
+            stats.add(game);
+        }
+
+        /**
+         * merge adds up another thread's stats
+         *
+         * @param other the other stats
+         */
+        void merge(Stats other) {
+            for (SizeStats stats : other.sizes.values()) {
+                SizeStats mine = sizes.get(stats.size);
+                if (mine == null)
+                    sizes.put(stats.size, stats);
+                else
+                    mine.merge(stats);
+            }
+        }
+
+        /**
+         * getBoards returns the number of boards added up
+         *
+         * @return the number of boards
+         */
+        long getBoards() {
+            long boards = 0;
+            for (SizeStats stats : sizes.values())
+                boards += stats.boards;
+            return boards;
+        }
+
+        /**
+         * print prints the report, smallest board size first
+         */
+        void print() {
+            for (SizeStats stats : sizes.values())
+                stats.print();
+        }
+    }
+
+    /**
+     * This class adds up the boards of one size
+     */
+    private static class SizeStats {
+        private final int size;
+        private final EndgameTable table;
+        private final BoardState board;
+
+        private long boards;
+        private long finished;
+        private long firstWins;
+        private long moves;
+        private long duration;
+        private long illegal;
+
+        // by canonical opening square: boards, and boards the first player won
+        private final long[] openings;
+        private final long[] openingWins;
+
+        // by ply: positions reached, their choices, positions whose mover won,
+        // positions found in the table, won for the mover, and won but thrown away
+        private final long[] positions;
+        private final long[] choices;
+        private final long[] moverWins;
+        private final long[] looked;
+        private final long[] winning;
+        private final long[] thrown;
+
+        /**
+         * This constructor creates empty stats for a board size
+         *
+         * @param size  the board size
+         * @param table the endgame table for the size, or null
+         */
+        SizeStats(int size, EndgameTable table) {
+            this.size = size;
+            this.table = table;
+            this.board = new BoardState(size);
+            int squares = size * size;
+            openings = new long[squares];
+            openingWins = new long[squares];
+            positions = new long[squares];
+            choices = new long[squares];
+            moverWins = new long[squares];
+            looked = new long[squares];
+            winning = new long[squares];
+            thrown = new long[squares];
+        }
+
+        /**
+         * add replays a board and adds it up; a board with a move that
+         * is not legal is replayed up to that move and counted as illegal
+         *
+         * @param game the board
+         */
+        void add(PlayedGame game) {
+            boards++;
+            board.clear();
+            int winner = game.getWinner();
+            int count = game.getMoveCount();
+            for (int ply = 0; ply < count; ply++) {
+                int square = game.getSquare(ply);
+                int row = square / size;
+                int col = square % size;
+                if (square >= size * size || !board.isEmpty(row, col) || board.checkWin()) {
+                    illegal++;
+                    return;
+                }
+                int mover = ply % 2 + 1;
+                positions[ply]++;
+                if (board.isPacked()) {
+                    long empty = board.getEmptyMask();
+                    choices[ply] += Long.bitCount(empty);
+                    if (table != null) {
+                        int entry = table.lookup(empty);
+                        if (entry != EndgameTable.NOT_FOUND) {
+                            looked[ply]++;
+                            if (EndgameTable.isWin(entry)) {
+                                winning[ply]++;
+                                long after = empty & ~BoardState.attackMask(size, square);
+                                if (after != 0) {
+                                    int reply = table.lookup(after);
+                                    if (reply != EndgameTable.NOT_FOUND && EndgameTable.isWin(reply))
+                                        thrown[ply]++;
+                                }
+                            }
+                        }
+                    }
+                }
+                if (winner == mover)
+                    moverWins[ply]++;
+                board.setQueen(row, col);
+            }
+
+            if (count > 0) {
+                int opening = canonicalSquare(game.getSquare(0));
+                openings[opening]++;
+                if (winner == 1)
+                    openingWins[opening]++;
+            }
+            if (winner != 0) {
+                finished++;
+                moves += count;
+                duration += game.getDuration();
+                if (winner == 1)
+                    firstWins++;
+            }
+        }
+
+        /**
+         * merge adds up another thread's stats for the same size
+         *
+         * @param other the other stats
+         */
+        void merge(SizeStats other) {
+            boards += other.boards;
+            finished += other.finished;
+            firstWins += other.firstWins;
+            moves += other.moves;
+            duration += other.duration;
+            illegal += other.illegal;
+            for (int i = 0; i < openings.length; i++) {
+                openings[i] += other.openings[i];
+                openingWins[i] += other.openingWins[i];
+                positions[i] += other.positions[i];
+                choices[i] += other.choices[i];
+                moverWins[i] += other.moverWins[i];
+                looked[i] += other.looked[i];
+                winning[i] += other.winning[i];
+                thrown[i] += other.thrown[i];
+            }
+        }
+
+        /**
+         * canonicalSquare returns the smallest square a square maps to
+         * under the board symmetries
+         *
+         * @param square the square index (row * size + col)
+         * @return the canonical square index
+         */
+        private int canonicalSquare(int square) {
+            int canonical = square;
+            for (int t = 0; t < BoardSymmetry.COUNT; t++)
+                canonical = Math.min(canonical, BoardSymmetry.mapSquare(size, t, square / size, square % size));
+            return canonical;
+        }
+
+        /**
+         * print prints the report for the board size
+         */
+        void print() {
+            System.out.printf("%dx%d: %d boards, %d finished, %d illegal%n", size, size, boards, finished, illegal);
+            if (finished > 0)
+                System.out.printf("  first player won %.1f%%, %.1f moves and %.1f s per finished board%n",
+                        percent(firstWins, finished), (double) moves / finished, duration / 1000.0 / finished);
+
+            List<Integer> squares = new ArrayList<>();
+            for (int square = 0; square < openings.length; square++) {
+                if (openings[square] > 0)
+                    squares.add(square);
+            }
+            squares.sort((a, b) -> Double.compare(percent(openingWins[b], openings[b]),
+                    percent(openingWins[a], openings[a])));
+            System.out.print("  openings by first player's wins:");
+            for (int i = 0; i < Math.min(OPENINGS_SHOWN, squares.size()); i++) {
+                int square = squares.get(i);
+                System.out.printf(" (%d,%d) %.1f%% of %d", square / size, square % size,
+                        percent(openingWins[square], openings[square]), openings[square]);
+            }
+            if (squares.size() > OPENINGS_SHOWN)
+                System.out.printf(" ... %d more", squares.size() - OPENINGS_SHOWN);
+            System.out.println();
+
+            System.out.print("  ply  positions  choices  mover won");
+            System.out.println(table != null ? "  could win  threw it away" : "");
+            for (int ply = 0; ply < positions.length && positions[ply] > 0; ply++) {
+                System.out.printf("  %3d %10d %8s %9.1f%%", ply + 1, positions[ply],
+                        board.isPacked() ? String.format("%.1f", (double) choices[ply] / positions[ply]) : "-",
+                        percent(moverWins[ply], positions[ply]));
+                if (table != null)
+                    System.out.printf(" %9.1f%% %13.1f%%", percent(winning[ply], looked[ply]),
+                            percent(thrown[ply], winning[ply]));
+                System.out.println();
+            }
+        }
+
+        /**
+         * percent returns a count as a percentage of a total
+         *
+         * @param count the count
+         * @param total the total
+         * @return the percentage, or 0 if the total is 0
+         */
+        private static double percent(long count, long total) {
+            return total == 0 ? 0 : 100.0 * count / total;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+// **************************
+//
+// File:    GameArchive.java
+// Package: ---
+// Unit:    Class GameArchive
+//
+// **************************
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class reads an archive of finished games written by
+ * GameArchiveWriter. An archived game is one board played out: its game
+ * ID, when it started and how long it took, the board size, the two
+ * players, the winner, and the squares the queens went on in order.
+ * <P>
+ * The archive is a series of blocks of up to BLOCK_GAMES games each.
+ * Within a block each field is stored as its own column, encoded to suit
+ * it, and each column is compressed with Deflate on its own, so like
+ * values sit together and compress well. The layout, in big endian
+ * order, is:
+ * <PRE>
+ *   int    MAGIC
+ *   int    VERSION
+ *   blocks, each:
+ *     int    number of games
+ *     for each of the COLUMNS columns:
+ *       int    length encoded, int length stored, the stored bytes,
+ *              deflated unless the two lengths are the same
+ *   index:   for each block, long offset and int number of games
+ *   int    number of blocks
+ *   long   number of games
+ *   int    MAGIC
+ * </PRE>
+ * The columns are, in order:
+ * <PRE>
+ *   IDS        game IDs, each a zigzag varint of the change from the last
+ *   STARTS     start times in milliseconds, the same way
+ *   DURATIONS  durations in milliseconds, varints
+ *   SIZES      board sizes, as runs: varint run length, byte size
+ *   NAMES      the block's player names: varint count, then for each a
+ *              varint length and the name in UTF-8
+ *   PLAYERS    two varints a game, each 1 + the player's place in NAMES,
+ *              or 0 for nobody
+ *   RESULTS    a varint a game: number of moves * 4 + the winner, 1 or 2,
+ *              or 0 if the board was not finished
+ *   MOVES      every game's squares, row * size + column, packed in as
+ *              few bits as the game's board size needs, 6 bits on 6x6,
+ *              then two bytes of padding
+ * </PRE>
+ * A reader reads one block at a time, with positional reads, into
+ * buffers it reuses, so scanning an archive takes the same memory
+ * however large the file is, and any number of cursors may read the
+ * same archive at once, over different blocks. games streams the archive
+ * as PlayedGames, split between threads by blocks for a parallel stream.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameArchive {
+    public static final int MAGIC = 0x53514741;  // "SQGA"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+    public static final int TRAILER_BYTES = 16;
+    public static final int INDEX_ENTRY_BYTES = 12;
+
+    /**
+     * The most games in a block
+     */
+    public static final int BLOCK_GAMES = 1 << 16;
+
+    // columns
+    public static final int IDS = 0;
+    public static final int STARTS = 1;
+    public static final int DURATIONS = 2;
+    public static final int SIZES = 3;
+    public static final int NAMES = 4;
+    public static final int PLAYERS = 5;
+    public static final int RESULTS = 6;
+    public static final int MOVES = 7;
+    public static final int COLUMNS = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int[] counts;
+    private final long gameCount;
+    private final long size;
+
+    /**
+     * This class reads the games of a range of blocks in order, one at a
+     * time. The getters describe the game next returned true for.
+     */
+    public class Cursor {
+        private final int endBlock;
+        private final Inflater inflater = new Inflater();
+        private final byte[][] columns = new byte[COLUMNS][];
+        private ByteBuffer stored = ByteBuffer.allocate(0);
+        private int block;
+        private int count;
+        private int game;
+
+        // the block, decoded
+        private long[] ids = new long[0];
+        private long[] starts = new long[0];
+        private int[] durations = new int[0];
+        private byte[] sizes = new byte[0];
+        private String[] names = new String[0];
+        private int[] players = new int[0];
+        private byte[] winners = new byte[0];
+        private int[] moveStarts = new int[1];
+        private short[] squares = new short[0];
+
+        /**
+         * This constructor creates a cursor before the first game of a block
+         *
+         * @param fromBlock the first block to read
+         * @param toBlock   the block after the last to read
+         */
+        private Cursor(int fromBlock, int toBlock) {
+            this.block = fromBlock - 1;
+            this.endBlock = toBlock;
+            for (int i = 0; i < COLUMNS; i++)
+                columns[i] = new byte[0];
+        }
+
+        /**
+         * next moves to the next game
+         *
+         * @return true if there is one, false at the end of the range
+         * @throws IOException if the archive cannot be read or is corrupt
+         */
+        public boolean next() throws IOException {
+            while (++game >= count) {
+                if (block + 1 >= endBlock)
+                    return false;
+                read(++block);
+                game = -1;
+            }
+            return true;
+        }
+
+        /**
+         * getGameId returns the ID of the game the board was played in
+         *
+         * @return the game ID
+         */
+        public long getGameId() {
+            return ids[game];
+        }
+
+        /**
+         * getStart returns when the board started
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getStart() {
+            return starts[game];
+        }
+
+        /**
+         * getDuration returns how long the board took
+         *
+         * @return the time in milliseconds
+         */
+        public int getDuration() {
+            return durations[game];
+        }
+
+        /**
+         * getSize returns the board size
+         *
+         * @return the board size
+         */
+        public int getSize() {
+            return sizes[game];
+        }
+
+        /**
+         * getName returns a player's name
+         *
+         * @param seat 1 for the player who moved first, 2 for the other
+         * @return the name, or null if there was none
+         */
+        public String getName(int seat) {
+            int name = players[2 * game + seat - 1];
+            return name == 0 ? null : names[name - 1];
+        }
+
+        /**
+         * getWinner returns who won
+         *
+         * @return 1 or 2 for the winner's seat, or 0 if the board was not finished
+         */
+        public int getWinner() {
+            return winners[game];
+        }
+
+        /**
+         * getMoveCount returns the number of queens placed
+         *
+         * @return the number of moves
+         */
+        public int getMoveCount() {
+            return moveStarts[game + 1] - moveStarts[game];
+        }
+
+        /**
+         * getSquare returns where a queen was placed
+         *
+         * @param move the move, from 0
+         * @return the square, row * size + column
+         */
+        public int getSquare(int move) {
+            return squares[moveStarts[game] + move];
+        }
+
+        /**
+         * getMoveRow returns the row a queen was placed in
+         *
+         * @param move the move, from 0
+         * @return the row
+         */
+        public int getMoveRow(int move) {
+            return getSquare(move) / getSize();
+        }
+
+        /**
+         * getMoveCol returns the column a queen was placed in
+         *
+         * @param move the move, from 0
+         * @return the column
+         */
+        public int getMoveCol(int move) {
+            return getSquare(move) % getSize();
+        }
+
+        /**
+         * toPlayedGame copies the game out of the cursor
+         *
+         * @return the game
+         */
+        public PlayedGame toPlayedGame() {
+            short[] moves = Arrays.copyOfRange(squares, moveStarts[game], moveStarts[game + 1]);
+            return new PlayedGame(ids[game], starts[game], durations[game], sizes[game], getName(1), getName(2),
+                    winners[game], moves);
+        }
+
+        /**
+         * read reads and decodes a block
+         *
+         * @param index the block
+         * @throws IOException if the block cannot be read or is corrupt
+         */
+        private void read(int index) throws IOException {
+            long start = offsets[index];
+            long end = index + 1 < offsets.length ? offsets[index + 1] : size - TRAILER_BYTES -
+                    (long) INDEX_ENTRY_BYTES * offsets.length;
+            int length = (int) (end - start);
+            if (stored.capacity() < length)
+                stored = ByteBuffer.allocate(length);
+            stored.clear().limit(length);
+            while (stored.hasRemaining()) {
+                if (channel.read(stored, start + stored.position()) < 0)
+                    throw new IOException("GameArchive: " + path + " is truncated");
+            }
+            stored.flip();
+
+            count = stored.getInt();
+            if (count != counts[index] || stored.getInt() != COLUMNS)
+                throw new IOException("GameArchive: " + path + " is corrupt");
+            for (int column = 0; column < COLUMNS; column++)
+                columns[column] = inflate(columns[column]);
+            decode();
+        }
+
+        /**
+         * inflate reads the next column of the stored block
+         *
+         * @param reuse a buffer to decode into, if it is large enough
+         * @return the column, the length encoded, in reuse or a larger buffer
+         * @throws IOException if the column is corrupt
+         */
+        private byte[] inflate(byte[] reuse) throws IOException {
+            int encoded = stored.getInt();
+            int length = stored.getInt();
+            byte[] column = reuse.length >= encoded ? reuse : new byte[encoded];
+            if (length == encoded) {
+                stored.get(column, 0, encoded);
+                return column;
+            }
+            inflater.reset();
+            inflater.setInput(stored.array(), stored.position(), length);
+            try {
+                if (inflater.inflate(column, 0, encoded) != encoded)
+                    throw new IOException("GameArchive: " + path + " is corrupt");
+            } catch (DataFormatException e) {
+                throw new IOException("GameArchive: " + path + " is corrupt", e);
+            }
+            stored.position(stored.position() + length);
+            return column;
+        }
+
+        /**
+         * decode decodes the columns of a block into its games
+         */
+        private void decode() {
+            if (ids.length < count) {
+                ids = new long[count];
+                starts = new long[count];
+                durations = new int[count];
+                sizes = new byte[count];
+                players = new int[2 * count];
+                winners = new byte[count];
+                moveStarts = new int[count + 1];
+            }
+            Varints in = new Varints();
+
+            in.bytes = columns[IDS];
+            in.position = 0;
+            long last = 0;
+            for (int i = 0; i < count; i++)
+                ids[i] = last += in.zigzag();
+
+            in.bytes = columns[STARTS];
+            in.position = 0;
+            last = 0;
+            for (int i = 0; i < count; i++)
+                starts[i] = last += in.zigzag();
+
+            in.bytes = columns[DURATIONS];
+            in.position = 0;
+            for (int i = 0; i < count; i++)
+                durations[i] = (int) in.next();
+
+            in.bytes = columns[SIZES];
+            in.position = 0;
+            for (int i = 0; i < count; ) {
+                int run = (int) in.next();
+                byte size = in.bytes[in.position++];
+                for (int end = i + run; i < end; i++)
+                    sizes[i] = size;
+            }
+
+            in.bytes = columns[NAMES];
+            in.position = 0;
+            int nameCount = (int) in.next();
+            if (names.length < nameCount)
+                names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                int length = (int) in.next();
+                names[i] = new String(in.bytes, in.position, length, StandardCharsets.UTF_8);
+                in.position += length;
+            }
+
+            in.bytes = columns[PLAYERS];
+            in.position = 0;
+            for (int i = 0; i < 2 * count; i++)
+                players[i] = (int) in.next();
+
+            in.bytes = columns[RESULTS];
+            in.position = 0;
+            int moves = 0;
+            for (int i = 0; i < count; i++) {
+                int result = (int) in.next();
+                winners[i] = (byte) (result & 3);
+                moveStarts[i] = moves;
+                moves += result >>> 2;
+            }
+            moveStarts[count] = moves;
+
+            if (squares.length < moves)
+                squares = new short[moves];
+            byte[] packed = columns[MOVES];
+            long bit = 0;
+            for (int i = 0; i < count; i++) {
+                int width = bitsFor(sizes[i]);
+                for (int move = moveStarts[i]; move < moveStarts[i + 1]; move++) {
+                    squares[move] = (short) readBits(packed, bit, width);
+                    bit += width;
+                }
+            }
+        }
+    }
+
+    /**
+     * This class splits a range of blocks for a stream. It splits in half
+     * by blocks until it starts reading, then reads its blocks in order.
+     */
+    private class BlockSpliterator implements Spliterator<PlayedGame> {
+        private int fromBlock;
+        private final int toBlock;
+        private Cursor cursor;
+
+        /**
+         * This constructor creates a spliterator over a range of blocks
+         *
+         * @param fromBlock the first block
+         * @param toBlock   the block after the last
+         */
+        BlockSpliterator(int fromBlock, int toBlock) {
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        /**
+         * tryAdvance hands the next game to an action
+         *
+         * @param action the action
+         * @return true if there was a game, false at the end of the range
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super PlayedGame> action) {
+            if (cursor == null)
+                cursor = cursor(fromBlock, toBlock);
+            try {
+                if (!cursor.next())
+                    return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            action.accept(cursor.toPlayedGame());
+            return true;
+        }
+
+        /**
+         * trySplit hands the first half of the blocks to a new spliterator
+         *
+         * @return the new spliterator, or null once reading has started or
+         *         there is only one block
+         */
+        @Override
+        public Spliterator<PlayedGame> trySplit() {
+            if (cursor != null || toBlock - fromBlock < 2)
+                return null;
+            int middle = (fromBlock + toBlock) >>> 1;
+            BlockSpliterator front = new BlockSpliterator(fromBlock, middle);
+            fromBlock = middle;
+            return front;
+        }
+
+        /**
+         * estimateSize returns the number of games in the blocks
+         *
+         * @return the number of games, exact until reading starts
+         */
+        @Override
+        public long estimateSize() {
+            long games = 0;
+            for (int block = fromBlock; block < toBlock; block++)
+                games += counts[block];
+            return games;
+        }
+
+        /**
+         * characteristics describes the games
+         *
+         * @return the spliterator's characteristics
+         */
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | (cursor == null ? SIZED | SUBSIZED : 0);
+        }
+    }
+
+    /**
+     * This class reads varints from a column
+     */
+    private static class Varints {
+        byte[] bytes;
+        int position;
+
+        /**
+         * next reads an unsigned varint
+         *
+         * @return the value
+         */
+        long next() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /**
+         * zigzag reads a signed varint
+         *
+         * @return the value
+         */
+        long zigzag() {
+            long value = next();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * This constructor reads an archive's index
+     *
+     * @param path    the archive file
+     * @param channel the open file
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    private GameArchive(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+        ByteBuffer header = read(0, HEADER_BYTES);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            throw new IOException("GameArchive: " + path + " is not a game archive");
+        ByteBuffer trailer = read(size - TRAILER_BYTES, TRAILER_BYTES);
+        int blocks = trailer.getInt();
+        this.gameCount = trailer.getLong();
+        if (trailer.getInt() != MAGIC || blocks < 0 ||
+                HEADER_BYTES + (long) INDEX_ENTRY_BYTES * blocks + TRAILER_BYTES > size)
+            throw new IOException("GameArchive: " + path + " is corrupt or was not closed");
+        ByteBuffer index = read(size - TRAILER_BYTES - (long) INDEX_ENTRY_BYTES * blocks, INDEX_ENTRY_BYTES * blocks);
+        this.offsets = new long[blocks];
+        this.counts = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            offsets[i] = index.getLong();
+            counts[i] = index.getInt();
+        }
+    }
+
+    /**
+     * open opens an archive file for reading
+     *
+     * @param path the archive file
+     * @return the archive
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static GameArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new GameArchive(path, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * getGameCount returns the number of games in the archive
+     *
+     * @return the number of games
+     */
+    public long getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * getBlockCount returns the number of blocks in the archive
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    /**
+     * getBlockGames returns the number of games in a block
+     *
+     * @param block the block
+     * @return the number of games
+     */
+    public int getBlockGames(int block) {
+        return counts[block];
+    }
+
+    /**
+     * getFileSize returns the size of the archive file
+     *
+     * @return the size in bytes
+     */
+    public long getFileSize() {
+        return size;
+    }
+
+    /**
+     * cursor returns a cursor over every game in the archive
+     *
+     * @return the cursor, before the first game
+     */
+    public Cursor cursor() {
+        return cursor(0, offsets.length);
+    }
+
+    /**
+     * cursor returns a cursor over the games of a range of blocks
+     *
+     * @param fromBlock the first block
+     * @param toBlock   the block after the last
+     * @return the cursor, before the first game
+     */
+    public Cursor cursor(int fromBlock, int toBlock) {
+        return new Cursor(fromBlock, toBlock);
+    }
+
+    /**
+     * games streams every game in the archive, reading a block at a time.
+     * A parallel stream splits the archive between threads by blocks.
+     *
+     * @return the stream; an I/O error while it runs is thrown as an
+     *         UncheckedIOException
+     */
+    public Stream<PlayedGame> games() {
+        return StreamSupport.stream(new BlockSpliterator(0, offsets.length), false);
+    }
+
+    /**
+     * close closes the archive file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * bitsFor returns the number of bits a square of a board size is packed in
+     *
+     * @param size the board size
+     * @return the number of bits, at least 1
+     */
+    public static int bitsFor(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size * size - 1));
+    }
+
+    /**
+     * readBits reads a value packed in a bit stream, most significant bit
+     * first. The stream must have two bytes of padding after its last value.
+     *
+     * @param packed the bit stream
+     * @param bit    the position of the value's first bit
+     * @param width  the number of bits, at most 17
+     * @return the value
+     */
+    static int readBits(byte[] packed, long bit, int width) {
+        int at = (int) (bit >>> 3);
+        int window = (packed[at] & 0xFF) << 16 | (packed[at + 1] & 0xFF) << 8 | (packed[at + 2] & 0xFF);
+        return (window >>> (24 - (int) (bit & 7) - width)) & ((1 << width) - 1);
+    }
+
+    /**
+     * read reads part of the file
+     *
+     * @param position where to start
+     * @param length   the number of bytes
+     * @return a buffer holding them, ready to read
+     * @throws IOException if the file is too short or cannot be read
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        if (position < 0 || position + length > size)
+            throw new IOException("GameArchive: " + path + " is not a game archive");
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.BIG_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("GameArchive: " + path + " is truncated");
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,396 @@
+// ********************************
+//
+// File:    GameArchiveWriter.java
+// Package: ---
+// Unit:    Class GameArchiveWriter
+//
+// ********************************
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes finished games to a GameArchive file, a block of
+ * columns at a time. Games are collected into the columns as they are
+ * added; each full block is encoded, compressed and written, and close
+ * writes the last block and the index. Only one block is held in memory,
+ * so any number of games can be written.
+ * <P>
+ * Run on its own, it archives the finished games in a GameJournal
+ * directory: every board that was won, and every board that was being
+ * played when its game ended. Boards still being played are left out.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameArchiveWriter {
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final Bytes[] columns;
+    private final Map<String, Integer> names;
+    private final Bytes nameBytes;
+    private final Bytes index;
+    private ByteBuffer out;
+    private int[] squares;
+    private long position;
+    private int blocks;
+    private long games;
+
+    // the block being collected
+    private int count;
+    private long lastId;
+    private long lastStart;
+    private int runSize;
+    private int runLength;
+    private long bit;
+
+    /**
+     * This class is a growable byte array that varints and bits are written to
+     */
+    private static class Bytes {
+        byte[] bytes = new byte[1024];
+        int length;
+
+        /**
+         * put appends a byte
+         *
+         * @param b the byte
+         */
+        void put(int b) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            bytes[length++] = (byte) b;
+        }
+
+        /**
+         * put appends bytes
+         *
+         * @param b      the bytes
+         * @param offset where they start in b
+         * @param count  the number of bytes
+         */
+        void put(byte[] b, int offset, int count) {
+            while (length + count > bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            System.arraycopy(b, offset, bytes, length, count);
+            length += count;
+        }
+
+        /**
+         * varint appends an unsigned varint
+         *
+         * @param value the value, not negative
+         */
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        /**
+         * zigzag appends a signed varint
+         *
+         * @param value the value
+         */
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * bits appends a value to a bit stream, most significant bit first
+         *
+         * @param bit   the position of the value's first bit; the stream
+         *              holds every bit before it
+         * @param value the value
+         * @param width the number of bits
+         */
+        void bits(long bit, int value, int width) {
+            for (int i = width - 1; i >= 0; i--, bit++) {
+                if ((bit & 7) == 0)
+                    put(0);
+                bytes[length - 1] |= ((value >>> i) & 1) << (7 - (bit & 7));
+            }
+        }
+    }
+
+    /**
+     * This constructor creates an archive file, replacing any file there
+     *
+     * @param path the archive file
+     * @throws IOException if the file cannot be created
+     */
+    public GameArchiveWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        deflater = new Deflater();
+        columns = new Bytes[GameArchive.COLUMNS];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = new Bytes();
+        names = new HashMap<>();
+        nameBytes = new Bytes();
+        index = new Bytes();
+        squares = new int[BoardState.DEFAULT_SIZE * BoardState.DEFAULT_SIZE];
+        out = ByteBuffer.allocate(1 << 16);
+        out.putInt(GameArchive.MAGIC).putInt(GameArchive.VERSION).flip();
+        write();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java GameArchiveWriter <journaldir> <archivefile>");
+            System.exit(1);
+        }
+        try {
+            long start = System.nanoTime();
+            GameArchiveWriter writer = new GameArchiveWriter(Paths.get(args[1]));
+            writer.archive(Paths.get(args[0]));
+            writer.close();
+            System.out.printf("Archived %d games in %d blocks, %d bytes (%.1f bytes/game), in %.1f s%n",
+                    writer.games, writer.blocks, writer.position,
+                    (double) writer.position / Math.max(1, writer.games), (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("GameArchiveWriter: I/O error");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * add adds a finished game
+     *
+     * @param gameId    the ID of the game the board was played in
+     * @param start     when the board started, in milliseconds since the epoch
+     * @param duration  how long it took, in milliseconds
+     * @param size      the board size
+     * @param name1     the name of the player who moved first, or null
+     * @param name2     the name of the other player, or null
+     * @param winner    1 or 2 for the winner's seat, or 0 if the board was not finished
+     * @param squares   the squares the queens went on, row * size + column, in order
+     * @param moveCount the number of queens
+     * @throws IOException if a full block cannot be written
+     */
+    public void add(long gameId, long start, long duration, int size, String name1, String name2, int winner,
+                    int[] squares, int moveCount) throws IOException {
+        if (!BoardState.isValidSize(size) || winner < 0 || winner > 2 || moveCount > size * size)
+            throw new IllegalArgumentException("GameArchiveWriter: bad game " + gameId);
+        columns[GameArchive.IDS].zigzag(gameId - lastId);
+        lastId = gameId;
+        columns[GameArchive.STARTS].zigzag(start - lastStart);
+        lastStart = start;
+        columns[GameArchive.DURATIONS].varint(Math.max(0, Math.min(duration, Integer.MAX_VALUE)));
+
+        if (size == runSize) {
+            runLength++;
+        } else {
+            endRun();
+            runSize = size;
+            runLength = 1;
+        }
+
+        columns[GameArchive.PLAYERS].varint(nameOf(name1));
+        columns[GameArchive.PLAYERS].varint(nameOf(name2));
+        columns[GameArchive.RESULTS].varint(((long) moveCount << 2) | winner);
+
+        int width = GameArchive.bitsFor(size);
+        for (int i = 0; i < moveCount; i++) {
+            columns[GameArchive.MOVES].bits(bit, squares[i], width);
+            bit += width;
+        }
+
+        games++;
+        if (++count == GameArchive.BLOCK_GAMES)
+            writeBlock();
+    }
+
+    /**
+     * close writes the last block and the index, and closes the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            if (count > 0)
+                writeBlock();
+            out.clear();
+            ensure(index.length + GameArchive.TRAILER_BYTES);
+            out.put(index.bytes, 0, index.length);
+            out.putInt(blocks).putLong(games).putInt(GameArchive.MAGIC).flip();
+            write();
+        } finally {
+            channel.close();
+            deflater.end();
+        }
+    }
+
+    /**
+     * getGameCount returns the number of games added
+     *
+     * @return the number of games
+     */
+    public long getGameCount() {
+        return games;
+    }
+
+    /**
+     * getBytesWritten returns the number of bytes written to the file so far
+     *
+     * @return the number of bytes
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * add adds a played board
+     *
+     * @param game the board
+     * @throws IOException if a full block cannot be written
+     */
+    public void add(PlayedGame game) throws IOException {
+        if (squares.length < game.getMoveCount())
+            squares = new int[game.getMoveCount()];
+        for (int i = 0; i < game.getMoveCount(); i++)
+            squares[i] = game.getSquare(i);
+        add(game.getGameId(), game.getStart(), game.getDuration(), game.getSize(), game.getName(1),
+                game.getName(2), game.getWinner(), squares, game.getMoveCount());
+    }
+
+    /**
+     * archive adds every finished board in a journal directory
+     *
+     * @param journal the journal directory
+     * @throws IOException if the journal cannot be read or the archive written
+     */
+    public void archive(Path journal) throws IOException {
+        try (Stream<PlayedGame> games = GameJournal.games(journal)) {
+            Iterator<PlayedGame> boards = games.iterator();
+            while (boards.hasNext())
+                add(boards.next());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * nameOf returns a player's entry in the block's names
+     *
+     * @param name the player's name, or null
+     * @return 1 + the name's place in the names, or 0 for null
+     */
+    private int nameOf(String name) {
+        if (name == null)
+            return 0;
+        Integer known = names.get(name);
+        if (known != null)
+            return known;
+        int entry = names.size() + 1;
+        names.put(name, entry);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        nameBytes.varint(bytes.length);
+        nameBytes.put(bytes, 0, bytes.length);
+        return entry;
+    }
+
+    /**
+     * endRun writes the run of board sizes being counted
+     */
+    private void endRun() {
+        if (runLength > 0) {
+            columns[GameArchive.SIZES].varint(runLength);
+            columns[GameArchive.SIZES].put(runSize);
+        }
+        runLength = 0;
+    }
+
+    /**
+     * writeBlock encodes, compresses and writes the block being collected,
+     * then starts a new one
+     *
+     * @throws IOException if the block cannot be written
+     */
+    private void writeBlock() throws IOException {
+        endRun();
+        // the name count goes first, so the names column is put together now
+        columns[GameArchive.NAMES].varint(names.size());
+        columns[GameArchive.NAMES].put(nameBytes.bytes, 0, nameBytes.length);
+        columns[GameArchive.MOVES].put(0);
+        columns[GameArchive.MOVES].put(0);
+
+        ByteBuffer entry = ByteBuffer.allocate(GameArchive.INDEX_ENTRY_BYTES).putLong(position).putInt(count);
+        index.put(entry.array(), 0, GameArchive.INDEX_ENTRY_BYTES);
+
+        out.clear();
+        out.putInt(count).putInt(GameArchive.COLUMNS);
+        for (Bytes column : columns) {
+            ensure(8 + column.length);
+            out.putInt(column.length);
+            int lengthAt = out.position();
+            int start = lengthAt + 4;
+            deflater.reset();
+            deflater.setInput(column.bytes, 0, column.length);
+            deflater.finish();
+            int stored = 0;
+            while (!deflater.finished() && stored < column.length)
+                stored += deflater.deflate(out.array(), start + stored, column.length - stored);
+            // stores the column as it is if deflating did not make it smaller
+            if (!deflater.finished() || stored >= column.length) {
+                out.position(start);
+                out.put(column.bytes, 0, column.length);
+                stored = column.length;
+            }
+            out.putInt(lengthAt, stored);
+            out.position(start + stored);
+        }
+        out.flip();
+        write();
+
+        blocks++;
+        for (Bytes column : columns)
+            column.length = 0;
+        nameBytes.length = 0;
+        names.clear();
+        count = 0;
+        lastId = 0;
+        lastStart = 0;
+        runSize = 0;
+        bit = 0;
+    }
+
+    /**
+     * ensure grows the output buffer to have room for more bytes
+     *
+     * @param more the number of bytes needed after the position
+     */
+    private void ensure(int more) {
+        if (out.remaining() < more) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * out.capacity(), out.position() + more));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+
+    /**
+     * write writes the output buffer to the end of the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void write() throws IOException {
+        while (out.hasRemaining())
+            position += channel.write(out, position);
+    }
+}
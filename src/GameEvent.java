@@ -0,0 +1,331 @@
+// ************************
+//
+// File:    GameEvent.java
+// Package: ---
+// Unit:    Class GameEvent
+//
+// ************************
+
+/**
+ * This class holds one report from the Six Queens server, as an
+ * AsyncModelProxy publishes it: what a SixQueensModelListener would have
+ * been told, as an object. It cannot be changed.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameEvent {
+    /**
+     * The kinds of report, one for each SixQueensModelListener method
+     */
+    public enum Kind {
+        BOARD_SIZE, NEW_GAME, SET_QUEEN, WAITING_FOR_PARTNER, YOUR_TURN, THEIR_TURN, YOU_WIN, THEY_WIN, QUIT,
+        SESSION_TOKEN, SNAPSHOT
+    }
+
+    private static final GameEvent NEW_GAME = new GameEvent(Kind.NEW_GAME, 0, 0, null, 0, null, 0);
+    private static final GameEvent WAITING_FOR_PARTNER = new GameEvent(Kind.WAITING_FOR_PARTNER, 0, 0, null, 0,
+            null, 0);
+    private static final GameEvent YOUR_TURN = new GameEvent(Kind.YOUR_TURN, 0, 0, null, 0, null, 0);
+    private static final GameEvent YOU_WIN = new GameEvent(Kind.YOU_WIN, 0, 0, null, 0, null, 0);
+    private static final GameEvent QUIT = new GameEvent(Kind.QUIT, 0, 0, null, 0, null, 0);
+
+    private final Kind kind;
+    private final int row;
+    private final int col;
+    private final String name;
+    private final long token;
+    private final BoardState board;
+    private final int status;
+
+    /**
+     * This constructor creates an event
+     *
+     * @param kind   the kind of report
+     * @param row    the queen's row, or the board size
+     * @param col    the queen's column
+     * @param name   the other player's name
+     * @param token  the session token
+     * @param board  the snapshot's board
+     * @param status the snapshot's status
+     */
+    private GameEvent(Kind kind, int row, int col, String name, long token, BoardState board, int status) {
+        this.kind = kind;
+        this.row = row;
+        this.col = col;
+        this.name = name;
+        this.token = token;
+        this.board = board;
+        this.status = status;
+    }
+
+    /**
+     * boardSize returns a board size report
+     *
+     * @param size the number of rows and columns
+     * @return the event
+     */
+    public static GameEvent boardSize(int size) {
+        return new GameEvent(Kind.BOARD_SIZE, size, 0, null, 0, null, 0);
+    }
+
+    /**
+     * newGame returns a new game report
+     *
+     * @return the event
+     */
+    public static GameEvent newGame() {
+        return NEW_GAME;
+    }
+
+    /**
+     * setQueen returns a queen placed report
+     *
+     * @param row the row the queen was placed in
+     * @param col the column the queen was placed in
+     * @return the event
+     */
+    public static GameEvent setQueen(int row, int col) {
+        return new GameEvent(Kind.SET_QUEEN, row, col, null, 0, null, 0);
+    }
+
+    /**
+     * waitingForPartner returns a waiting for partner report
+     *
+     * @return the event
+     */
+    public static GameEvent waitingForPartner() {
+        return WAITING_FOR_PARTNER;
+    }
+
+    /**
+     * yourTurn returns a your turn report
+     *
+     * @return the event
+     */
+    public static GameEvent yourTurn() {
+        return YOUR_TURN;
+    }
+
+    /**
+     * theirTurn returns a their turn report
+     *
+     * @param name the other player's name
+     * @return the event
+     */
+    public static GameEvent theirTurn(String name) {
+        return new GameEvent(Kind.THEIR_TURN, 0, 0, name, 0, null, 0);
+    }
+
+    /**
+     * youWin returns a you win report
+     *
+     * @return the event
+     */
+    public static GameEvent youWin() {
+        return YOU_WIN;
+    }
+
+    /**
+     * theyWin returns a they win report
+     *
+     * @param name the other player's name
+     * @return the event
+     */
+    public static GameEvent theyWin(String name) {
+        return new GameEvent(Kind.THEY_WIN, 0, 0, name, 0, null, 0);
+    }
+
+    /**
+     * quit returns a quit report
+     *
+     * @return the event
+     */
+    public static GameEvent quit() {
+        return QUIT;
+    }
+
+    /**
+     * sessionToken returns a session token report
+     *
+     * @param token the session token
+     * @return the event
+     */
+    public static GameEvent sessionToken(long token) {
+        return new GameEvent(Kind.SESSION_TOKEN, 0, 0, null, token, null, 0);
+    }
+
+    /**
+     * snapshot returns a snapshot report
+     *
+     * @param board     the board, which is kept and must not be changed
+     * @param status    WAITING, YOUR_TURN, THEIR_TURN, YOU_WON or THEY_WON
+     * @param theirName the other player's name, or null while waiting
+     * @return the event
+     */
+    public static GameEvent snapshot(BoardState board, int status, String theirName) {
+        return new GameEvent(Kind.SNAPSHOT, board.getSize(), 0, theirName, 0, board, status);
+    }
+
+    /**
+     * getKind returns the kind of report
+     *
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * getSize returns the board size of a board size or snapshot report
+     *
+     * @return the number of rows and columns
+     */
+    public int getSize() {
+        return row;
+    }
+
+    /**
+     * getRow returns the row of a queen placed report
+     *
+     * @return the row
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * getCol returns the column of a queen placed report
+     *
+     * @return the column
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * getName returns the other player's name, in a their turn, they win
+     * or snapshot report
+     *
+     * @return the name, or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * getToken returns the token of a session token report
+     *
+     * @return the session token
+     */
+    public long getToken() {
+        return token;
+    }
+
+    /**
+     * getBoard returns the board of a snapshot report
+     *
+     * @return the board, which must not be changed, or null
+     */
+    public BoardState getBoard() {
+        return board;
+    }
+
+    /**
+     * getStatus returns the status of a snapshot report
+     *
+     * @return WAITING, YOUR_TURN, THEIR_TURN, YOU_WON or THEY_WON
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * deliver reports this event to a model listener, so the code written
+     * for ModelProxy's reports can take them from a subscription too
+     *
+     * @param listener the listener
+     */
+    public void deliver(SixQueensModelListener listener) {
+        switch (kind) {
+            // board size case
+            case BOARD_SIZE:
+                listener.boardSize(row);
+                break;
+
+            // new game case
+            case NEW_GAME:
+                listener.newGame();
+                break;
+
+            // queen placed case
+            case SET_QUEEN:
+                listener.setQueen(row, col);
+                break;
+
+            // waiting for partner case
+            case WAITING_FOR_PARTNER:
+                listener.waitingForPartner();
+                break;
+
+            // your turn case
+            case YOUR_TURN:
+                listener.yourTurn();
+                break;
+
+            // their turn case
+            case THEIR_TURN:
+                listener.theirTurn(name);
+                break;
+
+            // you win case
+            case YOU_WIN:
+                listener.youWin();
+                break;
+
+            // they win case
+            case THEY_WIN:
+                listener.theyWin(name);
+                break;
+
+            // quit case
+            case QUIT:
+                listener.quit();
+                break;
+
+            // session token case
+            case SESSION_TOKEN:
+                listener.sessionToken(token);
+                break;
+
+            // snapshot case
+            default:
+                listener.snapshot(board, status, name);
+                break;
+        }
+    }
+
+    /**
+     * toString returns the event as text
+     *
+     * @return the text
+     */
+    @Override
+    public String toString() {
+        switch (kind) {
+            case BOARD_SIZE:
+                return "BOARD_SIZE " + row;
+            case SET_QUEEN:
+                return "SET_QUEEN " + row + " " + col;
+            case THEIR_TURN:
+            case THEY_WIN:
+                return kind + " " + name;
+            case SESSION_TOKEN:
+                return "SESSION_TOKEN " + Long.toHexString(token);
+            case SNAPSHOT:
+                return "SNAPSHOT " + row + " status " + status + (name == null ? "" : " " + name);
+            default:
+                return kind.toString();
+        }
+    }
+}
@@ -0,0 +1,1207 @@
+// **************************
+//
+// File:    GameJournal.java
+// Package: ---
+// Unit:    Class GameJournal
+//
+// **************************
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * This class keeps a journal of every game's events on disk: players
+ * joining, their session tokens, new games, moves, wins and quits. The
+ * server replays it when it starts, to put the games that were running
+ * back in play, and it is the history of every game played.
+ * <P>
+ * The journal is a directory of segment files, each memory-mapped and
+ * only ever appended to. Every event is one fixed-size record, so
+ * appending one is a handful of stores into the mapping, under a lock
+ * held for nothing else, and no system call. Writing to the mapping
+ * puts the record in the operating system's page cache at once, so it
+ * survives the server being killed; a commit thread forces what was
+ * appended to the disk every commit interval, one sync for every record
+ * appended meanwhile, so it also survives the machine going down, less
+ * the last interval. The commit thread also creates each next segment
+ * before it is needed, and writes each segment out in full when it is
+ * created, so appends rarely wait on the file system and a full disk is
+ * an error when a segment is created rather than a crash mid-append.
+ * <P>
+ * A segment starts with a header slot, then records, in big endian
+ * order:
+ * <PRE>
+ *   header:  int MAGIC, int VERSION, long segment number,
+ *            long highest game ID so far,
+ *            long oldest segment holding a game still running
+ *   record:  long game ID, long time in milliseconds,
+ *            byte type, byte seat, byte size or row, byte name length or column,
+ *            long session token, byte[NAME_BYTES] name,
+ *            int CRC-32C of the bytes before it
+ * </PRE>
+ * A segment is read up to its first record that is empty or fails its
+ * checksum, which is where the server stopped. A server never appends
+ * to a segment it did not create, so a torn record is never followed by
+ * a good one. Names longer than NAME_BYTES in UTF-8 are cut short.
+ * <P>
+ * Recovery reads from the oldest segment the newest header names, so it
+ * reads the games that were running, not the whole history. Older
+ * segments are left for the archive.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameJournal {
+    public static final int MAGIC = 0x53514A4E;  // "SQJN"
+    public static final int VERSION = 1;
+    public static final int RECORD_BYTES = 64;
+    public static final int NAME_BYTES = 32;
+
+    /**
+     * The default segment file size
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    /**
+     * The default time between commits, in milliseconds
+     */
+    public static final long DEFAULT_COMMIT_MILLIS = 10;
+
+    // record types
+    public static final byte JOIN = 'J';
+    public static final byte TOKEN = 'T';
+    public static final byte NEW_GAME = 'N';
+    public static final byte MOVE = 'Q';
+    public static final byte WIN = 'W';
+    public static final byte QUIT = 'B';
+
+    // record layout
+    private static final int GAME_ID = 0;
+    private static final int TIME = 8;
+    private static final int TYPE = 16;
+    private static final int SEAT = 17;
+    private static final int ARG1 = 18;
+    private static final int ARG2 = 19;
+    private static final int SESSION_TOKEN = 20;
+    private static final int NAME = 28;
+    private static final int CHECKSUM = NAME + NAME_BYTES;
+
+    // header layout
+    private static final int HEADER_NUMBER = 8;
+    private static final int HEADER_MAX_ID = 16;
+    private static final int HEADER_OLDEST_LIVE = 24;
+
+    private static final String SUFFIX = ".journal";
+    private static final int FILL_BYTES = 1 << 20;
+    private static final int PAGE_BYTES = 4096;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long commitMillis;
+    private final ReentrantLock lock;
+    private final CRC32C crc;
+    private final ArrayDeque<Segment> sealed;
+    private final Map<Long, Long> firstSegment;
+    private final List<Game> recovered;
+    private final Thread committer;
+    private Segment current;
+    private Segment spare;
+    private long maxGameId;
+    private long records;
+    private volatile long commits;
+    private boolean failed;
+    private volatile boolean closed;
+
+    /**
+     * This class holds one mapped segment file
+     */
+    private static class Segment {
+        final long number;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        volatile int tail;
+        int committed;
+        int lastTail;
+
+        /**
+         * This constructor wraps a mapped segment
+         *
+         * @param number the segment number
+         * @param buffer the mapped file
+         */
+        Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / RECORD_BYTES * RECORD_BYTES;
+            this.tail = RECORD_BYTES;
+            this.committed = 0;
+        }
+    }
+
+    /**
+     * This class reads one record of a segment. scan hands the same
+     * Record to the visitor for every record, moved along the segment.
+     */
+    public static class Record {
+        private MappedByteBuffer buffer;
+        private int offset;
+        private long segment;
+
+        /**
+         * getSegment returns the number of the segment the record is in
+         *
+         * @return the segment number
+         */
+        public long getSegment() {
+            return segment;
+        }
+
+        /**
+         * getGameId returns the ID of the game the record is about
+         *
+         * @return the game ID
+         */
+        public long getGameId() {
+            return buffer.getLong(offset + GAME_ID);
+        }
+
+        /**
+         * getTime returns when the record was appended
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getTime() {
+            return buffer.getLong(offset + TIME);
+        }
+
+        /**
+         * getType returns the record type: JOIN, TOKEN, NEW_GAME, MOVE, WIN or QUIT
+         *
+         * @return the type
+         */
+        public byte getType() {
+            return buffer.get(offset + TYPE);
+        }
+
+        /**
+         * getSeat returns the player the record is about, 1 or 2, or 0 for
+         * the whole game
+         *
+         * @return the seat
+         */
+        public int getSeat() {
+            return buffer.get(offset + SEAT);
+        }
+
+        /**
+         * getSize returns the board size of a JOIN record
+         *
+         * @return the board size
+         */
+        public int getSize() {
+            return buffer.get(offset + ARG1);
+        }
+
+        /**
+         * getRow returns the row of a MOVE record
+         *
+         * @return the row
+         */
+        public int getRow() {
+            return buffer.get(offset + ARG1);
+        }
+
+        /**
+         * getCol returns the column of a MOVE record
+         *
+         * @return the column
+         */
+        public int getCol() {
+            return buffer.get(offset + ARG2);
+        }
+
+        /**
+         * getToken returns the session token of a TOKEN record
+         *
+         * @return the session token
+         */
+        public long getToken() {
+            return buffer.getLong(offset + SESSION_TOKEN);
+        }
+
+        /**
+         * getName returns the player's name in a JOIN record
+         *
+         * @return the name, cut to NAME_BYTES of UTF-8
+         */
+        public String getName() {
+            byte[] name = new byte[buffer.get(offset + ARG2)];
+            buffer.get(offset + NAME, name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * This class holds a game that was still running when the journal was
+     * last written, as far as recovery read it: its players and the moves
+     * of its current board.
+     */
+    public static class Game {
+        private final long id;
+        private final int size;
+        private final long segment;
+        private final String[] names = new String[2];
+        private final long[] tokens = new long[2];
+        private int[] moves = new int[8];
+        private int moveCount;
+
+        /**
+         * This constructor creates a game with its first player
+         *
+         * @param id      the game ID
+         * @param size    the board size
+         * @param name    the first player's name
+         * @param segment the segment the game started in
+         */
+        Game(long id, int size, String name, long segment) {
+            this.id = id;
+            this.size = size;
+            this.segment = segment;
+            this.names[0] = name;
+        }
+
+        /**
+         * getId returns the game ID
+         *
+         * @return the game ID
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * getSize returns the board size
+         *
+         * @return the board size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * getName returns a player's name
+         *
+         * @param seat the seat, 1 or 2
+         * @return the name, or null if nobody joined in that seat
+         */
+        public String getName(int seat) {
+            return names[seat - 1];
+        }
+
+        /**
+         * getToken returns a player's session token
+         *
+         * @param seat the seat, 1 or 2
+         * @return the token, or 0 if none was recorded
+         */
+        public long getToken(int seat) {
+            return tokens[seat - 1];
+        }
+
+        /**
+         * getMoveCount returns the number of queens on the current board
+         *
+         * @return the number of moves
+         */
+        public int getMoveCount() {
+            return moveCount;
+        }
+
+        /**
+         * getMoveSeat returns who made a move
+         *
+         * @param i the move, from 0
+         * @return the seat, 1 or 2
+         */
+        public int getMoveSeat(int i) {
+            return moves[i] >>> 16;
+        }
+
+        /**
+         * getMoveRow returns a move's row
+         *
+         * @param i the move, from 0
+         * @return the row
+         */
+        public int getMoveRow(int i) {
+            return (moves[i] >>> 8) & 0xFF;
+        }
+
+        /**
+         * getMoveCol returns a move's column
+         *
+         * @param i the move, from 0
+         * @return the column
+         */
+        public int getMoveCol(int i) {
+            return moves[i] & 0xFF;
+        }
+
+        /**
+         * apply updates the game with a record about it
+         *
+         * @param record the record
+         */
+        private void apply(Record record) {
+            switch (record.getType()) {
+                // second player case
+                case JOIN:
+                    if (record.getSeat() == 2)
+                        names[1] = record.getName();
+                    break;
+
+                // session token case
+                case TOKEN:
+                    if (record.getSeat() == 1 || record.getSeat() == 2)
+                        tokens[record.getSeat() - 1] = record.getToken();
+                    break;
+
+                // new game case
+                case NEW_GAME:
+                    moveCount = 0;
+                    break;
+
+                // move case
+                case MOVE:
+                    if (moveCount == moves.length)
+                        moves = Arrays.copyOf(moves, 2 * moves.length);
+                    moves[moveCount++] = (record.getSeat() << 16) | (record.getRow() << 8) | record.getCol();
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * This constructor creates a journal, recovering what the directory holds
+     *
+     * @param dir          the journal directory
+     * @param segmentBytes the size of each segment file
+     * @param commitMillis the time between commits
+     * @throws IOException if the directory cannot be read or written
+     */
+    private GameJournal(Path dir, long segmentBytes, long commitMillis) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.commitMillis = commitMillis;
+        this.lock = new ReentrantLock();
+        this.crc = new CRC32C();
+        this.sealed = new ArrayDeque<>();
+        this.firstSegment = new HashMap<>();
+        this.recovered = new ArrayList<>();
+
+        Files.createDirectories(dir);
+        long[] numbers = segments(dir);
+        int last = numbers.length - 1;
+        // a spare that was never rolled to has no header, and nothing in it
+        while (last >= 0 && isEmpty(map(numbers[last], FileChannel.MapMode.READ_ONLY)))
+            Files.delete(dir.resolve(fileName(numbers[last--])));
+        long next = 1;
+        if (last >= 0) {
+            Segment header = map(numbers[last], FileChannel.MapMode.READ_ONLY);
+            next = numbers[last] + 1;
+            long from = numbers[0];
+            if (hasHeader(header)) {
+                maxGameId = header.buffer.getLong(HEADER_MAX_ID);
+                from = Math.max(from, header.buffer.getLong(HEADER_OLDEST_LIVE));
+            }
+            recover(from);
+        }
+        current = create(next);
+        writeHeader(current);
+        committer = new Thread(this::commitLoop, "GameJournal-Commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * open opens the journal in a directory, creating it if need be, and
+     * recovers the games that were running
+     *
+     * @param dir the journal directory
+     * @return the journal
+     * @throws IOException if the directory cannot be read or written
+     */
+    public static GameJournal open(Path dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * open opens the journal in a directory, creating it if need be, and
+     * recovers the games that were running
+     *
+     * @param dir          the journal directory
+     * @param segmentBytes the size of each new segment file
+     * @param commitMillis the time between commits
+     * @return the journal
+     * @throws IOException if the directory cannot be read or written
+     */
+    public static GameJournal open(Path dir, long segmentBytes, long commitMillis) throws IOException {
+        if (segmentBytes < 2 * RECORD_BYTES || segmentBytes > Integer.MAX_VALUE || commitMillis < 1)
+            throw new IllegalArgumentException("GameJournal: bad segment size or commit interval");
+        return new GameJournal(dir, segmentBytes, commitMillis);
+    }
+
+    /**
+     * scan reads every record in a journal directory, oldest first, without
+     * opening it for writing
+     *
+     * @param dir         the journal directory
+     * @param fromSegment the first segment to read
+     * @param visitor     the action to run on each record; the Record is
+     *                    only good until it returns
+     * @throws IOException if a segment cannot be read
+     */
+    public static void scan(Path dir, long fromSegment, Consumer<Record> visitor) throws IOException {
+        for (long number : segments(dir)) {
+            if (number >= fromSegment)
+                scanSegment(dir, number, visitor);
+        }
+    }
+
+    /**
+     * games streams every board played out in a journal directory, oldest
+     * first: every board that was won, and every board that was being
+     * played when its game ended. Boards still being played are left out.
+     * The journal is read a segment at a time, so only the boards of one
+     * segment and the games still going are held in memory. A parallel
+     * stream hands batches of boards to other threads.
+     *
+     * @param dir the journal directory
+     * @return the stream; an I/O error while it runs is thrown as an
+     *         UncheckedIOException
+     * @throws IOException if the directory cannot be read
+     */
+    public static Stream<PlayedGame> games(Path dir) throws IOException {
+        Iterator<PlayedGame> boards = new BoardIterator(dir, segments(dir));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(boards,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * This class rebuilds the boards played in a journal, a segment at a time
+     */
+    private static class BoardIterator implements Iterator<PlayedGame> {
+        private final Path dir;
+        private final long[] numbers;
+        private final Map<Long, Board> boards = new HashMap<>();
+        private final ArrayDeque<PlayedGame> ready = new ArrayDeque<>();
+        private int next;
+
+        /**
+         * This class holds a game's board while it is being read
+         */
+        private static class Board {
+            final int size;
+            final String name1;
+            final short[] squares;
+            String name2;
+            long start;
+            int moveCount;
+            boolean playing;
+
+            /**
+             * This constructor creates a board with its first player
+             *
+             * @param size  the board size
+             * @param name1 the first player's name
+             */
+            Board(int size, String name1) {
+                this.size = size;
+                this.name1 = name1;
+                this.squares = new short[size * size];
+            }
+        }
+
+        /**
+         * This constructor creates an iterator over a journal's segments
+         *
+         * @param dir     the journal directory
+         * @param numbers the segment numbers, in order
+         */
+        BoardIterator(Path dir, long[] numbers) {
+            this.dir = dir;
+            this.numbers = numbers;
+        }
+
+        /**
+         * hasNext reads segments until a board is finished or there are none left
+         *
+         * @return true if there is another board
+         */
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty() && next < numbers.length) {
+                try {
+                    scanSegment(dir, numbers[next++], this::apply);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return !ready.isEmpty();
+        }
+
+        /**
+         * next returns the next board
+         *
+         * @return the board
+         */
+        @Override
+        public PlayedGame next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return ready.poll();
+        }
+
+        /**
+         * apply updates a game's board with a record about it
+         *
+         * @param record the record
+         */
+        private void apply(Record record) {
+            long id = record.getGameId();
+            Board board = boards.get(id);
+            switch (record.getType()) {
+                // join case
+                case JOIN:
+                    if (record.getSeat() == 1)
+                        boards.put(id, new Board(record.getSize(), record.getName()));
+                    else if (board != null)
+                        board.name2 = record.getName();
+                    break;
+
+                // new game case
+                case NEW_GAME:
+                    if (board != null) {
+                        board.start = record.getTime();
+                        board.moveCount = 0;
+                        board.playing = true;
+                    }
+                    break;
+
+                // move case
+                case MOVE:
+                    if (board != null && board.playing && board.moveCount < board.squares.length)
+                        board.squares[board.moveCount++] = (short) (record.getRow() * board.size + record.getCol());
+                    break;
+
+                // win case
+                case WIN:
+                    if (board != null && board.playing) {
+                        finish(id, board, record.getTime(), record.getSeat());
+                        board.playing = false;
+                    }
+                    break;
+
+                // quit case
+                case QUIT:
+                    if (board != null && board.playing)
+                        finish(id, board, record.getTime(), 0);
+                    boards.remove(id);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * finish hands on a board that was played out
+         *
+         * @param id     the game ID
+         * @param board  the board
+         * @param end    when it ended
+         * @param winner the winner's seat, or 0
+         */
+        private void finish(long id, Board board, long end, int winner) {
+            ready.add(new PlayedGame(id, board.start, (int) Math.min(end - board.start, Integer.MAX_VALUE),
+                    board.size, board.name1, board.name2, winner, Arrays.copyOf(board.squares, board.moveCount)));
+        }
+    }
+
+    /**
+     * scanSegment reads every record in one segment file
+     *
+     * @param dir     the journal directory
+     * @param number  the segment number
+     * @param visitor the action to run on each record
+     * @throws IOException if the segment cannot be read
+     */
+    private static void scanSegment(Path dir, long number, Consumer<Record> visitor) throws IOException {
+        Record record = new Record();
+        Segment segment = map(dir, number, FileChannel.MapMode.READ_ONLY);
+        CRC32C check = new CRC32C();
+        record.buffer = segment.buffer;
+        record.segment = number;
+        for (int offset = RECORD_BYTES; offset < segment.capacity && isValid(segment.buffer, offset, check);
+             offset += RECORD_BYTES) {
+            record.offset = offset;
+            visitor.accept(record);
+        }
+    }
+
+    /**
+     * getRecovered returns the games that were running when the journal
+     * was last written
+     *
+     * @return the games, in no particular order
+     */
+    public Collection<Game> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * getMaxGameId returns the highest game ID the journal has seen, so new
+     * games can be given IDs not used before
+     *
+     * @return the highest game ID
+     */
+    public long getMaxGameId() {
+        lock.lock();
+        try {
+            return maxGameId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * join records a player joining a game
+     *
+     * @param gameId the game ID
+     * @param seat   1 for the first player, 2 for the second
+     * @param size   the board size
+     * @param name   the player's name
+     */
+    public void join(long gameId, int seat, int size, String name) {
+        byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, NAME_BYTES);
+        // cuts the name at the start of a character
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80)
+            length--;
+
+        lock.lock();
+        try {
+            int offset = reserve(gameId, JOIN, seat, size, length);
+            if (offset < 0)
+                return;
+            current.buffer.put(offset + NAME, bytes, 0, length);
+            if (seat == 1)
+                firstSegment.put(gameId, current.number);
+            maxGameId = Math.max(maxGameId, gameId);
+            seal(offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * token records the session token a player was given
+     *
+     * @param gameId the game ID
+     * @param seat   the player's seat, 1 or 2
+     * @param token  the session token
+     */
+    public void token(long gameId, int seat, long token) {
+        lock.lock();
+        try {
+            int offset = reserve(gameId, TOKEN, seat, 0, 0);
+            if (offset < 0)
+                return;
+            current.buffer.putLong(offset + SESSION_TOKEN, token);
+            seal(offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * newGame records a new game starting on a cleared board
+     *
+     * @param gameId the game ID
+     */
+    public void newGame(long gameId) {
+        append(gameId, NEW_GAME, 0, 0, 0);
+    }
+
+    /**
+     * move records a queen being placed
+     *
+     * @param gameId the game ID
+     * @param seat   the player who placed it, 1 or 2
+     * @param row    the row
+     * @param col    the column
+     */
+    public void move(long gameId, int seat, int row, int col) {
+        append(gameId, MOVE, seat, row, col);
+    }
+
+    /**
+     * win records a player winning
+     *
+     * @param gameId the game ID
+     * @param seat   the winner, 1 or 2
+     */
+    public void win(long gameId, int seat) {
+        append(gameId, WIN, seat, 0, 0);
+    }
+
+    /**
+     * quit records a game ending
+     *
+     * @param gameId the game ID
+     */
+    public void quit(long gameId) {
+        lock.lock();
+        try {
+            firstSegment.remove(gameId);
+            int offset = reserve(gameId, QUIT, 0, 0, 0);
+            if (offset >= 0)
+                seal(offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * sync forces everything appended so far to the disk, without waiting
+     * for the next commit
+     */
+    public void sync() {
+        commit(true);
+    }
+
+    /**
+     * close commits everything appended and stops the commit thread.
+     * Records appended after it are dropped.
+     */
+    public void close() {
+        closed = true;
+        committer.interrupt();
+        lock.lock();
+        try {
+            failed = true;
+        } finally {
+            lock.unlock();
+        }
+        commit(true);
+    }
+
+    /**
+     * getRecords returns the number of records appended since the journal was opened
+     *
+     * @return the number of records
+     */
+    public long getRecords() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * getCommits returns the number of commits that forced records to the disk
+     *
+     * @return the number of commits
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * append appends a record with no session token or name
+     *
+     * @param gameId the game ID
+     * @param type   the record type
+     * @param seat   the seat
+     * @param arg1   the size or row
+     * @param arg2   the column
+     */
+    private void append(long gameId, byte type, int seat, int arg1, int arg2) {
+        lock.lock();
+        try {
+            int offset = reserve(gameId, type, seat, arg1, arg2);
+            if (offset >= 0)
+                seal(offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * reserve claims the next record slot, rolling to a new segment if the
+     * current one is full, and writes the fields every record has. The
+     * caller holds the lock.
+     *
+     * @param gameId the game ID
+     * @param type   the record type
+     * @param seat   the seat
+     * @param arg1   the size or row
+     * @param arg2   the name length or column
+     * @return the record's offset in the current segment, or -1 if the
+     *         journal has failed or is closed
+     */
+    private int reserve(long gameId, byte type, int seat, int arg1, int arg2) {
+        if (failed)
+            return -1;
+        if (current.tail == current.capacity && !roll())
+            return -1;
+        MappedByteBuffer buffer = current.buffer;
+        int offset = current.tail;
+        buffer.putLong(offset + GAME_ID, gameId);
+        buffer.putLong(offset + TIME, System.currentTimeMillis());
+        buffer.put(offset + TYPE, type);
+        buffer.put(offset + SEAT, (byte) seat);
+        buffer.put(offset + ARG1, (byte) arg1);
+        buffer.put(offset + ARG2, (byte) arg2);
+        return offset;
+    }
+
+    /**
+     * seal writes a reserved record's checksum and publishes it to the
+     * commit thread. The caller holds the lock.
+     *
+     * @param offset the record's offset
+     */
+    private void seal(int offset) {
+        MappedByteBuffer buffer = current.buffer;
+        crc.reset();
+        buffer.limit(offset + CHECKSUM).position(offset);
+        crc.update(buffer);
+        buffer.limit(buffer.capacity());
+        buffer.putInt(offset + CHECKSUM, (int) crc.getValue());
+        records++;
+        current.tail = offset + RECORD_BYTES;
+    }
+
+    /**
+     * roll moves appends to the next segment, the spare the commit thread
+     * made if it is ready. The caller holds the lock.
+     *
+     * @return true if there is a new segment, false if the journal failed
+     */
+    private boolean roll() {
+        Segment next = spare;
+        spare = null;
+        try {
+            if (next == null)
+                next = create(current.number + 1);
+        } catch (IOException e) {
+            WireStats.recordError("GameJournal", e);
+            failed = true;
+            return false;
+        }
+        synchronized (sealed) {
+            sealed.add(current);
+        }
+        current = next;
+        writeHeader(current);
+        return true;
+    }
+
+    /**
+     * writeHeader writes a new segment's header. The caller holds the lock,
+     * or is the constructor.
+     *
+     * @param segment the segment
+     */
+    private void writeHeader(Segment segment) {
+        long oldestLive = segment.number;
+        for (long number : firstSegment.values())
+            oldestLive = Math.min(oldestLive, number);
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(HEADER_NUMBER, segment.number);
+        buffer.putLong(HEADER_MAX_ID, maxGameId);
+        buffer.putLong(HEADER_OLDEST_LIVE, oldestLive);
+    }
+
+    /**
+     * commitLoop commits every commit interval and keeps a spare segment
+     * ready, until the journal is closed. It runs on the commit thread.
+     */
+    private void commitLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(commitMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            commit(false);
+            prepareSpare();
+        }
+    }
+
+    /**
+     * commit forces the records appended since the last commit to the
+     * disk: the rest of every segment rolled away from, then the current
+     * one. While records are still being appended, the page they are
+     * going into is left for a later commit, since an append to a page
+     * being written out can have to wait for the disk.
+     *
+     * @param all true to force every record, even on that page
+     */
+    private synchronized void commit(boolean all) {
+        boolean forced = false;
+        Segment segment;
+        while (true) {
+            synchronized (sealed) {
+                segment = sealed.poll();
+            }
+            if (segment == null)
+                break;
+            forced |= force(segment, segment.tail);
+        }
+        Segment active;
+        lock.lock();
+        try {
+            active = current;
+        } finally {
+            lock.unlock();
+        }
+        int tail = active.tail;
+        forced |= force(active, all || tail == active.lastTail ? tail : tail & -PAGE_BYTES);
+        active.lastTail = tail;
+        if (forced)
+            commits++;
+    }
+
+    /**
+     * force forces part of a segment to the disk. The caller holds this
+     * object's monitor, so only one thread forces at a time.
+     *
+     * @param segment the segment
+     * @param tail    the end of what to force
+     * @return true if anything was forced
+     */
+    private boolean force(Segment segment, int tail) {
+        if (tail <= segment.committed)
+            return false;
+        segment.buffer.force(segment.committed, tail - segment.committed);
+        segment.committed = tail;
+        return true;
+    }
+
+    /**
+     * prepareSpare creates the next segment file ahead of the roll that will need it
+     */
+    private void prepareSpare() {
+        long number;
+        lock.lock();
+        try {
+            if (spare != null || failed)
+                return;
+            number = current.number + 1;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Segment next = create(number);
+            lock.lock();
+            try {
+                if (spare == null && current.number + 1 == number)
+                    spare = next;
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            WireStats.recordError("GameJournal", e);
+        }
+    }
+
+    /**
+     * recover reads the journal from a segment on and keeps the games that
+     * were still running
+     *
+     * @param from the first segment to read
+     * @throws IOException if a segment cannot be read
+     */
+    private void recover(long from) throws IOException {
+        Map<Long, Game> games = new HashMap<>();
+        scan(dir, from, record -> {
+            long id = record.getGameId();
+            maxGameId = Math.max(maxGameId, id);
+            if (record.getType() == JOIN && record.getSeat() == 1) {
+                games.put(id, new Game(id, record.getSize(), record.getName(), record.getSegment()));
+            } else if (record.getType() == QUIT) {
+                games.remove(id);
+            } else {
+                Game game = games.get(id);
+                if (game != null)
+                    game.apply(record);
+            }
+        });
+        for (Game game : games.values()) {
+            recovered.add(game);
+            firstSegment.put(game.id, game.segment);
+        }
+    }
+
+    /**
+     * create creates and maps a new, empty segment file
+     *
+     * @param number the segment number
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    private Segment create(long number) throws IOException {
+        Path path = dir.resolve(fileName(number));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // writes the whole file first, so appends do not wait for the file system to find space
+            ByteBuffer zeros = ByteBuffer.allocate(FILL_BYTES);
+            for (long position = 0; position < segmentBytes; position += FILL_BYTES) {
+                zeros.clear().limit((int) Math.min(FILL_BYTES, segmentBytes - position));
+                while (zeros.hasRemaining())
+                    channel.write(zeros, position + zeros.position());
+            }
+            // the mapping stays valid after the channel is closed
+            Segment segment = new Segment(number, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+            segment.buffer.order(ByteOrder.BIG_ENDIAN);
+            return segment;
+        }
+    }
+
+    /**
+     * map maps an existing segment file of this journal
+     *
+     * @param number the segment number
+     * @param mode   the mapping mode
+     * @return the segment
+     * @throws IOException if the file cannot be read
+     */
+    private Segment map(long number, FileChannel.MapMode mode) throws IOException {
+        return map(dir, number, mode);
+    }
+
+    /**
+     * map maps an existing segment file
+     *
+     * @param dir    the journal directory
+     * @param number the segment number
+     * @param mode   the mapping mode
+     * @return the segment
+     * @throws IOException if the file cannot be read
+     */
+    private static Segment map(Path dir, long number, FileChannel.MapMode mode) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(fileName(number)), StandardOpenOption.READ)) {
+            Segment segment = new Segment(number, channel.map(mode, 0, channel.size()));
+            segment.buffer.order(ByteOrder.BIG_ENDIAN);
+            return segment;
+        }
+    }
+
+    /**
+     * hasHeader checks that a segment starts with a header
+     *
+     * @param segment the segment
+     * @return true if it has a header
+     */
+    private static boolean hasHeader(Segment segment) {
+        return segment.capacity >= RECORD_BYTES && segment.buffer.getInt(0) == MAGIC &&
+                segment.buffer.getInt(4) == VERSION;
+    }
+
+    /**
+     * isEmpty checks that a segment has neither a header nor a first record
+     *
+     * @param segment the segment
+     * @return true if nothing was written to it
+     */
+    private static boolean isEmpty(Segment segment) {
+        return !hasHeader(segment) &&
+                (segment.capacity < 2 * RECORD_BYTES || !isValid(segment.buffer, RECORD_BYTES, new CRC32C()));
+    }
+
+    /**
+     * isValid checks that a slot holds a whole record
+     *
+     * @param buffer the segment
+     * @param offset the slot's offset
+     * @param check  a checksum to compute with
+     * @return true if the slot holds a record with a good checksum
+     */
+    private static boolean isValid(MappedByteBuffer buffer, int offset, CRC32C check) {
+        if (buffer.get(offset + TYPE) == 0)
+            return false;
+        check.reset();
+        buffer.limit(offset + CHECKSUM).position(offset);
+        check.update(buffer);
+        buffer.limit(buffer.capacity());
+        return buffer.getInt(offset + CHECKSUM) == (int) check.getValue();
+    }
+
+    /**
+     * segments lists the segment numbers in a journal directory
+     *
+     * @param dir the journal directory
+     * @return the segment numbers, in order
+     * @throws IOException if the directory cannot be read
+     */
+    private static long[] segments(Path dir) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        long[] sorted = numbers.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * fileName returns the file name of a segment
+     *
+     * @param number the segment number
+     * @return the file name
+     */
+    private static String fileName(long number) {
+        return String.format("%012d%s", number, SUFFIX);
+    }
+}
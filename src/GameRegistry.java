@@ -0,0 +1,359 @@
+// **************************
+//
+// File:    GameRegistry.java
+// Package: ---
+// Unit:    Class GameRegistry
+//
+// **************************
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps every running game by its game ID, so games can be
+ * counted, listed, looked up and evicted.
+ * <P>
+ * The games are split over shards, a power of two of them, each with its
+ * own lock, so threads creating, finding and removing different games
+ * rarely wait on each other. A game's ID names its shard in the low bits
+ * and a count kept by that shard in the rest, so IDs are handed out
+ * without a counter every thread shares. A new game goes in a shard
+ * picked at random by the creating thread.
+ * <P>
+ * A shard is an open-addressing table of primitive long keys and game
+ * references, kept between a quarter and a half full: 12 bytes a slot
+ * on a 64-bit JVM with compressed references, so 24 to 48 bytes a game,
+ * with no entry or boxed key objects. A whole game, with its model,
+ * board, lock, player names and its place in the registry, comes to
+ * about 370 bytes, so 100,000 games fit in under 40 MB of heap;
+ * GameRegistryBenchmark measures it.
+ * <P>
+ * size is read without locking. forEach visits one shard at a time, each
+ * under its lock for only as long as it takes to copy out its games, so
+ * walking every game holds up no shard for long.
+ * <P>
+ * A registry given a GameJournal hands it to every game it creates. A
+ * game recovered from the journal is put back with restore, under the
+ * ID it had, and reserve keeps new games from being given an ID the
+ * journal has seen before.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameRegistry {
+    private static final int MIN_CAPACITY = 16;
+
+    private final Shard[] shards;
+    private final int shardBits;
+    private final GameJournal journal;
+
+    /**
+     * This class holds the games of one shard
+     */
+    private static class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        long nextCount = 1;
+        long[] ids = new long[MIN_CAPACITY];
+        SixQueensModel[] games = new SixQueensModel[MIN_CAPACITY];
+        volatile int size;
+    }
+
+    /**
+     * This constructor creates a registry with four shards per processor
+     */
+    public GameRegistry() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This constructor creates a registry
+     *
+     * @param shards the number of shards, rounded up to a power of two
+     */
+    public GameRegistry(int shards) {
+        this(shards, null);
+    }
+
+    /**
+     * This constructor creates a registry with four shards per processor
+     * whose games record their events in a journal
+     *
+     * @param journal the journal, or null for none
+     */
+    public GameRegistry(GameJournal journal) {
+        this(4 * Runtime.getRuntime().availableProcessors(), journal);
+    }
+
+    /**
+     * This constructor creates a registry whose games record their events
+     * in a journal
+     *
+     * @param shards  the number of shards, rounded up to a power of two
+     * @param journal the journal, or null for none
+     */
+    public GameRegistry(int shards, GameJournal journal) {
+        this.journal = journal;
+        int bits = 0;
+        while ((1 << bits) < shards)
+            bits++;
+        this.shardBits = bits;
+        this.shards = new Shard[1 << bits];
+        for (int i = 0; i < this.shards.length; i++)
+            this.shards[i] = new Shard();
+    }
+
+    /**
+     * create makes a new game and registers it
+     *
+     * @return the game, which knows its ID
+     */
+    public SixQueensModel create() {
+        int index = ThreadLocalRandom.current().nextInt(shards.length);
+        Shard shard = shards[index];
+        shard.lock.lock();
+        try {
+            long id = (shard.nextCount++ << shardBits) | index;
+            SixQueensModel game = new SixQueensModel(id, journal);
+            put(shard, id, game);
+            return game;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * restore registers a game recovered from a journal under the ID it had
+     *
+     * @param game the game
+     */
+    public void restore(SixQueensModel game) {
+        Shard shard = shardOf(game.getId());
+        shard.lock.lock();
+        try {
+            if (find(shard, game.getId()) < 0)
+                put(shard, game.getId(), game);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * reserve makes every game ID created from now on higher than a given one
+     *
+     * @param maxId the highest game ID already used
+     */
+    public void reserve(long maxId) {
+        long count = (maxId >>> shardBits) + 1;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.nextCount = Math.max(shard.nextCount, count);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * get finds a game by its ID
+     *
+     * @param id the game ID
+     * @return the game, or null if there is none with the ID
+     */
+    public SixQueensModel get(long id) {
+        Shard shard = shardOf(id);
+        shard.lock.lock();
+        try {
+            int slot = find(shard, id);
+            return slot < 0 ? null : shard.games[slot];
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * remove takes a game that is over out of the registry
+     *
+     * @param id the game ID
+     * @return the game, or null if there is none with the ID
+     */
+    public SixQueensModel remove(long id) {
+        Shard shard = shardOf(id);
+        shard.lock.lock();
+        try {
+            int slot = find(shard, id);
+            if (slot < 0)
+                return null;
+            SixQueensModel game = shard.games[slot];
+            delete(shard, slot);
+            if (shard.size < shard.ids.length / 4 && shard.ids.length > MIN_CAPACITY)
+                resize(shard, shard.ids.length / 2);
+            return game;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * evict ends a game and removes it. Its players are told the game is
+     * over, as if one of them had quit.
+     *
+     * @param id the game ID
+     * @return true if there was a game with the ID
+     */
+    public boolean evict(long id) {
+        SixQueensModel game = remove(id);
+        if (game == null)
+            return false;
+        game.quit(null);
+        return true;
+    }
+
+    /**
+     * size returns the number of games registered. It does not lock, so a
+     * game being created or removed meanwhile may or may not be counted.
+     *
+     * @return the number of games
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards)
+            size += shard.size;
+        return size;
+    }
+
+    /**
+     * forEach visits every registered game. A shard's games are copied out
+     * under its lock and visited after, so the action may call back into
+     * the registry or the game.
+     *
+     * @param action the action to run on each game
+     */
+    public void forEach(Consumer<SixQueensModel> action) {
+        List<SixQueensModel> copy = new ArrayList<>();
+        for (Shard shard : shards) {
+            copy.clear();
+            shard.lock.lock();
+            try {
+                for (SixQueensModel game : shard.games) {
+                    if (game != null)
+                        copy.add(game);
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            copy.forEach(action);
+        }
+    }
+
+    /**
+     * shardOf returns the shard that holds a game ID
+     *
+     * @param id the game ID
+     * @return the shard
+     */
+    private Shard shardOf(long id) {
+        return shards[(int) (id & (shards.length - 1))];
+    }
+
+    /**
+     * slotOf returns the slot a game ID's probe starts at. The shard bits
+     * are the same for every ID in a shard, so they are shifted off first.
+     *
+     * @param id   the game ID
+     * @param mask the table's capacity minus one
+     * @return the slot
+     */
+    private int slotOf(long id, int mask) {
+        long h = (id >>> shardBits) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    /**
+     * find returns the slot holding a game ID. Call it holding the shard's lock.
+     *
+     * @param shard the shard
+     * @param id    the game ID
+     * @return the slot, or -1 if the ID is not there
+     */
+    private int find(Shard shard, long id) {
+        int mask = shard.ids.length - 1;
+        for (int slot = slotOf(id, mask); shard.games[slot] != null; slot = (slot + 1) & mask) {
+            if (shard.ids[slot] == id)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * put adds a game to a shard, growing the table past half full. Call
+     * it holding the shard's lock.
+     *
+     * @param shard the shard
+     * @param id    the game ID, not already in the shard
+     * @param game  the game
+     */
+    private void put(Shard shard, long id, SixQueensModel game) {
+        if (2 * (shard.size + 1) > shard.ids.length)
+            resize(shard, shard.ids.length * 2);
+        int mask = shard.ids.length - 1;
+        int slot = slotOf(id, mask);
+        while (shard.games[slot] != null)
+            slot = (slot + 1) & mask;
+        shard.ids[slot] = id;
+        shard.games[slot] = game;
+        shard.size = shard.size + 1;
+    }
+
+    /**
+     * delete empties a slot and moves later games of the same probe run
+     * back, so find never stops early at the hole. Call it holding the
+     * shard's lock.
+     *
+     * @param shard the shard
+     * @param slot  the slot to empty
+     */
+    private void delete(Shard shard, int slot) {
+        int mask = shard.ids.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; shard.games[next] != null; next = (next + 1) & mask) {
+            int home = slotOf(shard.ids[next], mask);
+            // the game can fill the hole if the hole is between its home slot and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                shard.ids[hole] = shard.ids[next];
+                shard.games[hole] = shard.games[next];
+                hole = next;
+            }
+        }
+        shard.ids[hole] = 0;
+        shard.games[hole] = null;
+        shard.size = shard.size - 1;
+    }
+
+    /**
+     * resize moves a shard's games into a table of a new capacity. Call it
+     * holding the shard's lock.
+     *
+     * @param shard    the shard
+     * @param capacity the new capacity, a power of two
+     */
+    private void resize(Shard shard, int capacity) {
+        long[] oldIds = shard.ids;
+        SixQueensModel[] oldGames = shard.games;
+        shard.ids = new long[capacity];
+        shard.games = new SixQueensModel[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldGames.length; i++) {
+            if (oldGames[i] == null)
+                continue;
+            int slot = slotOf(oldIds[i], mask);
+            while (shard.games[slot] != null)
+                slot = (slot + 1) & mask;
+            shard.ids[slot] = oldIds[i];
+            shard.games[slot] = oldGames[i];
+        }
+    }
+}
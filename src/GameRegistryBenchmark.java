@@ -0,0 +1,154 @@
+// ************************************
+//
+// File:    GameRegistryBenchmark.java
+// Package: ---
+// Unit:    Class GameRegistryBenchmark
+//
+// ************************************
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class measures the GameRegistry. It fills a registry with games,
+ * half waiting for a partner and half being played, and prints the heap
+ * each game costs, measured after garbage collection. Then threads create,
+ * look up and remove games as fast as they can, each keeping its own set
+ * of live games, and it prints the operations per second for one thread
+ * and for several.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class GameRegistryBenchmark {
+    private static final int LIVE_PER_THREAD = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 2) {
+            System.err.println("Usage: java GameRegistryBenchmark [<games> [<seconds>]]");
+            System.exit(1);
+        }
+        int games = args.length >= 1 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length == 2 ? Integer.parseInt(args[1]) : 3;
+
+        memory(games);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        throughput(1, seconds);
+        throughput(threads, seconds);
+    }
+
+    /**
+     * memory fills a registry and prints the heap used per game
+     *
+     * @param games the number of games
+     */
+    private static void memory(int games) {
+        long before = usedHeap();
+        GameRegistry registry = new GameRegistry();
+        SixQueensModelListener view = new NullView();
+        for (int i = 0; i < games; i++) {
+            SixQueensModel game = registry.create();
+            game.join(view, "player" + i, BoardState.DEFAULT_SIZE);
+            if (i % 2 == 0)
+                game.join(view, "partner" + i, BoardState.DEFAULT_SIZE);
+        }
+        long after = usedHeap();
+        System.out.printf("%d games: %.0f bytes per game, names included%n", registry.size(),
+                (double) (after - before) / games);
+        if (registry.size() != games)
+            System.out.println("GameRegistryBenchmark: the registry lost games");
+    }
+
+    /**
+     * throughput runs threads creating, finding and removing games and
+     * prints the operations per second
+     *
+     * @param threads the number of threads
+     * @param seconds how long to run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void throughput(int threads, int seconds) throws InterruptedException {
+        GameRegistry registry = new GameRegistry();
+        long[] counts = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] live = new long[LIVE_PER_THREAD];
+                for (int i = 0; i < live.length; i++)
+                    live[i] = registry.create().getId();
+                long ops = 0;
+                while ((ops & 1023) != 0 || System.nanoTime() < deadline) {
+                    // one removal and one creation for every eight lookups
+                    int i = random.nextInt(live.length);
+                    for (int k = 0; k < 8; k++) {
+                        if (registry.get(live[random.nextInt(live.length)]) == null)
+                            throw new IllegalStateException("GameRegistryBenchmark: a live game is missing");
+                    }
+                    registry.remove(live[i]);
+                    live[i] = registry.create().getId();
+                    ops += 10;
+                }
+                counts[thread] = ops;
+                done.countDown();
+            }, "GameRegistryBenchmark-" + t).start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long ops = 0;
+        for (long count : counts)
+            ops += count;
+        System.out.printf("%d thread%s, %d live games: %.1f million ops/sec%n", threads,
+                threads == 1 ? "" : "s", registry.size(), ops / elapsed / 1e6);
+    }
+
+    /**
+     * usedHeap returns the heap in use after collecting garbage
+     *
+     * @return the bytes used
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * This class is a view that throws its messages away
+     */
+    private static class NullView implements SixQueensModelListener {
+        public void boardSize(int size) {
+        }
+
+        public void newGame() {
+        }
+
+        public void setQueen(int row, int col) {
+        }
+
+        public void waitingForPartner() {
+        }
+
+        public void yourTurn() {
+        }
+
+        public void theirTurn(String name) {
+        }
+
+        public void youWin() {
+        }
+
+        public void theyWin(String name) {
+        }
+
+        public void quit() {
+        }
+    }
+}
@@ -0,0 +1,40 @@
+// *********************************
+//
+// File:    GameStartedEvent.java
+// Package: ---
+// Unit:    Class GameStartedEvent
+//
+// *********************************
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Flight Recorder event for a board starting between
+ * two players: the first board of a game, once the second player joins,
+ * and every new game after it.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+@Name("sixqueens.GameStarted")
+@Label("Game Started")
+@Category("Six Queens")
+@Description("A board started between two players")
+@StackTrace(false)
+public class GameStartedEvent extends jdk.jfr.Event {
+    @Label("Game ID")
+    long gameId;
+
+    @Label("Board Size")
+    int size;
+
+    @Label("First Player")
+    String player1;
+
+    @Label("Second Player")
+    String player2;
+}
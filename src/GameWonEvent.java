@@ -0,0 +1,36 @@
+// *****************************
+//
+// File:    GameWonEvent.java
+// Package: ---
+// Unit:    Class GameWonEvent
+//
+// *****************************
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Flight Recorder event for a board won
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+@Name("sixqueens.GameWon")
+@Label("Game Won")
+@Category("Six Queens")
+@Description("A player placed the last queen and won the board")
+@StackTrace(false)
+public class GameWonEvent extends jdk.jfr.Event {
+    @Label("Game ID")
+    long gameId;
+
+    @Label("Seat")
+    @Description("1 for the player who moved first, 2 for the other")
+    int seat;
+
+    @Label("Winner")
+    String winner;
+}
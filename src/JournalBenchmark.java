@@ -0,0 +1,217 @@
+// ********************************
+//
+// File:    JournalBenchmark.java
+// Package: ---
+// Unit:    Class JournalBenchmark
+//
+// ********************************
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * This class measures what the GameJournal adds to a move. It plays
+ * random games on SixQueensModels with views that throw their messages
+ * away, at a steady rate of moves per second, and times each
+ * squareChosen: once with no journal, then with every game journaled to
+ * a temporary directory. Then it reopens the journal and times
+ * recovering the games that were left running.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class JournalBenchmark {
+    private static final int GAMES = 1000;
+
+    // latencies are counted in buckets of BUCKET_NANOS, up to BUCKETS of them
+    private static final int BUCKET_NANOS = 10;
+    private static final int BUCKETS = 1_000_000;
+
+    private final SixQueensModel[] games;
+    private final BoardState[] boards;
+    private final SixQueensModelListener[][] seats;
+    private final int[] turns;
+    private final Random random = new Random(1);
+    private final long[] histogram = new long[BUCKETS + 1];
+    private long totalNanos;
+    private long count;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 2) {
+            System.err.println("Usage: java JournalBenchmark [<moves/sec> [<seconds>]]");
+            System.exit(1);
+        }
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // warms up, then measures with no journal
+        new JournalBenchmark(new GameRegistry()).run(rate, seconds);
+        JournalBenchmark plain = new JournalBenchmark(new GameRegistry());
+        plain.run(rate, seconds);
+        System.out.println("no journal:   " + plain.report());
+
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            GameJournal journal = GameJournal.open(dir);
+            JournalBenchmark journaled = new JournalBenchmark(new GameRegistry(journal));
+            journaled.run(rate, seconds);
+            System.out.println("with journal: " + journaled.report());
+            System.out.printf("journal: %d records, %d commits (%.0f records/commit)%n", journal.getRecords(),
+                    journal.getCommits(), (double) journal.getRecords() / Math.max(1, journal.getCommits()));
+            System.out.printf("added to a move: %.0f ns on average, %.0f ns at p99%n",
+                    journaled.mean() - plain.mean(), journaled.percentile(0.99) - plain.percentile(0.99));
+            journal.close();
+
+            long start = System.nanoTime();
+            GameJournal reopened = GameJournal.open(dir);
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("recovered %d of %d games in %.1f ms%n", reopened.getRecovered().size(),
+                    GAMES, millis);
+            reopened.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * This constructor starts GAMES games in a registry
+     *
+     * @param registry the registry to create the games in
+     */
+    public JournalBenchmark(GameRegistry registry) {
+        games = new SixQueensModel[GAMES];
+        boards = new BoardState[GAMES];
+        seats = new SixQueensModelListener[GAMES][];
+        turns = new int[GAMES];
+        for (int i = 0; i < GAMES; i++) {
+            games[i] = registry.create();
+            boards[i] = new BoardState();
+            seats[i] = new SixQueensModelListener[]{new NullView(), new NullView()};
+            games[i].join(seats[i][0], "player" + (2 * i), BoardState.DEFAULT_SIZE);
+            games[i].join(seats[i][1], "player" + (2 * i + 1), BoardState.DEFAULT_SIZE);
+        }
+    }
+
+    /**
+     * run makes random moves, spread over the games, at a steady rate
+     *
+     * @param rate    the moves per second
+     * @param seconds how long to run
+     */
+    public void run(int rate, int seconds) {
+        long period = 1_000_000_000L / rate;
+        long moves = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < moves; i++) {
+            long due = start + i * period;
+            while (System.nanoTime() < due)
+                Thread.onSpinWait();
+            move((int) (i % GAMES));
+        }
+    }
+
+    /**
+     * move makes a random legal move in a game, starting a new game after a win
+     *
+     * @param i the game
+     */
+    private void move(int i) {
+        BoardState board = boards[i];
+        int size = board.getSize();
+        int row, col;
+        do {
+            row = random.nextInt(size);
+            col = random.nextInt(size);
+        } while (!board.isEmpty(row, col));
+        board.setQueen(row, col);
+
+        long before = System.nanoTime();
+        games[i].squareChosen(seats[i][turns[i]], row, col);
+        long nanos = System.nanoTime() - before;
+        totalNanos += nanos;
+        count++;
+        histogram[(int) Math.min(nanos / BUCKET_NANOS, BUCKETS)]++;
+
+        if (board.checkWin()) {
+            games[i].newGame(seats[i][0]);
+            board.clear();
+            turns[i] = 0;
+        } else {
+            turns[i] = 1 - turns[i];
+        }
+    }
+
+    /**
+     * mean returns the mean time of a move
+     *
+     * @return the time in nanoseconds
+     */
+    private double mean() {
+        return (double) totalNanos / count;
+    }
+
+    /**
+     * percentile returns a percentile of the time of a move
+     *
+     * @param fraction the percentile, from 0 to 1
+     * @return the time in nanoseconds, to BUCKET_NANOS
+     */
+    private double percentile(double fraction) {
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket <= BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank)
+                return (double) bucket * BUCKET_NANOS;
+        }
+        return (double) BUCKETS * BUCKET_NANOS;
+    }
+
+    /**
+     * report describes the times of the moves
+     *
+     * @return the description
+     */
+    private String report() {
+        return String.format("%d moves, mean %.0f ns, p50 %.0f ns, p99 %.0f ns, p99.9 %.0f ns",
+                count, mean(), percentile(0.5), percentile(0.99), percentile(0.999));
+    }
+
+    /**
+     * This class is a view that throws its messages away
+     */
+    private static class NullView implements SixQueensModelListener {
+        public void boardSize(int size) {
+        }
+
+        public void newGame() {
+        }
+
+        public void setQueen(int row, int col) {
+        }
+
+        public void waitingForPartner() {
+        }
+
+        public void yourTurn() {
+        }
+
+        public void theirTurn(String name) {
+        }
+
+        public void youWin() {
+        }
+
+        public void theyWin(String name) {
+        }
+
+        public void quit() {
+        }
+    }
+}
@@ -0,0 +1,180 @@
+// *********************************
+//
+// File:    LatencyHistogram.java
+// Package: ---
+// Unit:    Class LatencyHistogram
+//
+// *********************************
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts latencies in log-linear buckets, the way an HDR
+ * histogram does: values below SUB_BUCKETS get a bucket each, and every
+ * power of two above that is split into SUB_BUCKETS / 2 buckets, so any
+ * value is known to within 1 part in SUB_BUCKETS / 2 (about 6%) from 1
+ * nanosecond up to MAX_VALUE, in a fixed, small array.
+ * <P>
+ * Recording a value finds its bucket with a few shifts and increments it
+ * with one atomic add, so any number of threads can record at once
+ * without a lock. Each thread adds to one of a few stripes of buckets,
+ * chosen by its thread ID, so threads on different processors rarely
+ * share a cache line. Reading merges the stripes, so reads cost more
+ * than writes, and a read made while values are being recorded may
+ * count some of them and not others.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class LatencyHistogram {
+    /**
+     * The number of buckets each power of two is split into, times 2
+     */
+    public static final int SUB_BUCKETS = 32;
+
+    /**
+     * The largest value kept; larger values are counted as MAX_VALUE
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * This constructor creates an empty histogram with a stripe for each
+     * processor, up to 16
+     */
+    public LatencyHistogram() {
+        int stripes = Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()));
+        stripeMask = stripes - 1;
+        counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    /**
+     * record counts one value
+     *
+     * @param value the value, usually in nanoseconds; negative values count as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, MAX_VALUE));
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.incrementAndGet(stripe * BUCKETS + bucketOf(value));
+        total.add(value);
+    }
+
+    /**
+     * getCount returns the number of values recorded
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        long count = 0;
+        for (long c : merge())
+            count += c;
+        return count;
+    }
+
+    /**
+     * getMean returns the mean of the values recorded
+     *
+     * @return the mean, or 0 if none were recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * getPercentile returns the value a fraction of the values recorded
+     * are at or below
+     *
+     * @param fraction the fraction, from 0 to 1
+     * @return the highest value in the bucket the percentile falls in,
+     *         or 0 if none were recorded
+     */
+    public long getPercentile(double fraction) {
+        long[] merged = merge();
+        long count = 0;
+        for (long c : merged)
+            count += c;
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += merged[bucket];
+            if (seen >= rank)
+                return highestIn(bucket);
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * getMax returns the largest value recorded
+     *
+     * @return the highest value in the highest bucket used, or 0 if none
+     *         were recorded
+     */
+    public long getMax() {
+        long[] merged = merge();
+        for (int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+            if (merged[bucket] > 0)
+                return highestIn(bucket);
+        }
+        return 0;
+    }
+
+    /**
+     * reset forgets every value recorded. Values recorded while it runs
+     * may be kept or forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        total.reset();
+    }
+
+    /**
+     * bucketOf returns the bucket a value is counted in
+     *
+     * @param value the value, from 0 to MAX_VALUE
+     * @return the bucket
+     */
+    private static int bucketOf(long value) {
+        // the shift leaves the value's top SUB_BITS bits, which pick the bucket
+        int shift = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKETS - 1)) - (SUB_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * highestIn returns the highest value counted in a bucket
+     *
+     * @param bucket the bucket
+     * @return the value
+     */
+    private static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / HALF - 1;
+        long sub = bucket - (long) shift * HALF;
+        return Math.min(((sub + 1) << shift) - 1, MAX_VALUE);
+    }
+
+    /**
+     * merge adds up the stripes
+     *
+     * @return the count in each bucket
+     */
+    private long[] merge() {
+        long[] merged = new long[BUCKETS];
+        for (int i = 0; i < counts.length(); i++)
+            merged[i % BUCKETS] += counts.get(i);
+        return merged;
+    }
+}
@@ -0,0 +1,441 @@
+// *****************************
+//
+// File:    LoadGenerator.java
+// Package: ---
+// Unit:    Class LoadGenerator
+//
+// *****************************
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class puts a running Six Queens server under the load of many
+ * players, with no windows. Each simulated player is a ModelProxy, the
+ * client every real player uses, with a bot in place of the
+ * SixQueensView, so the load goes over the same protocol real clients
+ * speak. The players join in pairs, each pair in its own private room
+ * (in version 2), and play legal moves, random or from the solver, after
+ * a think time; the winner of each game starts the next one.
+ * <P>
+ * Each second it prints the players connected, the moves per second, and
+ * the latency of that second's moves, from squareChosen to the server
+ * echoing the queen back with setQueen. At the end it prints the totals
+ * and the latency percentiles over the whole run, once every player has
+ * connected.
+ * <P>
+ * A ModelProxy reads on a thread of its own, so many thousands of players
+ * need virtual threads (Java 21), which are the default; on older JVMs
+ * they fall back to platform threads, and the operating system's thread
+ * limit bounds the players. The bots think and move on a few shared
+ * threads, never on the readers, so each thread running the solver keeps
+ * one solver. Each local address can connect to the server from at most
+ * the range of ephemeral ports, so to open more connections than that,
+ * bind the players to several loopback addresses with bind=.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class LoadGenerator {
+    private static final long REPORT_MILLIS = 1000;
+
+    private final InetSocketAddress server;
+    private final InetAddress[] binds;
+    private final ThreadMode threadMode;
+    private final int version;
+    private final int size;
+    private final long thinkMin;
+    private final long thinkMax;
+    private final boolean solving;
+    private final EndgameTable table;
+    private final ScheduledExecutorService movers;
+    private final ThreadLocal<SixQueensSolver> solvers;
+
+    // every move's latency, and the latency of the moves since the last report
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram recent = new LatencyHistogram();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder partnersLost = new LongAdder();
+    private volatile int connected;
+    private long lastMoves;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4)
+            usage();
+        InetSocketAddress server = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int players = Integer.parseInt(args[2]);
+        long seconds = Long.parseLong(args[3]);
+
+        InetAddress[] binds = null;
+        ThreadMode threadMode = ThreadMode.VIRTUAL;
+        int version = WireFormat.LATEST_VERSION;
+        int size = BoardState.DEFAULT_SIZE;
+        long thinkMin = 0;
+        long thinkMax = 0;
+        boolean solving = false;
+        EndgameTable table = null;
+        int moverThreads = Runtime.getRuntime().availableProcessors();
+        int ramp = 0;
+        for (int i = 4; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("think=")) {
+                String[] range = arg.substring("think=".length()).split("-");
+                thinkMin = Long.parseLong(range[0]);
+                thinkMax = range.length > 1 ? Long.parseLong(range[1]) : thinkMin;
+            } else if (arg.equals("engine=random")) {
+                solving = false;
+            } else if (arg.equals("engine=solver")) {
+                solving = true;
+            } else if (arg.startsWith("table=")) {
+                table = EndgameTable.open(Paths.get(arg.substring("table=".length())));
+            } else if (arg.startsWith("size=")) {
+                size = Integer.parseInt(arg.substring("size=".length()));
+            } else if (arg.startsWith("threads=")) {
+                threadMode = ThreadMode.parse(arg.substring("threads=".length()));
+            } else if (arg.startsWith("version=")) {
+                version = Integer.parseInt(arg.substring("version=".length()));
+            } else if (arg.startsWith("movers=")) {
+                moverThreads = Integer.parseInt(arg.substring("movers=".length()));
+            } else if (arg.startsWith("ramp=")) {
+                ramp = Integer.parseInt(arg.substring("ramp=".length()));
+            } else if (arg.startsWith("bind=")) {
+                String[] addresses = arg.substring("bind=".length()).split(",");
+                binds = new InetAddress[addresses.length];
+                for (int b = 0; b < addresses.length; b++)
+                    binds[b] = InetAddress.getByName(addresses[b]);
+            } else {
+                usage();
+            }
+        }
+        if (threadMode == null || !BoardState.isValidSize(size) || thinkMin < 0 || thinkMax < thinkMin ||
+                version < WireFormat.VERSION_1 || version > WireFormat.LATEST_VERSION || moverThreads < 1)
+            usage();
+        if (solving && size > BoardState.MAX_PACKED_SIZE)
+            System.err.println("LoadGenerator: the solver only plays boards up to " + BoardState.MAX_PACKED_SIZE +
+                    ", playing random moves");
+        if (threadMode == ThreadMode.VIRTUAL && !ThreadMode.isVirtualAvailable())
+            System.err.println("LoadGenerator: virtual threads need Java 21, reading on platform threads");
+
+        LoadGenerator generator = new LoadGenerator(server, binds, threadMode, version, size, thinkMin, thinkMax,
+                solving && size <= BoardState.MAX_PACKED_SIZE, table, moverThreads);
+        if (generator.connect(players - players % 2, ramp) == 0)
+            System.exit(1);
+        generator.play(seconds);
+        // the players' readers stay blocked on their sockets
+        System.exit(0);
+    }
+
+    /**
+     * usage prints the command line usage and exits the program
+     */
+    private static void usage() {
+        System.err.println("Usage: java LoadGenerator <host> <port> <players> <seconds> " +
+                "[think=<millis>[-<millis>]] [engine=random|solver] [table=<tablefile>] [size=<n>] " +
+                "[threads=platform|virtual] [version=1|2] [movers=<n>] [ramp=<players/sec>] " +
+                "[bind=<address>,...]");
+        System.exit(1);
+    }
+
+    /**
+     * This constructor creates a load generator with no players
+     *
+     * @param server       the server's address
+     * @param binds        the local addresses to connect from, in turn, or
+     *                     null for any
+     * @param threadMode   the kind of thread each player reads on
+     * @param version      the protocol version the players speak
+     * @param size         the board size the players ask for
+     * @param thinkMin     the shortest think time, in milliseconds
+     * @param thinkMax     the longest think time, in milliseconds
+     * @param solving      true to play the solver's moves, false for random
+     * @param table        an endgame table to look moves up in first, or null
+     * @param moverThreads the number of threads the bots move on
+     */
+    public LoadGenerator(InetSocketAddress server, InetAddress[] binds, ThreadMode threadMode, int version,
+                         int size, long thinkMin, long thinkMax, boolean solving, EndgameTable table,
+                         int moverThreads) {
+        this.server = server;
+        this.binds = binds;
+        this.threadMode = threadMode;
+        this.version = version;
+        this.size = size;
+        this.thinkMin = thinkMin;
+        this.thinkMax = thinkMax;
+        this.solving = solving;
+        this.table = table != null && table.getSize() == size ? table : null;
+        this.movers = Executors.newScheduledThreadPool(moverThreads, task -> {
+            Thread thread = new Thread(task, "LoadGenerator-Mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.solvers = ThreadLocal.withInitial(() -> new SixQueensSolver(size));
+    }
+
+    /**
+     * connect opens the players' connections and joins them in pairs,
+     * printing the progress each second
+     *
+     * @param players the number of players, an even number
+     * @param ramp    the most players to connect per second, or 0 for
+     *                as fast as the server accepts them
+     * @return the number of players connected
+     */
+    public int connect(int players, int ramp) {
+        long start = System.nanoTime();
+        long report = start + REPORT_MILLIS * 1_000_000L;
+        for (int i = 0; i < players; i++) {
+            try {
+                Socket socket = new Socket();
+                if (binds != null)
+                    socket.bind(new InetSocketAddress(binds[i % binds.length], 0));
+                socket.connect(server);
+                Player player = new Player(new ModelProxy(socket, threadMode, version));
+                player.start("load" + i, version >= WireFormat.VERSION_2 ? "load" + (i / 2) : null);
+                connected++;
+            } catch (IOException e) {
+                System.err.println("LoadGenerator: player " + i + " could not connect: " + e.getMessage());
+                break;
+            }
+
+            long now = System.nanoTime();
+            if (ramp > 0) {
+                long due = start + (i + 1) * 1_000_000_000L / ramp;
+                if (due > now)
+                    sleepNanos(due - now);
+            }
+            if (now >= report) {
+                report(now - start, "connecting");
+                report += REPORT_MILLIS * 1_000_000L;
+            }
+        }
+        System.out.printf("%d players connected in %.1f s%n", connected, (System.nanoTime() - start) / 1e9);
+        return connected;
+    }
+
+    /**
+     * play lets the players play, printing the progress each second, then
+     * prints the totals
+     *
+     * @param seconds how long to play
+     */
+    public void play(long seconds) {
+        latency.reset();
+        long moves0 = moves.sum();
+        long wins0 = wins.sum();
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long report = start;
+        while (true) {
+            report += REPORT_MILLIS * 1_000_000L;
+            long now = System.nanoTime();
+            if (report > end)
+                break;
+            sleepNanos(report - now);
+            report(report - start, "playing");
+        }
+        sleepNanos(end - System.nanoTime());
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long played = moves.sum() - moves0;
+        System.out.printf("%d players, %d moves in %.1f s: %.0f moves/sec, %d games won, " +
+                        "%d connections failed, %d players lost their partner%n", connected, played, elapsed,
+                played / elapsed, wins.sum() - wins0, failures.sum(), partnersLost.sum());
+        System.out.printf("move latency, squareChosen to setQueen: p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, " +
+                        "max %.3f ms%n", latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6,
+                latency.getPercentile(0.999) / 1e6, latency.getMax() / 1e6);
+    }
+
+    /**
+     * report prints one second's progress, and starts the next second's
+     * latencies
+     *
+     * @param nanos the time since the phase started
+     * @param phase what the players are doing
+     */
+    private void report(long nanos, String phase) {
+        long total = moves.sum();
+        System.out.printf("%6.1f s %-10s %7d players %8d moves/sec  p50 %8.3f ms  p99 %8.3f ms  " +
+                        "p999 %8.3f ms  %d failed%n", nanos / 1e9, phase, connected, total - lastMoves,
+                recent.getPercentile(0.5) / 1e6, recent.getPercentile(0.99) / 1e6,
+                recent.getPercentile(0.999) / 1e6, failures.sum());
+        lastMoves = total;
+        recent.reset();
+    }
+
+    /**
+     * sleepNanos sleeps, if the time is positive
+     *
+     * @param nanos the time to sleep
+     */
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * think returns a think time
+     *
+     * @return the time, in milliseconds, from thinkMin to thinkMax
+     */
+    private long think() {
+        return thinkMax == thinkMin ? thinkMin : ThreadLocalRandom.current().nextLong(thinkMin, thinkMax + 1);
+    }
+
+    /**
+     * later runs a bot's action on a mover thread after a think time
+     *
+     * @param action the action
+     */
+    private void later(Runnable action) {
+        long millis = think();
+        if (millis == 0)
+            movers.execute(action);
+        else
+            movers.schedule(action, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This class is one simulated player: a bot listening to its ModelProxy.
+     * What the server reports arrives on the proxy's reader thread; the
+     * moves the bot makes are sent from a mover thread.
+     */
+    private class Player implements SixQueensModelListener {
+        private final ModelProxy proxy;
+        private final Random random = new Random();
+
+        // read and written by the reader, and read by the mover while it is this player's turn
+        private BoardState board = new BoardState(size);
+
+        // the square sent and when, until the server echoes it
+        private int sent = -1;
+        private volatile long sentAt;
+
+        /**
+         * This constructor creates a player on a proxy
+         *
+         * @param proxy the player's proxy
+         */
+        Player(ModelProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        /**
+         * start starts the player's reader and joins a game
+         *
+         * @param name the player's name
+         * @param room the private room to join, or null to be paired with anyone
+         */
+        void start(String name, String room) {
+            proxy.setFailureHandler(e -> failures.increment());
+            proxy.setListener(this);
+            proxy.join(this, name, size, room);
+        }
+
+        /**
+         * move chooses a square and sends it
+         */
+        private void move() {
+            BoardState b = board;
+            int square = solving ? solve(b) : randomSquare(b);
+            if (square < 0)
+                return;
+            sent = square;
+            sentAt = System.nanoTime();
+            proxy.squareChosen(this, square / b.getSize(), square % b.getSize());
+        }
+
+        /**
+         * solve returns the best move in a position, from the endgame table
+         * if it has the position, or from this thread's solver
+         *
+         * @param b the position
+         * @return the square index (row * size + col)
+         */
+        private int solve(BoardState b) {
+            if (b.getSize() != size)
+                return randomSquare(b);
+            if (table != null) {
+                int entry = table.lookup(b.getEmptyMask());
+                if (entry != EndgameTable.NOT_FOUND)
+                    return EndgameTable.moveOf(entry);
+            }
+            SixQueensSolver.Solution solution = solvers.get().solve(b);
+            return solution.row * size + solution.col;
+        }
+
+        /**
+         * randomSquare returns a random empty square
+         *
+         * @param b the position
+         * @return the square index (row * size + col), or -1 if none is empty
+         */
+        private int randomSquare(BoardState b) {
+            int n = b.getSize() * b.getSize();
+            int start = random.nextInt(n);
+            for (int i = 0; i < n; i++) {
+                int square = (start + i) % n;
+                if (b.isEmpty(square / b.getSize(), square % b.getSize()))
+                    return square;
+            }
+            return -1;
+        }
+
+        public void boardSize(int size) {
+            board = new BoardState(size);
+        }
+
+        public void newGame() {
+            board.clear();
+        }
+
+        public void setQueen(int row, int col) {
+            board.setQueen(row, col);
+            long at = sentAt;
+            if (at != 0 && row * board.getSize() + col == sent) {
+                long nanos = System.nanoTime() - at;
+                latency.record(nanos);
+                recent.record(nanos);
+                moves.increment();
+                sentAt = 0;
+            }
+        }
+
+        public void waitingForPartner() {
+        }
+
+        public void yourTurn() {
+            later(this::move);
+        }
+
+        public void theirTurn(String name) {
+        }
+
+        public void youWin() {
+            wins.increment();
+            later(() -> proxy.newGame(this));
+        }
+
+        public void theyWin(String name) {
+        }
+
+        public void quit() {
+            partnersLost.increment();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+// *******************
+//
+// File:    Lobby.java
+// Package: ---
+// Unit:    Class Lobby
+//
+// *******************
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class pairs joining players into games. Players wait in buckets:
+ * one for each board size, and one for each named private room. A player
+ * who joins a bucket with someone waiting in it starts a game with them;
+ * otherwise the player waits there in a new game.
+ * <P>
+ * The buckets live in a ConcurrentHashMap and a join changes its bucket
+ * with one atomic compute, so joins to different buckets never wait on
+ * each other and there is no lock over the whole lobby. The compute only
+ * decides the pairing; games are joined after it, so the games' locks,
+ * journal and views are never used under the map's lock. Joins run on the
+ * connection's own thread or event loop, never the accept thread, so
+ * pairing does not hold up new connections.
+ * <P>
+ * A waiting player who quits or drops is cancelled at once, so nobody is
+ * paired into a game whose only player has gone. An emptied bucket is
+ * removed, so private rooms do not pile up. New games are created in the
+ * GameRegistry.
+ * <P>
+ * With a computer opponent set, a player who has waited for a partner
+ * for the set time is taken out of the lobby and seated opposite an
+ * AiPlayer instead. Players in a private room wait for the partner they
+ * named, so are never given one.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class Lobby {
+    /**
+     * The name a computer opponent plays under
+     */
+    public static final String AI_NAME = "Computer";
+
+    private final GameRegistry registry;
+    private final ConcurrentHashMap<String, Waiter> buckets;
+    private final ConcurrentHashMap<SixQueensModelListener, Waiter> waiters;
+    private final LongAdder pairings;
+    private final LongAdder cancellations;
+    private final LongAdder aiPairings;
+    private volatile long aiWaitMillis;
+    private volatile AiEngine aiEngine;
+    private volatile ScheduledExecutorService aiExecutor;
+    private volatile long aiThinkMillis;
+
+    /**
+     * This class holds a player waiting for a partner. The player's game is
+     * created and joined after the player is put in the bucket, so a
+     * partner who takes the player from the bucket first waits until the
+     * player is seated, or could not be. It also holds the task that will
+     * give the player a computer opponent, which is cancelled once the
+     * player leaves the bucket another way.
+     */
+    private static class Waiter {
+        final String bucket;
+        final SixQueensModelListener view;
+        final int size;
+        private SixQueensModel model;
+        private boolean settled;
+        private boolean left;
+        private ScheduledFuture<?> aiTask;
+
+        /**
+         * This constructor creates a waiter
+         *
+         * @param bucket the bucket the player waits in
+         * @param view   the player's view
+         * @param size   the board size the player asked for
+         */
+        Waiter(String bucket, SixQueensModelListener view, int size) {
+            this.bucket = bucket;
+            this.view = view;
+            this.size = size;
+        }
+
+        /**
+         * seated reports that the player has joined its game
+         *
+         * @param model the game the player waits in
+         */
+        synchronized void seated(SixQueensModel model) {
+            this.model = model;
+            settled = true;
+            notifyAll();
+        }
+
+        /**
+         * failed reports that the player could not be seated in a game
+         */
+        synchronized void failed() {
+            settled = true;
+            notifyAll();
+        }
+
+        /**
+         * awaitModel returns the player's game, once the player has joined it
+         *
+         * @return the game the player waits in, or null if the player
+         * could not be seated
+         */
+        synchronized SixQueensModel awaitModel() {
+            boolean interrupted = false;
+            while (!settled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            return model;
+        }
+
+        /**
+         * setAiTask keeps the task that will give the player a computer
+         * opponent, or cancels it if the player has already left
+         *
+         * @param task the task
+         */
+        synchronized void setAiTask(ScheduledFuture<?> task) {
+            if (left)
+                task.cancel(false);
+            else
+                aiTask = task;
+        }
+
+        /**
+         * left reports that the player was paired or cancelled, and
+         * cancels the computer opponent's task
+         */
+        synchronized void left() {
+            left = true;
+            if (aiTask != null)
+                aiTask.cancel(false);
+            aiTask = null;
+        }
+    }
+
+    /**
+     * This constructor creates an empty lobby
+     *
+     * @param registry the registry new games are created in
+     */
+    public Lobby(GameRegistry registry) {
+        this.registry = registry;
+        this.buckets = new ConcurrentHashMap<>();
+        this.waiters = new ConcurrentHashMap<>();
+        this.pairings = new LongAdder();
+        this.cancellations = new LongAdder();
+        this.aiPairings = new LongAdder();
+        this.aiWaitMillis = -1;
+    }
+
+    /**
+     * setAiOpponent gives players who wait too long a computer opponent.
+     * It applies to players who start waiting after it is called.
+     *
+     * @param waitMillis  how long a player waits before being given one, in
+     *                    milliseconds, or -1 never to give one
+     * @param engine      how the computer opponents play
+     * @param executor    the executor the computer opponents move on, which
+     *                    also times the waits
+     * @param thinkMillis the computer opponents' pause before each move
+     */
+    public void setAiOpponent(long waitMillis, AiEngine engine, ScheduledExecutorService executor,
+                              long thinkMillis) {
+        this.aiEngine = engine;
+        this.aiExecutor = executor;
+        this.aiThinkMillis = thinkMillis;
+        this.aiWaitMillis = waitMillis;
+    }
+
+    /**
+     * join puts a player in a game: the game of the player waiting in the
+     * same bucket, or a new one to wait in. The bucket's compute only takes
+     * the waiting player or puts this one in its place; the games are
+     * created and joined after it returns, outside the map's lock.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @param room the private room's name, or null to play anyone
+     * @return the game the player joined
+     */
+    public SixQueensModel join(SixQueensModelListener view, String name, int size, String room) {
+        String key = bucketOf(size, room);
+        while (true) {
+            Waiter waiting = new Waiter(key, view, size);
+            Waiter[] taken = new Waiter[1];
+            waiters.put(view, waiting);
+            buckets.compute(key, (bucket, waiter) -> {
+                taken[0] = waiter;
+                return waiter != null ? null : waiting;
+            });
+
+            // nobody was waiting, so this player waits in a new game
+            if (taken[0] == null) {
+                SixQueensModel model = null;
+                boolean seated = false;
+                try {
+                    model = registry.create();
+                    model.join(view, name, size);
+                    seated = true;
+                } finally {
+                    if (seated) {
+                        waiting.seated(model);
+                    } else {
+                        // let go of the bucket, and of any partner already waiting on this player
+                        buckets.remove(key, waiting);
+                        waiters.remove(view, waiting);
+                        if (model != null)
+                            registry.remove(model.getId());
+                        waiting.failed();
+                    }
+                }
+                long waitMillis = aiWaitMillis;
+                if (room == null && waitMillis >= 0)
+                    waiting.setAiTask(aiExecutor.schedule(() -> seatAi(waiting), waitMillis, TimeUnit.MILLISECONDS));
+                return model;
+            }
+
+            // a partner was waiting; its game may have ended or never started, so look again if so
+            waiters.remove(view, waiting);
+            Waiter partner = taken[0];
+            waiters.remove(partner.view, partner);
+            partner.left();
+            SixQueensModel model = partner.awaitModel();
+            if (model != null && model.joinIfOpen(view, name, size)) {
+                pairings.increment();
+                return model;
+            }
+        }
+    }
+
+    /**
+     * seatAi seats a computer opponent opposite a player who is still
+     * waiting. A player who was paired or left in the meantime is no
+     * longer in the bucket, so is left alone. A player who quits after
+     * being taken from the bucket ends the game, and the game's own check
+     * keeps the computer out of it.
+     *
+     * @param waiter the waiting player
+     */
+    private void seatAi(Waiter waiter) {
+        if (!buckets.remove(waiter.bucket, waiter))
+            return;
+        waiters.remove(waiter.view, waiter);
+        SixQueensModel model = waiter.awaitModel();
+        if (model == null)
+            return;
+        AiPlayer ai = new AiPlayer(model, aiEngine, aiExecutor, aiThinkMillis);
+        if (model.joinIfOpen(ai, AI_NAME, waiter.size))
+            aiPairings.increment();
+    }
+
+    /**
+     * cancel takes a player who quit or dropped out of the lobby
+     *
+     * @param view the player's view
+     * @return true if the player was waiting, false if the player was
+     * already paired or never waited
+     */
+    public boolean cancel(SixQueensModelListener view) {
+        Waiter waiter = waiters.remove(view);
+        if (waiter == null || !buckets.remove(waiter.bucket, waiter))
+            return false;
+        waiter.left();
+        cancellations.increment();
+        return true;
+    }
+
+    /**
+     * getWaiting returns the number of players waiting for a partner
+     *
+     * @return the number of waiting players
+     */
+    public int getWaiting() {
+        return buckets.size();
+    }
+
+    /**
+     * getPairings returns the number of games the lobby has started
+     *
+     * @return the number of pairings
+     */
+    public long getPairings() {
+        return pairings.sum();
+    }
+
+    /**
+     * getCancellations returns the number of waiting players who left
+     * before being paired
+     *
+     * @return the number of cancellations
+     */
+    public long getCancellations() {
+        return cancellations.sum();
+    }
+
+    /**
+     * getAiPairings returns the number of waiting players given a computer
+     * opponent
+     *
+     * @return the number of computer opponents seated
+     */
+    public long getAiPairings() {
+        return aiPairings.sum();
+    }
+
+    /**
+     * bucketOf names the bucket a player waits in. A size the game cannot
+     * play is played on the default board, so waits with it. A private
+     * room is kept apart for each size, so a player is never given a board
+     * other than the one asked for.
+     *
+     * @param size the board size the player asked for
+     * @param room the private room's name, or null
+     * @return the bucket's name
+     */
+    private static String bucketOf(int size, String room) {
+        int playable = BoardState.isValidSize(size) ? size : BoardState.DEFAULT_SIZE;
+        if (room != null)
+            return "room " + room + " size " + playable;
+        return "size " + playable;
+    }
+}
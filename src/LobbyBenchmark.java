@@ -0,0 +1,210 @@
+// ******************************
+//
+// File:    LobbyBenchmark.java
+// Package: ---
+// Unit:    Class LobbyBenchmark
+//
+// ******************************
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class measures how fast players are paired into games. It runs
+ * twice. First it joins players straight into a SessionManager from
+ * several threads, as the connection threads would, with views that throw
+ * the messages away. The joins arrive at the given rate; some ask for a
+ * private room, and some drop out while still waiting. It prints the
+ * pairings per second and the join latency, then the same with the
+ * threads joining as fast as they can.
+ * <P>
+ * Then it starts the server inside this JVM and opens ServerBenchmark
+ * clients at the given rate, resetting the oldest surplus so the number
+ * open stays bounded, and prints the pairings per second the server's
+ * lobby made.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class LobbyBenchmark {
+    private static final int JOIN_THREADS = 4;
+    private static final int SIZES = 3;
+    private static final int ROOMS = 100;
+    private static final int ROOM_PERCENT = 10;
+    private static final int ABANDON_PERCENT = 5;
+    private static final int MAX_OPEN = 1000;
+    private static final long TICK_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3 || !(args[0].equals("threads") || args[0].equals("nio"))) {
+            System.err.println("Usage: java LobbyBenchmark threads|nio <seconds> [<connections/sec>]");
+            System.exit(1);
+        }
+        String mode = args[0];
+        int seconds = Integer.parseInt(args[1]);
+        int rate = args.length == 3 ? Integer.parseInt(args[2]) : 1000;
+
+        joins(seconds, rate);
+        joins(seconds, 0);
+        connections(mode, seconds, rate);
+        System.exit(0);
+    }
+
+    /**
+     * joins joins players into a session manager from several threads and
+     * prints the pairing rate and join latency
+     *
+     * @param seconds how long to join players
+     * @param rate    the joins per second over all threads, or 0 for as
+     *                fast as they can
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void joins(int seconds, int rate) throws InterruptedException {
+        SessionManager sessions = new SessionManager(SessionManager.DEFAULT_GRACE_MILLIS);
+        long[][] latencies = new long[JOIN_THREADS][];
+        int[] counts = new int[JOIN_THREADS];
+        CountDownLatch done = new CountDownLatch(JOIN_THREADS);
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        for (int t = 0; t < JOIN_THREADS; t++) {
+            int thread = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] latency = new long[1024];
+                int count = 0;
+                long interval = rate > 0 ? 1_000_000_000L * JOIN_THREADS / rate : 0;
+                long next = start;
+                while (true) {
+                    long now = System.nanoTime();
+                    if (now >= deadline)
+                        break;
+                    if (now < next) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    next += interval;
+
+                    SixQueensModelListener view = new NullView();
+                    String room = random.nextInt(100) < ROOM_PERCENT ? "room" + random.nextInt(ROOMS) : null;
+                    int size = BoardState.DEFAULT_SIZE + random.nextInt(SIZES);
+                    long begin = System.nanoTime();
+                    sessions.join(view, "bot", size, room);
+                    long end = System.nanoTime();
+                    if (random.nextInt(100) < ABANDON_PERCENT)
+                        sessions.disconnected(view);
+
+                    if (count == latency.length)
+                        latency = Arrays.copyOf(latency, count * 2);
+                    latency[count++] = end - begin;
+                }
+                latencies[thread] = latency;
+                counts[thread] = count;
+                done.countDown();
+            }, "LobbyBenchmark-" + t).start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (int count : counts)
+            total += count;
+        long[] sorted = new long[total];
+        int at = 0;
+        for (int t = 0; t < JOIN_THREADS; t++) {
+            System.arraycopy(latencies[t], 0, sorted, at, counts[t]);
+            at += counts[t];
+        }
+        Arrays.sort(sorted);
+        Lobby lobby = sessions.getLobby();
+        System.out.printf("lobby, %s: %.0f joins/sec, %.0f pairings/sec, %d cancelled, %d waiting%n",
+                rate > 0 ? rate + " joins/sec offered" : "unpaced", total / elapsed,
+                lobby.getPairings() / elapsed, lobby.getCancellations(), lobby.getWaiting());
+        if (total > 0)
+            System.out.printf("join latency: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    sorted[total / 2] / 1e3, sorted[(int) (total * 0.99)] / 1e3, sorted[total - 1] / 1e3);
+    }
+
+    /**
+     * connections opens clients to a server in this JVM at the given rate
+     * and prints the pairings per second its lobby made
+     *
+     * @param mode    the server mode, threads or nio
+     * @param seconds how long to open connections
+     * @param rate    the connections per second
+     * @throws Exception if the server or the clients fail to start
+     */
+    private static void connections(String mode, int seconds, int rate) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "mode=" + mode}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        ServerBenchmark clients = new ServerBenchmark();
+        clients.setVerbose(false);
+        WireStats.reset();
+        Lobby lobby = SixQueensServer.getSessionManager().getLobby();
+        long ticks = seconds * 1000L / TICK_MILLIS;
+        double perTick = rate * TICK_MILLIS / 1000.0;
+        double owed = 0;
+        int opened = 0;
+        long start = System.nanoTime();
+        for (long tick = 1; tick <= ticks; tick++) {
+            owed += perTick;
+            int wanted = (int) owed - (int) owed % 2;
+            owed -= wanted;
+            opened += clients.connect(address, wanted);
+            if (clients.getOpen() > MAX_OPEN)
+                clients.kill(clients.getOpen() - MAX_OPEN);
+            long sleep = start / 1_000_000 + tick * TICK_MILLIS - System.nanoTime() / 1_000_000;
+            if (sleep > 0)
+                Thread.sleep(sleep);
+        }
+        Thread.sleep(200);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s server, %d connections/sec offered: %.0f connections/sec, %.0f pairings/sec, " +
+                        "%d waiting, %d errors%n", mode, rate, opened / elapsed, lobby.getPairings() / elapsed,
+                lobby.getWaiting(), WireStats.getErrors());
+        clients.close();
+    }
+
+    /**
+     * This class is a view that throws its messages away
+     */
+    private static class NullView implements SixQueensModelListener {
+        public void boardSize(int size) {
+        }
+
+        public void newGame() {
+        }
+
+        public void setQueen(int row, int col) {
+        }
+
+        public void waitingForPartner() {
+        }
+
+        public void yourTurn() {
+        }
+
+        public void theirTurn(String name) {
+        }
+
+        public void youWin() {
+        }
+
+        public void theyWin(String name) {
+        }
+
+        public void quit() {
+        }
+    }
+}
@@ -0,0 +1,371 @@
+// ****************************
+//
+// File:    MessageEncoder.java
+// Package: ---
+// Unit:    Class MessageEncoder
+//
+// ****************************
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class encodes the messages the server sends one client, in the
+ * protocol version that client speaks. Messages are appended to a
+ * ByteBuffer the encoder owns and grows as needed; the view proxy takes
+ * them from there and clears it once they are sent. Encoding allocates
+ * nothing once the buffer is big enough.
+ * <P>
+ * In version 2 the encoder remembers which player index it gave each
+ * name, so a name crosses the wire once per connection rather than in
+ * every 'T' and 'L' message. The spectator messages name the players in
+ * full instead, since they are encoded once for every spectator.
+ * <P>
+ * Every message encoded is counted by opcode in Metrics.SERVER_OUT.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class MessageEncoder {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private ByteBuffer buf;
+    private int version;
+    private int size;
+    private String[] players;
+    private int playerCount;
+    private int nextReplaced;
+
+    /**
+     * This constructor creates an encoder for a version 1 client
+     */
+    public MessageEncoder() {
+        this(WireFormat.VERSION_1, BoardState.DEFAULT_SIZE);
+    }
+
+    /**
+     * This constructor creates an encoder for a version and board size
+     * already agreed on, with no hello
+     *
+     * @param version the protocol version
+     * @param size    the board size squares are packed by
+     */
+    public MessageEncoder(int version, int size) {
+        buf = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.version = version;
+        this.size = size;
+        if (version >= WireFormat.VERSION_2)
+            players = new String[4];
+    }
+
+    /**
+     * buffer returns the encoded messages, ready for writing: the messages
+     * are the bytes before the position
+     *
+     * @return the buffer
+     */
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /**
+     * getVersion returns the protocol version being encoded
+     *
+     * @return the version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * hello answers a client's hello and switches to the version chosen
+     *
+     * @param clientVersion the highest version the client speaks
+     */
+    public void hello(int clientVersion) {
+        version = Math.max(WireFormat.VERSION_1, Math.min(clientVersion, WireFormat.LATEST_VERSION));
+        if (version >= WireFormat.VERSION_2)
+            players = new String[4];
+        reserve(2).put(WireFormat.HELLO).put((byte) version);
+    }
+
+    /**
+     * boardSize encodes the board size, which later squares are packed by
+     *
+     * @param size the number of rows and columns
+     */
+    public void boardSize(int size) {
+        this.size = size;
+        Metrics.SERVER_OUT.count('G');
+        if (version == WireFormat.VERSION_1) {
+            reserve(2).put((byte) 'G').put((byte) size);
+        } else {
+            int start = WireFormat.beginFrame(reserve(4), 'G');
+            buf.put((byte) size);
+            WireFormat.endFrame(buf, start);
+        }
+    }
+
+    /**
+     * newGame encodes a new game
+     */
+    public void newGame() {
+        op('N');
+    }
+
+    /**
+     * setQueen encodes a queen being placed
+     *
+     * @param row the row
+     * @param col the column
+     */
+    public void setQueen(int row, int col) {
+        Metrics.SERVER_OUT.count('Q');
+        if (version == WireFormat.VERSION_1) {
+            reserve(3).put((byte) 'Q').put((byte) row).put((byte) col);
+        } else {
+            int start = WireFormat.beginFrame(reserve(5), 'Q');
+            WireFormat.putSquare(buf, size, row, col);
+            WireFormat.endFrame(buf, start);
+        }
+    }
+
+    /**
+     * waitingForPartner encodes that the player is waiting for a partner
+     */
+    public void waitingForPartner() {
+        op('P');
+    }
+
+    /**
+     * yourTurn encodes that it is this player's turn
+     */
+    public void yourTurn() {
+        op('Y');
+    }
+
+    /**
+     * theirTurn encodes that it is the other player's turn
+     *
+     * @param name the other player's name
+     */
+    public void theirTurn(String name) {
+        withPlayer('T', name);
+    }
+
+    /**
+     * youWin encodes that this player won
+     */
+    public void youWin() {
+        op('W');
+    }
+
+    /**
+     * theyWin encodes that the other player won
+     *
+     * @param name the other player's name
+     */
+    public void theyWin(String name) {
+        withPlayer('L', name);
+    }
+
+    /**
+     * sessionToken encodes the token that resumes the player's session.
+     * Version 1 has no way to resume, so it is not sent.
+     *
+     * @param token the session token
+     */
+    public void sessionToken(long token) {
+        if (version == WireFormat.VERSION_1)
+            return;
+        Metrics.SERVER_OUT.count('K');
+        int start = WireFormat.beginFrame(reserve(11), 'K');
+        buf.putLong(token);
+        WireFormat.endFrame(buf, start);
+    }
+
+    /**
+     * snapshot encodes the whole state of a game in one version 2 message:
+     * the size, the status, one bit per square for the queens, and the
+     * other player's name. It also sets the size later squares are packed by.
+     *
+     * @param board     the board
+     * @param status    the status, as in SixQueensModelListener
+     * @param theirName the other player's name, or null while waiting
+     */
+    public void snapshot(BoardState board, int status, String theirName) {
+        size = board.getSize();
+        Metrics.SERVER_OUT.count('Z');
+        String name = theirName == null ? "" : theirName;
+        int maskBytes = WireFormat.snapshotMaskBytes(size);
+        int start = WireFormat.beginFrame(reserve(5 + maskBytes + WireFormat.utfLength(name)), 'Z');
+        buf.put((byte) size).put((byte) status);
+        putQueens(board);
+        WireFormat.putUTF(buf, name);
+        WireFormat.endFrame(buf, start);
+    }
+
+    /**
+     * watching encodes the whole state of a game for a spectator in one
+     * version 2 message: the size, the status as the first player sees
+     * it, one bit per square for the queens, and both players' names. It
+     * also sets the size later squares are packed by.
+     *
+     * @param board  the board
+     * @param status the status for the first player, as in SixQueensModelListener
+     * @param name1  the first player's name
+     * @param name2  the second player's name, or null while waiting
+     */
+    public void watching(BoardState board, int status, String name1, String name2) {
+        size = board.getSize();
+        Metrics.SERVER_OUT.count('X');
+        String second = name2 == null ? "" : name2;
+        int length = 5 + WireFormat.snapshotMaskBytes(size) + WireFormat.utfLength(name1) + WireFormat.utfLength(second);
+        int start = WireFormat.beginFrame(reserve(length), 'X');
+        buf.put((byte) size).put((byte) status);
+        putQueens(board);
+        WireFormat.putUTF(buf, name1);
+        WireFormat.putUTF(buf, second);
+        WireFormat.endFrame(buf, start);
+    }
+
+    /**
+     * watchStatus encodes a game's new status for a spectator
+     *
+     * @param status the status for the first player, as in SixQueensModelListener
+     */
+    public void watchStatus(int status) {
+        Metrics.SERVER_OUT.count('U');
+        int start = WireFormat.beginFrame(reserve(4), 'U');
+        buf.put((byte) status);
+        WireFormat.endFrame(buf, start);
+    }
+
+    /**
+     * quit encodes that a player quit
+     */
+    public void quit() {
+        op('B');
+    }
+
+    /**
+     * putQueens encodes the queens on a board as one bit per square, in
+     * row order, low bit first
+     *
+     * @param board the board
+     */
+    private void putQueens(BoardState board) {
+        int bits = 0;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (board.hasQueen(row, col))
+                    bits |= 1 << count;
+                if (++count == 8) {
+                    buf.put((byte) bits);
+                    bits = 0;
+                    count = 0;
+                }
+            }
+        }
+        if (count > 0)
+            buf.put((byte) bits);
+    }
+
+    /**
+     * op encodes a message that is just an opcode
+     *
+     * @param opCode the opcode
+     */
+    private void op(char opCode) {
+        Metrics.SERVER_OUT.count(opCode);
+        if (version == WireFormat.VERSION_1) {
+            reserve(1).put((byte) opCode);
+        } else {
+            int start = WireFormat.beginFrame(reserve(3), opCode);
+            WireFormat.endFrame(buf, start);
+        }
+    }
+
+    /**
+     * withPlayer encodes a message about a player: with the name in
+     * version 1, with the player's index in version 2, naming the index
+     * first if this client has not seen it
+     *
+     * @param opCode the opcode
+     * @param name   the player's name
+     */
+    private void withPlayer(char opCode, String name) {
+        Metrics.SERVER_OUT.count(opCode);
+        if (version == WireFormat.VERSION_1) {
+            reserve(1 + WireFormat.utfLength(name)).put((byte) opCode);
+            WireFormat.putUTF(buf, name);
+            return;
+        }
+
+        int index = indexOf(name);
+        if (index < 0) {
+            index = assign(name);
+            Metrics.SERVER_OUT.count('A');
+            int start = WireFormat.beginFrame(reserve(4 + WireFormat.utfLength(name)), 'A');
+            buf.put((byte) index);
+            WireFormat.putUTF(buf, name);
+            WireFormat.endFrame(buf, start);
+        }
+        int start = WireFormat.beginFrame(reserve(4), opCode);
+        buf.put((byte) index);
+        WireFormat.endFrame(buf, start);
+    }
+
+    /**
+     * indexOf finds the index this client knows a name by
+     *
+     * @param name the name
+     * @return the index, or -1 if the name has not been sent
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < playerCount; i++) {
+            if (players[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * assign gives a name an index. Once every index is in use the oldest
+     * are reused in turn.
+     *
+     * @param name the name
+     * @return the index
+     */
+    private int assign(String name) {
+        if (playerCount < WireFormat.MAX_PLAYERS) {
+            if (playerCount == players.length) {
+                String[] bigger = new String[Math.min(players.length * 2, WireFormat.MAX_PLAYERS)];
+                System.arraycopy(players, 0, bigger, 0, playerCount);
+                players = bigger;
+            }
+            players[playerCount] = name;
+            return playerCount++;
+        }
+        int index = nextReplaced;
+        nextReplaced = (nextReplaced + 1) % WireFormat.MAX_PLAYERS;
+        players[index] = name;
+        return index;
+    }
+
+    /**
+     * reserve makes room in the buffer
+     *
+     * @param length the number of bytes needed
+     * @return the buffer
+     */
+    private ByteBuffer reserve(int length) {
+        if (buf.remaining() < length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + length));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,338 @@
+// ************************
+//
+// File:    Metrics.java
+// Package: ---
+// Unit:    Class Metrics
+//
+// ************************
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * This class measures a running Six Queens server and its clients. It
+ * counts every message by opcode, in and out, on the server's view
+ * proxies and on the clients' model proxies; counts the connections open
+ * and, through the session manager's registry, the games; and keeps two
+ * LatencyHistograms:
+ * <UL>
+ *   <LI>lock hold: how long each SixQueensModel operation holds the
+ *       game's lock, and so how long it can keep the other player waiting
+ *   <LI>move flush: from a squareChosen reaching the model until both
+ *       players' views have flushed the move's reports toward their
+ *       sockets, timed by the game's MoveTimer
+ * </UL>
+ * Bytes and writes are counted in WireStats, and reported here with the
+ * rest. MetricsEndpoint publishes the report over JMX and HTTP.
+ * <P>
+ * Like WireStats, the counters are static LongAdders, so the threads
+ * that update them never contend, and counting a message is one add.
+ * A timing costs System.nanoTime calls, which take longer than the rest
+ * of the metrics together, so only one operation in DEFAULT_SAMPLING,
+ * picked at random, is timed; the percentiles stay true to every
+ * operation, from fewer samples. setSampling changes the rate, and
+ * MetricsBenchmark measures what the metrics add to a move.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class Metrics {
+    /**
+     * The messages the server reads from its clients
+     */
+    public static final Opcodes SERVER_IN = new Opcodes();
+
+    /**
+     * The messages the server encodes for its clients and spectators
+     */
+    public static final Opcodes SERVER_OUT = new Opcodes();
+
+    /**
+     * The messages clients read from the server
+     */
+    public static final Opcodes CLIENT_IN = new Opcodes();
+
+    /**
+     * The messages clients send to the server
+     */
+    public static final Opcodes CLIENT_OUT = new Opcodes();
+
+    /**
+     * By default one operation in this many is timed
+     */
+    public static final int DEFAULT_SAMPLING = 16;
+
+    private static final LongAdder opened = new LongAdder();
+    private static final LongAdder closed = new LongAdder();
+    private static final LatencyHistogram lockHold = new LatencyHistogram();
+    private static final LatencyHistogram moveFlush = new LatencyHistogram();
+    private static volatile IntSupplier games = () -> 0;
+    private static volatile int sampleMask = DEFAULT_SAMPLING - 1;
+    private static volatile boolean timing = true;
+
+    /**
+     * This class counts messages by their opcode byte
+     */
+    public static class Opcodes {
+        private final LongAdder[] counts = new LongAdder[256];
+
+        /**
+         * This constructor creates a counter for every opcode byte
+         */
+        private Opcodes() {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        /**
+         * count counts one message
+         *
+         * @param opCode the message's opcode
+         */
+        public void count(int opCode) {
+            counts[opCode & 0xFF].increment();
+        }
+
+        /**
+         * get returns the number of messages with an opcode
+         *
+         * @param opCode the opcode
+         * @return the count
+         */
+        public long get(int opCode) {
+            return counts[opCode & 0xFF].sum();
+        }
+
+        /**
+         * toMap returns the count of every opcode seen, keyed by the
+         * opcode as a character, or in hex if it is not printable
+         *
+         * @return the counts, in opcode order
+         */
+        public Map<String, Long> toMap() {
+            Map<String, Long> map = new TreeMap<>();
+            for (int op = 0; op < counts.length; op++) {
+                long count = counts[op].sum();
+                if (count > 0)
+                    map.put(op > ' ' && op < 0x7F ? String.valueOf((char) op) : String.format("0x%02X", op), count);
+            }
+            return map;
+        }
+
+        /**
+         * reset sets every count to zero
+         */
+        private void reset() {
+            for (LongAdder count : counts)
+                count.reset();
+        }
+    }
+
+    /**
+     * This constructor is private; the counters are static
+     */
+    private Metrics() {
+    }
+
+    /**
+     * setTiming turns the lock hold and move flush timings on or off
+     *
+     * @param on true to time
+     */
+    public static void setTiming(boolean on) {
+        timing = on;
+    }
+
+    /**
+     * setSampling sets how many operations there are for each one timed
+     *
+     * @param oneIn the rate, a power of two; 1 times every operation
+     */
+    public static void setSampling(int oneIn) {
+        if (oneIn < 1 || Integer.bitCount(oneIn) != 1)
+            throw new IllegalArgumentException("Metrics: sampling must be a power of two");
+        sampleMask = oneIn - 1;
+    }
+
+    /**
+     * now returns the time to start a timing from, if this operation is
+     * one of those sampled
+     *
+     * @return System.nanoTime, or 0 if the operation is not timed
+     */
+    public static long now() {
+        if (!timing || (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)
+            return 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * since returns the time to start a second timing from, within an
+     * operation that is already being timed
+     *
+     * @param start the first timing's start, from now
+     * @return System.nanoTime, or 0 if the operation is not timed
+     */
+    public static long since(long start) {
+        return start == 0 ? 0 : System.nanoTime();
+    }
+
+    /**
+     * recordLockHold records how long a game's lock was held
+     *
+     * @param since when the lock was taken, from now; 0 records nothing
+     */
+    public static void recordLockHold(long since) {
+        if (since != 0)
+            lockHold.record(System.nanoTime() - since);
+    }
+
+    /**
+     * recordMoveFlush records how long a move took to reach the wire
+     *
+     * @param nanos the time in nanoseconds
+     */
+    public static void recordMoveFlush(long nanos) {
+        moveFlush.record(nanos);
+    }
+
+    /**
+     * connectionOpened counts a server connection opened
+     */
+    public static void connectionOpened() {
+        opened.increment();
+    }
+
+    /**
+     * connectionClosed counts a server connection closed
+     */
+    public static void connectionClosed() {
+        closed.increment();
+    }
+
+    /**
+     * setGames sets where the number of games comes from
+     *
+     * @param count the game count, read whenever it is reported
+     */
+    public static void setGames(IntSupplier count) {
+        games = count;
+    }
+
+    /**
+     * getConnections returns the number of server connections open
+     *
+     * @return the connection count
+     */
+    public static long getConnections() {
+        return opened.sum() - closed.sum();
+    }
+
+    /**
+     * getGames returns the number of games
+     *
+     * @return the game count
+     */
+    public static int getGames() {
+        return games.getAsInt();
+    }
+
+    /**
+     * getLockHold returns the histogram of lock hold times
+     *
+     * @return the histogram, in nanoseconds
+     */
+    public static LatencyHistogram getLockHold() {
+        return lockHold;
+    }
+
+    /**
+     * getMoveFlush returns the histogram of move flush times
+     *
+     * @return the histogram, in nanoseconds
+     */
+    public static LatencyHistogram getMoveFlush() {
+        return moveFlush;
+    }
+
+    /**
+     * reset sets every counter and histogram to zero, except the open
+     * connections and the games
+     */
+    public static void reset() {
+        SERVER_IN.reset();
+        SERVER_OUT.reset();
+        CLIENT_IN.reset();
+        CLIENT_OUT.reset();
+        lockHold.reset();
+        moveFlush.reset();
+    }
+
+    /**
+     * report returns every metric, one per line, as name and value
+     * separated by a space, in the Prometheus text format
+     *
+     * @return the report
+     */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        line(out, "sixqueens_connections", getConnections());
+        line(out, "sixqueens_games", getGames());
+        line(out, "sixqueens_moves_total", WireStats.getMoves());
+        line(out, "sixqueens_bytes_in_total", WireStats.getBytesIn());
+        line(out, "sixqueens_bytes_out_total", WireStats.getBytesOut());
+        line(out, "sixqueens_writes_total", WireStats.getWrites());
+        line(out, "sixqueens_drops_total", WireStats.getDrops());
+        line(out, "sixqueens_errors_total", WireStats.getErrors());
+        opcodes(out, "sixqueens_server_in_total", SERVER_IN);
+        opcodes(out, "sixqueens_server_out_total", SERVER_OUT);
+        opcodes(out, "sixqueens_client_in_total", CLIENT_IN);
+        opcodes(out, "sixqueens_client_out_total", CLIENT_OUT);
+        histogram(out, "sixqueens_lock_hold_nanos", lockHold);
+        histogram(out, "sixqueens_move_flush_nanos", moveFlush);
+        return out.toString();
+    }
+
+    /**
+     * line appends one metric to a report
+     *
+     * @param out   the report
+     * @param name  the metric's name
+     * @param value the value
+     */
+    private static void line(StringBuilder out, String name, Object value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * opcodes appends a metric for each opcode seen to a report
+     *
+     * @param out     the report
+     * @param name    the metrics' name
+     * @param opcodes the counters
+     */
+    private static void opcodes(StringBuilder out, String name, Opcodes opcodes) {
+        for (Map.Entry<String, Long> entry : opcodes.toMap().entrySet())
+            line(out, name + "{op=\"" + entry.getKey() + "\"}", entry.getValue());
+    }
+
+    /**
+     * histogram appends a histogram's count, mean, percentiles and maximum
+     * to a report
+     *
+     * @param out       the report
+     * @param name      the metrics' name
+     * @param histogram the histogram
+     */
+    private static void histogram(StringBuilder out, String name, LatencyHistogram histogram) {
+        line(out, name + "_count", histogram.getCount());
+        line(out, name + "_mean", Math.round(histogram.getMean()));
+        line(out, name + "{quantile=\"0.5\"}", histogram.getPercentile(0.5));
+        line(out, name + "{quantile=\"0.99\"}", histogram.getPercentile(0.99));
+        line(out, name + "{quantile=\"0.999\"}", histogram.getPercentile(0.999));
+        line(out, name + "_max", histogram.getMax());
+    }
+}
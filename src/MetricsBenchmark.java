@@ -0,0 +1,252 @@
+// ********************************
+//
+// File:    MetricsBenchmark.java
+// Package: ---
+// Unit:    Class MetricsBenchmark
+//
+// ********************************
+
+import java.util.Random;
+
+/**
+ * This class measures what Metrics adds to the server's hot path. It
+ * first times each kind of update on its own, in a tight loop: counting
+ * an opcode, recording a latency, and a timing's pair of nanoTime calls.
+ * Then it plays random games on SixQueensModels with views that throw
+ * their messages away, as fast as it can, timing whole moves with the
+ * lock hold and move flush timings on and off in alternate rounds, and
+ * prints what timing adds to a move, and what counting a move's messages
+ * adds, from the opcode count per move.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class MetricsBenchmark {
+    private static final int GAMES = 1000;
+    private static final int ROUNDS = 5;
+
+    private final SixQueensModel[] games;
+    private final BoardState[] boards;
+    private final SixQueensModelListener[][] seats;
+    private final int[] turns;
+    private final Random random = new Random(1);
+
+    // keeps the tight loops from being optimized away
+    private static long sink;
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: java MetricsBenchmark [<moves per round>]");
+            System.exit(1);
+        }
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        long count = 50_000_000L;
+        for (int i = 0; i < 2; i++) {
+            double opcode = countOpcodes(count);
+            double record = recordLatencies(count);
+            double timing = timeNothing(count);
+            if (i == 1)
+                System.out.printf("per update: opcode count %.1f ns, histogram record %.1f ns, " +
+                        "timing pair %.1f ns%n", opcode, record, timing);
+        }
+        Metrics.reset();
+        WireStats.reset();
+
+        MetricsBenchmark benchmark = new MetricsBenchmark();
+        benchmark.run(moves, true);
+        benchmark.run(moves, false);
+        double on = 0;
+        double off = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            on += benchmark.run(moves, true);
+            off += benchmark.run(moves, false);
+        }
+        on /= ROUNDS;
+        off /= ROUNDS;
+
+        // each move here is one squareChosen in, and what the views were sent out
+        long played = WireStats.getMoves();
+        double messages = 1 + (double) countAll(Metrics.SERVER_OUT) / Math.max(1, played);
+        double opcode = countOpcodes(count);
+        System.out.printf("move with timing off: %.1f ns, on: %.1f ns, timing adds %.1f ns%n", off, on, on - off);
+        System.out.printf("a move's %.1f messages add %.1f ns of opcode counting%n", messages, messages * opcode);
+        System.out.printf("lock hold: %d timed, p50 %d ns, p99 %d ns; move flush: %d timed, p50 %d ns, p99 %d ns%n",
+                Metrics.getLockHold().getCount(), Metrics.getLockHold().getPercentile(0.5),
+                Metrics.getLockHold().getPercentile(0.99), Metrics.getMoveFlush().getCount(),
+                Metrics.getMoveFlush().getPercentile(0.5), Metrics.getMoveFlush().getPercentile(0.99));
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * This constructor starts GAMES games
+     */
+    public MetricsBenchmark() {
+        GameRegistry registry = new GameRegistry();
+        games = new SixQueensModel[GAMES];
+        boards = new BoardState[GAMES];
+        seats = new SixQueensModelListener[GAMES][];
+        turns = new int[GAMES];
+        for (int i = 0; i < GAMES; i++) {
+            games[i] = registry.create();
+            boards[i] = new BoardState();
+            seats[i] = new SixQueensModelListener[]{new EncodingView(), new EncodingView()};
+            games[i].join(seats[i][0], "player" + (2 * i), BoardState.DEFAULT_SIZE);
+            games[i].join(seats[i][1], "player" + (2 * i + 1), BoardState.DEFAULT_SIZE);
+        }
+    }
+
+    /**
+     * run makes random moves, spread over the games, as fast as it can
+     *
+     * @param moves  the number of moves
+     * @param timing true to time the moves in Metrics
+     * @return the mean time of a move, in nanoseconds
+     */
+    public double run(int moves, boolean timing) {
+        Metrics.setTiming(timing);
+        long start = System.nanoTime();
+        for (int i = 0; i < moves; i++)
+            move(i % GAMES);
+        double nanos = (double) (System.nanoTime() - start) / moves;
+        Metrics.setTiming(true);
+        return nanos;
+    }
+
+    /**
+     * move makes a random legal move in a game, starting a new game after a win
+     *
+     * @param i the game
+     */
+    private void move(int i) {
+        BoardState board = boards[i];
+        int size = board.getSize();
+        int row, col;
+        do {
+            row = random.nextInt(size);
+            col = random.nextInt(size);
+        } while (!board.isEmpty(row, col));
+        board.setQueen(row, col);
+        games[i].squareChosen(seats[i][turns[i]], row, col);
+
+        if (board.checkWin()) {
+            games[i].newGame(seats[i][0]);
+            board.clear();
+            turns[i] = 0;
+        } else {
+            turns[i] = 1 - turns[i];
+        }
+    }
+
+    /**
+     * countOpcodes times counting opcodes
+     *
+     * @param count the number of counts
+     * @return the time of one, in nanoseconds
+     */
+    private static double countOpcodes(long count) {
+        Metrics.Opcodes opcodes = Metrics.CLIENT_IN;
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++)
+            opcodes.count('A' + (int) (i & 15));
+        double nanos = (double) (System.nanoTime() - start) / count;
+        sink += opcodes.get('A');
+        return nanos;
+    }
+
+    /**
+     * recordLatencies times recording latencies
+     *
+     * @param count the number of records
+     * @return the time of one, in nanoseconds
+     */
+    private static double recordLatencies(long count) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++)
+            histogram.record(200 + (i & 1023));
+        double nanos = (double) (System.nanoTime() - start) / count;
+        sink += histogram.getCount();
+        return nanos;
+    }
+
+    /**
+     * timeNothing times the two nanoTime calls a timing makes
+     *
+     * @param count the number of timings
+     * @return the time of one, in nanoseconds
+     */
+    private static double timeNothing(long count) {
+        long total = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long since = Metrics.now();
+            total += System.nanoTime() - since;
+        }
+        double nanos = (double) (System.nanoTime() - start) / count;
+        sink += total;
+        return nanos;
+    }
+
+    /**
+     * countAll adds up the counts of every opcode
+     *
+     * @param opcodes the counters
+     * @return the total
+     */
+    private static long countAll(Metrics.Opcodes opcodes) {
+        long total = 0;
+        for (long count : opcodes.toMap().values())
+            total += count;
+        return total;
+    }
+
+    /**
+     * This class is a view that encodes its messages, as a network view
+     * would, so they are counted, then throws them away
+     */
+    private static class EncodingView implements SixQueensModelListener {
+        private final MessageEncoder encoder = new MessageEncoder(WireFormat.VERSION_2, BoardState.DEFAULT_SIZE);
+
+        public void boardSize(int size) {
+            encoder.boardSize(size);
+        }
+
+        public void newGame() {
+            encoder.newGame();
+        }
+
+        public void setQueen(int row, int col) {
+            encoder.setQueen(row, col);
+        }
+
+        public void waitingForPartner() {
+            encoder.waitingForPartner();
+        }
+
+        public void yourTurn() {
+            encoder.yourTurn();
+        }
+
+        public void theirTurn(String name) {
+            encoder.theirTurn(name);
+        }
+
+        public void youWin() {
+            encoder.youWin();
+        }
+
+        public void theyWin(String name) {
+            encoder.theyWin(name);
+        }
+
+        public void quit() {
+            encoder.quit();
+        }
+
+        public void updateDone() {
+            encoder.buffer().clear();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+// ********************************
+//
+// File:    MetricsEndpoint.java
+// Package: ---
+// Unit:    Class MetricsEndpoint
+//
+// ********************************
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class publishes the server's Metrics: over JMX as the MXBean
+ * SixQueens:type=Metrics, for jconsole and the like, and over HTTP at
+ * /metrics on a port of the loopback address, as the text Metrics.report
+ * returns. Neither does any work until it is asked for the metrics.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class MetricsEndpoint implements MetricsMXBean {
+    /**
+     * The name the MXBean is registered under
+     */
+    public static final String OBJECT_NAME = "SixQueens:type=Metrics";
+
+    /**
+     * This constructor is private; register creates the one MXBean
+     */
+    private MetricsEndpoint() {
+    }
+
+    /**
+     * register registers the MXBean with the platform MBean server, once
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new MetricsEndpoint(), name);
+        } catch (JMException e) {
+            System.err.println("MetricsEndpoint: " + e);
+        }
+    }
+
+    /**
+     * serve starts serving the metrics over HTTP on the loopback address,
+     * on the HTTP server's own thread
+     *
+     * @param port the port
+     * @return the HTTP server
+     * @throws IOException if the port cannot be bound
+     */
+    public static HttpServer serve(int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> {
+            byte[] body = Metrics.report().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        http.start();
+        return http;
+    }
+
+    /**
+     * getConnections returns the number of server connections open
+     *
+     * @return the connection count
+     */
+    @Override
+    public long getConnections() {
+        return Metrics.getConnections();
+    }
+
+    /**
+     * getGames returns the number of games
+     *
+     * @return the game count
+     */
+    @Override
+    public int getGames() {
+        return Metrics.getGames();
+    }
+
+    /**
+     * getMoves returns the number of moves played
+     *
+     * @return the move count
+     */
+    @Override
+    public long getMoves() {
+        return WireStats.getMoves();
+    }
+
+    /**
+     * getBytesIn returns the number of bytes read from clients
+     *
+     * @return the byte count
+     */
+    @Override
+    public long getBytesIn() {
+        return WireStats.getBytesIn();
+    }
+
+    /**
+     * getBytesOut returns the number of bytes written to clients
+     *
+     * @return the byte count
+     */
+    @Override
+    public long getBytesOut() {
+        return WireStats.getBytesOut();
+    }
+
+    /**
+     * getDrops returns the number of connections lost without quitting
+     *
+     * @return the drop count
+     */
+    @Override
+    public long getDrops() {
+        return WireStats.getDrops();
+    }
+
+    /**
+     * getErrors returns the number of errors contained to one connection
+     *
+     * @return the error count
+     */
+    @Override
+    public long getErrors() {
+        return WireStats.getErrors();
+    }
+
+    /**
+     * getServerIn returns the messages the server read, by opcode
+     *
+     * @return the counts
+     */
+    @Override
+    public Map<String, Long> getServerIn() {
+        return Metrics.SERVER_IN.toMap();
+    }
+
+    /**
+     * getServerOut returns the messages the server encoded, by opcode
+     *
+     * @return the counts
+     */
+    @Override
+    public Map<String, Long> getServerOut() {
+        return Metrics.SERVER_OUT.toMap();
+    }
+
+    /**
+     * getLockHold summarizes how long game operations held their lock
+     *
+     * @return the count, mean, p50, p99, p999 and max, in nanoseconds
+     */
+    @Override
+    public Map<String, Long> getLockHold() {
+        return summary(Metrics.getLockHold());
+    }
+
+    /**
+     * getMoveFlush summarizes how long moves took to reach the wire
+     *
+     * @return the count, mean, p50, p99, p999 and max, in nanoseconds
+     */
+    @Override
+    public Map<String, Long> getMoveFlush() {
+        return summary(Metrics.getMoveFlush());
+    }
+
+    /**
+     * getReport returns every metric in the text the HTTP endpoint serves
+     *
+     * @return the report
+     */
+    @Override
+    public String getReport() {
+        return Metrics.report();
+    }
+
+    /**
+     * reset sets the message counts and histograms to zero
+     */
+    @Override
+    public void reset() {
+        Metrics.reset();
+    }
+
+    /**
+     * summary summarizes a histogram
+     *
+     * @param histogram the histogram
+     * @return the count, mean, p50, p99, p999 and max
+     */
+    private static Map<String, Long> summary(LatencyHistogram histogram) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("mean", Math.round(histogram.getMean()));
+        summary.put("p50", histogram.getPercentile(0.5));
+        summary.put("p99", histogram.getPercentile(0.99));
+        summary.put("p999", histogram.getPercentile(0.999));
+        summary.put("max", histogram.getMax());
+        return summary;
+    }
+}
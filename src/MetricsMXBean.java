@@ -0,0 +1,108 @@
+// ******************************
+//
+// File:    MetricsMXBean.java
+// Package: ---
+// Unit:    Interface MetricsMXBean
+//
+// ******************************
+
+import java.util.Map;
+
+/**
+ * This interface specifies what MetricsEndpoint publishes over JMX: the
+ * server's Metrics and WireStats
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public interface MetricsMXBean {
+
+    /**
+     * getConnections returns the number of server connections open
+     *
+     * @return the connection count
+     */
+    public long getConnections();
+
+    /**
+     * getGames returns the number of games
+     *
+     * @return the game count
+     */
+    public int getGames();
+
+    /**
+     * getMoves returns the number of moves played
+     *
+     * @return the move count
+     */
+    public long getMoves();
+
+    /**
+     * getBytesIn returns the number of bytes read from clients
+     *
+     * @return the byte count
+     */
+    public long getBytesIn();
+
+    /**
+     * getBytesOut returns the number of bytes written to clients
+     *
+     * @return the byte count
+     */
+    public long getBytesOut();
+
+    /**
+     * getDrops returns the number of connections lost without quitting
+     *
+     * @return the drop count
+     */
+    public long getDrops();
+
+    /**
+     * getErrors returns the number of errors contained to one connection
+     *
+     * @return the error count
+     */
+    public long getErrors();
+
+    /**
+     * getServerIn returns the messages the server read, by opcode
+     *
+     * @return the counts
+     */
+    public Map<String, Long> getServerIn();
+
+    /**
+     * getServerOut returns the messages the server encoded, by opcode
+     *
+     * @return the counts
+     */
+    public Map<String, Long> getServerOut();
+
+    /**
+     * getLockHold summarizes how long game operations held their lock
+     *
+     * @return the count, mean, p50, p99, p999 and max, in nanoseconds
+     */
+    public Map<String, Long> getLockHold();
+
+    /**
+     * getMoveFlush summarizes how long moves took to reach the wire
+     *
+     * @return the count, mean, p50, p99, p999 and max, in nanoseconds
+     */
+    public Map<String, Long> getMoveFlush();
+
+    /**
+     * getReport returns every metric in the text the HTTP endpoint serves
+     *
+     * @return the report
+     */
+    public String getReport();
+
+    /**
+     * reset sets the message counts and histograms to zero
+     */
+    public void reset();
+}
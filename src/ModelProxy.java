@@ -10,31 +10,81 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
 
 /**
  * This class provides the model proxy for the Six Queens game.
  * It implements the client side of the client-server network communication.
+ * It speaks version 2 of the protocol unless asked for version 1, which
+ * servers from before version 2 need; see WireFormat.
+ * <P>
+ * In version 2 the proxy keeps the session token the server gives it. If
+ * the connection drops, it reconnects to the same server and resumes the
+ * game, retrying for up to the server's default grace period, and the
+ * server sends it a snapshot of the game in place of what it missed.
+ * <P>
+ * Every message sent and received is counted by opcode in Metrics.
  *
  * @author  Ian Naple
  * @version 3/27/2018
  */
 public class ModelProxy implements SixQueensViewListener {
+    private static final long FIRST_RETRY_MILLIS = 250;
+    private static final long MAX_RETRY_MILLIS = 4000;
+
     private Socket socket;
+    private SocketAddress address;
+    private ThreadMode threadMode;
+    private int version;
     private DataOutputStream out;
     private DataInputStream in;
+    private ByteBuffer frames;
     private SixQueensModelListener modelListener;
+    private volatile int boardSize;
+    private volatile long sessionToken;
+    private volatile Consumer<IOException> failureHandler;
 
     /**
-     * This constructor creates a new model proxy
+     * This constructor creates a new model proxy that reads on a platform thread
      *
-     * @param s
+     * @param s the socket
      */
     public ModelProxy(Socket s) {
+        this(s, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * This constructor creates a new model proxy that speaks the latest protocol
+     *
+     * @param s          the socket
+     * @param threadMode the kind of thread that reads from the socket
+     */
+    public ModelProxy(Socket s, ThreadMode threadMode) {
+        this(s, threadMode, WireFormat.LATEST_VERSION);
+    }
+
+    /**
+     * This constructor creates a new model proxy
+     *
+     * @param s          the socket
+     * @param threadMode the kind of thread that reads from the socket
+     * @param version    the protocol version to speak
+     */
+    public ModelProxy(Socket s, ThreadMode threadMode, int version) {
+        if (version < WireFormat.VERSION_1 || version > WireFormat.LATEST_VERSION)
+            throw new IllegalArgumentException("ModelProxy: unknown protocol version " + version);
         try {
             this.socket = s;
+            this.address = s.getRemoteSocketAddress();
+            this.threadMode = threadMode;
+            this.version = version;
+            this.boardSize = BoardState.DEFAULT_SIZE;
             socket.setTcpNoDelay(true);
             out = new DataOutputStream(socket.getOutputStream());
             in = new DataInputStream(socket.getInputStream());
+            frames = ByteBuffer.allocate(64);
         } catch (IOException e) {
             error(e);
         }
@@ -47,23 +97,80 @@ public class ModelProxy implements SixQueensViewListener {
      */
     public void setListener(SixQueensModelListener modelListener) {
         this.modelListener = modelListener;
-        new ReaderThread().start();
+        threadMode.start(new Reader(), "ModelProxy-Reader");
+    }
+
+    /**
+     * setFailureHandler sets what happens when the connection fails and
+     * cannot be resumed. By default the program exits, since a player's
+     * client has nothing left to do; a program with many players can
+     * handle each one's failure instead.
+     *
+     * @param failureHandler told of the failure, on the thread it happened on
+     */
+    public void setFailureHandler(Consumer<IOException> failureHandler) {
+        this.failureHandler = failureHandler;
     }
 
     /**
-     * join reports when a player joins the game
+     * join reports when a player joins the game. In version 2 the hello
+     * goes out first, in the same write.
      *
      * @param view the view object reporting the player joining
      * @param name the name of the player
+     * @param size the board size the player asked for
      */
     @Override
-    public void join(SixQueensModelListener view, String name) {
+    public void join(SixQueensModelListener view, String name, int size) {
+        join(view, name, size, null);
+    }
+
+    /**
+     * join reports when a player joins a private room, to play whoever
+     * else joins the same room. Only version 2 has rooms.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @param room the room's name, or null to be paired with anyone
+     * @throws IllegalArgumentException if the name or room is longer than WireFormat.MAX_NAME_BYTES
+     */
+    @Override
+    public synchronized void join(SixQueensModelListener view, String name, int size, String room) {
+        if (room != null && version == WireFormat.VERSION_1)
+            throw new IllegalStateException("ModelProxy: version 1 has no private rooms");
+        if (!WireFormat.isValidName(name) || (room != null && !WireFormat.isValidName(room)))
+            throw new IllegalArgumentException("ModelProxy: name longer than " + WireFormat.MAX_NAME_BYTES + " bytes");
         try {
-            out.writeByte('J');
-            out.writeUTF(name);
-            out.flush();
+            Metrics.CLIENT_OUT.count('G');
+            if (room != null)
+                Metrics.CLIENT_OUT.count('M');
+            Metrics.CLIENT_OUT.count('J');
+            if (version == WireFormat.VERSION_1) {
+                out.writeByte('G');
+                out.writeByte(size);
+                out.writeByte('J');
+                out.writeUTF(name);
+                out.flush();
+            } else {
+                ByteBuffer buf = reserve(9 + WireFormat.utfLength(name)
+                        + (room == null ? 0 : 3 + WireFormat.utfLength(room)));
+                buf.put(WireFormat.HELLO).put((byte) version);
+                int start = WireFormat.beginFrame(buf, 'G');
+                buf.put((byte) size);
+                WireFormat.endFrame(buf, start);
+                if (room != null) {
+                    start = WireFormat.beginFrame(buf, 'M');
+                    WireFormat.putUTF(buf, room);
+                    WireFormat.endFrame(buf, start);
+                }
+                start = WireFormat.beginFrame(buf, 'J');
+                WireFormat.putUTF(buf, name);
+                WireFormat.endFrame(buf, start);
+                sendFrames();
+            }
         } catch (IOException e) {
-            error(e);
+            failed(e);
         }
     }
 
@@ -75,14 +182,22 @@ public class ModelProxy implements SixQueensViewListener {
      * @param col  the column the queen was placed in
      */
     @Override
-    public void squareChosen(SixQueensModelListener view, int row, int col) {
+    public synchronized void squareChosen(SixQueensModelListener view, int row, int col) {
+        Metrics.CLIENT_OUT.count('S');
         try {
-            out.writeByte('S');
-            out.writeByte(row);
-            out.writeByte(col);
-            out.flush();
+            if (version == WireFormat.VERSION_1) {
+                out.writeByte('S');
+                out.writeByte(row);
+                out.writeByte(col);
+                out.flush();
+            } else {
+                int start = WireFormat.beginFrame(reserve(5), 'S');
+                WireFormat.putSquare(frames, boardSize, row, col);
+                WireFormat.endFrame(frames, start);
+                sendFrames();
+            }
         } catch (IOException e) {
-            error(e);
+            failed(e);
         }
     }
 
@@ -92,13 +207,8 @@ public class ModelProxy implements SixQueensViewListener {
      * @param view the view reporting the new game
      */
     @Override
-    public void newGame(SixQueensModelListener view) {
-        try {
-            out.writeByte('N');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void newGame(SixQueensModelListener view) {
+        sendOp('N');
     }
 
     /**
@@ -107,82 +217,425 @@ public class ModelProxy implements SixQueensViewListener {
      * @param view the view reporting the player leaving the game
      */
     @Override
-    public void quit(SixQueensModelListener view) {
+    public synchronized void quit(SixQueensModelListener view) {
+        sendOp('Q');
+    }
+
+    /**
+     * resume asks to be put back in the game a session token was issued
+     * for. It is sent as the first message on a version 2 connection, in
+     * place of join.
+     *
+     * @param view  the view of the returning player
+     * @param token the session token
+     */
+    @Override
+    public synchronized void resume(SixQueensModelListener view, long token) {
+        if (version == WireFormat.VERSION_1)
+            throw new IllegalStateException("ModelProxy: version 1 cannot resume");
         try {
-            out.writeByte('Q');
-            out.flush();
+            sendResume(token);
         } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * sendResume sends the hello and a resume message
+     *
+     * @param token the session token
+     * @throws IOException if the connection fails
+     */
+    private void sendResume(long token) throws IOException {
+        Metrics.CLIENT_OUT.count('R');
+        ByteBuffer buf = reserve(13);
+        buf.put(WireFormat.HELLO).put((byte) version);
+        int start = WireFormat.beginFrame(buf, 'R');
+        buf.putLong(token);
+        WireFormat.endFrame(buf, start);
+        sendFrames();
+    }
+
+    /**
+     * failed handles a failed write. A version 2 session that can be
+     * resumed drops the message and closes the socket, so the reader
+     * reconnects; the game snapshot then shows what took effect.
+     * Otherwise the program exits, unless there is a failure handler, in
+     * which case the socket is closed and the reader reports the failure.
+     *
+     * @param e the IO error
+     */
+    private void failed(IOException e) {
+        frames.clear();
+        if ((version == WireFormat.VERSION_1 || sessionToken == 0) && failureHandler == null)
             error(e);
+        try {
+            socket.close();
+        } catch (IOException ce) {
+            // the connection is gone either way
+        }
+    }
+
+    /**
+     * getSessionToken returns the token the server gave this player
+     *
+     * @return the session token, or 0 if none has been given
+     */
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * sendOp sends a message that is just an opcode
+     *
+     * @param opCode the opcode
+     */
+    private void sendOp(char opCode) {
+        Metrics.CLIENT_OUT.count(opCode);
+        try {
+            if (version == WireFormat.VERSION_1) {
+                out.writeByte(opCode);
+                out.flush();
+            } else {
+                WireFormat.endFrame(frames, WireFormat.beginFrame(reserve(3), opCode));
+                sendFrames();
+            }
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * reserve makes room in the version 2 output buffer
+     *
+     * @param length the number of bytes needed
+     * @return the output buffer
+     */
+    private ByteBuffer reserve(int length) {
+        if (frames.remaining() < length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(frames.capacity() * 2, frames.position() + length));
+            frames.flip();
+            bigger.put(frames);
+            frames = bigger;
         }
+        return frames;
+    }
+
+    /**
+     * sendFrames writes the version 2 output buffer in one write
+     *
+     * @throws IOException if the connection fails
+     */
+    private void sendFrames() throws IOException {
+        out.write(frames.array(), 0, frames.position());
+        out.flush();
+        frames.clear();
     }
 
     /**
      * This class receives messages from the network, interprets them,
      * and executes the proper functions to process them
      */
-    private class ReaderThread extends Thread {
+    private class Reader implements Runnable {
+        // the names of the players, by the index the server gave them
+        private final String[] players = new String[WireFormat.MAX_PLAYERS];
+
+        // the frame being decoded; grown to fit the longest frame seen
+        private byte[] frame = new byte[64];
+        private ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+
         public void run() {
+            try {
+                if (version == WireFormat.VERSION_1) {
+                    readMessages();
+                } else {
+                    readHello();
+                    while (true) {
+                        try {
+                            readFrames();
+                        } catch (IOException e) {
+                            if (sessionToken == 0 || !reconnect())
+                                throw e;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                lost(e);
+            }
+        }
+
+        /**
+         * readHello reads the server's answer to the version 2 hello
+         *
+         * @throws IOException if the connection fails or the server does
+         *                     not speak version 2
+         */
+        private void readHello() throws IOException {
+            if (in.readByte() != WireFormat.HELLO)
+                throw new IOException("server did not answer the hello");
+            int answer = in.readUnsignedByte();
+            if (answer != version)
+                throw new IOException("server answered protocol version " + answer);
+        }
+
+        /**
+         * reconnect opens a new connection to the server and resumes the
+         * session on it, retrying with growing pauses until the grace
+         * period is over
+         *
+         * @return true if the session was resumed
+         */
+        private boolean reconnect() {
+            long deadline = System.currentTimeMillis() + SessionManager.DEFAULT_GRACE_MILLIS;
+            long pause = FIRST_RETRY_MILLIS;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // the old connection is gone either way
+            }
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Socket s = new Socket();
+                    s.connect(address);
+                    s.setTcpNoDelay(true);
+                    synchronized (ModelProxy.this) {
+                        socket = s;
+                        out = new DataOutputStream(s.getOutputStream());
+                        in = new DataInputStream(s.getInputStream());
+                        frames.clear();
+                        sendResume(sessionToken);
+                    }
+                    readHello();
+                    return true;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException ie) {
+                        return false;
+                    }
+                    pause = Math.min(pause * 2, MAX_RETRY_MILLIS);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * readMessages reads and reports version 1 messages until the
+         * connection fails
+         *
+         * @throws IOException if the connection fails
+         */
+        private void readMessages() throws IOException {
             int opCode;
             int row, col;
             String name;
 
             // reads in a character and runs the corresponding function
-            try {
-                while (true) {
-                    opCode = in.readByte();
-                    switch (opCode) {
-                        // new game case
-                        case 'N':
-                            modelListener.newGame();
-                            break;
-
-                        // queen placed case
-                        case 'Q':
-                            row = in.readByte();
-                            col = in.readByte();
-                            modelListener.setQueen(row, col);
-
-                            // waiting for partner case
-                        case 'P':
-                            modelListener.waitingForPartner();
-                            break;
-
-                        // your turn case
-                        case 'Y':
-                            modelListener.yourTurn();
-                            break;
-
-                        // their turn case
-                        case 'T':
-                            name = in.readUTF();
-                            modelListener.theirTurn(name);
-                            break;
-
-                        // you win case
-                        case 'W':
-                            modelListener.youWin();
-                            break;
-
-                        // they win case
-                        case 'L':
-                            name = in.readUTF();
-                            modelListener.theyWin(name);
-                            break;
-
-                        // quit case
-                        case 'B':
-                            modelListener.quit();
-                            break;
-
-                        default:
-                            System.err.println("Bad Message");
-                            break;
-                    }
+            while (true) {
+                opCode = in.readByte();
+                Metrics.CLIENT_IN.count(opCode);
+                switch (opCode) {
+                    // board size case
+                    case 'G':
+                        modelListener.boardSize(in.readByte() & 0xFF);
+                        break;
+
+                    // new game case
+                    case 'N':
+                        modelListener.newGame();
+                        break;
+
+                    // queen placed case
+                    case 'Q':
+                        row = in.readByte();
+                        col = in.readByte();
+                        modelListener.setQueen(row, col);
+                        break;
+
+                    // waiting for partner case
+                    case 'P':
+                        modelListener.waitingForPartner();
+                        break;
+
+                    // your turn case
+                    case 'Y':
+                        modelListener.yourTurn();
+                        break;
+
+                    // their turn case
+                    case 'T':
+                        name = in.readUTF();
+                        modelListener.theirTurn(name);
+                        break;
+
+                    // you win case
+                    case 'W':
+                        modelListener.youWin();
+                        break;
+
+                    // they win case
+                    case 'L':
+                        name = in.readUTF();
+                        modelListener.theyWin(name);
+                        break;
+
+                    // quit case
+                    case 'B':
+                        modelListener.quit();
+                        break;
+
+                    default:
+                        System.err.println("Bad Message");
+                        break;
+                }
+            }
+        }
+
+        /**
+         * readFrames reads and reports version 2 frames until the
+         * connection fails. A frame that cannot be decoded is skipped.
+         *
+         * @throws IOException if the connection fails
+         */
+        private void readFrames() throws IOException {
+            while (true) {
+                int length = in.readUnsignedShort();
+                if (length > frame.length) {
+                    frame = new byte[Math.max(length, frame.length * 2)];
+                    frameBuffer = ByteBuffer.wrap(frame);
+                }
+                in.readFully(frame, 0, length);
+                frameBuffer.clear().limit(length);
+                try {
+                    if (length > 0)
+                        dispatchFrame(frameBuffer);
+                } catch (RuntimeException e) {
+                    // a truncated frame, or a board size or square the board cannot take
+                    System.err.println("Bad Message");
                 }
-            } catch (IOException e) {
-                error(e);
             }
         }
+
+        /**
+         * dispatchFrame decodes one version 2 message and reports it
+         *
+         * @param buf the frame's opcode and arguments
+         */
+        private void dispatchFrame(ByteBuffer buf) {
+            byte opCode = buf.get();
+            Metrics.CLIENT_IN.count(opCode);
+            switch (opCode) {
+                // board size case
+                case 'G':
+                    int newSize = buf.get() & 0xFF;
+                    if (!BoardState.isValidSize(newSize)) {
+                        System.err.println("Bad Message");
+                        break;
+                    }
+                    boardSize = newSize;
+                    modelListener.boardSize(boardSize);
+                    break;
+
+                // new game case
+                case 'N':
+                    modelListener.newGame();
+                    break;
+
+                // queen placed case
+                case 'Q':
+                    int size = boardSize;
+                    int square = WireFormat.getSquare(buf, size);
+                    modelListener.setQueen(square / size, square % size);
+                    break;
+
+                // waiting for partner case
+                case 'P':
+                    modelListener.waitingForPartner();
+                    break;
+
+                // your turn case
+                case 'Y':
+                    modelListener.yourTurn();
+                    break;
+
+                // player named case
+                case 'A':
+                    int index = buf.get() & 0xFF;
+                    players[index] = WireFormat.getUTF(buf);
+                    break;
+
+                // their turn case
+                case 'T':
+                    modelListener.theirTurn(players[buf.get() & 0xFF]);
+                    break;
+
+                // you win case
+                case 'W':
+                    modelListener.youWin();
+                    break;
+
+                // they win case
+                case 'L':
+                    modelListener.theyWin(players[buf.get() & 0xFF]);
+                    break;
+
+                // quit case
+                case 'B':
+                    modelListener.quit();
+                    break;
+
+                // session token case
+                case 'K':
+                    sessionToken = buf.getLong();
+                    modelListener.sessionToken(sessionToken);
+                    break;
+
+                // snapshot case
+                case 'Z':
+                    snapshot(buf);
+                    break;
+
+                default:
+                    System.err.println("Bad Message");
+                    break;
+            }
+        }
+
+        /**
+         * snapshot decodes a snapshot and reports it
+         *
+         * @param buf the snapshot's arguments
+         * @throws IllegalArgumentException if the snapshot's size is not a board size
+         */
+        private void snapshot(ByteBuffer buf) {
+            int size = buf.get() & 0xFF;
+            int status = buf.get();
+            BoardState board = new BoardState(size);
+            int bits = 0;
+            for (int square = 0; square < size * size; square++) {
+                if (square % 8 == 0)
+                    bits = buf.get();
+                if ((bits & (1 << (square % 8))) != 0)
+                    board.setQueen(square / size, square % size);
+            }
+            String theirName = WireFormat.getUTF(buf);
+            boardSize = size;
+            modelListener.snapshot(board, status, theirName.isEmpty() ? null : theirName);
+        }
+    }
+
+    /**
+     * lost handles a connection that failed and cannot be resumed, with
+     * the failure handler if one was set
+     *
+     * @param e the IO error
+     */
+    private void lost(IOException e) {
+        Consumer<IOException> handler = failureHandler;
+        if (handler != null)
+            handler.accept(e);
+        else
+            error(e);
     }
 
     /**
@@ -0,0 +1,63 @@
+// **************************
+//
+// File:    MoveTimer.java
+// Package: ---
+// Unit:    Class MoveTimer
+//
+// **************************
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class times a move from squareChosen until the last view it was
+ * reported to has flushed its reports toward its player, and records the
+ * time in Metrics. Each game has one, reused for every move, so timing a
+ * move allocates nothing.
+ * <P>
+ * The start time and the number of flushes still to come are kept in one
+ * AtomicLong, the count in the low bits, so views flushing on different
+ * threads need no lock. A flush from an earlier move that only arrives
+ * after the next move started no longer matches the start time and is
+ * ignored, so that earlier move goes unrecorded rather than wrongly timed.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class MoveTimer {
+    // the most views a move can wait for, and the bits they are counted in
+    private static final int MAX_VIEWS = 3;
+    private static final long COUNT_MASK = 3;
+
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * start starts timing a move
+     *
+     * @param start the time squareChosen was called, from System.nanoTime
+     * @param views the number of views that will flush, at most 3
+     */
+    public void start(long start, int views) {
+        if (views < 0 || views > MAX_VIEWS)
+            throw new IllegalArgumentException("MoveTimer: too many views");
+        state.set((start & ~COUNT_MASK) | views);
+    }
+
+    /**
+     * flushed reports that one view has flushed the move's reports. The
+     * last view to flush records the move's time.
+     *
+     * @param start the start time the view was given
+     */
+    public void flushed(long start) {
+        while (true) {
+            long s = state.get();
+            if ((s & ~COUNT_MASK) != (start & ~COUNT_MASK) || (s & COUNT_MASK) == 0)
+                return;
+            if (state.compareAndSet(s, s - 1)) {
+                if ((s & COUNT_MASK) == 1)
+                    Metrics.recordMoveFlush(System.nanoTime() - start);
+                return;
+            }
+        }
+    }
+}
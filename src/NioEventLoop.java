@@ -0,0 +1,113 @@
+// ***************************
+//
+// File:    NioEventLoop.java
+// Package: ---
+// Unit:    Class NioEventLoop
+//
+// ***************************
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * This class runs one NIO event loop for the Six Queens server. It owns a
+ * Selector and serves every NioViewProxy registered with it: reading and
+ * decoding their messages, and finishing writes that did not complete
+ * when they were sent. An exception while serving one connection closes
+ * that connection only; the loop carries on with the rest. It is the
+ * executor its connections' spectator events are delivered on.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class NioEventLoop implements Runnable, Executor {
+    private final Selector selector;
+    private final Queue<NioViewProxy> pending;
+    private final Queue<Runnable> tasks;
+
+    /**
+     * This constructor creates a new event loop
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public NioEventLoop() throws IOException {
+        selector = Selector.open();
+        pending = new ConcurrentLinkedQueue<>();
+        tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * register hands a new connection to this loop. It may be called from any thread.
+     *
+     * @param proxy the connection
+     */
+    public void register(NioViewProxy proxy) {
+        pending.add(proxy);
+        selector.wakeup();
+    }
+
+    /**
+     * execute runs a task on this loop's thread. It may be called from any thread.
+     *
+     * @param task the task
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * wakeup makes the loop pick up interest changes made by another thread
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * run selects and dispatches events until the selector fails
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                selector.select();
+
+                NioViewProxy proxy;
+                while ((proxy = pending.poll()) != null)
+                    proxy.register(selector, this);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        WireStats.recordError("NioEventLoop", e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    proxy = (NioViewProxy) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable())
+                            proxy.handleRead();
+                        if (key.isValid() && key.isWritable())
+                            proxy.handleWrite();
+                    } catch (RuntimeException e) {
+                        proxy.failed(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("NioEventLoop: I/O error");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// ************************
+//
+// File:    NioServer.java
+// Package: ---
+// Unit:    Class NioServer
+//
+// ************************
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class runs the Six Queens server on non-blocking sockets. One
+ * thread accepts connections and hands them to the same SessionManager
+ * the thread-per-connection server uses; a small, fixed group of
+ * NioEventLoop threads then serves every connection, however many there are.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class NioServer {
+    private final InetSocketAddress address;
+    private final NioEventLoop[] loops;
+    private final SixQueensViewListener listener;
+
+    /**
+     * This constructor creates a new server
+     *
+     * @param address  the address to listen on
+     * @param loops    the number of event loop threads
+     * @param listener the listener every connection reports to
+     * @throws IOException if a selector cannot be opened
+     */
+    public NioServer(InetSocketAddress address, int loops, SixQueensViewListener listener)
+            throws IOException {
+        this.address = address;
+        this.listener = listener;
+        this.loops = new NioEventLoop[loops];
+        for (int i = 0; i < loops; i++)
+            this.loops[i] = new NioEventLoop();
+    }
+
+    /**
+     * run starts the event loops and accepts connections forever. A
+     * connection that fails while being accepted is dropped and counted.
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "NioEventLoop-" + i);
+            thread.start();
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(address);
+        int next = 0;
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                SixQueensServer.acceptFailed(e);
+                continue;
+            }
+            NioViewProxy viewProxy = new NioViewProxy(channel);
+            viewProxy.setListener(listener);
+            loops[next].register(viewProxy);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    /**
+     * closeQuietly closes a channel that failed while being accepted
+     *
+     * @param channel the channel, or null if accept itself failed
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the channel is gone either way
+        }
+    }
+}
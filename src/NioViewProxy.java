@@ -0,0 +1,769 @@
+// ***************************
+//
+// File:    NioViewProxy.java
+// Package: ---
+// Unit:    Class NioViewProxy
+//
+// ***************************
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class provides the view proxy for the NIO Six Queens server. It
+ * speaks the same protocols as ViewProxy, version 1 or 2 as the client
+ * chooses, over a non-blocking SocketChannel.
+ * Incoming bytes are decoded on the connection's NioEventLoop and fed to
+ * the SixQueensViewListener. Outgoing messages are written straight away
+ * when the socket can take them; whatever is left waits in an output
+ * buffer until the event loop sees the socket is writable again, so a
+ * model call never blocks.
+ * <P>
+ * Messages are only buffered as the model reports them; the buffer is
+ * written when the model calls updateDone, so the messages of one update
+ * go out in one write. Batching can be turned off to compare.
+ * <P>
+ * A spectator's events arrive on the event loop as read-only buffers the
+ * game shares with all its spectators. The proxy writes a duplicate of
+ * each, and keeps the duplicates the socket could not take yet, writing
+ * them all with one gathering write once it can, so an event is never
+ * copied per spectator. A spectator that falls too far behind, or stays
+ * behind too long, is dropped.
+ * <P>
+ * A player's output buffer is bounded the way ViewProxy's OutboundQueue
+ * is: once more than the high watermark is waiting the player is backed
+ * up until the buffer drains below the low watermark, and a player
+ * backed up longer than the stall timeout, or past the hard limit, has
+ * stopped reading and is dropped.
+ * <P>
+ * A failure on this connection, I/O or otherwise, closes this proxy only;
+ * the game is told and the failure is counted in WireStats. Every
+ * message in and out is counted in Metrics, and the bytes read in WireStats.
+ * Lost connections and messages that cannot be decoded are also Flight
+ * Recorder events.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class NioViewProxy implements SixQueensModelListener, Spectator {
+    // room for a room frame and a join frame with the longest names; longer messages are refused
+    private static final int IN_CAPACITY = 2 * (WireFormat.FRAME_HEADER_BYTES + 3 + WireFormat.MAX_NAME_BYTES);
+
+    // a player's output is backed up above the high watermark until it drains below the low one
+    private static final int LOW_WATERMARK = 4 * 1024;
+    private static final int HIGH_WATERMARK = 16 * 1024;
+
+    // a player this far behind, or backed up this long, is dropped, as ViewProxy's queue does
+    private static final int MAX_QUEUED_BYTES = 64 * 1024;
+    private static final long STALL_NANOS = 10_000_000_000L;
+
+    // a spectator this far behind, or behind this long, is dropped
+    private static final int MAX_WATCHED_BYTES = 64 * 1024;
+    private static final long WATCH_STALL_NANOS = 10_000_000_000L;
+
+    private static volatile boolean batching = true;
+
+    private final SocketChannel channel;
+    private final ByteBuffer in;
+    private final MessageEncoder encoder;
+    private SelectionKey key;
+    private NioEventLoop loop;
+    private SixQueensViewListener viewListener;
+    private int requestedSize;
+    private String requestedRoom;
+    private boolean sizeAware;
+    private boolean negotiated;
+    private boolean roomRefused;
+    private int skipping;
+    private volatile int boardSize;
+    private volatile boolean closed;
+    private volatile boolean quitting;
+    private volatile boolean stalled;
+    private final AtomicBoolean reported = new AtomicBoolean();
+    private final ArrayDeque<ByteBuffer> watched = new ArrayDeque<>();
+    private ByteBuffer[] gather = new ByteBuffer[8];
+    private int watchedBytes;
+    private long behindSince;
+    private boolean backedUp;
+    private long backedUpSince;
+
+    // the move being timed until the output buffer is written
+    private MoveTimer moveTimer;
+    private long moveStart;
+
+    /**
+     * This constructor creates a new view proxy
+     *
+     * @param channel the connected channel, in non-blocking mode
+     */
+    public NioViewProxy(SocketChannel channel) {
+        this.channel = channel;
+        this.in = ByteBuffer.allocate(IN_CAPACITY);
+        this.encoder = new MessageEncoder();
+        this.requestedSize = BoardState.DEFAULT_SIZE;
+        this.sizeAware = false;
+        this.negotiated = false;
+        this.boardSize = BoardState.DEFAULT_SIZE;
+        this.closed = false;
+        Metrics.connectionOpened();
+    }
+
+    /**
+     * setBatching chooses whether messages wait for the end of the model
+     * update or are written one at a time
+     *
+     * @param on true to batch each update's messages
+     */
+    public static void setBatching(boolean on) {
+        batching = on;
+    }
+
+    /**
+     * setListener sets the listener for the view proxy. It must be called
+     * before the proxy is registered with an event loop.
+     *
+     * @param viewListener the listener
+     */
+    public void setListener(SixQueensViewListener viewListener) {
+        this.viewListener = viewListener;
+    }
+
+    /**
+     * register registers the channel with an event loop's selector. It is
+     * called on the event loop thread.
+     *
+     * @param selector the selector
+     * @param loop     the event loop
+     */
+    synchronized void register(Selector selector, NioEventLoop loop) {
+        if (closed)
+            return;
+        try {
+            this.loop = loop;
+            int ops = encoder.buffer().position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            key = channel.register(selector, ops, this);
+        } catch (IOException e) {
+            WireStats.recordError("NioViewProxy", e);
+            close();
+        }
+    }
+
+    /**
+     * handleRead reads what the client sent and dispatches every complete
+     * message. It is called on the event loop thread.
+     */
+    void handleRead() {
+        try {
+            int count = channel.read(in);
+            if (count < 0) {
+                disconnected();
+                return;
+            }
+            WireStats.recordRead(count);
+        } catch (IOException e) {
+            disconnected();
+            return;
+        }
+
+        in.flip();
+        while (!closed) {
+            // the rest of a refused message is thrown away as it arrives
+            if (skipping > 0) {
+                int skipped = Math.min(skipping, in.remaining());
+                in.position(in.position() + skipped);
+                skipping -= skipped;
+                if (skipping > 0)
+                    break;
+                continue;
+            }
+
+            // a version 2 client opens with a hello; anything else is version 1
+            if (!negotiated) {
+                if (!in.hasRemaining())
+                    break;
+                if (in.get(in.position()) == WireFormat.HELLO) {
+                    if (in.remaining() < 2)
+                        break;
+                    in.get();
+                    hello(in.get() & 0xFF);
+                }
+                negotiated = true;
+            } else if (encoder.getVersion() >= WireFormat.VERSION_2) {
+                int length = WireFormat.frameLength(in);
+                if (length < 0) {
+                    if (!refuseLong())
+                        break;
+                    continue;
+                }
+                int end = in.position() + length;
+                int limit = in.limit();
+                in.position(in.position() + WireFormat.FRAME_HEADER_BYTES).limit(end);
+                int opCode = in.hasRemaining() ? in.get(in.position()) : -1;
+                try {
+                    if (in.hasRemaining())
+                        dispatchFrame();
+                } catch (BufferUnderflowException e) {
+                    badMessage(opCode, "truncated message");
+                }
+                in.limit(limit).position(end);
+            } else {
+                int length = WireFormat.clientMessageLength(in);
+                if (length < 0) {
+                    if (!refuseLong())
+                        break;
+                    continue;
+                }
+                int end = in.position() + length;
+                dispatch();
+                in.position(end);
+            }
+        }
+        in.compact();
+    }
+
+    /**
+     * refuseLong refuses the incomplete message at the buffer's position
+     * if it is too long for the buffer, as a bad message, and skips it.
+     * A long private room also refuses the join that follows it, as
+     * ViewProxy does.
+     *
+     * @return true if the message was refused, false if it may yet fit
+     */
+    private boolean refuseLong() {
+        int length = -1;
+        int opCode = -1;
+        int at = in.position();
+        if (encoder.getVersion() >= WireFormat.VERSION_2) {
+            if (in.remaining() >= WireFormat.FRAME_HEADER_BYTES)
+                length = WireFormat.FRAME_HEADER_BYTES + (in.getShort(at) & 0xFFFF);
+            if (in.remaining() > WireFormat.FRAME_HEADER_BYTES)
+                opCode = in.get(at + WireFormat.FRAME_HEADER_BYTES);
+        } else if (in.remaining() >= 3 && in.get(at) == 'J') {
+            length = 3 + (in.getShort(at + 1) & 0xFFFF);
+            opCode = 'J';
+        }
+        if (length <= in.capacity())
+            return false;
+        badMessage(opCode, opCode == 'J' || opCode == 'M' ? "name too long" : "message too long");
+        if (opCode == 'M')
+            roomRefused = true;
+        skipping = length;
+        return true;
+    }
+
+    /**
+     * dispatch decodes one complete version 1 message and reports it to
+     * the listener
+     */
+    private void dispatch() {
+        byte opCode = in.get();
+        Metrics.SERVER_IN.count(opCode);
+        switch (opCode) {
+            // board size case
+            case 'G':
+                requestedSize = in.get() & 0xFF;
+                sizeAware = true;
+                break;
+
+            // join case
+            case 'J':
+                String name = WireFormat.getUTF(in);
+                if (WireFormat.isValidName(name))
+                    viewListener.join(this, name, requestedSize);
+                else
+                    badMessage(opCode, "name too long");
+                break;
+
+            // square chosen case
+            case 'S':
+                int row = in.get();
+                int col = in.get();
+                viewListener.squareChosen(this, row, col);
+                break;
+
+            // new game case
+            case 'N':
+                viewListener.newGame(this);
+                break;
+
+            // quit case
+            case 'Q':
+                quitting = true;
+                viewListener.quit(this);
+                break;
+
+            default:
+                badMessage(opCode, "unknown opcode");
+        }
+    }
+
+    /**
+     * dispatchFrame decodes one version 2 message and reports it to the
+     * listener. The buffer's limit is the end of the frame.
+     */
+    private void dispatchFrame() {
+        byte opCode = in.get();
+        Metrics.SERVER_IN.count(opCode);
+        switch (opCode) {
+            // board size case
+            case 'G':
+                requestedSize = in.get() & 0xFF;
+                break;
+
+            // private room case
+            case 'M':
+                requestedRoom = WireFormat.getUTF(in);
+                roomRefused = false;
+                break;
+
+            // join case
+            case 'J':
+                String name = WireFormat.getUTF(in);
+                if (WireFormat.isValidName(name) && !roomRefused &&
+                        (requestedRoom == null || WireFormat.isValidName(requestedRoom)))
+                    viewListener.join(this, name, requestedSize, requestedRoom);
+                else
+                    badMessage(opCode, "name too long");
+                break;
+
+            // square chosen case
+            case 'S':
+                int size = boardSize;
+                int square = WireFormat.getSquare(in, size);
+                viewListener.squareChosen(this, square / size, square % size);
+                break;
+
+            // new game case
+            case 'N':
+                viewListener.newGame(this);
+                break;
+
+            // quit case
+            case 'Q':
+                quitting = true;
+                viewListener.quit(this);
+                break;
+
+            // resume case
+            case 'R':
+                viewListener.resume(this, in.getLong());
+                break;
+
+            // watch case
+            case 'O':
+                viewListener.watch(this, in.getLong());
+                break;
+
+            default:
+                badMessage(opCode, "unknown opcode");
+        }
+    }
+
+    /**
+     * badMessage reports a message from the client that could not be
+     * decoded, and records it for Flight Recorder
+     *
+     * @param opCode the message's opcode, or -1 if it was not read
+     * @param reason why it could not be decoded
+     */
+    private void badMessage(int opCode, String reason) {
+        System.err.println("Bad Message");
+        ProtocolErrorEvent event = new ProtocolErrorEvent();
+        if (event.shouldCommit()) {
+            event.client = String.valueOf(channel.socket().getRemoteSocketAddress());
+            event.opCode = opCode;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /**
+     * hello answers a version 2 client's hello. The answer goes out at once.
+     *
+     * @param clientVersion the highest version the client speaks
+     */
+    private synchronized void hello(int clientVersion) {
+        encoder.hello(clientVersion);
+        sizeAware = sizeAware || encoder.getVersion() >= WireFormat.VERSION_2;
+        flush();
+    }
+
+    /**
+     * handleWrite writes buffered output once the socket is writable again.
+     * It is called on the event loop thread.
+     */
+    synchronized void handleWrite() {
+        flush();
+        flushWatched();
+        if (moveTimer != null && encoder.buffer().position() == 0) {
+            moveTimer.flushed(moveStart);
+            moveTimer = null;
+        }
+    }
+
+    /**
+     * boardSize reports the board size. Clients that never sent a board
+     * size only know the default board, so they are not told.
+     *
+     * @param size the number of rows and columns
+     */
+    @Override
+    public synchronized void boardSize(int size) {
+        boardSize = size;
+        if (!sizeAware)
+            return;
+        encoder.boardSize(size);
+        sent();
+    }
+
+    /**
+     * newGame reports that a new game was started
+     */
+    @Override
+    public synchronized void newGame() {
+        encoder.newGame();
+        sent();
+    }
+
+    /**
+     * setQueen reports that a queen was placed
+     *
+     * @param row the row the queen was placed in
+     * @param col the column the queen was placed in
+     */
+    @Override
+    public synchronized void setQueen(int row, int col) {
+        encoder.setQueen(row, col);
+        sent();
+    }
+
+    /**
+     * waitingForPartner reports that the player is waiting for a partner
+     */
+    @Override
+    public synchronized void waitingForPartner() {
+        encoder.waitingForPartner();
+        sent();
+    }
+
+    /**
+     * yourTurn reports that it is this player's turn
+     */
+    @Override
+    public synchronized void yourTurn() {
+        encoder.yourTurn();
+        sent();
+    }
+
+    /**
+     * theirTurn reports that is is the other player's turn
+     *
+     * @param name the name of the other player
+     */
+    @Override
+    public synchronized void theirTurn(String name) {
+        encoder.theirTurn(name);
+        sent();
+    }
+
+    /**
+     * youWin reports that this player won the game
+     */
+    @Override
+    public synchronized void youWin() {
+        encoder.youWin();
+        sent();
+    }
+
+    /**
+     * theyWin reports that the other player won the game
+     *
+     * @param name the other player's name
+     */
+    @Override
+    public synchronized void theyWin(String name) {
+        encoder.theyWin(name);
+        sent();
+    }
+
+    /**
+     * quit reports that a player quit
+     */
+    @Override
+    public synchronized void quit() {
+        encoder.quit();
+        sent();
+    }
+
+    /**
+     * sessionToken reports the token that resumes this player's session
+     *
+     * @param token the session token
+     */
+    @Override
+    public synchronized void sessionToken(long token) {
+        encoder.sessionToken(token);
+        sent();
+    }
+
+    /**
+     * snapshot reports the whole game to a player who resumed it. Version 1
+     * clients cannot resume, but get the game message by message.
+     *
+     * @param board     the board
+     * @param status    the game's status for this player
+     * @param theirName the other player's name, or null while waiting
+     */
+    @Override
+    public synchronized void snapshot(BoardState board, int status, String theirName) {
+        if (encoder.getVersion() == WireFormat.VERSION_1) {
+            SixQueensModelListener.super.snapshot(board, status, theirName);
+            return;
+        }
+        boardSize = board.getSize();
+        encoder.snapshot(board, status, theirName);
+        sent();
+    }
+
+    /**
+     * fanOut returns the event loop, which the spectator's events are
+     * delivered on
+     *
+     * @return the event loop
+     */
+    @Override
+    public Executor fanOut() {
+        return loop;
+    }
+
+    /**
+     * watchStart reports the whole game to a new spectator
+     *
+     * @param board  the board
+     * @param status the status for the first player
+     * @param name1  the first player's name
+     * @param name2  the second player's name, or null while waiting
+     */
+    @Override
+    public synchronized void watchStart(BoardState board, int status, String name1, String name2) {
+        boardSize = board.getSize();
+        encoder.watching(board, status, name1, name2);
+        flush();
+    }
+
+    /**
+     * watch writes a game event to the spectator, after any events the
+     * socket has not taken yet. It is called on the event loop thread.
+     *
+     * @param event the encoded events, shared with other spectators
+     */
+    @Override
+    public synchronized void watch(ByteBuffer event) {
+        if (closed)
+            return;
+        watched.add(event.duplicate());
+        watchedBytes += event.remaining();
+        flushWatched();
+    }
+
+    /**
+     * updateDone writes every message the model update produced
+     */
+    @Override
+    public synchronized void updateDone() {
+        if (encoder.buffer().position() > 0)
+            flush();
+    }
+
+    /**
+     * moveDone writes every message the move produced, and tells the
+     * timer once the socket has taken them all
+     *
+     * @param timer the game's move timer
+     * @param start the start time to give back to the timer
+     */
+    @Override
+    public synchronized void moveDone(MoveTimer timer, long start) {
+        updateDone();
+        if (encoder.buffer().position() == 0) {
+            timer.flushed(start);
+        } else if (!closed) {
+            moveTimer = timer;
+            moveStart = start;
+        }
+    }
+
+    /**
+     * sent finishes a message. It stays buffered until the update is done
+     * unless batching is off.
+     */
+    private void sent() {
+        if (!batching)
+            flush();
+    }
+
+    /**
+     * flush writes as much buffered output as the socket takes without
+     * blocking, and asks the event loop to finish the rest. A player left
+     * too far behind is dropped.
+     */
+    private void flush() {
+        ByteBuffer out = encoder.buffer();
+        if (closed) {
+            out.clear();
+            return;
+        }
+        try {
+            out.flip();
+            WireStats.recordWrite(channel.write(out));
+            out.compact();
+        } catch (IOException e) {
+            // the game is holding its lock; tell it from the event loop instead
+            out.clear();
+            close();
+            loop.execute(this::report);
+            return;
+        }
+
+        int queued = out.position();
+        if (!backedUp && queued > HIGH_WATERMARK) {
+            backedUp = true;
+            backedUpSince = System.nanoTime();
+        } else if (backedUp && queued < LOW_WATERMARK) {
+            backedUp = false;
+        }
+        if (queued > MAX_QUEUED_BYTES || (backedUp && System.nanoTime() - backedUpSince > STALL_NANOS)) {
+            System.err.println("NioViewProxy: dropped a player that stopped reading");
+            out.clear();
+            stalled = true;
+            close();
+            loop.execute(this::report);
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * flushWatched writes the queued spectator events the socket takes
+     * without blocking, all in one gathering write, once the proxy's own
+     * messages are out. A spectator left too far behind is dropped.
+     */
+    private void flushWatched() {
+        if (closed || watched.isEmpty() || encoder.buffer().position() > 0)
+            return;
+        int count = watched.size();
+        gather = watched.toArray(gather);
+        try {
+            long written = channel.write(gather, 0, count);
+            WireStats.recordWrite((int) written);
+            watchedBytes -= (int) written;
+        } catch (IOException e) {
+            close();
+            loop.execute(this::report);
+            return;
+        }
+        while (!watched.isEmpty() && !watched.peek().hasRemaining())
+            watched.poll();
+        Arrays.fill(gather, 0, count, null);
+
+        if (watched.isEmpty()) {
+            behindSince = 0;
+        } else if (behindSince == 0) {
+            behindSince = System.nanoTime();
+        }
+        if (watchedBytes > MAX_WATCHED_BYTES || (behindSince != 0 && System.nanoTime() - behindSince > WATCH_STALL_NANOS)) {
+            System.err.println("NioViewProxy: dropped a spectator that fell behind");
+            stalled = true;
+            close();
+            loop.execute(this::report);
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * updateInterest asks the event loop to say when the socket is
+     * writable, if there is output waiting, and not otherwise
+     */
+    private void updateInterest() {
+        if (key == null || closed)
+            return;
+        boolean waiting = encoder.buffer().position() > 0 || !watched.isEmpty();
+        int ops = waiting ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+            loop.wakeup();
+        }
+    }
+
+    /**
+     * failed contains an exception thrown while serving this connection:
+     * it is counted, and the connection is closed and reported. It is
+     * called on the event loop thread.
+     *
+     * @param e the exception
+     */
+    void failed(RuntimeException e) {
+        WireStats.recordError("NioViewProxy", e);
+        disconnected();
+    }
+
+    /**
+     * disconnected handles the client going away: the connection is closed
+     * and the listener is told
+     */
+    private void disconnected() {
+        close();
+        report();
+    }
+
+    /**
+     * report tells the listener the connection is gone, once. A connection
+     * closed after the player quit is not reported. A version 2 player may
+     * resume from a new connection; a version 1 player cannot, so has quit.
+     * It must not be called holding this proxy's lock, since the game calls
+     * the proxy holding the game's.
+     */
+    private void report() {
+        if (!reported.compareAndSet(false, true) || quitting || viewListener == null)
+            return;
+        WireStats.recordDrop();
+        ClientDisconnectedEvent event = new ClientDisconnectedEvent();
+        if (event.shouldCommit()) {
+            event.client = String.valueOf(channel.socket().getRemoteSocketAddress());
+            event.version = encoder.getVersion();
+            event.stalled = stalled;
+            event.commit();
+        }
+        if (encoder.getVersion() >= WireFormat.VERSION_2)
+            viewListener.disconnected(this);
+        else
+            viewListener.quit(this);
+    }
+
+    /**
+     * close closes the channel
+     */
+    private synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        moveTimer = null;
+        Metrics.connectionClosed();
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the channel is gone either way
+        }
+    }
+}
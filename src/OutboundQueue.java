@@ -0,0 +1,289 @@
+// ****************************
+//
+// File:    OutboundQueue.java
+// Package: ---
+// Unit:    Class OutboundQueue
+//
+// ****************************
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class queues the bytes going out on one connection and writes them
+ * on the queue's own writer thread, so the thread that sends a message
+ * never waits for the network. Everything queued since the writer's last
+ * write goes out in one write and one flush.
+ * <P>
+ * Memory per connection is bounded by watermarks. Once more than the high
+ * watermark is queued the connection is backed up, and it stays backed up
+ * until the writer drains it below the low watermark. A connection that
+ * stays backed up longer than the stall timeout, or that reaches the
+ * queue's hard limit, has a stuck peer: the queue closes the connection and
+ * reports it, rather than buffer without bound or block its sender.
+ * <P>
+ * A sender timing a move marks the queue after offering the move's bytes,
+ * and the writer tells the move's MoveTimer once it has written and
+ * flushed them.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class OutboundQueue implements Runnable {
+    /**
+     * This interface is told when a queue closes its connection
+     */
+    public interface Listener {
+        /**
+         * closed reports that the queue stopped and closed its connection.
+         * It is called on the writer thread, outside the queue's lock.
+         *
+         * @param stalled true if the peer stopped reading, false if the
+         *                connection failed or was closed by its owner
+         */
+        public void closed(boolean stalled);
+    }
+
+    private final OutputStream out;
+    private final AutoCloseable connection;
+    private final Listener listener;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int maxBytes;
+    private final long stallNanos;
+
+    // senders append to pending; the writer swaps it with writing and drains that
+    private byte[] pending;
+    private byte[] writing;
+    private int pendingLength;
+    private int writingLength;
+    private long backedUpSince;
+    private boolean backedUp;
+    private boolean closed;
+    private boolean stalled;
+
+    // the move timed by the bytes pending, and by the bytes being written
+    private MoveTimer pendingTimer;
+    private long pendingStart;
+    private MoveTimer writingTimer;
+    private long writingStart;
+
+    /**
+     * This constructor creates a queue. Call start to start its writer.
+     *
+     * @param out           the stream to write to
+     * @param connection    what to close when the queue stops
+     * @param listener      told when the queue closes the connection
+     * @param lowWatermark  the queued bytes below which a backed-up queue recovers
+     * @param highWatermark the queued bytes above which the queue is backed up
+     * @param maxBytes      the most bytes the queue will hold
+     * @param stallMillis   how long the queue may stay backed up
+     */
+    public OutboundQueue(OutputStream out, AutoCloseable connection, Listener listener,
+                         int lowWatermark, int highWatermark, int maxBytes, long stallMillis) {
+        if (lowWatermark > highWatermark || highWatermark > maxBytes)
+            throw new IllegalArgumentException("OutboundQueue: watermarks out of order");
+        this.out = out;
+        this.connection = connection;
+        this.listener = listener;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxBytes = maxBytes;
+        this.stallNanos = stallMillis * 1_000_000L;
+        this.pending = new byte[256];
+        this.writing = new byte[256];
+    }
+
+    /**
+     * start starts the writer
+     *
+     * @param threadMode the kind of thread to write on
+     * @param name       the writer thread's name
+     */
+    public void start(ThreadMode threadMode, String name) {
+        threadMode.start(this, name);
+    }
+
+    /**
+     * offer queues bytes to be written. It never blocks on the network.
+     *
+     * @param buf    the bytes
+     * @param offset where the bytes start
+     * @param length how many bytes
+     * @return true if the bytes were queued, false if the queue is closed
+     */
+    public synchronized boolean offer(byte[] buf, int offset, int length) {
+        if (!admit(length))
+            return false;
+        System.arraycopy(buf, offset, pending, pendingLength, length);
+        pendingLength += length;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * offer queues the remaining bytes of a buffer to be written, leaving
+     * the buffer's position alone, so one read-only buffer can be offered
+     * to many queues. It never blocks on the network.
+     *
+     * @param buf the bytes
+     * @return true if the bytes were queued, false if the queue is closed
+     */
+    public synchronized boolean offer(ByteBuffer buf) {
+        int length = buf.remaining();
+        if (!admit(length))
+            return false;
+        buf.duplicate().get(pending, pendingLength, length);
+        pendingLength += length;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * mark asks the writer to tell a move timer once the bytes queued so
+     * far are written. A newer mark replaces one not yet taken by the writer.
+     *
+     * @param timer the move timer
+     * @param start the start time to give back to the timer
+     * @return true if the timer will be told, false if no bytes are waiting
+     *         for the writer to take, or the queue is closed
+     */
+    public synchronized boolean mark(MoveTimer timer, long start) {
+        if (closed || pendingLength == 0)
+            return false;
+        pendingTimer = timer;
+        pendingStart = start;
+        return true;
+    }
+
+    /**
+     * getQueuedBytes returns how many bytes are waiting to be written
+     *
+     * @return the queued byte count
+     */
+    public synchronized int getQueuedBytes() {
+        return pendingLength + writingLength;
+    }
+
+    /**
+     * isClosed checks if the queue has stopped
+     *
+     * @return true if the queue is closed
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * close stops the queue and closes the connection. Bytes not yet
+     * written are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        closeConnection();
+    }
+
+    /**
+     * run writes queued bytes until the queue is closed
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!closed && pendingLength == 0)
+                        wait();
+                    if (closed)
+                        break;
+                    byte[] swap = writing;
+                    writing = pending;
+                    writingLength = pendingLength;
+                    pending = swap;
+                    pendingLength = 0;
+                    writingTimer = pendingTimer;
+                    writingStart = pendingStart;
+                    pendingTimer = null;
+                }
+
+                out.write(writing, 0, writingLength);
+                out.flush();
+                WireStats.recordWrite(writingLength);
+                if (writingTimer != null) {
+                    writingTimer.flushed(writingStart);
+                    writingTimer = null;
+                }
+
+                synchronized (this) {
+                    writingLength = 0;
+                    if (backedUp && pendingLength < lowWatermark)
+                        backedUp = false;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // the connection failed or was closed under the writer
+        }
+        close();
+        boolean wasStalled;
+        synchronized (this) {
+            wasStalled = stalled;
+        }
+        listener.closed(wasStalled);
+    }
+
+    /**
+     * admit makes room for bytes about to be queued. A queue over its hard
+     * limit, or backed up too long, is stalled instead. Call it holding
+     * the queue's lock.
+     *
+     * @param length how many bytes
+     * @return true if there is room, false if the queue is closed
+     */
+    private boolean admit(int length) {
+        if (closed)
+            return false;
+        int queued = pendingLength + writingLength + length;
+        if (queued > maxBytes || (backedUp && System.nanoTime() - backedUpSince > stallNanos)) {
+            stall();
+            return false;
+        }
+        if (!backedUp && queued > highWatermark) {
+            backedUp = true;
+            backedUpSince = System.nanoTime();
+        }
+
+        if (pendingLength + length > pending.length) {
+            byte[] bigger = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        return true;
+    }
+
+    /**
+     * stall closes a queue whose peer stopped reading. The connection is
+     * closed here so a writer blocked on it wakes up.
+     */
+    private void stall() {
+        stalled = true;
+        closed = true;
+        notifyAll();
+        closeConnection();
+    }
+
+    /**
+     * closeConnection closes the underlying connection
+     */
+    private void closeConnection() {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            // the connection is gone either way
+        }
+    }
+}
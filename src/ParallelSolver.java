@@ -0,0 +1,493 @@
+// *****************************
+//
+// File:    ParallelSolver.java
+// Package: ---
+// Unit:    Class ParallelSolver
+//
+// *****************************
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class solves Six Queens positions with perfect play on a
+ * ForkJoinPool, on boards of any size. It searches the same way as
+ * SixQueensSolver, but near the root it forks one task per move. A node
+ * is split when it is shallower than the split depth and still has enough
+ * empty spaces to be worth splitting; below that, each task runs a
+ * sequential alpha-beta search. All threads share one lock-free
+ * ConcurrentTranspositionTable.
+ * <P>
+ * Positions are kept as BoardState's empty row words, one long per row,
+ * so the same search runs on every board up to 64x64. A position is keyed
+ * in the table by a hash of its rows, taken under the four symmetries
+ * that keep rows as rows (the two mirrors and the half turn), so each
+ * position is stored once for all four.
+ * <P>
+ * As soon as one child of a split node finds a winning move, the node's
+ * remaining children are cancelled. The child that finds it cancels its
+ * siblings itself, whichever order the node joins them in. Cancellation
+ * is a flag that every task under the node polls, so searches already
+ * running stop early and queued ones return immediately, and the node
+ * joins no more children once it is set.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ParallelSolver {
+    private static final int DEFAULT_TABLE_BITS = 22;
+    private static final int DEFAULT_SPLIT_DEPTH = 3;
+    private static final int MIN_SPLIT_EMPTY = 12;
+
+    // the symmetries that keep rows as rows: bit 0 mirrors the columns, bit 1 the rows
+    private static final int SYMMETRIES = 4;
+
+    // result of a search that was cancelled; never stored in the table
+    private static final int ABORTED = 0;
+
+    // how many nodes a sequential search visits between cancellation checks
+    private static final int CANCEL_CHECK_MASK = 63;
+
+    private final int size;
+    private final ConcurrentTranspositionTable table;
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final Queue<Searcher> searchers;
+    private final ThreadLocal<Searcher> localSearcher;
+
+    /**
+     * This class records whether a split node's remaining work was cancelled,
+     * and the winning move that cancelled it. Cancelling a node also
+     * cancels everything below it.
+     */
+    private static class Cancel {
+        private final Cancel parent;
+        private volatile boolean cancelled;
+        private volatile int winningMove = -1;
+
+        /**
+         * This constructor creates a new flag under a parent flag
+         *
+         * @param parent the parent flag, or null at the root
+         */
+        Cancel(Cancel parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * cancel cancels this node and everything below it
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * win records a winning move for the split node and cancels the
+         * node's other children
+         *
+         * @param move the square that wins
+         */
+        void win(int move) {
+            winningMove = move;
+            cancelled = true;
+        }
+
+        /**
+         * getWinningMove returns the winning move found for the split node
+         *
+         * @return the square, or -1 if none was found
+         */
+        int getWinningMove() {
+            return winningMove;
+        }
+
+        /**
+         * isCancelled checks this node and its ancestors
+         *
+         * @return true if any of them was cancelled
+         */
+        boolean isCancelled() {
+            for (Cancel c = this; c != null; c = c.parent) {
+                if (c.cancelled)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This class runs sequential searches for one worker thread and keeps
+     * that thread's statistics, so the hot path shares nothing but the table
+     */
+    private class Searcher {
+        private final long[][] rowBuffer = new long[size + 1][size];
+        private final int[][] moveBuffer = new int[size + 1][size * size];
+        private final int[][] scoreBuffer = new int[size + 1][size * size];
+        private final long[] hashes = new long[SYMMETRIES];
+        private long nodes;
+        private long probes;
+        private long hits;
+        private Cancel cancel;
+
+        /**
+         * search runs a sequential search below a split node
+         *
+         * @param empty  the empty rows
+         * @param count  the number of empty spaces
+         * @param ply    the depth of the position
+         * @param cancel the flag of the split node above
+         * @return WIN, LOSS or ABORTED
+         */
+        int search(long[] empty, int count, int ply, Cancel cancel) {
+            this.cancel = cancel;
+            return negamax(empty, count, SixQueensSolver.LOSS, SixQueensSolver.WIN, ply);
+        }
+
+        /**
+         * negamax returns the value of a position for the player to move
+         *
+         * @param empty the empty rows
+         * @param count the number of empty spaces
+         * @param alpha the lower bound of the search window
+         * @param beta  the upper bound of the search window
+         * @param ply   the search depth, used to pick the move and row buffers
+         * @return WIN, LOSS or ABORTED
+         */
+        private int negamax(long[] empty, int count, int alpha, int beta, int ply) {
+            nodes++;
+            if (count == 0)
+                return SixQueensSolver.LOSS;
+            if ((nodes & CANCEL_CHECK_MASK) == 0 && cancel.isCancelled())
+                return ABORTED;
+
+            int t = canonicalTransform(empty, hashes);
+            long key = hashes[t];
+            probes++;
+            int stored = table.probe(key);
+            if (stored != ConcurrentTranspositionTable.MISS) {
+                hits++;
+                return stored;
+            }
+
+            int[] moves = moveBuffer[ply];
+            int moveCount = orderMoves(empty, moves, scoreBuffer[ply]);
+            if (scoreBuffer[ply][0] == 0) {
+                table.store(key, SixQueensSolver.WIN, transformSquare(moves[0], t));
+                return SixQueensSolver.WIN;
+            }
+
+            long[] child = rowBuffer[ply + 1];
+            int best = SixQueensSolver.LOSS;
+            int bestMove = moves[0];
+            for (int i = 0; i < moveCount; i++) {
+                int left = BoardState.emptyAfter(size, empty, moves[i] / size, moves[i] % size, child);
+                int value = -negamax(child, left, -beta, -alpha, ply + 1);
+                if (value == ABORTED)
+                    return ABORTED;
+                if (value > best) {
+                    best = value;
+                    bestMove = moves[i];
+                }
+                if (best > alpha)
+                    alpha = best;
+                if (alpha >= beta)
+                    break;
+            }
+            table.store(key, best, transformSquare(bestMove, t));
+            return best;
+        }
+    }
+
+    /**
+     * This class searches one position, splitting it into child tasks when
+     * it is near the root
+     */
+    private class SolveTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] empty;
+        private final int count;
+        private final int ply;
+        private final Cancel cancel;
+        private final int move;
+        private int bestMove = -1;
+
+        /**
+         * This constructor creates a task for one position
+         *
+         * @param empty  the empty rows, which the task keeps
+         * @param count  the number of empty spaces
+         * @param ply    the depth of the position
+         * @param cancel the flag of the split node above
+         * @param move   the square the split node above played to reach
+         *               the position, or -1 at the root
+         */
+        SolveTask(long[] empty, int count, int ply, Cancel cancel, int move) {
+            this.empty = empty;
+            this.count = count;
+            this.ply = ply;
+            this.cancel = cancel;
+            this.move = move;
+        }
+
+        /**
+         * compute searches the position. A position lost for the player to
+         * move is a win for the split node above, so its siblings are
+         * cancelled at once, before the node gets to join this task.
+         *
+         * @return WIN, LOSS or ABORTED
+         */
+        @Override
+        protected Integer compute() {
+            int value = search();
+            if (value == SixQueensSolver.LOSS && move >= 0)
+                cancel.win(move);
+            return value;
+        }
+
+        /**
+         * search searches the position, splitting it if it is near the root
+         *
+         * @return WIN, LOSS or ABORTED
+         */
+        private int search() {
+            if (count == 0)
+                return SixQueensSolver.LOSS;
+            if (cancel.isCancelled())
+                return ABORTED;
+            Searcher searcher = localSearcher.get();
+            if (ply > 0 && (ply >= splitDepth || count < MIN_SPLIT_EMPTY))
+                return searcher.search(empty, count, ply, cancel);
+
+            // split nodes are few, so they get their own scratch space
+            long[] hashes = new long[SYMMETRIES];
+            int t = canonicalTransform(empty, hashes);
+            long key = hashes[t];
+            searcher.nodes++;
+            searcher.probes++;
+            int stored = table.probe(key);
+            if (stored != ConcurrentTranspositionTable.MISS) {
+                searcher.hits++;
+                int move = table.bestMove(key);
+                if (move >= 0)
+                    bestMove = transformSquare(move, t);
+                return stored;
+            }
+
+            int[] moves = new int[size * size];
+            int[] scores = new int[size * size];
+            int moveCount = orderMoves(empty, moves, scores);
+            if (scores[0] == 0) {
+                table.store(key, SixQueensSolver.WIN, transformSquare(moves[0], t));
+                bestMove = moves[0];
+                return SixQueensSolver.WIN;
+            }
+
+            Cancel siblings = new Cancel(cancel);
+            SolveTask[] children = new SolveTask[moveCount];
+            for (int i = moveCount - 1; i >= 0; i--) {
+                long[] child = new long[size];
+                int left = BoardState.emptyAfter(size, empty, moves[i] / size, moves[i] % size, child);
+                children[i] = new SolveTask(child, left, ply + 1, siblings, moves[i]);
+                if (i > 0)
+                    children[i].fork();
+            }
+
+            // the first move is the most promising, so this thread takes it;
+            // once any child has won, the rest are cancelled and not waited for
+            int best = SixQueensSolver.LOSS;
+            bestMove = moves[0];
+            boolean aborted = false;
+            for (int i = 0; i < moveCount && siblings.getWinningMove() < 0; i++) {
+                int value = i == 0 ? children[0].compute() : children[i].join();
+                if (value == ABORTED)
+                    aborted = true;
+            }
+            if (siblings.getWinningMove() >= 0) {
+                best = SixQueensSolver.WIN;
+                bestMove = siblings.getWinningMove();
+            }
+
+            if (best != SixQueensSolver.WIN && (aborted || cancel.isCancelled()))
+                return ABORTED;
+            table.store(key, best, transformSquare(bestMove, t));
+            return best;
+        }
+    }
+
+    /**
+     * This constructor creates a solver using every available processor
+     *
+     * @param size the board size
+     */
+    public ParallelSolver(int size) {
+        this(size, Runtime.getRuntime().availableProcessors(), DEFAULT_SPLIT_DEPTH, DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * This constructor creates a solver
+     *
+     * @param size        the board size
+     * @param parallelism the number of worker threads
+     * @param splitDepth  how many plies below the root are split into tasks
+     * @param tableBits   the log base 2 of the number of transposition table slots
+     */
+    public ParallelSolver(int size, int parallelism, int splitDepth, int tableBits) {
+        if (!BoardState.isValidSize(size))
+            throw new IllegalArgumentException("ParallelSolver: illegal size " + size);
+        this.size = size;
+        this.table = new ConcurrentTranspositionTable(tableBits);
+        this.pool = new ForkJoinPool(parallelism);
+        this.splitDepth = splitDepth;
+        this.searchers = new ConcurrentLinkedQueue<>();
+        this.localSearcher = ThreadLocal.withInitial(() -> {
+            Searcher searcher = new Searcher();
+            searchers.add(searcher);
+            return searcher;
+        });
+    }
+
+    /**
+     * solve finds the value and best move of a position. The root is always
+     * split, so the best move comes straight from the root task.
+     *
+     * @param board the position to solve
+     * @return the solution
+     */
+    public SixQueensSolver.Solution solve(BoardState board) {
+        if (board.getSize() != size)
+            throw new IllegalArgumentException("ParallelSolver: board size " +
+                    board.getSize() + " does not match solver size " + size);
+        for (Searcher searcher : searchers) {
+            searcher.nodes = 0;
+            searcher.probes = 0;
+            searcher.hits = 0;
+        }
+
+        long[] empty = new long[size];
+        board.getEmptyRows(empty);
+        int count = 0;
+        for (long row : empty)
+            count += Long.bitCount(row);
+        SolveTask root = new SolveTask(empty, count, 0, new Cancel(null), -1);
+        long start = System.nanoTime();
+        int value = pool.invoke(root);
+        long nanos = System.nanoTime() - start;
+
+        long nodes = 0, probes = 0, hits = 0;
+        for (Searcher searcher : searchers) {
+            nodes += searcher.nodes;
+            probes += searcher.probes;
+            hits += searcher.hits;
+        }
+        int move = root.bestMove;
+        return new SixQueensSolver.Solution(value, move < 0 ? -1 : move / size,
+                move < 0 ? -1 : move % size, nodes, nanos, probes, hits);
+    }
+
+    /**
+     * clearTable empties the shared transposition table
+     */
+    public void clearTable() {
+        table.clear();
+    }
+
+    /**
+     * shutdown stops the worker threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * orderMoves fills a move list with every empty space, sorted so moves
+     * that leave the fewest empty spaces come first
+     *
+     * @param empty  the empty rows
+     * @param moves  the move list to fill
+     * @param scores filled with the number of empty spaces each move leaves
+     * @return the number of moves
+     */
+    private int orderMoves(long[] empty, int[] moves, int[] scores) {
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            for (long rest = empty[row]; rest != 0L; rest &= rest - 1) {
+                int col = Long.numberOfTrailingZeros(rest);
+                int score = BoardState.emptyCountAfter(size, empty, row, col);
+                int i = count++;
+                while (i > 0 && scores[i - 1] > score) {
+                    moves[i] = moves[i - 1];
+                    scores[i] = scores[i - 1];
+                    i--;
+                }
+                moves[i] = row * size + col;
+                scores[i] = score;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * canonicalTransform hashes a position under each symmetry that keeps
+     * rows as rows, and picks the one with the smallest hash. Symmetric
+     * positions pick the same hash, which keys them in the table.
+     *
+     * @param empty  the empty rows
+     * @param hashes filled with the hash under each symmetry; never 0
+     * @return the symmetry with the smallest hash
+     */
+    private int canonicalTransform(long[] empty, long[] hashes) {
+        int shift = 64 - size;
+        long h0 = size, h1 = size, h2 = size, h3 = size;
+        for (int r = 0; r < size; r++) {
+            long down = empty[r];
+            long up = empty[size - 1 - r];
+            h0 = mix(h0, down);
+            h1 = mix(h1, Long.reverse(down) >>> shift);
+            h2 = mix(h2, up);
+            h3 = mix(h3, Long.reverse(up) >>> shift);
+        }
+        hashes[0] = h0 == 0L ? 1L : h0;
+        hashes[1] = h1 == 0L ? 1L : h1;
+        hashes[2] = h2 == 0L ? 1L : h2;
+        hashes[3] = h3 == 0L ? 1L : h3;
+        int best = 0;
+        for (int t = 1; t < SYMMETRIES; t++) {
+            if (hashes[t] < hashes[best])
+                best = t;
+        }
+        return best;
+    }
+
+    /**
+     * mix adds a row word to a running hash
+     *
+     * @param hash the hash so far
+     * @param word the row word
+     * @return the new hash
+     */
+    private static long mix(long hash, long word) {
+        hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * transformSquare maps a square under a symmetry. Every symmetry used
+     * is its own inverse, so it also maps the square back.
+     *
+     * @param square the square index (row * size + col)
+     * @param t      the symmetry, as canonicalTransform returns it
+     * @return the mapped square index
+     */
+    private int transformSquare(int square, int t) {
+        int row = square / size;
+        int col = square % size;
+        if ((t & 1) != 0)
+            col = size - 1 - col;
+        if ((t & 2) != 0)
+            row = size - 1 - row;
+        return row * size + col;
+    }
+}
@@ -0,0 +1,97 @@
+// **************************************
+//
+// File:    ParallelSolverBenchmark.java
+// Package: ---
+// Unit:    Class ParallelSolverBenchmark
+//
+// **************************************
+
+/**
+ * This class measures how ParallelSolver scales with the number of
+ * threads. The workload is solving the start position of a board from an
+ * empty table. The default board is 12x12, whose start position is lost,
+ * so every move is searched; one thread takes seconds, long enough that
+ * the speedups measure the search rather than the pool's overhead. The
+ * workload is repeated at 1, 2, 4, ... threads up to the requested
+ * maximum, and the speedup over one thread is reported.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ParallelSolverBenchmark {
+    private static final int DEFAULT_SIZE = 12;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        if (args.length > 2) {
+            System.err.println("Usage: java ParallelSolverBenchmark [<boardsize> [<maxthreads>]]");
+            System.exit(1);
+        }
+        int size = DEFAULT_SIZE;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (args.length > 0)
+                size = Integer.parseInt(args[0]);
+            if (args.length > 1)
+                maxThreads = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            size = -1;
+        }
+        if (!BoardState.isValidSize(size) || maxThreads < 1) {
+            System.err.println("The board size must be a number from 1 to " +
+                    BoardState.MAX_SIZE + " and the thread count at least 1");
+            System.exit(1);
+        }
+
+        System.out.printf("%dx%d start position, %d processors available%n", size, size,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %12s %14s %10s %10s%n", "threads", "ms", "nodes/sec", "hit rate", "speedup");
+        // warm up the JIT before the first measurement
+        ParallelSolver warmup = new ParallelSolver(size, maxThreads, 3, 22);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            warmup.clearTable();
+            warmup.solve(new BoardState(size));
+        }
+        warmup.shutdown();
+
+        double baseline = 0.0;
+        for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+            ParallelSolver solver = new ParallelSolver(size, threads, 3, 22);
+
+            long best = Long.MAX_VALUE;
+            long nodes = 0, probes = 0, hits = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                solver.clearTable();
+                long start = System.nanoTime();
+                SixQueensSolver.Solution solution = solver.solve(new BoardState(size));
+                long nanos = System.nanoTime() - start;
+                if (nanos < best) {
+                    best = nanos;
+                    nodes = solution.nodes;
+                    probes = solution.probes;
+                    hits = solution.hits;
+                }
+            }
+            solver.shutdown();
+
+            if (threads == 1)
+                baseline = best;
+            System.out.printf("%8d %12.2f %14.0f %9.1f%% %9.2fx%n", threads, best / 1e6,
+                    nodes * 1e9 / best, probes == 0 ? 0.0 : 100.0 * hits / probes, baseline / best);
+        }
+    }
+
+    /**
+     * nextThreads doubles the thread count, stopping once at the maximum
+     *
+     * @param threads the current thread count
+     * @param max     the maximum thread count
+     * @return the next thread count, or more than max when done
+     */
+    private static int nextThreads(int threads, int max) {
+        if (threads == max)
+            return max + 1;
+        return Math.min(threads * 2, max);
+    }
+}
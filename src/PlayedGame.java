@@ -0,0 +1,126 @@
+// *************************
+//
+// File:    PlayedGame.java
+// Package: ---
+// Unit:    Class PlayedGame
+//
+// *************************
+
+/**
+ * This class holds one board played out, as read back from a GameArchive
+ * or a GameJournal: the game it was played in, when it started and how
+ * long it took, the board size, the players, the winner, and the squares
+ * the queens went on in order. It cannot be changed.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class PlayedGame {
+    private final long gameId;
+    private final long start;
+    private final int duration;
+    private final int size;
+    private final String name1;
+    private final String name2;
+    private final int winner;
+    private final short[] squares;
+
+    /**
+     * This constructor creates a played board
+     *
+     * @param gameId   the ID of the game the board was played in
+     * @param start    when the board started, in milliseconds since the epoch
+     * @param duration how long it took, in milliseconds
+     * @param size     the board size
+     * @param name1    the name of the player who moved first, or null
+     * @param name2    the name of the other player, or null
+     * @param winner   1 or 2 for the winner's seat, or 0 if the board was not finished
+     * @param squares  the squares the queens went on, row * size + column, in order;
+     *                 the array is kept, not copied
+     */
+    public PlayedGame(long gameId, long start, int duration, int size, String name1, String name2, int winner,
+                      short[] squares) {
+        this.gameId = gameId;
+        this.start = start;
+        this.duration = duration;
+        this.size = size;
+        this.name1 = name1;
+        this.name2 = name2;
+        this.winner = winner;
+        this.squares = squares;
+    }
+
+    /**
+     * getGameId returns the ID of the game the board was played in
+     *
+     * @return the game ID
+     */
+    public long getGameId() {
+        return gameId;
+    }
+
+    /**
+     * getStart returns when the board started
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * getDuration returns how long the board took
+     *
+     * @return the time in milliseconds
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * getSize returns the board size
+     *
+     * @return the board size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * getName returns a player's name
+     *
+     * @param seat 1 for the player who moved first, 2 for the other
+     * @return the name, or null if there was none
+     */
+    public String getName(int seat) {
+        return seat == 1 ? name1 : name2;
+    }
+
+    /**
+     * getWinner returns who won
+     *
+     * @return 1 or 2 for the winner's seat, or 0 if the board was not finished
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * getMoveCount returns the number of queens placed
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount() {
+        return squares.length;
+    }
+
+    /**
+     * getSquare returns where a queen was placed
+     *
+     * @param move the move, from 0
+     * @return the square, row * size + column
+     */
+    public int getSquare(int move) {
+        return squares[move];
+    }
+}
@@ -0,0 +1,38 @@
+// ***********************************
+//
+// File:    ProtocolErrorEvent.java
+// Package: ---
+// Unit:    Class ProtocolErrorEvent
+//
+// ***********************************
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Flight Recorder event for a message from a client
+ * that the server could not decode
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+@Name("sixqueens.ProtocolError")
+@Label("Protocol Error")
+@Category("Six Queens")
+@Description("A client sent a message the server could not decode")
+@StackTrace(false)
+public class ProtocolErrorEvent extends jdk.jfr.Event {
+    @Label("Client")
+    @Description("The client's address")
+    String client;
+
+    @Label("Opcode")
+    @Description("The message's opcode, or -1 if it was not read")
+    int opCode;
+
+    @Label("Reason")
+    String reason;
+}
@@ -0,0 +1,216 @@
+// **********************************
+//
+// File:    ProtocolLimitsTest.java
+// Package: ---
+// Unit:    Class ProtocolLimitsTest
+//
+// **********************************
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class checks that both server modes agree on what a legal join is.
+ * It starts the server inside this JVM in threads mode and in nio mode,
+ * and in each joins from raw sockets: in version 2 and version 1 with a
+ * name of exactly WireFormat.MAX_NAME_BYTES, which must be accepted; with
+ * a name one byte longer, which must be refused without closing the
+ * connection; and with a room too long for the server's read buffer,
+ * which must be refused and skipped, so that a later join on the same
+ * connection is accepted. It prints each check and exits with status 1
+ * if any failed.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ProtocolLimitsTest {
+    // how long to wait for an answer that should come, or should not
+    private static final int ANSWER_MILLIS = 1000;
+
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        ProtocolLimitsTest test = new ProtocolLimitsTest();
+        for (String mode : new String[]{"threads", "nio"}) {
+            int port;
+            try (ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                    "127.0.0.1", Integer.toString(port), "mode=" + mode}));
+            server.setDaemon(true);
+            server.start();
+            Thread.sleep(500);
+            test.run(mode, port);
+        }
+        System.out.println(test.failures == 0 ? "all checks passed" : test.failures + " checks failed");
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * run makes every check against one server
+     *
+     * @param mode the server's mode
+     * @param port the server's port
+     * @throws IOException if a connection fails
+     */
+    private void run(String mode, int port) throws IOException {
+        String longest = "n".repeat(WireFormat.MAX_NAME_BYTES);
+        String tooLong = longest + "n";
+
+        // each player waits in a room of its own, so no two are paired
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            send(socket, hello(), frame('G', 6), room("a " + mode), join(longest));
+            check(mode + ", version 2, longest name accepted", answered(socket, 'K'));
+        }
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            send(socket, hello(), frame('G', 6), room("b " + mode), join(tooLong));
+            check(mode + ", version 2, longer name refused", !answered(socket, 'K'));
+            send(socket, join("b"));
+            check(mode + ", version 2, join after the refusal accepted", answered(socket, 'K'));
+        }
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            send(socket, hello(), frame('G', 6), room("r".repeat(4 * WireFormat.MAX_NAME_BYTES)), join("c"));
+            check(mode + ", version 2, join in a room too long for the buffer refused", !answered(socket, 'K'));
+            send(socket, room("c " + mode), join("c"));
+            check(mode + ", version 2, join after the long room accepted", answered(socket, 'K'));
+        }
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            ByteBuffer buf = ByteBuffer.allocate(3 + WireFormat.utfLength(longest));
+            buf.put((byte) 'G').put((byte) 6).put((byte) 'J');
+            WireFormat.putUTF(buf, longest);
+            send(socket, buf.flip());
+            socket.setSoTimeout(ANSWER_MILLIS);
+            boolean answer;
+            try {
+                answer = socket.getInputStream().read() >= 0;
+            } catch (SocketTimeoutException e) {
+                answer = false;
+            }
+            check(mode + ", version 1, longest name accepted", answer);
+        }
+    }
+
+    /**
+     * check prints the result of one check and counts a failure
+     *
+     * @param what what was checked
+     * @param ok   true if it passed
+     */
+    private void check(String what, boolean ok) {
+        System.out.println((ok ? "ok     " : "FAILED ") + what);
+        if (!ok)
+            failures++;
+    }
+
+    /**
+     * answered reads the server's version 2 frames until one with the
+     * given opcode, the connection closes, or no more arrive in time
+     *
+     * @param socket the connection, past the join
+     * @param opCode the opcode to wait for
+     * @return true if the frame arrived
+     * @throws IOException if the connection fails
+     */
+    private static boolean answered(Socket socket, char opCode) throws IOException {
+        socket.setSoTimeout(ANSWER_MILLIS);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        try {
+            while (true) {
+                int b = in.read();
+                if (b < 0)
+                    return false;
+                // the answer to the hello
+                if (b == WireFormat.HELLO) {
+                    in.readByte();
+                    continue;
+                }
+                int length = (b << 8) | in.readUnsignedByte();
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                if (length > 0 && frame[0] == opCode)
+                    return true;
+            }
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * send writes messages to the server
+     *
+     * @param socket   the connection
+     * @param messages the messages, each ready for reading
+     * @throws IOException if the connection fails
+     */
+    private static void send(Socket socket, ByteBuffer... messages) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        for (ByteBuffer message : messages)
+            out.write(message.array(), 0, message.limit());
+        out.flush();
+    }
+
+    /**
+     * hello returns the version 2 hello
+     *
+     * @return the hello
+     */
+    private static ByteBuffer hello() {
+        return ByteBuffer.allocate(2).put(WireFormat.HELLO).put((byte) WireFormat.VERSION_2).flip();
+    }
+
+    /**
+     * frame returns a frame with a one-byte argument
+     *
+     * @param opCode   the opcode
+     * @param argument the argument
+     * @return the frame
+     */
+    private static ByteBuffer frame(char opCode, int argument) {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        int start = WireFormat.beginFrame(buf, opCode);
+        buf.put((byte) argument);
+        WireFormat.endFrame(buf, start);
+        return buf.flip();
+    }
+
+    /**
+     * room returns an 'M' frame
+     *
+     * @param room the room's name
+     * @return the frame
+     */
+    private static ByteBuffer room(String room) {
+        return named('M', room);
+    }
+
+    /**
+     * join returns a 'J' frame
+     *
+     * @param name the player's name
+     * @return the frame
+     */
+    private static ByteBuffer join(String name) {
+        return named('J', name);
+    }
+
+    /**
+     * named returns a frame whose argument is a name
+     *
+     * @param opCode the opcode
+     * @param name   the name
+     * @return the frame
+     */
+    private static ByteBuffer named(char opCode, String name) {
+        ByteBuffer buf = ByteBuffer.allocate(3 + WireFormat.utfLength(name));
+        int start = WireFormat.beginFrame(buf, opCode);
+        WireFormat.putUTF(buf, name);
+        WireFormat.endFrame(buf, start);
+        return buf.flip();
+    }
+}
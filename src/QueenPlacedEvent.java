@@ -0,0 +1,54 @@
+// *********************************
+//
+// File:    QueenPlacedEvent.java
+// Package: ---
+// Unit:    Class QueenPlacedEvent
+//
+// *********************************
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the Flight Recorder event for a queen placed. Its
+ * duration is the time spent in SixQueensModel.squareChosen, waiting for
+ * the game's lock included; the wait on its own is lockWait, so a game
+ * whose players contend for its lock shows up here.
+ * <P>
+ * There is one for every move, so it is off unless a recording's
+ * settings turn it on, as sixqueens.jfc does; the other Six Queens
+ * events are rare enough to be on by default.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+@Name("sixqueens.QueenPlaced")
+@Label("Queen Placed")
+@Category("Six Queens")
+@Description("A queen placed, timed through SixQueensModel.squareChosen")
+@StackTrace(false)
+@Enabled(false)
+public class QueenPlacedEvent extends jdk.jfr.Event {
+    @Label("Game ID")
+    long gameId;
+
+    @Label("Seat")
+    @Description("1 for the player who moved first, 2 for the other")
+    int seat;
+
+    @Label("Row")
+    int row;
+
+    @Label("Column")
+    int col;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for the game's lock")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+}
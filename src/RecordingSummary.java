@@ -0,0 +1,235 @@
+// ********************************
+//
+// File:    RecordingSummary.java
+// Package: ---
+// Unit:    Class RecordingSummary
+//
+// ********************************
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * This class summarizes a Flight Recorder recording of a Six Queens
+ * server, made with the sixqueens.jfc settings, into a table of games:
+ * for each game, the boards started and won, the queens placed, and the
+ * time squareChosen took and waited for the game's lock, at the median,
+ * the 99th percentile and the worst. The games shown are those with the
+ * slowest 99th percentile first, under a line for all games together,
+ * followed by the lost connections and the protocol errors by reason.
+ * <P>
+ * The recording is read one event at a time, and each game keeps only
+ * its own timings, so percentiles are exact rather than bucketed.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class RecordingSummary {
+    private static final int DEFAULT_SHOWN = 20;
+
+    private final Map<Long, Game> games = new HashMap<>();
+    private final Game all = new Game(-1);
+    private long disconnects;
+    private long stalled;
+    private final Map<String, Long> errors = new TreeMap<>();
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java RecordingSummary <recording.jfr> [<games shown>]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        int shown = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SHOWN;
+
+        RecordingSummary summary = new RecordingSummary();
+        try (RecordingFile recording = new RecordingFile(path)) {
+            while (recording.hasMoreEvents())
+                summary.add(recording.readEvent());
+        } catch (IOException e) {
+            System.err.println("RecordingSummary: I/O error");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        summary.print(shown);
+    }
+
+    /**
+     * add adds up one event; events that are not Six Queens events are
+     * skipped
+     *
+     * @param event the event
+     */
+    private void add(RecordedEvent event) {
+        switch (event.getEventType().getName()) {
+            // board started case
+            case "sixqueens.GameStarted":
+                game(event.getLong("gameId")).boards++;
+                all.boards++;
+                break;
+            // queen placed case
+            case "sixqueens.QueenPlaced":
+                long nanos = event.getDuration().toNanos();
+                long wait = event.getDuration("lockWait").toNanos();
+                game(event.getLong("gameId")).placed(nanos, wait);
+                all.placed(nanos, wait);
+                break;
+            // board won case
+            case "sixqueens.GameWon":
+                game(event.getLong("gameId")).wins++;
+                all.wins++;
+                break;
+            // connection lost case
+            case "sixqueens.ClientDisconnected":
+                disconnects++;
+                if (event.getBoolean("stalled"))
+                    stalled++;
+                break;
+            // protocol error case
+            case "sixqueens.ProtocolError":
+                int opCode = event.getInt("opCode");
+                String key = event.getString("reason") + ", opcode " +
+                        (opCode > ' ' && opCode < 0x7F ? String.valueOf((char) opCode) :
+                                opCode < 0 ? "none" : String.format("0x%02X", opCode));
+                errors.merge(key, 1L, Long::sum);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * game returns a game's totals, starting them if it has none yet
+     *
+     * @param id the game ID
+     * @return the totals
+     */
+    private Game game(long id) {
+        return games.computeIfAbsent(id, Game::new);
+    }
+
+    /**
+     * print prints the summary
+     *
+     * @param shown the most games to list
+     */
+    private void print(int shown) {
+        List<Game> slowest = new ArrayList<>(games.values());
+        for (Game game : slowest)
+            game.sort();
+        all.sort();
+        slowest.sort((a, b) -> Long.compare(Game.percentile(b.times, 0.99), Game.percentile(a.times, 0.99)));
+
+        System.out.printf("%d games, %d boards, %d queens placed, %d boards won%n",
+                games.size(), all.boards, all.count, all.wins);
+        System.out.println("squareChosen and lock wait in microseconds, slowest games first");
+        System.out.println("      game  boards  queens  wins     p50     p99     max  wait p50  wait p99  wait max");
+        all.print("all");
+        for (int i = 0; i < Math.min(shown, slowest.size()); i++)
+            slowest.get(i).print(String.valueOf(slowest.get(i).id));
+        if (slowest.size() > shown)
+            System.out.printf("  ... %d more games%n", slowest.size() - shown);
+
+        System.out.printf("%d connections lost, %d of them for not reading%n", disconnects, stalled);
+        long total = 0;
+        for (long count : errors.values())
+            total += count;
+        System.out.printf("%d protocol errors%n", total);
+        for (Map.Entry<String, Long> entry : errors.entrySet())
+            System.out.printf("  %8d  %s%n", entry.getValue(), entry.getKey());
+    }
+
+    /**
+     * This class adds up one game's events
+     */
+    private static class Game {
+        private final long id;
+        private long boards;
+        private long wins;
+
+        // squareChosen's times and lock waits, in nanoseconds, grown as needed
+        private long[] times = new long[16];
+        private long[] waits = new long[16];
+        private int count;
+
+        /**
+         * This constructor creates empty totals for a game
+         *
+         * @param id the game ID
+         */
+        Game(long id) {
+            this.id = id;
+        }
+
+        /**
+         * placed adds a queen placed
+         *
+         * @param nanos the time squareChosen took
+         * @param wait  the time it waited for the lock
+         */
+        void placed(long nanos, long wait) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, 2 * count);
+                waits = Arrays.copyOf(waits, 2 * count);
+            }
+            times[count] = nanos;
+            waits[count] = wait;
+            count++;
+        }
+
+        /**
+         * sort trims and sorts the timings, so percentiles can be read
+         */
+        void sort() {
+            times = Arrays.copyOf(times, count);
+            waits = Arrays.copyOf(waits, count);
+            Arrays.sort(times);
+            Arrays.sort(waits);
+        }
+
+        /**
+         * percentile returns the value a fraction of sorted values are at
+         * or below
+         *
+         * @param sorted   the sorted values
+         * @param fraction the fraction, from 0 to 1
+         * @return the value, or 0 if there are none
+         */
+        static long percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0)
+                return 0;
+            int rank = (int) Math.max(1, Math.ceil(fraction * sorted.length));
+            return sorted[rank - 1];
+        }
+
+        /**
+         * print prints the game's line of the table
+         *
+         * @param name what to call the game
+         */
+        void print(String name) {
+            System.out.printf("%10s %7d %7d %5d %7.1f %7.1f %7.1f %9.1f %9.1f %9.1f%n", name, boards, count, wins,
+                    micros(percentile(times, 0.5)), micros(percentile(times, 0.99)), micros(percentile(times, 1)),
+                    micros(percentile(waits, 0.5)), micros(percentile(waits, 0.99)), micros(percentile(waits, 1)));
+        }
+
+        /**
+         * micros converts nanoseconds to microseconds
+         *
+         * @param nanos the nanoseconds
+         * @return the microseconds
+         */
+        private static double micros(long nanos) {
+            return nanos / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+// ******************************
+//
+// File:    ServerBenchmark.java
+// Package: ---
+// Unit:    Class ServerBenchmark
+//
+// ******************************
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * This class measures a running Six Queens server. It opens a number of
+ * client connections from one thread, joins them, and has every pair play
+ * random legal moves as fast as the server answers. The winner of each
+ * game starts the next one. It reports how many connections the server
+ * accepted and still holds, how many moves per second it handled, and the
+ * time from sending a move to seeing it echoed back. A client whose
+ * partner quits closes its connection, as a real player's client would.
+ * Run it against each server mode to compare them.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class ServerBenchmark {
+    private static final int BUFFER_BYTES = 512;
+    private static final int MAX_LATENCIES = 1 << 20;
+
+    private final Selector selector;
+    private final Random random = new Random();
+    private final long[] latencies = new long[MAX_LATENCIES];
+    private long latencyCount;
+    private long moves;
+    private int open;
+    private boolean verbose = true;
+
+    /**
+     * This class holds one simulated player
+     */
+    private class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        private BoardState board = new BoardState();
+        private long sentAt;
+
+        /**
+         * This constructor creates a client on a connected channel
+         *
+         * @param channel the channel, in non-blocking mode
+         */
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * read reads and handles every complete server message
+         *
+         * @throws IOException if the connection fails
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0)
+                throw new IOException("connection closed");
+            in.flip();
+            int length;
+            while ((length = WireFormat.serverMessageLength(in)) > 0) {
+                int end = in.position() + length;
+                handle(in.get());
+                in.position(end);
+            }
+            in.compact();
+            flush();
+        }
+
+        /**
+         * handle reacts to one server message
+         *
+         * @param opCode the message opcode; arguments follow in the buffer
+         * @throws IOException if the partner quit, to close this client
+         */
+        private void handle(byte opCode) throws IOException {
+            switch (opCode) {
+                case 'G':
+                    board = new BoardState(in.get() & 0xFF);
+                    break;
+                case 'N':
+                    board.clear();
+                    break;
+                case 'Q':
+                    int row = in.get();
+                    int col = in.get();
+                    board.setQueen(row, col);
+                    moves++;
+                    if (sentAt != 0) {
+                        latencies[(int) (latencyCount++ % MAX_LATENCIES)] = System.nanoTime() - sentAt;
+                        sentAt = 0;
+                    }
+                    break;
+                case 'Y':
+                    move();
+                    break;
+                case 'W':
+                    out.put((byte) 'N');
+                    break;
+                case 'B':
+                    throw new IOException("partner quit");
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * move chooses a random empty space
+         */
+        private void move() {
+            int size = board.getSize();
+            int start = random.nextInt(size * size);
+            for (int i = 0; i < size * size; i++) {
+                int square = (start + i) % (size * size);
+                if (board.isEmpty(square / size, square % size)) {
+                    out.put((byte) 'S').put((byte) (square / size)).put((byte) (square % size));
+                    sentAt = System.nanoTime();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * flush sends any pending output
+         *
+         * @throws IOException if the connection fails
+         */
+        void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining())
+                channel.write(out);
+            out.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: java ServerBenchmark <host> <port> <connections> <seconds>");
+            System.exit(1);
+        }
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int connections = Integer.parseInt(args[2]);
+        long seconds = Long.parseLong(args[3]);
+
+        ServerBenchmark benchmark = new ServerBenchmark();
+        benchmark.connect(address, connections);
+        benchmark.play(seconds);
+        benchmark.close();
+    }
+
+    /**
+     * This constructor creates a benchmark with no connections
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public ServerBenchmark() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * connect opens the client connections and joins them
+     *
+     * @param address     the server address
+     * @param connections the number of clients, rounded down to an even number
+     * @return the number of connections opened
+     */
+    public int connect(InetSocketAddress address, int connections) {
+        connections -= connections % 2;
+        int opened = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            try {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                Client client = new Client(channel);
+                client.out.put((byte) 'G').put((byte) BoardState.DEFAULT_SIZE).put((byte) 'J');
+                WireFormat.putUTF(client.out, "bot" + i);
+                client.flush();
+                channel.register(selector, SelectionKey.OP_READ, client);
+                open++;
+                opened++;
+            } catch (IOException e) {
+                System.err.println("ServerBenchmark: connection " + i + " failed: " + e.getMessage());
+                break;
+            }
+        }
+        if (verbose)
+            System.out.printf("%d of %d connections opened in %.0f ms%n", opened, connections,
+                    (System.nanoTime() - start) / 1e6);
+        return opened;
+    }
+
+    /**
+     * play plays for the given time and reports the results
+     *
+     * @param seconds how long to play
+     * @return the moves per second
+     * @throws IOException if the selector fails
+     */
+    public double play(long seconds) throws IOException {
+        // the first moves of every game may come before the clock starts
+        moves = 0;
+        latencyCount = 0;
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline && open > 0) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    client.read();
+                } catch (IOException e) {
+                    key.cancel();
+                    client.channel.close();
+                    open--;
+                }
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // every move is echoed to both players
+        double movesPerSecond = moves / 2 / elapsed;
+        if (!verbose)
+            return movesPerSecond;
+        System.out.printf("%d connections held, %.0f moves/sec%n", open, movesPerSecond);
+        int n = (int) Math.min(latencyCount, latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        if (n > 0)
+            System.out.printf("move latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    sorted[n / 2] / 1e6, sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6);
+        return movesPerSecond;
+    }
+
+    /**
+     * setVerbose chooses whether connect and play print what they did
+     *
+     * @param verbose true to print, as by default
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * kill resets randomly chosen connections, the way a crashed client or
+     * a dropped mobile link looks to the server: the socket is closed with
+     * no linger, so the server sees a reset rather than an orderly close.
+     *
+     * @param n the number of connections to kill
+     * @return the number killed
+     */
+    public int kill(int n) {
+        SelectionKey[] keys = selector.keys().toArray(new SelectionKey[0]);
+        int killed = 0;
+        for (int i = keys.length - 1; i > 0 && killed < n; i--) {
+            int j = random.nextInt(i + 1);
+            SelectionKey key = keys[j];
+            keys[j] = keys[i];
+            if (!key.isValid())
+                continue;
+            key.cancel();
+            try {
+                Client client = (Client) key.attachment();
+                client.channel.socket().setSoLinger(true, 0);
+                client.channel.close();
+            } catch (IOException e) {
+                // the connection is gone either way
+            }
+            open--;
+            killed++;
+        }
+        return killed;
+    }
+
+    /**
+     * getOpen returns the number of connections still open
+     *
+     * @return the open connection count
+     */
+    public int getOpen() {
+        return open;
+    }
+
+    /**
+     * close closes every connection
+     *
+     * @throws IOException if the selector cannot be closed
+     */
+    public void close() throws IOException {
+        for (SelectionKey key : selector.keys())
+            key.channel().close();
+        selector.close();
+    }
+}
@@ -0,0 +1,458 @@
+// ****************************
+//
+// File:    SessionManager.java
+// Package: ---
+// Unit:    Class SessionManager
+//
+// ****************************
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sits between the server's view proxies and their games. It
+ * has the Lobby pair players into games when they join, gives each player
+ * a session token, and passes the player's moves on to their game.
+ * <P>
+ * A player whose connection drops is not taken out of the game at once.
+ * The session is held for a grace period, and a new connection that
+ * presents the token within it takes the player's place in the game and
+ * is sent a snapshot of the board. Only when the grace period runs out is
+ * the game told the player quit. A player still waiting for a partner has
+ * no game to come back to, so is taken out of the lobby at once. A game
+ * is removed from the GameRegistry when a player quits it or a dropped
+ * player's grace period runs out, which ends it.
+ * <P>
+ * A client may watch a game instead of playing. Spectators have no
+ * session; the manager only remembers which game each one watches, to
+ * take it out when it leaves.
+ * <P>
+ * With a GameJournal, each player's session token is recorded with the
+ * game's events, and the games the journal recovers are put back when
+ * the manager is created. Their players have no connection yet, so each
+ * starts out dropped: its session is held for the grace period, for the
+ * player to resume with the token they had. A recovered game still
+ * waiting for a partner, or missing a player's token, is ended.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class SessionManager implements SixQueensViewListener {
+    /**
+     * The default time a dropped player has to come back, in milliseconds
+     */
+    public static final long DEFAULT_GRACE_MILLIS = 30_000L;
+
+    private final long graceMillis;
+    private final SecureRandom random;
+    private final ConcurrentHashMap<SixQueensModelListener, Session> byView;
+    private final ConcurrentHashMap<Long, Session> byToken;
+    private final ConcurrentHashMap<SixQueensModelListener, SixQueensModel> watching;
+    private final ScheduledExecutorService timer;
+    private final GameRegistry registry;
+    private final Lobby lobby;
+    private final GameJournal journal;
+
+    /**
+     * This class holds one player's place in a game
+     */
+    private static class Session {
+        final long token;
+        final SixQueensModel model;
+        SixQueensModelListener view;
+        ScheduledFuture<?> expiry;
+
+        /**
+         * This constructor creates a session
+         *
+         * @param token the session token
+         * @param model the player's game
+         * @param view  the player's view
+         */
+        Session(long token, SixQueensModel model, SixQueensModelListener view) {
+            this.token = token;
+            this.model = model;
+            this.view = view;
+        }
+    }
+
+    /**
+     * This class stands in for a recovered player until they resume. It
+     * ignores every report.
+     */
+    private static class AbsentView implements SixQueensModelListener {
+        @Override
+        public void boardSize(int size) {
+        }
+
+        @Override
+        public void newGame() {
+        }
+
+        @Override
+        public void setQueen(int row, int col) {
+        }
+
+        @Override
+        public void waitingForPartner() {
+        }
+
+        @Override
+        public void yourTurn() {
+        }
+
+        @Override
+        public void theirTurn(String name) {
+        }
+
+        @Override
+        public void youWin() {
+        }
+
+        @Override
+        public void theyWin(String name) {
+        }
+
+        @Override
+        public void quit() {
+        }
+    }
+
+    /**
+     * This constructor creates a session manager
+     *
+     * @param graceMillis how long a dropped player has to come back
+     */
+    public SessionManager(long graceMillis) {
+        this(graceMillis, null);
+    }
+
+    /**
+     * This constructor creates a session manager that records its games
+     * in a journal, and puts back the games the journal recovered
+     *
+     * @param graceMillis how long a dropped player has to come back
+     * @param journal     the journal, or null for none
+     */
+    public SessionManager(long graceMillis, GameJournal journal) {
+        this.graceMillis = graceMillis;
+        this.random = new SecureRandom();
+        this.byView = new ConcurrentHashMap<>();
+        this.byToken = new ConcurrentHashMap<>();
+        this.watching = new ConcurrentHashMap<>();
+        this.journal = journal;
+        this.registry = new GameRegistry(journal);
+        this.lobby = new Lobby(registry);
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "SessionManager-Expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (journal != null)
+            recover();
+    }
+
+    /**
+     * join pairs a player with the next player who asks for the same board
+     * size. The player is given a session token.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     */
+    @Override
+    public void join(SixQueensModelListener view, String name, int size) {
+        join(view, name, size, null);
+    }
+
+    /**
+     * join pairs a player with the next player who names the same private
+     * room, or asks for the same board size if there is no room. The
+     * player is given a session token.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @param room the room's name, or null to be paired with anyone
+     */
+    @Override
+    public void join(SixQueensModelListener view, String name, int size, String room) {
+        if (byView.containsKey(view))
+            return;
+        long token = newToken();
+        view.sessionToken(token);
+        Session session = new Session(token, lobby.join(view, name, size, room), view);
+        byToken.put(session.token, session);
+        byView.put(view, session);
+        if (journal != null)
+            journal.token(session.model.getId(), session.model.seatOf(view), token);
+    }
+
+    /**
+     * squareChosen passes a move on to the player's game
+     *
+     * @param view the view reporting the placement
+     * @param row  the row the queen was placed in
+     * @param col  the column the queen was placed in
+     */
+    @Override
+    public void squareChosen(SixQueensModelListener view, int row, int col) {
+        Session session = byView.get(view);
+        if (session != null)
+            session.model.squareChosen(view, row, col);
+    }
+
+    /**
+     * newGame passes a new game request on to the player's game
+     *
+     * @param view the view reporting the new game
+     */
+    @Override
+    public void newGame(SixQueensModelListener view) {
+        Session session = byView.get(view);
+        if (session != null)
+            session.model.newGame(view);
+    }
+
+    /**
+     * quit ends the player's session, takes the player out of the lobby if
+     * they were waiting, and tells the game
+     *
+     * @param view the view reporting the player leaving the game
+     */
+    @Override
+    public void quit(SixQueensModelListener view) {
+        Session session = byView.remove(view);
+        if (session == null) {
+            unwatch(view);
+            return;
+        }
+        synchronized (session) {
+            byToken.remove(session.token, session);
+            if (session.expiry != null)
+                session.expiry.cancel(false);
+        }
+        lobby.cancel(view);
+        end(session, view);
+    }
+
+    /**
+     * disconnected holds a dropped player's session for the grace period.
+     * A session whose game is over is dropped at once, and so is one still
+     * waiting in the lobby.
+     *
+     * @param view the view that lost its connection
+     */
+    @Override
+    public void disconnected(SixQueensModelListener view) {
+        Session session = byView.remove(view);
+        if (session == null) {
+            unwatch(view);
+            return;
+        }
+        if (session.model.isFinished()) {
+            byToken.remove(session.token, session);
+            return;
+        }
+        if (lobby.cancel(view)) {
+            byToken.remove(session.token, session);
+            end(session, view);
+            return;
+        }
+        synchronized (session) {
+            if (session.view == view)
+                session.expiry = timer.schedule(() -> expire(session), graceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * resume puts a returning player back in their game. The new connection
+     * may arrive before the old one is noticed to be gone; it takes over
+     * either way. A token that is unknown or expired gets a quit.
+     *
+     * @param view  the new view of the returning player
+     * @param token the session token the player was given
+     */
+    @Override
+    public void resume(SixQueensModelListener view, long token) {
+        Session session = byToken.get(token);
+        if (session == null) {
+            view.quit();
+            view.updateDone();
+            return;
+        }
+        SixQueensModelListener oldView;
+        synchronized (session) {
+            if (session.expiry != null) {
+                session.expiry.cancel(false);
+                session.expiry = null;
+            }
+            oldView = session.view;
+            session.view = view;
+            byView.remove(oldView, session);
+            byView.put(view, session);
+        }
+        view.sessionToken(token);
+        session.model.resume(oldView, view);
+    }
+
+    /**
+     * watch makes a client a spectator of a game, in place of any game it
+     * was watching. A player cannot watch. A game that is over or unknown
+     * gets a quit.
+     *
+     * @param view   the view of the client, which is also a Spectator
+     * @param gameId the ID of the game, or 0 for the game being played
+     *               with the most spectators
+     */
+    @Override
+    public void watch(SixQueensModelListener view, long gameId) {
+        if (byView.containsKey(view) || !(view instanceof Spectator))
+            return;
+        unwatch(view);
+        SixQueensModel model = gameId == 0 ? busiest() : registry.get(gameId);
+        if (model == null || !model.watch((Spectator) view)) {
+            view.quit();
+            view.updateDone();
+            return;
+        }
+        watching.put(view, model);
+    }
+
+    /**
+     * getSessionCount returns the number of sessions being held
+     *
+     * @return the number of sessions, connected or waiting to resume
+     */
+    public int getSessionCount() {
+        return byToken.size();
+    }
+
+    /**
+     * getRegistry returns the registry of running games
+     *
+     * @return the registry
+     */
+    public GameRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * getLobby returns the lobby that pairs the players
+     *
+     * @return the lobby
+     */
+    public Lobby getLobby() {
+        return lobby;
+    }
+
+    /**
+     * recover replays each game the journal recovered onto a new model,
+     * with absent players, and holds their sessions for the grace period.
+     * The replayed moves are not counted as moves played now.
+     */
+    private void recover() {
+        registry.reserve(journal.getMaxGameId());
+        for (GameJournal.Game game : journal.getRecovered()) {
+            SixQueensModel model = new SixQueensModel(game.getId());
+            SixQueensModelListener[] seats = {new AbsentView(), new AbsentView()};
+            model.setReplaying(true);
+            model.join(seats[0], game.getName(1), game.getSize());
+            if (game.getName(2) != null)
+                model.join(seats[1], game.getName(2), game.getSize());
+            for (int i = 0; i < game.getMoveCount(); i++)
+                model.squareChosen(seats[game.getMoveSeat(i) - 1], game.getMoveRow(i), game.getMoveCol(i));
+            model.setReplaying(false);
+            model.setJournal(journal);
+            registry.restore(model);
+
+            // a game nobody can come back to
+            if (game.getName(2) == null || game.getToken(1) == 0 || game.getToken(2) == 0) {
+                model.quit(null);
+                registry.remove(model.getId());
+                continue;
+            }
+            for (int seat = 1; seat <= 2; seat++) {
+                Session session = new Session(game.getToken(seat), model, seats[seat - 1]);
+                byToken.put(session.token, session);
+                synchronized (session) {
+                    session.expiry = timer.schedule(() -> expire(session), graceMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * expire ends a session whose player did not come back in time
+     *
+     * @param session the session
+     */
+    private void expire(Session session) {
+        SixQueensModelListener view;
+        synchronized (session) {
+            if (session.expiry == null || !byToken.remove(session.token, session))
+                return;
+            session.expiry = null;
+            view = session.view;
+        }
+        end(session, view);
+    }
+
+    /**
+     * end tells a session's game the player quit, which ends it, and
+     * removes the game from the registry
+     *
+     * @param session the session
+     * @param view    the player's view
+     */
+    private void end(Session session, SixQueensModelListener view) {
+        session.model.quit(view);
+        registry.remove(session.model.getId());
+    }
+
+    /**
+     * unwatch takes a spectator out of the game it watches
+     *
+     * @param view the spectator's view
+     */
+    private void unwatch(SixQueensModelListener view) {
+        SixQueensModel model = watching.remove(view);
+        if (model != null)
+            model.unwatch((Spectator) view);
+    }
+
+    /**
+     * busiest finds the game being played with the most spectators
+     *
+     * @return the game, or null if no game is being played
+     */
+    private SixQueensModel busiest() {
+        SixQueensModel[] best = new SixQueensModel[1];
+        int[] most = {-1};
+        registry.forEach(model -> {
+            int spectators = model.getSpectatorCount();
+            if (spectators > most[0] && model.isPlaying()) {
+                best[0] = model;
+                most[0] = spectators;
+            }
+        });
+        return best[0];
+    }
+
+    /**
+     * newToken returns a random session token not in use
+     *
+     * @return the token, never 0
+     */
+    private long newToken() {
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == 0 || byToken.containsKey(token));
+        return token;
+    }
+}
@@ -9,6 +9,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
 
 /**
  * This class is the client main program for the Six Queens game.
@@ -18,9 +19,31 @@ import java.net.Socket;
  */
 public class SixQueens {
     public static void main(String[] args) {
-        // check to make sure there are 3 command line arguments
-        if (args.length != 3) {
-            System.err.println("Usage: java SixQueens <host> <port> <playername>");
+        // trailing options pick the kind of thread that reads from the server,
+        // the protocol version and a private room to play in
+        ThreadMode threadMode = ThreadMode.PLATFORM;
+        int protocol = WireFormat.LATEST_VERSION;
+        String room = null;
+        while (args.length > 0 && args[args.length - 1].contains("=")) {
+            String option = args[args.length - 1];
+            if (option.startsWith("threads="))
+                threadMode = ThreadMode.parse(option.substring(8));
+            else if (option.equals("protocol=1"))
+                protocol = WireFormat.VERSION_1;
+            else if (option.equals("protocol=2"))
+                protocol = WireFormat.VERSION_2;
+            else if (option.startsWith("room=") && option.length() > 5)
+                room = option.substring(5);
+            else
+                threadMode = null;
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+
+        // check to make sure there are 3 or 4 command line arguments
+        if (threadMode == null || (args.length != 3 && args.length != 4)
+                || (room != null && protocol == WireFormat.VERSION_1)) {
+            System.err.println("Usage: java SixQueens <host> <port> <playername> [<boardsize>] " +
+                    "[threads=platform|virtual] [protocol=1|2] [room=<name>]");
             System.exit(1);
         }
         String host = args[0];
@@ -35,6 +58,20 @@ public class SixQueens {
             System.exit(1);
         }
 
+        // checks that the board size is a number in the supported range
+        int size = BoardState.DEFAULT_SIZE;
+        if (args.length == 4) {
+            try {
+                size = Integer.parseInt(args[3]);
+            } catch (NumberFormatException n) {
+                size = -1;
+            }
+            if (!BoardState.isValidSize(size)) {
+                System.err.println("The board size must be a number from 1 to " + BoardState.MAX_SIZE);
+                System.exit(1);
+            }
+        }
+
         // connects the player to the server
         try {
             // create socket connection to server
@@ -42,10 +79,10 @@ public class SixQueens {
             socket.connect(new InetSocketAddress(host, port));
 
             SixQueensView view = SixQueensView.create(playerName);
-            ModelProxy modelProxy = new ModelProxy(socket);
+            ModelProxy modelProxy = new ModelProxy(socket, threadMode, protocol);
             view.setViewListener(modelProxy);
             modelProxy.setListener(view);
-            modelProxy.join(view, playerName);
+            modelProxy.join(view, playerName, size, room);
         } catch (IOException e) {
             error(e);
         }
@@ -25,14 +25,14 @@ public class SixQueensJPanel
 
 // Exported data members.
 
-    public static final int ROWS = 6;
-    public static final int COLS = 6;
+    public static final int DEFAULT_SIZE = 6;
 
 // Hidden data members.
 
     private static final int L = 1;
     private static final int W = 40;
-    private static final int D = 20;
+    private static final int MIN_W = 8;
+    private static final int MAX_BOARD_W = 640;
 
     private static final Color LINE_COLOR = Color.BLACK;
     private static final Color SQUARE_COLOR = Color.WHITE;
@@ -41,8 +41,12 @@ public class SixQueensJPanel
     private static final Stroke LINE_STROKE = new BasicStroke
             (L, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL);
 
-    private boolean[][] visible = new boolean [ROWS] [COLS];
-    private boolean[][] queen = new boolean [ROWS] [COLS];
+    private int rows;
+    private int cols;
+    private int w;
+    private int d;
+    private boolean[][] visible;
+    private boolean[][] queen;
     private SixQueensJPanelListener listener;
 
 // Exported constructors.
@@ -53,19 +57,16 @@ public class SixQueensJPanel
     public SixQueensJPanel()
     {
         super();
-        Dimension d = new Dimension (COLS*W, ROWS*W);
-        setMinimumSize (d);
-        setPreferredSize (d);
-        setMaximumSize (d);
+        setBoardSize (DEFAULT_SIZE);
         addMouseListener (new MouseAdapter()
         {
             public void mouseClicked (MouseEvent e)
             {
                 if (listener != null)
                 {
-                    int r = e.getY()/(L+W);
-                    int c = e.getX()/(L+W);
-                    if (visible[r][c] && ! queen[r][c])
+                    int r = e.getY()/w;
+                    int c = e.getX()/w;
+                    if (r < rows && c < cols && visible[r][c] && ! queen[r][c])
                         listener.squareClicked (r, c);
                 }
             }
@@ -85,13 +86,57 @@ public class SixQueensJPanel
         this.listener = listener;
     }
 
+    /**
+     * Set the number of rows and columns on this game board widget. Squares
+     * shrink on large boards so the widget stays a reasonable size. The
+     * board is cleared.
+     *
+     * @param  size  Number of rows and columns.
+     */
+    public void setBoardSize
+    (int size)
+    {
+        rows = size;
+        cols = size;
+        w = Math.max (MIN_W, Math.min (W, MAX_BOARD_W/size));
+        d = w/2;
+        visible = new boolean [rows] [cols];
+        queen = new boolean [rows] [cols];
+        Dimension dim = new Dimension (cols*w, rows*w);
+        setMinimumSize (dim);
+        setPreferredSize (dim);
+        setMaximumSize (dim);
+        revalidate();
+        clear();
+    }
+
+    /**
+     * Returns the number of rows on this game board widget.
+     *
+     * @return  Number of rows.
+     */
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns on this game board widget.
+     *
+     * @return  Number of columns.
+     */
+    public int getCols()
+    {
+        return cols;
+    }
+
     /**
      * Clear this game board widget.
      */
     public void clear()
     {
-        for (int r = 0; r < ROWS; ++ r)
-            for (int c = 0; c < COLS; ++ c)
+        for (int r = 0; r < rows; ++ r)
+            for (int c = 0; c < cols; ++ c)
             {
                 visible[r][c] = true;
                 queen[r][c] = false;
@@ -148,25 +193,25 @@ public class SixQueensJPanel
                         RenderingHints.VALUE_ANTIALIAS_ON);
 
         // Draw squares.
-        for (int r = 0; r < ROWS; ++ r)
-            for (int c = 0; c < COLS; ++ c)
+        for (int r = 0; r < rows; ++ r)
+            for (int c = 0; c < cols; ++ c)
                 if (visible[r][c])
                 {
                     // Draw interior.
                     g2d.setColor (SQUARE_COLOR);
-                    g2d.fill (new Rectangle2D.Float (c*W, r*W, W, W));
+                    g2d.fill (new Rectangle2D.Float (c*w, r*w, w, w));
 
                     // Draw border.
                     g2d.setColor (LINE_COLOR);
                     g2d.setStroke (LINE_STROKE);
-                    g2d.draw (new Rectangle2D.Float (c*W, r*W, W-L, W-L));
+                    g2d.draw (new Rectangle2D.Float (c*w, r*w, w-L, w-L));
 
                     // Draw queen.
                     if (queen[r][c])
                     {
                         g2d.setColor (QUEEN_COLOR);
                         g2d.fill (new Ellipse2D.Float
-                                (c*W+(W-D)/2, r*W+(W-D)/2, D, D));
+                                (c*w+(w-d)/2, r*w+(w-d)/2, d, d));
                     }
                 }
     }
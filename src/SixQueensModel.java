@@ -6,25 +6,81 @@
 //
 // *****************************
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * This class provides the application logic for the Six Queens game.
+ * <P>
+ * Every operation holds the model's lock while it updates the game and
+ * reports to the views. The lock is a ReentrantLock rather than the object
+ * monitor so that a view writing to a socket under it, on a virtual thread,
+ * can unmount from its carrier thread instead of pinning it.
+ * <P>
+ * Each operation ends by calling updateDone on the views, which marks the
+ * end of the reports that one operation produced, so a network view can
+ * send them in a single write.
+ * <P>
+ * A game may have spectators. Its events are encoded once for all of them
+ * into a Broadcast, which is only created once someone watches, and
+ * which sends them on, batched, off the game's lock.
+ * <P>
+ * A game may also have a GameJournal, which it records its events in as
+ * they happen, under its lock, so the journal holds them in the order
+ * they happened.
+ * <P>
+ * Each operation that changes the game records in Metrics how long it
+ * held the lock, and each move is timed by the game's MoveTimer until
+ * both views have flushed it. Boards started, queens placed and boards
+ * won are also Flight Recorder events, which cost nothing while no
+ * recording has them enabled. A game being rebuilt from a journal is
+ * replaying moves played before, so records none of them.
  *
  * @author  Ian Naple
  * @version 3/27/2018
  */
 public class SixQueensModel implements SixQueensViewListener {
+    private final long id;
     private String name1;
     private String name2;
     private SixQueensModelListener view1;
     private SixQueensModelListener view2;
     private SixQueensModelListener turn;
+    private SixQueensModelListener winner;
     private boolean isFinished;
     private BoardState board;
+    private Broadcast broadcast;
+    private GameJournal journal;
+    private volatile boolean replaying;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final MoveTimer timer = new MoveTimer();
 
     /**
-     * This constructor initializes a new Six Queens game
+     * This constructor initializes a new Six Queens game that is not in a
+     * GameRegistry, with ID 0
      */
     public SixQueensModel() {
+        this(0);
+    }
+
+    /**
+     * This constructor initializes a new Six Queens game
+     *
+     * @param id the game ID the GameRegistry gave it
+     */
+    public SixQueensModel(long id) {
+        this(id, null);
+    }
+
+    /**
+     * This constructor initializes a new Six Queens game that records its
+     * events in a journal
+     *
+     * @param id      the game ID the GameRegistry gave it
+     * @param journal the journal, or null for none
+     */
+    public SixQueensModel(long id, GameJournal journal) {
+        this.id = id;
+        this.journal = journal;
         name1 = null;
         name2 = null;
         board = new BoardState();
@@ -36,17 +92,54 @@ public class SixQueensModel implements SixQueensViewListener {
      *
      * @param view the view object reporting the player joining
      * @param name the name of the player
+     * @param size the board size the player asked for; the first player picks the size
      */
     @Override
-    public synchronized void join(SixQueensModelListener view, String name) {
-        if (name1 == null) {
-            name1 = name;
-            view1 = view;
-            view1.waitingForPartner();
-        } else {
-            name2 = name;
-            view2 = view;
-            startNewGame();
+    public void join(SixQueensModelListener view, String name, int size) {
+        lock.lock();
+        long locked = replaying ? 0 : Metrics.now();
+        try {
+            if (name1 == null) {
+                if (BoardState.isValidSize(size) && size != board.getSize())
+                    board = new BoardState(size);
+                name1 = name;
+                view1 = view;
+                if (journal != null)
+                    journal.join(id, 1, board.getSize(), name);
+                view1.waitingForPartner();
+            } else {
+                name2 = name;
+                view2 = view;
+                if (journal != null)
+                    journal.join(id, 2, board.getSize(), name);
+                startNewGame();
+            }
+            updateDone();
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * joinIfOpen joins a player to the game unless the game is over. The
+     * check and the join are made under the game's lock, so a player is
+     * never seated in a game its other player has just left.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for; the first player picks the size
+     * @return true if the player joined, false if the game was over
+     */
+    public boolean joinIfOpen(SixQueensModelListener view, String name, int size) {
+        lock.lock();
+        try {
+            if (isFinished)
+                return false;
+            join(view, name, size);
+            return true;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -58,13 +151,34 @@ public class SixQueensModel implements SixQueensViewListener {
      * @param col  the column the queen was placed in
      */
     @Override
-    public synchronized void squareChosen(SixQueensModelListener view, int row, int col) {
-        if (view != turn || !board.isEmpty(row, col))
-            return;
-        else if (view == view1)
-            setQueen(view1, row, col);
-        else
-            setQueen(view2, row, col);
+    public void squareChosen(SixQueensModelListener view, int row, int col) {
+        QueenPlacedEvent event = new QueenPlacedEvent();
+        event.begin();
+        long asked = event.isEnabled() ? System.nanoTime() : 0;
+        long start = replaying ? 0 : Metrics.now();
+        lock.lock();
+        long locked = Metrics.since(start);
+        if (asked != 0)
+            event.lockWait = System.nanoTime() - asked;
+        int seat;
+        try {
+            if (view != turn || row < 0 || col < 0 || row >= board.getSize() ||
+                    col >= board.getSize() || !board.isEmpty(row, col))
+                return;
+            seat = view == view1 ? 1 : 2;
+            setQueen(view, row, col);
+            moveDone(start);
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+        if (!replaying && event.shouldCommit()) {
+            event.gameId = id;
+            event.seat = seat;
+            event.row = row;
+            event.col = col;
+            event.commit();
+        }
     }
 
     /**
@@ -73,9 +187,18 @@ public class SixQueensModel implements SixQueensViewListener {
      * @param view the view reporting the new game
      */
     @Override
-    public synchronized void newGame(SixQueensModelListener view) {
-        if (name2 != null)
-            startNewGame();
+    public void newGame(SixQueensModelListener view) {
+        lock.lock();
+        long locked = Metrics.now();
+        try {
+            if (name2 != null) {
+                startNewGame();
+                updateDone();
+            }
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
     }
 
     /**
@@ -84,13 +207,171 @@ public class SixQueensModel implements SixQueensViewListener {
      * @param view the view reporting the player leaving the game
      */
     @Override
-    public synchronized void quit(SixQueensModelListener view) {
-        if (view1 != null)
-            view1.quit();
-        if (view2 != null)
-            view2.quit();
-        turn = null;
-        isFinished = true;
+    public void quit(SixQueensModelListener view) {
+        lock.lock();
+        long locked = Metrics.now();
+        try {
+            if (view1 != null)
+                view1.quit();
+            if (view2 != null)
+                view2.quit();
+            turn = null;
+            if (journal != null && !isFinished)
+                journal.quit(id);
+            isFinished = true;
+            updateDone();
+            if (broadcast != null)
+                broadcast.end();
+            broadcast = null;
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * resume puts a player's new view in place of the one it lost and
+     * sends it a snapshot of the game. If the game is over the new view is
+     * told the other player quit.
+     *
+     * @param oldView the player's old view
+     * @param newView the player's new view
+     */
+    public void resume(SixQueensModelListener oldView, SixQueensModelListener newView) {
+        lock.lock();
+        long locked = Metrics.now();
+        try {
+            String theirName;
+            if (oldView == view1 && !isFinished) {
+                view1 = newView;
+                theirName = name2;
+            } else if (oldView == view2 && !isFinished) {
+                view2 = newView;
+                theirName = name1;
+            } else {
+                newView.quit();
+                newView.updateDone();
+                return;
+            }
+            if (turn == oldView)
+                turn = newView;
+            if (winner == oldView)
+                winner = newView;
+            newView.snapshot(board, statusOf(newView), theirName);
+            newView.updateDone();
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * watch adds a spectator to the game and sends it the game so far
+     *
+     * @param spectator the spectator
+     * @return true if the spectator is watching, false if the game is over
+     */
+    public boolean watch(Spectator spectator) {
+        lock.lock();
+        long locked = Metrics.now();
+        try {
+            if (isFinished || name1 == null)
+                return false;
+            if (broadcast == null)
+                broadcast = new Broadcast(board.getSize());
+            broadcast.add(spectator, board, statusOf(view1), name1, name2);
+            return true;
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * unwatch removes a spectator from the game
+     *
+     * @param spectator the spectator
+     */
+    public void unwatch(Spectator spectator) {
+        lock.lock();
+        long locked = Metrics.now();
+        try {
+            if (broadcast != null && broadcast.remove(spectator) && broadcast.size() == 0)
+                broadcast = null;
+        } finally {
+            Metrics.recordLockHold(locked);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * seatOf returns which player a view is
+     *
+     * @param view the view
+     * @return 1 for the first player, 2 for the second, 0 for neither
+     */
+    public int seatOf(SixQueensModelListener view) {
+        lock.lock();
+        try {
+            return view == null ? 0 : view == view1 ? 1 : view == view2 ? 2 : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * setReplaying marks the game as being rebuilt from a journal, or as
+     * rebuilt. While it is replaying, its joins and moves are not timed,
+     * counted or recorded for Flight Recorder, since they were when they
+     * were first played.
+     *
+     * @param replaying true while the journal's events are replayed
+     */
+    public void setReplaying(boolean replaying) {
+        this.replaying = replaying;
+    }
+
+    /**
+     * setJournal starts recording the game's events in a journal. It is
+     * used once a game recovered from the journal has been replayed.
+     *
+     * @param journal the journal
+     */
+    public void setJournal(GameJournal journal) {
+        lock.lock();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * getSpectatorCount returns the number of spectators watching
+     *
+     * @return the number of spectators
+     */
+    public int getSpectatorCount() {
+        lock.lock();
+        try {
+            return broadcast == null ? 0 : broadcast.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * isPlaying returns whether two players are in the game and it is not over
+     *
+     * @return true while the game is being played
+     */
+    public boolean isPlaying() {
+        lock.lock();
+        try {
+            return name2 != null && !isFinished;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -98,8 +379,39 @@ public class SixQueensModel implements SixQueensViewListener {
      *
      * @return true when the game is over, false otherwise
      */
-    public synchronized boolean isFinished() {
-        return isFinished;
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return isFinished;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * getId returns the game's ID
+     *
+     * @return the ID, or 0 if the game is not in a registry
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * toString describes the game: its ID, players, board size and state
+     *
+     * @return the description
+     */
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            String state = isFinished ? "over" : name2 == null ? "waiting" : winner != null ? "won" : "playing";
+            return "game " + id + ": " + name1 + " vs " + name2 + ", " + board.getSize() + "x" +
+                    board.getSize() + ", " + state;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -107,12 +419,72 @@ public class SixQueensModel implements SixQueensViewListener {
      */
     private void startNewGame() {
         board.clear();
+        winner = null;
+        if (journal != null)
+            journal.newGame(id);
+        view1.boardSize(board.getSize());
+        view2.boardSize(board.getSize());
         view1.newGame();
         view2.newGame();
 
         turn = view1;
         view1.yourTurn();
         view2.theirTurn(name1);
+        if (broadcast != null)
+            broadcast.newGame(board, SixQueensModelListener.YOUR_TURN, name1, name2);
+
+        GameStartedEvent event = new GameStartedEvent();
+        if (!replaying && event.shouldCommit()) {
+            event.gameId = id;
+            event.size = board.getSize();
+            event.player1 = name1;
+            event.player2 = name2;
+            event.commit();
+        }
+    }
+
+    /**
+     * statusOf returns the game's status for a player
+     *
+     * @param view the player's view
+     * @return the status, as in SixQueensModelListener
+     */
+    private int statusOf(SixQueensModelListener view) {
+        if (name2 == null)
+            return SixQueensModelListener.WAITING;
+        else if (winner != null)
+            return winner == view ? SixQueensModelListener.YOU_WON : SixQueensModelListener.THEY_WON;
+        else
+            return turn == view ? SixQueensModelListener.YOUR_TURN : SixQueensModelListener.THEIR_TURN;
+    }
+
+    /**
+     * updateDone tells the views the current update is complete
+     */
+    private void updateDone() {
+        if (view1 != null)
+            view1.updateDone();
+        if (view2 != null)
+            view2.updateDone();
+    }
+
+    /**
+     * moveDone tells the views a move's update is complete, and times the
+     * move until they have flushed it
+     *
+     * @param start when the move reached the model, from Metrics.now; 0 if
+     *              it is not timed
+     */
+    private void moveDone(long start) {
+        if (start == 0) {
+            updateDone();
+            return;
+        }
+        timer.start(start, (view1 != null ? 1 : 0) + (view2 != null ? 1 : 0));
+        if (view1 != null)
+            view1.moveDone(timer, start);
+        if (view2 != null)
+            view2.moveDone(timer, start);
     }
 
     /**
@@ -124,12 +496,26 @@ public class SixQueensModel implements SixQueensViewListener {
      */
     private void setQueen(SixQueensModelListener current, int row, int col) {
         board.setQueen(row, col);
+        if (!replaying)
+            WireStats.recordMove();
+        if (journal != null)
+            journal.move(id, current == view1 ? 1 : 2, row, col);
         view1.setQueen(row, col);
         view2.setQueen(row, col);
 
         // current player won
         if (board.checkWin()) {
             turn = null;
+            winner = current;
+            if (journal != null)
+                journal.win(id, current == view1 ? 1 : 2);
+            GameWonEvent event = new GameWonEvent();
+            if (!replaying && event.shouldCommit()) {
+                event.gameId = id;
+                event.seat = current == view1 ? 1 : 2;
+                event.winner = current == view1 ? name1 : name2;
+                event.commit();
+            }
             if (current == view1) {
                 view1.youWin();
                 view2.theyWin(name1);
@@ -151,5 +537,7 @@ public class SixQueensModel implements SixQueensViewListener {
                 view2.theirTurn(name1);
             }
         }
+        if (broadcast != null)
+            broadcast.move(row, col, statusOf(view1));
     }
 }
@@ -15,6 +15,38 @@
  */
 public interface SixQueensModelListener {
 
+    /**
+     * Snapshot status: waiting for a partner
+     */
+    public static final int WAITING = 0;
+
+    /**
+     * Snapshot status: it is this player's turn
+     */
+    public static final int YOUR_TURN = 1;
+
+    /**
+     * Snapshot status: it is the other player's turn
+     */
+    public static final int THEIR_TURN = 2;
+
+    /**
+     * Snapshot status: this player won
+     */
+    public static final int YOU_WON = 3;
+
+    /**
+     * Snapshot status: the other player won
+     */
+    public static final int THEY_WON = 4;
+
+    /**
+     * boardSize reports the size of the board for the games that follow
+     *
+     * @param size the number of rows and columns
+     */
+    public void boardSize(int size);
+
     /**
      * newGame reports when a new game is started
      */
@@ -61,4 +93,73 @@ public interface SixQueensModelListener {
      * quit reports when a player quits the game
      */
     public void quit();
+
+    /**
+     * sessionToken reports the token that lets the player resume this game
+     * from a new connection. By default it is ignored.
+     *
+     * @param token the session token
+     */
+    public default void sessionToken(long token) {
+    }
+
+    /**
+     * snapshot reports the whole state of the game at once, for a player
+     * who resumed it. By default it is reported as the board size, a new
+     * game, each queen, and the status.
+     *
+     * @param board     the board; it must not be changed
+     * @param status    WAITING, YOUR_TURN, THEIR_TURN, YOU_WON or THEY_WON
+     * @param theirName the other player's name, or null while waiting
+     */
+    public default void snapshot(BoardState board, int status, String theirName) {
+        int size = board.getSize();
+        boardSize(size);
+        newGame();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (board.hasQueen(row, col))
+                    setQueen(row, col);
+            }
+        }
+        switch (status) {
+            case YOUR_TURN:
+                yourTurn();
+                break;
+            case THEIR_TURN:
+                theirTurn(theirName);
+                break;
+            case YOU_WON:
+                youWin();
+                break;
+            case THEY_WON:
+                theyWin(theirName);
+                break;
+            default:
+                waitingForPartner();
+                break;
+        }
+    }
+
+    /**
+     * updateDone reports that the model finished one update. Everything
+     * reported since the previous updateDone belongs together, so a view
+     * that buffers its reports may deliver them all now.
+     */
+    public default void updateDone() {
+    }
+
+    /**
+     * moveDone reports that the model finished the update for a move that
+     * is being timed. It is updateDone, and the view also tells the timer
+     * once it has flushed the update's reports toward its player. By
+     * default the view has nothing to flush, so it tells the timer at once.
+     *
+     * @param timer the game's move timer
+     * @param start the start time to give back to the timer
+     */
+    public default void moveDone(MoveTimer timer, long start) {
+        updateDone();
+        timer.flushed(start);
+    }
 }
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
 
 /**
  * This class creates the server that clients connect to in order to play a Six Queens game
@@ -18,11 +19,15 @@ import java.net.Socket;
  * @version 3/27/2018
  */
 public class SixQueensServer {
+    private static final long ACCEPT_RETRY_MILLIS = 50;
+
+    private static EndgameTable endgameTable;
+    private static SessionManager sessions;
+
     public static void main(String[] args) {
-        // check to make sure there are 2 command line arguments
-        if (args.length != 2) {
-            System.err.println("Usage: java SixQueensServer <host> <port>");
-            System.exit(1);
+        // check to make sure there are 2 command line arguments plus options
+        if (args.length < 2) {
+            usage();
         }
         String host = args[0];
 
@@ -35,30 +40,175 @@ public class SixQueensServer {
             System.exit(1);
         }
 
-        // creates the socket and listens for connections from users
-        try {
-            ServerSocket server = new ServerSocket();
-            server.bind(new InetSocketAddress(host, port));
-
-            SixQueensModel model = null;
-            while (true) {
-                Socket socket = server.accept();
-                ViewProxy viewProxy = new ViewProxy(socket);
-                if (model == null || model.isFinished()) {
-                    model = new SixQueensModel();
-                    viewProxy.setListener(model);
+        // reads the options
+        boolean nio = false;
+        ThreadMode threadMode = ThreadMode.PLATFORM;
+        int loops = Runtime.getRuntime().availableProcessors();
+        long graceMillis = SessionManager.DEFAULT_GRACE_MILLIS;
+        GameJournal journal = null;
+        int metricsPort = -1;
+        long aiWaitMillis = -1;
+        AiEngine aiEngine = AiEngine.GREEDY;
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+            try {
+                if (option.startsWith("table=")) {
+                    endgameTable = EndgameTable.open(Paths.get(option.substring(6)));
+                } else if (option.startsWith("journal=")) {
+                    journal = GameJournal.open(Paths.get(option.substring(8)));
+                } else if (option.equals("mode=nio")) {
+                    nio = true;
+                } else if (option.equals("mode=threads")) {
+                    nio = false;
+                } else if (option.startsWith("threads=")) {
+                    threadMode = ThreadMode.parse(option.substring(8));
+                    if (threadMode == null)
+                        usage();
+                } else if (option.equals("batch=on") || option.equals("batch=off")) {
+                    ViewProxy.setBatching(option.equals("batch=on"));
+                    NioViewProxy.setBatching(option.equals("batch=on"));
+                } else if (option.startsWith("watchdelay=")) {
+                    long millis = Long.parseLong(option.substring(11));
+                    if (millis < 1)
+                        usage();
+                    Broadcast.setFlushMillis(millis);
+                } else if (option.startsWith("grace=")) {
+                    graceMillis = Long.parseLong(option.substring(6)) * 1000;
+                    if (graceMillis < 0)
+                        usage();
+                } else if (option.startsWith("metrics=")) {
+                    metricsPort = Integer.parseInt(option.substring(8));
+                    if (metricsPort < 0 || metricsPort > 65535)
+                        usage();
+                } else if (option.startsWith("ai=")) {
+                    aiWaitMillis = Long.parseLong(option.substring(3)) * 1000;
+                    if (aiWaitMillis < 0)
+                        usage();
+                } else if (option.startsWith("aiengine=")) {
+                    aiEngine = AiEngine.parse(option.substring(9));
+                    if (aiEngine == null)
+                        usage();
+                } else if (option.startsWith("loops=")) {
+                    loops = Integer.parseInt(option.substring(6));
+                    if (loops < 1)
+                        usage();
                 } else {
-                    viewProxy.setListener(model);
-                    model = null;
+                    usage();
                 }
+            } catch (NumberFormatException e) {
+                usage();
+            } catch (IOException e) {
+                error(e);
+            }
+        }
+
+        // recovers the journaled games, and commits the journal on the way out
+        sessions = new SessionManager(graceMillis, journal);
+        if (journal != null) {
+            System.err.println("SixQueensServer: recovered " + sessions.getRegistry().size() + " games");
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        }
+
+        // gives players left waiting a computer opponent, all moving on a few shared threads
+        if (aiWaitMillis >= 0) {
+            sessions.getLobby().setAiOpponent(aiWaitMillis, aiEngine,
+                    AiPlayer.newExecutor(Runtime.getRuntime().availableProcessors()), AiPlayer.DEFAULT_THINK_MILLIS);
+        }
+
+        // publishes the metrics over JMX, and over HTTP if asked
+        Metrics.setGames(sessions.getRegistry()::size);
+        MetricsEndpoint.register();
+        if (metricsPort >= 0) {
+            try {
+                MetricsEndpoint.serve(metricsPort);
+            } catch (IOException e) {
+                error(e);
+            }
+        }
+
+        if (threadMode == ThreadMode.VIRTUAL && !ThreadMode.isVirtualAvailable())
+            System.err.println("SixQueensServer: virtual threads need Java 21, using platform threads");
+
+        // runs the non-blocking server instead of a thread per connection
+        if (nio) {
+            try {
+                new NioServer(new InetSocketAddress(host, port), loops, sessions).run();
+            } catch (IOException e) {
+                error(e);
             }
+        }
+
+        // creates the socket; failing to listen is the only I/O error that stops the server
+        ServerSocket server = null;
+        try {
+            server = new ServerSocket();
+            server.bind(new InetSocketAddress(host, port));
         } catch (IOException e) {
             error(e);
         }
+
+        // listens for connections from users
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                acceptFailed(e);
+                continue;
+            }
+            ViewProxy viewProxy = new ViewProxy(socket, threadMode);
+            viewProxy.setListener(sessions);
+        }
+    }
+
+    /**
+     * acceptFailed counts a failed accept and pauses briefly, since the
+     * usual cause, running out of file descriptors, does not clear at once
+     *
+     * @param e the IO error
+     */
+    static void acceptFailed(IOException e) {
+        WireStats.recordError("SixQueensServer", e);
+        try {
+            Thread.sleep(ACCEPT_RETRY_MILLIS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * getSessionManager returns the session manager the server's
+     * connections report to
+     *
+     * @return the session manager, or null before the server starts
+     */
+    public static SessionManager getSessionManager() {
+        return sessions;
+    }
+
+    /**
+     * getEndgameTable returns the endgame table the server was started with
+     *
+     * @return the memory-mapped table, or null if none was given
+     */
+    public static EndgameTable getEndgameTable() {
+        return endgameTable;
+    }
+
+    /**
+     * usage prints the command line usage and exits the program
+     */
+    private static void usage() {
+        System.err.println("Usage: java SixQueensServer <host> <port> [table=<tablefile>] " +
+                "[journal=<dir>] [mode=threads|nio] [threads=platform|virtual] [loops=<n>] [batch=on|off] " +
+                "[grace=<seconds>] [watchdelay=<millis>] [metrics=<port>] [ai=<seconds>] " +
+                "[aiengine=random|greedy|solver]");
+        System.exit(1);
     }
 
     /**
-     * error prints out an IO error message and exits the program
+     * error prints out an IO error message and exits the program. It is
+     * only used before the server starts accepting connections.
      *
      * @param e the IO error
      */
@@ -0,0 +1,269 @@
+// ******************************
+//
+// File:    SixQueensSolver.java
+// Package: ---
+// Unit:    Class SixQueensSolver
+//
+// ******************************
+
+/**
+ * This class solves Six Queens positions with perfect play. The player who
+ * fills the last empty space wins, so every position is either a win or a
+ * loss for the player to move. The solver runs a negamax search with
+ * alpha-beta pruning over the empty-space mask of a BoardState, orders
+ * moves so that likely wins are tried first, and remembers solved
+ * positions in a TranspositionTable. Positions are stored in their
+ * canonical form (see BoardSymmetry), so one entry covers all 8 symmetric
+ * variants.
+ * <P>
+ * Only boards that fit in a single bitboard (BoardState.MAX_PACKED_SIZE)
+ * can be solved.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class SixQueensSolver {
+    public static final int WIN = 1;
+    public static final int LOSS = -1;
+
+    private static final int DEFAULT_TABLE_BITS = 20;
+
+    private final int size;
+    private final long[] attacks;
+    private final BoardSymmetry symmetry;
+    private final TranspositionTable table;
+    private final int[][] moveBuffer;
+    private final int[][] scoreBuffer;
+    private long nodes;
+
+    /**
+     * This class holds the result of solving a position
+     */
+    public static class Solution {
+        public final int value;
+        public final int row;
+        public final int col;
+        public final long nodes;
+        public final long nanos;
+        public final long probes;
+        public final long hits;
+
+        /**
+         * This constructor creates a new solution
+         *
+         * @param value  WIN or LOSS for the player to move
+         * @param row    the row of the best move, or -1 if the game is over
+         * @param col    the column of the best move, or -1 if the game is over
+         * @param nodes  the number of positions searched
+         * @param nanos  the time spent searching
+         * @param probes the number of transposition table lookups
+         * @param hits   the number of lookups that found their position
+         */
+        public Solution(int value, int row, int col, long nodes, long nanos, long probes, long hits) {
+            this.value = value;
+            this.row = row;
+            this.col = col;
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.probes = probes;
+            this.hits = hits;
+        }
+
+        /**
+         * nodesPerSecond returns the search speed
+         *
+         * @return positions searched per second
+         */
+        public double nodesPerSecond() {
+            return nanos == 0 ? 0.0 : nodes * 1e9 / nanos;
+        }
+
+        /**
+         * hitRate returns the fraction of table lookups that found their position
+         *
+         * @return the hit rate from 0 to 1
+         */
+        public double hitRate() {
+            return probes == 0 ? 0.0 : (double) hits / probes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s, best move (%d, %d), %d nodes in %.3f ms, " +
+                            "%.0f nodes/sec, table hit rate %.1f%%",
+                    value == WIN ? "win" : "loss", row, col, nodes, nanos / 1e6,
+                    nodesPerSecond(), 100.0 * hitRate());
+        }
+    }
+
+    /**
+     * This constructor creates a solver for one board size
+     *
+     * @param size the board size, at most BoardState.MAX_PACKED_SIZE
+     */
+    public SixQueensSolver(int size) {
+        this(size, DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * This constructor creates a solver for one board size
+     *
+     * @param size      the board size, at most BoardState.MAX_PACKED_SIZE
+     * @param tableBits the log base 2 of the number of transposition table slots
+     */
+    public SixQueensSolver(int size, int tableBits) {
+        if (size < 1 || size > BoardState.MAX_PACKED_SIZE)
+            throw new IllegalArgumentException("SixQueensSolver: illegal size " + size);
+        this.size = size;
+        this.attacks = new long[size * size];
+        for (int square = 0; square < size * size; square++)
+            attacks[square] = BoardState.attackMask(size, square);
+        this.symmetry = new BoardSymmetry(size);
+        this.table = new TranspositionTable(tableBits);
+
+        // one move list per ply; a game never has more moves than rows
+        moveBuffer = new int[size + 1][size * size];
+        scoreBuffer = new int[size + 1][size * size];
+    }
+
+    /**
+     * solve finds the value and best move of a position. The transposition
+     * table is kept between calls, so solving positions from the same game
+     * gets faster as the game goes on.
+     *
+     * @param board the position to solve
+     * @return the solution
+     */
+    public Solution solve(BoardState board) {
+        if (board.getSize() != size)
+            throw new IllegalArgumentException("SixQueensSolver: board size " +
+                    board.getSize() + " does not match solver size " + size);
+        long empty = board.getEmptyMask();
+        long probes = table.getProbes();
+        long hits = table.getHits();
+        nodes = 0;
+
+        long start = System.nanoTime();
+        int value = negamax(empty, LOSS, WIN, 0);
+        long nanos = System.nanoTime() - start;
+
+        // the table holds the move for the canonical position; map it back
+        int move = -1;
+        if (empty != 0L) {
+            int t = symmetry.canonicalTransform(empty);
+            move = symmetry.transformSquare(table.bestMove(symmetry.transform(empty, t)),
+                    BoardSymmetry.inverse(t));
+        }
+        return new Solution(value, move < 0 ? -1 : move / size, move < 0 ? -1 : move % size,
+                nodes, nanos, table.getProbes() - probes, table.getHits() - hits);
+    }
+
+    /**
+     * negamax returns the value of a position for the player to move
+     *
+     * @param empty the empty-space mask
+     * @param alpha the lower bound of the search window
+     * @param beta  the upper bound of the search window
+     * @param ply   the search depth, used to pick a move buffer
+     * @return WIN or LOSS
+     */
+    private int negamax(long empty, int alpha, int beta, int ply) {
+        nodes++;
+
+        // the previous player filled the last empty space
+        if (empty == 0L)
+            return LOSS;
+
+        int t = symmetry.canonicalTransform(empty);
+        long key = symmetry.transform(empty, t);
+        int stored = table.probe(key);
+        if (stored != TranspositionTable.MISS)
+            return stored;
+
+        int count = orderMoves(empty, ply);
+        int[] moves = moveBuffer[ply];
+
+        // a move that fills the board wins outright; ordering puts it first
+        if ((empty & ~attacks[moves[0]]) == 0L) {
+            table.store(key, WIN, symmetry.transformSquare(moves[0], t));
+            return WIN;
+        }
+
+        int best = LOSS;
+        int bestMove = moves[0];
+        for (int i = 0; i < count; i++) {
+            int value = -negamax(empty & ~attacks[moves[i]], -beta, -alpha, ply + 1);
+            if (value > best) {
+                best = value;
+                bestMove = moves[i];
+            }
+            if (best > alpha)
+                alpha = best;
+            if (alpha >= beta)
+                break;
+        }
+
+        // with only two possible values every result is exact
+        table.store(key, best, symmetry.transformSquare(bestMove, t));
+        return best;
+    }
+
+    /**
+     * orderMoves fills the move buffer for a ply with every empty space,
+     * sorted so moves that leave the fewest empty spaces come first. Those
+     * end the game soonest and include any move that wins outright.
+     *
+     * @param empty the empty-space mask
+     * @param ply   the search depth
+     * @return the number of moves
+     */
+    private int orderMoves(long empty, int ply) {
+        int[] moves = moveBuffer[ply];
+        int[] scores = scoreBuffer[ply];
+        int count = 0;
+        for (long rest = empty; rest != 0L; rest &= rest - 1) {
+            int square = Long.numberOfTrailingZeros(rest);
+            int score = Long.bitCount(empty & ~attacks[square]);
+
+            // insertion sort; move lists are short
+            int i = count++;
+            while (i > 0 && scores[i - 1] > score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = square;
+            scores[i] = score;
+        }
+        return count;
+    }
+
+    /**
+     * main solves the starting position of a board and reports the statistics
+     *
+     * @param args the board size, optional
+     */
+    public static void main(String[] args) {
+        int size = BoardState.DEFAULT_SIZE;
+        if (args.length > 1) {
+            System.err.println("Usage: java SixQueensSolver [<boardsize>]");
+            System.exit(1);
+        }
+        if (args.length == 1) {
+            try {
+                size = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                size = -1;
+            }
+            if (size < 1 || size > BoardState.MAX_PACKED_SIZE) {
+                System.err.println("The board size must be a number from 1 to " +
+                        BoardState.MAX_PACKED_SIZE);
+                System.exit(1);
+            }
+        }
+
+        BoardState board = new BoardState(size);
+        Solution solution = new SixQueensSolver(size).solve(board);
+        System.out.println(size + "x" + size + " start position: " + solution);
+    }
+}
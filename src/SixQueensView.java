@@ -139,6 +139,23 @@ public class SixQueensView implements SixQueensModelListener
         });
     }
 
+    /**
+     * boardSize reports the size of the board
+     * @param size the number of rows and columns
+     */
+    @Override
+    public void boardSize(int size) {
+        onSwingThreadDo(new Runnable() {
+            @Override
+            public void run() {
+                if (board.getRows() != size) {
+                    board.setBoardSize(size);
+                    frame.pack();
+                }
+            }
+        });
+    }
+
     /**
      * newGame reports that a new game was started
      */
@@ -163,7 +180,7 @@ public class SixQueensView implements SixQueensModelListener
             @Override
             public void run() {
                 board.setQueen(row, col, true);
-                hideButtons(row, col);
+                hideButtons(board, row, col);
             }
         });
     }
@@ -263,13 +280,15 @@ public class SixQueensView implements SixQueensModelListener
 
     /**
      * hideButtons hides the buttons a queen cannot be placed on.
-     * This function is called whenever setQueen is called.
+     * This function is called whenever setQueen is called. It only
+     * needs the board, so it can be run on a board with no window.
+     * @param board the board widget
      * @param row the row the queen was placed on
      * @param col the column the queen was placed on
      */
-    private void hideButtons(int row, int col) {
+    static void hideButtons(SixQueensJPanel board, int row, int col) {
         // hides buttons below the queen
-        for(int i = row + 1; i < SixQueensJPanel.ROWS; i++)
+        for(int i = row + 1; i < board.getRows(); i++)
             board.setVisible(i, col, false);
 
         // hides buttons above the queen
@@ -277,7 +296,7 @@ public class SixQueensView implements SixQueensModelListener
             board.setVisible(i, col, false);
 
         // hides buttons to the right of the queen
-        for(int i = col + 1; i < SixQueensJPanel.COLS; i++)
+        for(int i = col + 1; i < board.getCols(); i++)
             board.setVisible(row, i, false);
 
         // hides buttons to the left of the queen
@@ -288,8 +307,8 @@ public class SixQueensView implements SixQueensModelListener
         int r = row + 1;
         int colRight = col + 1;
         int colLeft = col - 1;
-        while(r < SixQueensJPanel.ROWS && (colRight < SixQueensJPanel.COLS || colLeft >= 0)) {
-            if(colRight < SixQueensJPanel.ROWS) {
+        while(r < board.getRows() && (colRight < board.getCols() || colLeft >= 0)) {
+            if(colRight < board.getCols()) {
                 board.setVisible(r, colRight, false);
                 colRight++;
             }
@@ -304,8 +323,8 @@ public class SixQueensView implements SixQueensModelListener
         r = row - 1;
         colRight = col + 1;
         colLeft = col - 1;
-        while(r >= 0 && (colRight < SixQueensJPanel.COLS || colLeft >= 0)) {
-            if(colRight < SixQueensJPanel.ROWS) {
+        while(r >= 0 && (colRight < board.getCols() || colLeft >= 0)) {
+            if(colRight < board.getCols()) {
                 board.setVisible(r, colRight, false);
                 colRight++;
             }
@@ -20,8 +20,23 @@ public interface SixQueensViewListener {
      *
      * @param view the view object reporting the player joining
      * @param name the name of the player
+     * @param size the board size the player asked for
      */
-    public void join(SixQueensModelListener view, String name);
+    public void join(SixQueensModelListener view, String name, int size);
+
+    /**
+     * join reports that a player joined a named private room, to be paired
+     * only with a player who names the same room. By default rooms are not
+     * supported and the player joins as usual.
+     *
+     * @param view the view object reporting the player joining
+     * @param name the name of the player
+     * @param size the board size the player asked for
+     * @param room the room's name, or null to be paired with anyone
+     */
+    public default void join(SixQueensModelListener view, String name, int size, String room) {
+        join(view, name, size);
+    }
 
     /**
      * squareChosen reports when a queen is placed on a square
@@ -45,4 +60,41 @@ public interface SixQueensViewListener {
      * @param view the view reporting the player leaving the game
      */
     public void quit(SixQueensModelListener view);
+
+    /**
+     * resume reports that a player reconnected and wants back into the game
+     * a session token was issued for. By default resuming is not supported
+     * and the player is told the game is over.
+     *
+     * @param view  the new view of the returning player
+     * @param token the session token the player was given
+     */
+    public default void resume(SixQueensModelListener view, long token) {
+        view.quit();
+        view.updateDone();
+    }
+
+    /**
+     * watch reports that a client wants to watch a game rather than play.
+     * By default there are no spectators and the client is told the game
+     * is over.
+     *
+     * @param view   the view of the client, which is also a Spectator
+     * @param gameId the ID of the game to watch, or 0 for the game being
+     *               played with the most spectators
+     */
+    public default void watch(SixQueensModelListener view, long gameId) {
+        view.quit();
+        view.updateDone();
+    }
+
+    /**
+     * disconnected reports that a view lost its connection without
+     * quitting. By default this is the same as quitting.
+     *
+     * @param view the view that lost its connection
+     */
+    public default void disconnected(SixQueensModelListener view) {
+        quit(view);
+    }
 }
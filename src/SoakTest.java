@@ -0,0 +1,85 @@
+// ************************
+//
+// File:    SoakTest.java
+// Package: ---
+// Unit:    Class SoakTest
+//
+// ************************
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+/**
+ * This class checks that client failures stay contained. It starts the
+ * server inside this JVM and fills it with ServerBenchmark games. After a
+ * quiet warmup it resets randomly chosen client sockets every second and
+ * opens new clients to replace the connections that closed, as the
+ * partners of the killed clients leave too. Each second it prints the
+ * moves per second, the open connections, and the drops and errors the
+ * server counted. At the end it compares throughput under the kills with
+ * the warmup. A server that exits, or leaks sessions, shows up here.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class SoakTest {
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 4 || !(args[0].equals("threads") || args[0].equals("nio"))) {
+            System.err.println("Usage: java SoakTest threads|nio <connections> <seconds> [<kills/sec>]");
+            System.exit(1);
+        }
+        String mode = args[0];
+        int connections = Integer.parseInt(args[1]);
+        int seconds = Integer.parseInt(args[2]);
+        int killsPerSecond = args.length == 4 ? Integer.parseInt(args[3]) : Math.max(1, connections / 100);
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "mode=" + mode}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        ServerBenchmark clients = new ServerBenchmark();
+        clients.setVerbose(false);
+        int opened = clients.connect(address, connections);
+        System.out.printf("%s server, %d connections, %d kills/sec after %d s warmup%n",
+                mode, opened, killsPerSecond, WARMUP_SECONDS);
+        WireStats.reset();
+
+        double warmup = 0;
+        double soak = 0;
+        int reopened = 0;
+        for (int second = 1; second <= seconds; second++) {
+            double rate = clients.play(1);
+            int killed = 0;
+            if (second <= WARMUP_SECONDS) {
+                warmup += rate;
+            } else {
+                soak += rate;
+                killed = clients.kill(killsPerSecond);
+                int added = clients.connect(address, opened - clients.getOpen());
+                reopened += added;
+                if (added < opened - clients.getOpen() - 1)
+                    System.out.println("SoakTest: the server stopped accepting connections");
+            }
+            System.out.printf("%3d s: %7.0f moves/sec, %5d open, %4d killed, %6d drops, %4d errors, " +
+                            "%5d sessions%n", second, rate, clients.getOpen(), killed, WireStats.getDrops(),
+                    WireStats.getErrors(), SixQueensServer.getSessionManager().getSessionCount());
+        }
+
+        int soakSeconds = seconds - WARMUP_SECONDS;
+        if (soakSeconds > 0)
+            System.out.printf("warmup %.0f moves/sec, under kills %.0f moves/sec (%.0f%%), %d clients replaced%n",
+                    warmup / WARMUP_SECONDS, soak / soakSeconds,
+                    100 * (soak / soakSeconds) / (warmup / WARMUP_SECONDS), reopened);
+        clients.close();
+        System.exit(0);
+    }
+}
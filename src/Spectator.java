@@ -0,0 +1,51 @@
+// ************************
+//
+// File:    Spectator.java
+// Package: ---
+// Unit:    Interface Spectator
+//
+// ************************
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * This interface provides the interface for an object that watches a Six
+ * Queens game without playing in it. The game's events reach it already
+ * encoded, in buffers shared with every other spectator of the game.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public interface Spectator {
+
+    /**
+     * fanOut returns the executor the spectator's events are delivered
+     * on. Spectators that share an executor are sent each event by one
+     * task, run outside the game's lock.
+     *
+     * @return the executor
+     */
+    public Executor fanOut();
+
+    /**
+     * watchStart reports the whole game when the spectator starts
+     * watching. It is called holding the game's lock, before any event.
+     *
+     * @param board  the board
+     * @param status the status for the first player, as in SixQueensModelListener
+     * @param name1  the first player's name
+     * @param name2  the second player's name, or null while waiting
+     */
+    public void watchStart(BoardState board, int status, String name1, String name2);
+
+    /**
+     * watch reports an event of the game, encoded as version 2 frames. It
+     * is called on the fanOut executor, and must neither block nor change
+     * the buffer, which other spectators are sent too. A spectator that
+     * cannot keep up should drop itself.
+     *
+     * @param event the encoded event, read-only
+     */
+    public void watch(ByteBuffer event);
+}
@@ -0,0 +1,235 @@
+// **********************************
+//
+// File:    SpectatorBenchmark.java
+// Package: ---
+// Unit:    Class SpectatorBenchmark
+//
+// **********************************
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class measures spectators. It starts the server inside this JVM,
+ * has ServerBenchmark clients play a number of games, and measures the
+ * moves per second with nobody watching. Then it opens spectators for
+ * every game, optionally with some that never read, and measures again:
+ * the players' moves per second, the moves the spectators were sent per
+ * second, and the server's writes. The players should not slow down, and
+ * the spectators that do not read should be dropped.
+ * <P>
+ * The request's two cases are 1 game with 1,000 spectators and 1,000
+ * games with 10 spectators each.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class SpectatorBenchmark {
+    private static final int BUFFER_BYTES = 4096;
+
+    private final Selector selector;
+    private long moves;
+    private long snapshots;
+    private int open;
+
+    /**
+     * This class holds one simulated spectator
+     */
+    private class Watcher {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        private boolean helloRead;
+
+        /**
+         * This constructor creates a spectator on a connected channel
+         *
+         * @param channel the channel, in non-blocking mode
+         */
+        Watcher(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * read reads and counts every complete frame
+         *
+         * @throws IOException if the connection fails
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0)
+                throw new IOException("connection closed");
+            in.flip();
+            if (!helloRead && in.remaining() >= 2) {
+                in.position(in.position() + 2);
+                helloRead = true;
+            }
+            int length;
+            while (helloRead && (length = WireFormat.frameLength(in)) > 0) {
+                int end = in.position() + length;
+                byte opCode = in.get(in.position() + WireFormat.FRAME_HEADER_BYTES);
+                if (opCode == 'Q')
+                    moves++;
+                else if (opCode == 'X')
+                    snapshots++;
+                else if (opCode == 'B')
+                    throw new IOException("game over");
+                in.position(end);
+            }
+            in.compact();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4 || args.length > 5 || !(args[0].equals("threads") || args[0].equals("nio"))) {
+            System.err.println("Usage: java SpectatorBenchmark threads|nio <games> <spectators/game> <seconds> " +
+                    "[<slow spectators/game>]");
+            System.exit(1);
+        }
+        String mode = args[0];
+        int games = Integer.parseInt(args[1]);
+        int perGame = Integer.parseInt(args[2]);
+        long seconds = Long.parseLong(args[3]);
+        int slowPerGame = args.length == 5 ? Integer.parseInt(args[4]) : 0;
+
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> SixQueensServer.main(new String[]{
+                "127.0.0.1", Integer.toString(port), "mode=" + mode}));
+        server.setDaemon(true);
+        server.start();
+        Thread.sleep(500);
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        ServerBenchmark players = new ServerBenchmark();
+        players.setVerbose(false);
+        players.connect(address, 2 * games);
+        Thread.sleep(500);
+        List<Long> ids = new ArrayList<>();
+        SixQueensServer.getSessionManager().getRegistry().forEach(game -> {
+            if (game.isPlaying())
+                ids.add(game.getId());
+        });
+
+        WireStats.reset();
+        double alone = players.play(seconds);
+        System.out.printf("%s server, %d games, nobody watching: %.0f moves/sec, %s%n",
+                mode, ids.size(), alone, WireStats.report());
+
+        SpectatorBenchmark spectators = new SpectatorBenchmark();
+        long start = System.nanoTime();
+        for (long id : ids) {
+            if (!spectators.connect(address, id, perGame, false) || !spectators.connect(address, id, slowPerGame, true))
+                break;
+        }
+        System.out.printf("%d spectators opened in %.0f ms%n", spectators.open,
+                (System.nanoTime() - start) / 1e6);
+        Thread reader = new Thread(spectators::drain, "SpectatorBenchmark-Reader");
+        reader.setDaemon(true);
+        reader.start();
+        Thread.sleep(500);
+
+        long watchedBefore = spectators.moves;
+        WireStats.reset();
+        start = System.nanoTime();
+        double watched = players.play(seconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d spectators per game, %d slow: %.0f moves/sec (%.0f%% of unwatched), " +
+                        "%.0f moves/sec sent to spectators, %d snapshots%n", perGame, slowPerGame, watched,
+                100 * watched / alone, (spectators.moves - watchedBefore) / elapsed, spectators.snapshots);
+        int watching = 0;
+        for (long id : ids) {
+            SixQueensModel game = SixQueensServer.getSessionManager().getRegistry().get(id);
+            if (game != null)
+                watching += game.getSpectatorCount();
+        }
+        System.out.printf("%d still watching, %s%n", watching, WireStats.report());
+        System.exit(0);
+    }
+
+    /**
+     * This constructor creates a benchmark with no spectators
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public SpectatorBenchmark() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * connect opens spectators of a game. A slow spectator has a small
+     * receive buffer and is never read.
+     *
+     * @param address the server address
+     * @param gameId  the game to watch
+     * @param count   the number of spectators
+     * @param slow    true for spectators that never read
+     * @return true if every spectator was opened
+     */
+    public boolean connect(InetSocketAddress address, long gameId, int count, boolean slow) {
+        for (int i = 0; i < count; i++) {
+            try {
+                SocketChannel channel = SocketChannel.open();
+                if (slow)
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+                channel.connect(address);
+                ByteBuffer out = ByteBuffer.allocate(16);
+                out.put(WireFormat.HELLO).put((byte) WireFormat.VERSION_2);
+                int frame = WireFormat.beginFrame(out, 'O');
+                out.putLong(gameId);
+                WireFormat.endFrame(out, frame);
+                out.flip();
+                while (out.hasRemaining())
+                    channel.write(out);
+                channel.configureBlocking(false);
+                synchronized (this) {
+                    selector.wakeup();
+                    if (!slow)
+                        channel.register(selector, SelectionKey.OP_READ, new Watcher(channel));
+                }
+                open++;
+            } catch (IOException e) {
+                System.err.println("SpectatorBenchmark: spectator " + open + " failed: " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * drain reads the spectators until the program exits
+     */
+    private void drain() {
+        try {
+            while (true) {
+                selector.select(100);
+                synchronized (this) {
+                    // lets connect register channels between selects
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Watcher watcher = (Watcher) key.attachment();
+                    try {
+                        watcher.read();
+                    } catch (IOException e) {
+                        key.cancel();
+                        watcher.channel.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("SpectatorBenchmark: " + e.getMessage());
+        }
+    }
+}
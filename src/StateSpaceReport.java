@@ -0,0 +1,107 @@
+// *******************************
+//
+// File:    StateSpaceReport.java
+// Package: ---
+// Unit:    Class StateSpaceReport
+//
+// *******************************
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class walks every position reachable from the empty board and
+ * reports how much smaller a position cache gets when it stores only
+ * canonical positions. Positions are counted two ways: by their queens
+ * (what BoardState's Zobrist hashes describe) and by their empty spaces
+ * (what decides the rest of the game, and what the solver stores).
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class StateSpaceReport {
+    private final int size;
+    private final BoardSymmetry symmetry;
+    private final Set<Long> queenSets = new HashSet<>();
+    private final Set<Long> canonicalQueenSets = new HashSet<>();
+    private final Set<Long> emptySets = new HashSet<>();
+    private final Set<Long> canonicalEmptySets = new HashSet<>();
+
+    /**
+     * This constructor creates a report for one board size
+     *
+     * @param size the board size, at most BoardState.MAX_PACKED_SIZE
+     */
+    public StateSpaceReport(int size) {
+        this.size = size;
+        this.symmetry = new BoardSymmetry(size);
+    }
+
+    public static void main(String[] args) {
+        int size = BoardState.DEFAULT_SIZE;
+        if (args.length > 1) {
+            System.err.println("Usage: java StateSpaceReport [<boardsize>]");
+            System.exit(1);
+        }
+        if (args.length == 1) {
+            try {
+                size = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                size = -1;
+            }
+            if (size < 1 || size > BoardState.MAX_PACKED_SIZE) {
+                System.err.println("The board size must be a number from 1 to " +
+                        BoardState.MAX_PACKED_SIZE);
+                System.exit(1);
+            }
+        }
+
+        StateSpaceReport report = new StateSpaceReport(size);
+        long start = System.nanoTime();
+        report.visit(new BoardState(size), new int[size]);
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%dx%d reachable positions (walked in %.0f ms)%n", size, size, nanos / 1e6);
+        print("by queens", report.queenSets.size(), report.canonicalQueenSets.size());
+        print("by empty spaces", report.emptySets.size(), report.canonicalEmptySets.size());
+    }
+
+    /**
+     * print prints one line of the report
+     *
+     * @param label     what the positions were counted by
+     * @param all       the number of positions
+     * @param canonical the number of canonical positions
+     */
+    private static void print(String label, int all, int canonical) {
+        System.out.printf("  %-16s %9d positions, %9d canonical, %.2fx smaller%n",
+                label, all, canonical, (double) all / canonical);
+    }
+
+    /**
+     * visit records a position and then every position reachable from it.
+     * A position whose queens were already seen has already been walked.
+     *
+     * @param board  the position
+     * @param queens the squares of the queens placed so far, used to rebuild boards
+     */
+    private void visit(BoardState board, int[] queens) {
+        if (!queenSets.add(board.getQueenMask()))
+            return;
+        canonicalQueenSets.add(board.getCanonicalHash());
+        long empty = board.getEmptyMask();
+        emptySets.add(empty);
+        canonicalEmptySets.add(symmetry.canonical(empty));
+
+        int placed = Long.bitCount(board.getQueenMask());
+        for (long rest = empty; rest != 0L; rest &= rest - 1) {
+            int square = Long.numberOfTrailingZeros(rest);
+            BoardState next = new BoardState(size);
+            for (int i = 0; i < placed; i++)
+                next.setQueen(queens[i] / size, queens[i] % size);
+            next.setQueen(square / size, square % size);
+            queens[placed] = square;
+            visit(next, queens);
+        }
+    }
+}
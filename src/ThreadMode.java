@@ -0,0 +1,102 @@
+// *************************
+//
+// File:    ThreadMode.java
+// Package: ---
+// Unit:    Enum ThreadMode
+//
+// *************************
+
+import java.lang.reflect.Method;
+
+/**
+ * This enum chooses what kind of thread runs each connection's reader in
+ * ViewProxy and ModelProxy. Platform threads are ordinary threads, one
+ * operating system thread each. Virtual threads are cheap threads
+ * scheduled by the JVM onto a few carrier threads, so a server can hold
+ * a very large number of blocking connections.
+ * <P>
+ * Virtual threads need Java 21 or later. They are created reflectively so
+ * the code still builds and runs on older JVMs, where VIRTUAL falls back
+ * to platform threads.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public enum ThreadMode {
+    /**
+     * One operating system thread per connection
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per connection
+     */
+    VIRTUAL;
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException e) {
+            // not available before Java 21
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    /**
+     * isVirtualAvailable checks if this JVM supports virtual threads
+     *
+     * @return true if VIRTUAL creates virtual threads
+     */
+    public static boolean isVirtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * parse reads a thread mode from the command line
+     *
+     * @param s "platform" or "virtual"
+     * @return the thread mode, or null if the string is neither
+     */
+    public static ThreadMode parse(String s) {
+        if (s.equals("platform"))
+            return PLATFORM;
+        if (s.equals("virtual"))
+            return VIRTUAL;
+        return null;
+    }
+
+    /**
+     * start starts a task on a new thread of this kind
+     *
+     * @param task the task
+     * @param name the thread name
+     * @return the started thread
+     */
+    public Thread start(Runnable task, String name) {
+        Thread thread = null;
+        if (this == VIRTUAL && OF_VIRTUAL != null) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                thread = (Thread) UNSTARTED.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                thread = null;
+            }
+        }
+        if (thread == null)
+            thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,128 @@
+// *********************************
+//
+// File:    TranspositionTable.java
+// Package: ---
+// Unit:    Class TranspositionTable
+//
+// *********************************
+
+import java.util.Arrays;
+
+/**
+ * This class provides a fixed-size transposition table for the Six Queens
+ * solver. A position is keyed by its mask of empty spaces, since that is
+ * all that decides how the rest of the game can go; callers pass the
+ * canonical mask so symmetric positions share an entry. Each key maps to one
+ * slot, and a new entry always replaces whatever was stored there before.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class TranspositionTable {
+    /**
+     * The value stored when no entry was found
+     */
+    public static final int MISS = 0;
+
+    private final long[] keys;
+    private final byte[] values;
+    private final byte[] moves;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    /**
+     * This constructor creates an empty table
+     *
+     * @param bits the log base 2 of the number of slots
+     */
+    public TranspositionTable(int bits) {
+        if (bits < 1 || bits > 30)
+            throw new IllegalArgumentException("TranspositionTable: illegal size 2^" + bits);
+        keys = new long[1 << bits];
+        values = new byte[1 << bits];
+        moves = new byte[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * probe looks up a position
+     *
+     * @param key the position key; must not be 0
+     * @return the stored value, or MISS if the position is not in the table
+     */
+    public int probe(long key) {
+        probes++;
+        int slot = slot(key);
+        if (keys[slot] != key)
+            return MISS;
+        hits++;
+        return values[slot];
+    }
+
+    /**
+     * bestMove returns the move stored for a position
+     *
+     * @param key the position key
+     * @return the stored square index, or -1 if the position is not in the table
+     */
+    public int bestMove(long key) {
+        int slot = slot(key);
+        return keys[slot] == key ? moves[slot] : -1;
+    }
+
+    /**
+     * store saves a position, replacing the old entry in its slot
+     *
+     * @param key   the position key; must not be 0
+     * @param value the position value, never MISS
+     * @param move  the best square index
+     */
+    public void store(long key, int value, int move) {
+        int slot = slot(key);
+        keys[slot] = key;
+        values[slot] = (byte) value;
+        moves[slot] = (byte) move;
+    }
+
+    /**
+     * clear empties the table and resets the statistics
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * getProbes returns the number of lookups since the table was cleared
+     *
+     * @return the probe count
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * getHits returns the number of lookups that found their position
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * slot maps a key to a table index
+     *
+     * @param key the position key
+     * @return the slot index
+     */
+    private int slot(long key) {
+        // 64-bit finalizer from MurmurHash3 spreads nearby masks across the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -7,64 +7,164 @@
 // ****************************************
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
-import java.net.SocketException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class provides the view proxy for the Six Queens game.  It
  * implements the server side of the client-server network communication.
+ * It speaks version 1 or 2 of the protocol, whichever the client opens
+ * with; see WireFormat.
+ * <P>
+ * Messages to the client are encoded by a MessageEncoder and handed to
+ * the connection's OutboundQueue, whose writer thread puts them on the
+ * socket. A model call therefore returns right away even when the client
+ * is slow, and a client that stops reading is disconnected by its queue.
+ * A lost connection is reported to the view listener as disconnected, so
+ * a version 2 player can resume the game from a new connection.
+ * <P>
+ * Every failure is contained to its own connection: an I/O error, or an
+ * exception thrown while handling the client's message, closes this proxy
+ * only, the game is told, and the failure is counted in WireStats.
+ * Every message in and out is counted in Metrics, and the bytes read in
+ * WireStats. Lost connections and messages that cannot be decoded are
+ * also Flight Recorder events.
+ * <P>
+ * The messages one model update produces are staged together and queued
+ * when the model calls updateDone, so a move costs the client one write
+ * rather than one per message. Batching can be turned off to compare.
+ * <P>
+ * A spectator's events are handed to its outbound queue by one fan-out
+ * thread shared by every ViewProxy, so the game only queues one task per
+ * event. A socket stream cannot take the shared buffer itself, so each
+ * event is copied into each spectator's queue; a spectator that stops
+ * reading is dropped by its queue like a player.
  *
  * @author  Ian Naple
  * @version 3/27/2018
  */
-public class ViewProxy implements SixQueensModelListener {
+public class ViewProxy implements SixQueensModelListener, Spectator {
+    // outbound queue limits; a game sends a few bytes per move, so these are generous
+    private static final int LOW_WATERMARK = 4 * 1024;
+    private static final int HIGH_WATERMARK = 16 * 1024;
+    private static final int MAX_QUEUED_BYTES = 64 * 1024;
+    private static final long STALL_MILLIS = 10_000L;
+
+    private static final ExecutorService FAN_OUT = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "ViewProxy-Spectators");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile boolean batching = true;
+
     private Socket socket;
+    private ThreadMode threadMode;
     private SixQueensViewListener viewListener;
     private DataInputStream in;
-    private DataOutputStream out;
+    private MessageEncoder encoder;
+    private OutboundQueue queue;
+    private int requestedSize;
+    private String requestedRoom;
+    private boolean sizeAware;
+    private volatile int boardSize;
+    private volatile boolean quitting;
+    private final AtomicBoolean gone = new AtomicBoolean();
 
     /**
-     * This constructor creates a new view proxy
+     * This constructor creates a new view proxy that reads on a platform thread
      *
      * @param s the socket
      */
     public ViewProxy(Socket s) {
+        this(s, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * This constructor creates a new view proxy
+     *
+     * @param s          the socket
+     * @param threadMode the kind of thread that reads from the socket
+     */
+    public ViewProxy(Socket s, ThreadMode threadMode) {
         try {
             this.socket = s;
+            this.threadMode = threadMode;
+            this.requestedSize = BoardState.DEFAULT_SIZE;
+            this.sizeAware = false;
+            this.boardSize = BoardState.DEFAULT_SIZE;
             socket.setTcpNoDelay(true);
-            in = new DataInputStream(this.socket.getInputStream());
-            out = new DataOutputStream(this.socket.getOutputStream());
-        } catch (SocketException e) {
-            System.out.println("");
-            e.printStackTrace();
+            in = new DataInputStream(new CountingInput(this.socket.getInputStream()));
+            encoder = new MessageEncoder();
+            queue = new OutboundQueue(this.socket.getOutputStream(), this.socket, new Disconnect(),
+                    LOW_WATERMARK, HIGH_WATERMARK, MAX_QUEUED_BYTES, STALL_MILLIS);
+            Metrics.connectionOpened();
         } catch (IOException e) {
-            error(e);
+            // the connection failed before it started; setListener ignores it
+            WireStats.recordError("ViewProxy", e);
+            gone.set(true);
+            try {
+                socket.close();
+            } catch (IOException ce) {
+                // the socket is gone either way
+            }
         }
     }
 
     /**
-     * setListener sets the listener for the view proxy
+     * setBatching chooses whether messages wait for the end of the model
+     * update or are queued one at a time
+     *
+     * @param on true to batch each update's messages
+     */
+    public static void setBatching(boolean on) {
+        batching = on;
+    }
+
+    /**
+     * setListener sets the listener for the view proxy and starts it. A
+     * proxy whose connection already failed is not started.
      *
      * @param viewListener the listener
      */
     public void setListener(SixQueensViewListener viewListener) {
         this.viewListener = viewListener;
-        new ReaderThread().start();
+        if (gone.get())
+            return;
+        queue.start(threadMode, "ViewProxy-Writer");
+        threadMode.start(new Reader(), "ViewProxy-Reader");
+    }
+
+    /**
+     * boardSize reports the board size. Version 1 clients that never sent
+     * a board size only know the default board, so they are not told.
+     *
+     * @param size the number of rows and columns
+     */
+    @Override
+    public synchronized void boardSize(int size) {
+        boardSize = size;
+        if (!sizeAware)
+            return;
+        encoder.boardSize(size);
+        send();
     }
 
     /**
      * newGame reports that a new game was started
      */
     @Override
-    public void newGame() {
-        try {
-            out.writeByte('N');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void newGame() {
+        encoder.newGame();
+        send();
     }
 
     /**
@@ -74,41 +174,27 @@ public class ViewProxy implements SixQueensModelListener {
      * @param col the column the queen was placed in
      */
     @Override
-    public void setQueen(int row, int col) {
-        try {
-            out.writeByte('Q');
-            out.writeByte(row);
-            out.writeByte(col);
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void setQueen(int row, int col) {
+        encoder.setQueen(row, col);
+        send();
     }
 
     /**
      * waitingForPartner reports that the player is waiting for a partner
      */
     @Override
-    public void waitingForPartner() {
-        try {
-            out.writeByte('P');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void waitingForPartner() {
+        encoder.waitingForPartner();
+        send();
     }
 
     /**
      * yourTurn reports that it is this player's turn
      */
     @Override
-    public void yourTurn() {
-        try {
-            out.writeByte('Y');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void yourTurn() {
+        encoder.yourTurn();
+        send();
     }
 
     /**
@@ -117,27 +203,18 @@ public class ViewProxy implements SixQueensModelListener {
      * @param name the name of the other player
      */
     @Override
-    public void theirTurn(String name) {
-        try {
-            out.writeByte('T');
-            out.writeUTF(name);
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void theirTurn(String name) {
+        encoder.theirTurn(name);
+        send();
     }
 
     /**
      * youWin reports that this player won the game
      */
     @Override
-    public void youWin() {
-        try {
-            out.writeByte('W');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void youWin() {
+        encoder.youWin();
+        send();
     }
 
     /**
@@ -146,94 +223,422 @@ public class ViewProxy implements SixQueensModelListener {
      * @param name the other player's name
      */
     @Override
-    public void theyWin(String name) {
-        try {
-            out.writeByte('L');
-            out.writeUTF(name);
-            out.flush();
-        } catch (IOException e) {
-            error(e);
-        }
+    public synchronized void theyWin(String name) {
+        encoder.theyWin(name);
+        send();
     }
 
     /**
      * quit reports that a player quit
      */
     @Override
-    public void quit() {
-        try {
-            out.writeByte('B');
-            out.flush();
-        } catch (IOException e) {
-            error(e);
+    public synchronized void quit() {
+        encoder.quit();
+        send();
+    }
+
+    /**
+     * sessionToken reports the token that resumes this player's session
+     *
+     * @param token the session token
+     */
+    @Override
+    public synchronized void sessionToken(long token) {
+        encoder.sessionToken(token);
+        send();
+    }
+
+    /**
+     * snapshot reports the whole game to a player who resumed it. Version 1
+     * clients cannot resume, but get the game message by message.
+     *
+     * @param board     the board
+     * @param status    the game's status for this player
+     * @param theirName the other player's name, or null while waiting
+     */
+    @Override
+    public synchronized void snapshot(BoardState board, int status, String theirName) {
+        if (encoder.getVersion() == WireFormat.VERSION_1) {
+            SixQueensModelListener.super.snapshot(board, status, theirName);
+            return;
+        }
+        boardSize = board.getSize();
+        encoder.snapshot(board, status, theirName);
+        send();
+    }
+
+    /**
+     * fanOut returns the thread every ViewProxy spectator's events are
+     * delivered on
+     *
+     * @return the executor
+     */
+    @Override
+    public Executor fanOut() {
+        return FAN_OUT;
+    }
+
+    /**
+     * watchStart reports the whole game to a new spectator. It goes out at once.
+     *
+     * @param board  the board
+     * @param status the status for the first player
+     * @param name1  the first player's name
+     * @param name2  the second player's name, or null while waiting
+     */
+    @Override
+    public synchronized void watchStart(BoardState board, int status, String name1, String name2) {
+        boardSize = board.getSize();
+        encoder.watching(board, status, name1, name2);
+        deliver();
+    }
+
+    /**
+     * watch queues a game event for the spectator
+     *
+     * @param event the encoded event, shared with other spectators
+     */
+    @Override
+    public void watch(ByteBuffer event) {
+        queue.offer(event);
+    }
+
+    /**
+     * updateDone queues every message the model update produced
+     */
+    @Override
+    public synchronized void updateDone() {
+        deliver();
+    }
+
+    /**
+     * moveDone queues every message the move produced, and marks the queue
+     * so its writer tells the timer once they are written. If the writer
+     * has already taken them, the timer is told now.
+     *
+     * @param timer the game's move timer
+     * @param start the start time to give back to the timer
+     */
+    @Override
+    public synchronized void moveDone(MoveTimer timer, long start) {
+        deliver();
+        if (!queue.mark(timer, start))
+            timer.flushed(start);
+    }
+
+    /**
+     * hello answers a version 2 client's hello. The answer goes out at once.
+     *
+     * @param clientVersion the highest version the client speaks
+     */
+    private synchronized void hello(int clientVersion) {
+        encoder.hello(clientVersion);
+        sizeAware = sizeAware || encoder.getVersion() >= WireFormat.VERSION_2;
+        deliver();
+    }
+
+    /**
+     * send finishes a message. It stays staged until the update is done
+     * unless batching is off.
+     */
+    private void send() {
+        if (!batching)
+            deliver();
+    }
+
+    /**
+     * deliver hands the staged messages to the outbound queue. If the queue
+     * has closed they are dropped; the game has been or will be told the
+     * player quit.
+     */
+    private void deliver() {
+        ByteBuffer staged = encoder.buffer();
+        if (staged.position() == 0)
+            return;
+        queue.offer(staged.array(), 0, staged.position());
+        staged.clear();
+    }
+
+    /**
+     * lost reports the connection is gone, once. A connection closed after
+     * the player quit is not reported. A version 2 player may come back on
+     * a new connection; a version 1 player cannot, so has quit. It must not
+     * be called holding this proxy's lock, since the game calls the proxy
+     * holding the game's.
+     *
+     * @param stalled true if the client stopped reading
+     */
+    private void lost(boolean stalled) {
+        if (!gone.compareAndSet(false, true) || quitting)
+            return;
+        WireStats.recordDrop();
+        ClientDisconnectedEvent event = new ClientDisconnectedEvent();
+        if (event.shouldCommit()) {
+            event.client = String.valueOf(socket.getRemoteSocketAddress());
+            event.version = encoder.getVersion();
+            event.stalled = stalled;
+            event.commit();
+        }
+        if (encoder.getVersion() >= WireFormat.VERSION_2)
+            viewListener.disconnected(this);
+        else
+            viewListener.quit(this);
+    }
+
+    /**
+     * badMessage reports a message from the client that could not be
+     * decoded, and records it for Flight Recorder
+     *
+     * @param opCode the message's opcode
+     * @param reason why it could not be decoded
+     */
+    private void badMessage(int opCode, String reason) {
+        System.err.println("Bad Message");
+        ProtocolErrorEvent event = new ProtocolErrorEvent();
+        if (event.shouldCommit()) {
+            event.client = String.valueOf(socket.getRemoteSocketAddress());
+            event.opCode = opCode;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /**
+     * This class reports a client whose queue disconnected it for not
+     * reading, so its partner is not left waiting
+     */
+    private class Disconnect implements OutboundQueue.Listener {
+        /**
+         * closed tells the game the player dropped if the peer stalled
+         *
+         * @param stalled true if the peer stopped reading
+         */
+        public void closed(boolean stalled) {
+            if (stalled) {
+                System.err.println("ViewProxy: disconnected a client that stopped reading");
+                lost(true);
+            }
         }
     }
 
     /**
      * This class receives messages from the network, interprets them,
-     * and executes the proper functions to process them
+     * and executes the proper functions to process them. Model calls it
+     * makes only queue messages for other connections, so they never wait
+     * on another client's socket.
      */
-    private class ReaderThread extends Thread {
+    private class Reader implements Runnable {
+        // the frame being decoded; grown to fit the longest frame seen
+        private byte[] frame = new byte[64];
+        private ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+
         /**
-         * run begins the reader thread
+         * run begins the reader
          */
         public void run() {
-            int opCode;
-            int row, col;
-            String name;
-
-            // reads in a character and runs the corresponding function
             try {
+                // a version 2 client opens with a hello; anything else is version 1
+                int opCode = in.readByte();
+                if (opCode == WireFormat.HELLO) {
+                    hello(in.readUnsignedByte());
+                    if (encoder.getVersion() >= WireFormat.VERSION_2) {
+                        readFrames();
+                        return;
+                    }
+                    opCode = in.readByte();
+                }
+
+                // reads in a character and runs the corresponding function
                 while (true) {
+                    dispatch(opCode);
                     opCode = in.readByte();
-                    switch (opCode) {
-                        // join case
-                        case 'J':
-                            name = in.readUTF();
-                            viewListener.join(ViewProxy.this, name);
-                            break;
-
-                        // square chosen case
-                        case 'S':
-                            row = in.readByte();
-                            col = in.readByte();
-                            viewListener.squareChosen(ViewProxy.this, row, col);
-                            break;
-
-                        // new game case
-                        case 'N':
-                            viewListener.newGame(ViewProxy.this);
-                            break;
-
-                        // quit case
-                        case 'Q':
-                            viewListener.quit(ViewProxy.this);
-                            break;
-
-                        default:
-                            System.err.println("Bad Message");
-                    }
                 }
             } catch (IOException e) {
-                error(e);
+                lost(false);
+            } catch (RuntimeException e) {
+                WireStats.recordError("ViewProxy", e);
+                lost(false);
             } finally {
+                queue.close();
+                Metrics.connectionClosed();
+            }
+        }
+
+        /**
+         * dispatch reads the arguments of one version 1 message and reports it
+         *
+         * @param opCode the message's opcode
+         * @throws IOException if the connection fails
+         */
+        private void dispatch(int opCode) throws IOException {
+            Metrics.SERVER_IN.count(opCode);
+            switch (opCode) {
+                // board size case
+                case 'G':
+                    requestedSize = in.readByte() & 0xFF;
+                    sizeAware = true;
+                    break;
+
+                // join case
+                case 'J':
+                    String name = in.readUTF();
+                    if (WireFormat.isValidName(name))
+                        viewListener.join(ViewProxy.this, name, requestedSize);
+                    else
+                        badMessage(opCode, "name too long");
+                    break;
+
+                // square chosen case
+                case 'S':
+                    int row = in.readByte();
+                    int col = in.readByte();
+                    viewListener.squareChosen(ViewProxy.this, row, col);
+                    break;
+
+                // new game case
+                case 'N':
+                    viewListener.newGame(ViewProxy.this);
+                    break;
+
+                // quit case
+                case 'Q':
+                    quitting = true;
+                    viewListener.quit(ViewProxy.this);
+                    break;
+
+                default:
+                    badMessage(opCode, "unknown opcode");
+            }
+        }
+
+        /**
+         * readFrames reads and reports version 2 frames until the
+         * connection fails. A frame that cannot be decoded is skipped.
+         *
+         * @throws IOException if the connection fails
+         */
+        private void readFrames() throws IOException {
+            while (true) {
+                int length = in.readUnsignedShort();
+                if (length > frame.length) {
+                    frame = new byte[Math.max(length, frame.length * 2)];
+                    frameBuffer = ByteBuffer.wrap(frame);
+                }
+                in.readFully(frame, 0, length);
+                frameBuffer.clear().limit(length);
                 try {
-                    socket.close();
-                } catch (IOException e) {
-                    error(e);
+                    if (length > 0)
+                        dispatchFrame(frameBuffer);
+                } catch (BufferUnderflowException e) {
+                    badMessage(frame[0], "truncated message");
                 }
             }
         }
+
+        /**
+         * dispatchFrame decodes one version 2 message and reports it
+         *
+         * @param buf the frame's opcode and arguments
+         */
+        private void dispatchFrame(ByteBuffer buf) {
+            byte opCode = buf.get();
+            Metrics.SERVER_IN.count(opCode);
+            switch (opCode) {
+                // board size case
+                case 'G':
+                    requestedSize = buf.get() & 0xFF;
+                    break;
+
+                // private room case
+                case 'M':
+                    requestedRoom = WireFormat.getUTF(buf);
+                    break;
+
+                // join case
+                case 'J':
+                    String name = WireFormat.getUTF(buf);
+                    if (WireFormat.isValidName(name) && (requestedRoom == null || WireFormat.isValidName(requestedRoom)))
+                        viewListener.join(ViewProxy.this, name, requestedSize, requestedRoom);
+                    else
+                        badMessage(opCode, "name too long");
+                    break;
+
+                // square chosen case
+                case 'S':
+                    int size = boardSize;
+                    int square = WireFormat.getSquare(buf, size);
+                    viewListener.squareChosen(ViewProxy.this, square / size, square % size);
+                    break;
+
+                // new game case
+                case 'N':
+                    viewListener.newGame(ViewProxy.this);
+                    break;
+
+                // quit case
+                case 'Q':
+                    quitting = true;
+                    viewListener.quit(ViewProxy.this);
+                    break;
+
+                // resume case
+                case 'R':
+                    viewListener.resume(ViewProxy.this, buf.getLong());
+                    break;
+
+                // watch case
+                case 'O':
+                    viewListener.watch(ViewProxy.this, buf.getLong());
+                    break;
+
+                default:
+                    badMessage(opCode, "unknown opcode");
+            }
+        }
     }
 
     /**
-     * error prints out an IO error message and exits the program
-     *
-     * @param e the IO error
+     * This class counts the bytes read from the socket in WireStats
      */
-    private static void error(IOException e) {
-        System.err.println("ViewProxy: I/O error");
-        e.printStackTrace();
-        System.exit(1);
+    private static class CountingInput extends FilterInputStream {
+        /**
+         * This constructor creates a stream that counts what it reads
+         *
+         * @param in the socket's input stream
+         */
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * read reads and counts one byte
+         *
+         * @return the byte, or -1 at the end of the stream
+         * @throws IOException if the connection fails
+         */
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0)
+                WireStats.recordRead(1);
+            return b;
+        }
+
+        /**
+         * read reads and counts bytes
+         *
+         * @param b      the buffer
+         * @param offset where to put the bytes
+         * @param length the most bytes to read
+         * @return the number of bytes read, or -1 at the end of the stream
+         * @throws IOException if the connection fails
+         */
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            int count = in.read(b, offset, length);
+            if (count > 0)
+                WireStats.recordRead(count);
+            return count;
+        }
     }
 }
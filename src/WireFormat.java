@@ -0,0 +1,376 @@
+// *************************
+//
+// File:    WireFormat.java
+// Package: ---
+// Unit:    Class WireFormat
+//
+// *************************
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class reads and writes the Six Queens wire protocol in ByteBuffers,
+ * for code that does not go through DataInputStream and DataOutputStream.
+ * Names are written the way DataOutputStream.writeUTF writes them: a
+ * two-byte length and the characters in modified UTF-8. None of the
+ * methods allocate, except getUTF for the string it returns.
+ * <P>
+ * Version 1 messages are a one-byte opcode and their arguments, with
+ * nothing between messages.
+ * Client to server: 'G' size, 'J' name, 'S' row col, 'N', 'Q'.
+ * Server to client: 'G' size, 'N', 'Q' row col, 'P', 'Y', 'T' name,
+ * 'W', 'L' name, 'B'.
+ * <P>
+ * A version 2 client opens with the unframed hello 'V' and the highest
+ * version it speaks; the server answers 'V' and the version it chose. A
+ * version 1 client never sends 'V', so the server can tell them apart by
+ * the first byte. After the hello every message is a frame: a two-byte
+ * length, then the opcode and arguments. A reader that does not know an
+ * opcode skips the frame and stays in step. A square is packed into one
+ * byte as row * size + col on boards up to 16 by 16, and into two bytes
+ * on larger boards. Players are named once with 'A' index name, and other
+ * messages carry the one-byte index instead of the name.
+ * Client to server: 'G' size, 'M' room, 'J' name, 'S' square, 'N', 'Q',
+ * 'R' token, 'O' game.
+ * Server to client: 'G' size, 'N', 'Q' square, 'P', 'Y', 'A' index name,
+ * 'T' index, 'W', 'L' index, 'B', 'K' token, 'Z' snapshot, 'X' watching,
+ * 'U' status. The server
+ * always sends 'G' before the first game, since both sides need the size
+ * to decode squares.
+ * <P>
+ * The server gives a version 2 player an eight-byte session token with
+ * 'K'. After a dropped connection the client opens a new one with the
+ * hello and 'R' token instead of joining, and the server answers with one
+ * 'Z' snapshot: size, status, the queens as one bit per square in row
+ * order, low bit first, and the other player's name. The statuses are the
+ * snapshot statuses of SixQueensModelListener. An unknown or expired
+ * token is answered with 'B'.
+ * <P>
+ * A version 2 client may send 'M' and a room name before 'J' to be paired
+ * only with a player who names the same room, rather than with the next
+ * player who asked for the same board size.
+ * <P>
+ * Player and room names are at most MAX_NAME_BYTES long; the server
+ * refuses a join with a longer one.
+ * <P>
+ * A version 2 client may send 'O' and an eight-byte game ID in place of
+ * 'J' to watch a game; ID 0 picks the game being played with the most
+ * spectators. A spectator is sent one 'X' snapshot: size, status, the
+ * queens as in 'Z', and both players' names, the second "" while
+ * waiting. Then it gets the game's events: 'Q' square, 'U' status, a new
+ * 'X' when a new game starts, and 'B' when the game ends. The statuses
+ * are as the first player sees them. A game that is over or unknown is
+ * answered with 'B'.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class WireFormat {
+    /**
+     * The largest encoded name a reader has to buffer, including its length
+     */
+    public static final int MAX_UTF_BYTES = 2 + 0xFFFF;
+
+    /**
+     * The longest player or room name, in encoded bytes. Names are checked
+     * at join, so every frame that carries names fits in MAX_FRAME_BYTES.
+     */
+    public static final int MAX_NAME_BYTES = 1024;
+
+    /**
+     * The number of bytes needed to hold the largest message
+     */
+    public static final int MAX_MESSAGE_BYTES = 1 + MAX_UTF_BYTES;
+
+    /**
+     * The original unframed protocol
+     */
+    public static final int VERSION_1 = 1;
+
+    /**
+     * The framed protocol
+     */
+    public static final int VERSION_2 = 2;
+
+    /**
+     * The highest version this code speaks
+     */
+    public static final int LATEST_VERSION = VERSION_2;
+
+    /**
+     * The opcode of the hello that starts a version 2 connection
+     */
+    public static final byte HELLO = 'V';
+
+    /**
+     * The number of bytes in a frame's length
+     */
+    public static final int FRAME_HEADER_BYTES = 2;
+
+    /**
+     * The number of bytes needed to hold the largest frame
+     */
+    public static final int MAX_FRAME_BYTES = FRAME_HEADER_BYTES + 0xFFFF;
+
+    /**
+     * The largest board whose squares fit in one byte
+     */
+    public static final int MAX_PACKED_SQUARE_SIZE = 16;
+
+    /**
+     * The number of player indexes
+     */
+    public static final int MAX_PLAYERS = 256;
+
+    private WireFormat() {
+    }
+
+    /**
+     * clientMessageLength returns the length of the client message at the
+     * buffer's position
+     *
+     * @param buf the buffer, ready for reading
+     * @return the message length, or -1 if the message is not all there;
+     * an unknown opcode is a one-byte message
+     */
+    public static int clientMessageLength(ByteBuffer buf) {
+        if (!buf.hasRemaining())
+            return -1;
+        switch (buf.get(buf.position())) {
+            case 'G':
+                return fixed(buf, 2);
+            case 'J':
+                return withUTF(buf, 1);
+            case 'S':
+                return fixed(buf, 3);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * serverMessageLength returns the length of the server message at the
+     * buffer's position
+     *
+     * @param buf the buffer, ready for reading
+     * @return the message length, or -1 if the message is not all there;
+     * an unknown opcode is a one-byte message
+     */
+    public static int serverMessageLength(ByteBuffer buf) {
+        if (!buf.hasRemaining())
+            return -1;
+        switch (buf.get(buf.position())) {
+            case 'G':
+                return fixed(buf, 2);
+            case 'Q':
+                return fixed(buf, 3);
+            case 'T':
+            case 'L':
+                return withUTF(buf, 1);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * frameLength returns the length of the version 2 frame at the buffer's
+     * position
+     *
+     * @param buf the buffer, ready for reading
+     * @return the frame length, including its header, or -1 if the frame
+     * is not all there
+     */
+    public static int frameLength(ByteBuffer buf) {
+        if (buf.remaining() < FRAME_HEADER_BYTES)
+            return -1;
+        int length = FRAME_HEADER_BYTES + (buf.getShort(buf.position()) & 0xFFFF);
+        return buf.remaining() >= length ? length : -1;
+    }
+
+    /**
+     * beginFrame starts a version 2 frame. Write the arguments, then call
+     * endFrame with the returned position.
+     *
+     * @param buf    the buffer
+     * @param opCode the opcode
+     * @return the position of the frame
+     */
+    public static int beginFrame(ByteBuffer buf, char opCode) {
+        int start = buf.position();
+        buf.putShort((short) 0);
+        buf.put((byte) opCode);
+        return start;
+    }
+
+    /**
+     * endFrame fills in the length of a frame begun with beginFrame. A
+     * frame too long for its length is taken back out of the buffer.
+     *
+     * @param buf   the buffer
+     * @param start the position beginFrame returned
+     * @throws IllegalArgumentException if the frame is longer than 65535 bytes
+     */
+    public static void endFrame(ByteBuffer buf, int start) {
+        int length = buf.position() - start - FRAME_HEADER_BYTES;
+        if (length > 0xFFFF) {
+            buf.position(start);
+            throw new IllegalArgumentException("WireFormat: frame too long");
+        }
+        buf.putShort(start, (short) length);
+    }
+
+    /**
+     * snapshotMaskBytes returns the number of bytes a snapshot's queens take
+     *
+     * @param size the number of rows and columns
+     * @return one bit per square, rounded up to whole bytes
+     */
+    public static int snapshotMaskBytes(int size) {
+        return (size * size + 7) / 8;
+    }
+
+    /**
+     * squareBytes returns the number of bytes a square takes on a board
+     *
+     * @param size the number of rows and columns
+     * @return 1 on boards up to MAX_PACKED_SQUARE_SIZE, otherwise 2
+     */
+    public static int squareBytes(int size) {
+        return size <= MAX_PACKED_SQUARE_SIZE ? 1 : 2;
+    }
+
+    /**
+     * putSquare writes a square packed as row * size + col
+     *
+     * @param buf  the buffer
+     * @param size the number of rows and columns
+     * @param row  the row
+     * @param col  the column
+     */
+    public static void putSquare(ByteBuffer buf, int size, int row, int col) {
+        int square = row * size + col;
+        if (squareBytes(size) == 1)
+            buf.put((byte) square);
+        else
+            buf.putShort((short) square);
+    }
+
+    /**
+     * getSquare reads a square written by putSquare
+     *
+     * @param buf  the buffer
+     * @param size the number of rows and columns
+     * @return the square, row * size + col
+     */
+    public static int getSquare(ByteBuffer buf, int size) {
+        return squareBytes(size) == 1 ? buf.get() & 0xFF : buf.getShort() & 0xFFFF;
+    }
+
+    /**
+     * utfLength returns the number of bytes putUTF writes for a string
+     *
+     * @param s the string
+     * @return the encoded length, including the two-byte length
+     */
+    public static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                length += 1;
+            else if (c <= 0x07FF)
+                length += 2;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    /**
+     * isValidName checks if a player or room name is short enough to send
+     *
+     * @param s the name
+     * @return true if its encoding is at most MAX_NAME_BYTES
+     */
+    public static boolean isValidName(String s) {
+        return s.length() <= MAX_NAME_BYTES && utfLength(s) - 2 <= MAX_NAME_BYTES;
+    }
+
+    /**
+     * putUTF writes a string the way DataOutputStream.writeUTF does
+     *
+     * @param buf the buffer
+     * @param s   the string; its encoding must fit in 65535 bytes
+     */
+    public static void putUTF(ByteBuffer buf, String s) {
+        int length = utfLength(s) - 2;
+        if (length > 0xFFFF)
+            throw new IllegalArgumentException("WireFormat: string too long");
+        buf.putShort((short) length);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buf.put((byte) c);
+            } else if (c <= 0x07FF) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * getUTF reads a string the way DataInputStream.readUTF does. The whole
+     * string must be in the buffer. Malformed bytes are decoded leniently.
+     *
+     * @param buf the buffer
+     * @return the string
+     */
+    public static String getUTF(ByteBuffer buf) {
+        int end = (buf.getShort() & 0xFFFF) + buf.position();
+        char[] chars = new char[end - buf.position()];
+        int n = 0;
+        while (buf.position() < end) {
+            int b = buf.get() & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && buf.position() < end) {
+                chars[n++] = (char) (((b & 0x1F) << 6) | (buf.get() & 0x3F));
+            } else if ((b & 0xF0) == 0xE0 && buf.position() + 1 < end) {
+                int b2 = buf.get() & 0x3F;
+                chars[n++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | (buf.get() & 0x3F));
+            } else {
+                chars[n++] = '\uFFFD';
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    /**
+     * fixed checks whether a fixed-length message is all there
+     *
+     * @param buf    the buffer
+     * @param length the message length
+     * @return the length, or -1 if the message is not all there
+     */
+    private static int fixed(ByteBuffer buf, int length) {
+        return buf.remaining() >= length ? length : -1;
+    }
+
+    /**
+     * withUTF checks whether a message that ends with a string is all there
+     *
+     * @param buf    the buffer
+     * @param prefix the number of bytes before the string
+     * @return the length, or -1 if the message is not all there
+     */
+    private static int withUTF(ByteBuffer buf, int prefix) {
+        if (buf.remaining() < prefix + 2)
+            return -1;
+        int length = prefix + 2 + (buf.getShort(buf.position() + prefix) & 0xFFFF);
+        return buf.remaining() >= length ? length : -1;
+    }
+}
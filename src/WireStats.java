@@ -0,0 +1,168 @@
+// *************************
+//
+// File:    WireStats.java
+// Package: ---
+// Unit:    Class WireStats
+//
+// *************************
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts what the Six Queens server puts on the wire: socket
+ * write calls, bytes, and moves played, so the cost of a move can be read
+ * as writes and packets per move, and the bytes it reads. It also counts connections lost without
+ * the player quitting, and errors that closed a single connection. Every server connection sets TCP_NODELAY,
+ * so each write goes out at once; the packet count is estimated as one TCP
+ * segment per MSS bytes of each write.
+ * <P>
+ * The counters are LongAdders, which connection threads can update without
+ * contending with each other.
+ *
+ * @author  Ian Naple
+ * @version 3/27/2018
+ */
+public class WireStats {
+    // the TCP payload of a full-size Ethernet frame
+    private static final int MSS = 1460;
+
+    private static final LongAdder writes = new LongAdder();
+    private static final LongAdder bytes = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder packets = new LongAdder();
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder drops = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+
+    /**
+     * This constructor is private; the counters are static
+     */
+    private WireStats() {
+    }
+
+    /**
+     * recordWrite counts one socket write
+     *
+     * @param length the number of bytes written
+     */
+    public static void recordWrite(int length) {
+        writes.increment();
+        bytes.add(length);
+        packets.add((length + MSS - 1) / MSS);
+    }
+
+    /**
+     * recordRead counts bytes read from a client
+     *
+     * @param length the number of bytes read
+     */
+    public static void recordRead(int length) {
+        bytesIn.add(length);
+    }
+
+    /**
+     * recordMove counts one move played
+     */
+    public static void recordMove() {
+        moves.increment();
+    }
+
+    /**
+     * recordDrop counts a connection lost without the player quitting
+     */
+    public static void recordDrop() {
+        drops.increment();
+    }
+
+    /**
+     * recordError counts an error that closed one connection, or that
+     * failed to accept one, and logs it
+     *
+     * @param where the class the error was caught in
+     * @param e     the error
+     */
+    public static void recordError(String where, Exception e) {
+        errors.increment();
+        System.err.println(where + ": " + e);
+    }
+
+    /**
+     * getWrites returns the number of socket writes
+     *
+     * @return the write count
+     */
+    public static long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * getBytesOut returns the number of bytes written
+     *
+     * @return the byte count
+     */
+    public static long getBytesOut() {
+        return bytes.sum();
+    }
+
+    /**
+     * getBytesIn returns the number of bytes read
+     *
+     * @return the byte count
+     */
+    public static long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * getMoves returns the number of moves played
+     *
+     * @return the move count
+     */
+    public static long getMoves() {
+        return moves.sum();
+    }
+
+    /**
+     * getDrops returns the number of connections lost without quitting
+     *
+     * @return the drop count
+     */
+    public static long getDrops() {
+        return drops.sum();
+    }
+
+    /**
+     * getErrors returns the number of errors contained to one connection
+     *
+     * @return the error count
+     */
+    public static long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * reset sets every counter to zero
+     */
+    public static void reset() {
+        writes.reset();
+        bytes.reset();
+        bytesIn.reset();
+        packets.reset();
+        moves.reset();
+        drops.reset();
+        errors.reset();
+    }
+
+    /**
+     * report returns the counters and the per-move figures on one line
+     *
+     * @return the report
+     */
+    public static String report() {
+        long m = Math.max(1, moves.sum());
+        return String.format("%d moves, %d writes, %d bytes, %d packets: " +
+                        "%.2f writes/move, %.2f packets/move, %.1f bytes/move",
+                moves.sum(), writes.sum(), bytes.sum(), packets.sum(),
+                (double) writes.sum() / m, (double) packets.sum() / m, (double) bytes.sum() / m);
+    }
+}